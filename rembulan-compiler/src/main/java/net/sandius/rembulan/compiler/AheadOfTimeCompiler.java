@@ -0,0 +1,462 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.compiler;
+
+import net.sandius.rembulan.load.LoaderException;
+import net.sandius.rembulan.load.PrecompiledChunkLoader;
+import net.sandius.rembulan.parser.ParseException;
+import net.sandius.rembulan.parser.TokenMgrError;
+import net.sandius.rembulan.util.ByteVector;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+/**
+ * A compiler of Lua modules to Java class files, meant to be used ahead of time
+ * (e.g., at build time), so that the compiled chunks can be loaded by
+ * a {@link PrecompiledChunkLoader} without parsing and compiling them at runtime.
+ *
+ * <p>Modules are added to the compiler by their module name, either individually
+ * or by scanning a source tree: the module name of a source file is its path relative
+ * to the root of the tree without the {@code .lua} extension, with directory separators
+ * replaced by dots ({@code a/b/c.lua} is the module {@code a.b.c}); in addition,
+ * {@code a/b/init.lua} is the module {@code a.b}. Every module is compiled with its
+ * module name as the chunk name.</p>
+ *
+ * <p>The compiled classes and the index resource used by {@code PrecompiledChunkLoader}
+ * may be written to a directory (e.g., the build output directory) or to a jar file.</p>
+ *
+ * <p>This class may also be run from the command line:</p>
+ * <pre>
+ *     AheadOfTimeCompiler [-p PACKAGE] [-o OUTPUT] SOURCE_DIR...
+ * </pre>
+ * <p>where {@code OUTPUT} is a jar file if its name ends with {@code .jar}, and a directory
+ * otherwise.</p>
+ */
+public class AheadOfTimeCompiler {
+
+	/**
+	 * The default name of the package of the compiled classes.
+	 */
+	public static final String DEFAULT_PACKAGE_NAME = "lua";
+
+	/**
+	 * The charset used to decode source files. Lua strings are byte strings:
+	 * the source bytes are mapped to characters one-to-one.
+	 */
+	public static final Charset SOURCE_CHARSET = Charset.forName("ISO-8859-1");
+
+	// Properties.store(OutputStream, String) writes ISO-8859-1
+	private static final Charset INDEX_CHARSET = Charset.forName("ISO-8859-1");
+
+	private static final String SOURCE_SUFFIX = ".lua";
+	private static final String INIT_MODULE = "init";
+
+	private final LuaCompiler compiler;
+	private final String packageName;
+
+	// module name -> compiled module, sorted for deterministic output
+	private final Map<String, Compiled> modules;
+
+	private static class Compiled {
+
+		final CompiledModule module;
+		final String digest;
+
+		Compiled(CompiledModule module, String digest) {
+			this.module = Objects.requireNonNull(module);
+			this.digest = Objects.requireNonNull(digest);
+		}
+
+	}
+
+	/**
+	 * Constructs a new ahead-of-time compiler using {@code compiler} to compile modules
+	 * into classes in the package {@code packageName}.
+	 *
+	 * @param compiler  the compiler, must not be {@code null}
+	 * @param packageName  the package of the compiled classes, must not be {@code null}
+	 *
+	 * @throws NullPointerException  if {@code compiler} or {@code packageName} is {@code null}
+	 * @throws IllegalArgumentException  if {@code packageName} is not a valid package name
+	 */
+	public AheadOfTimeCompiler(LuaCompiler compiler, String packageName) {
+		this.compiler = Objects.requireNonNull(compiler);
+		this.packageName = checkPackageName(Objects.requireNonNull(packageName));
+		this.modules = new TreeMap<>();
+	}
+
+	/**
+	 * Constructs a new ahead-of-time compiler using {@code compiler} to compile modules
+	 * into classes in the {@linkplain #DEFAULT_PACKAGE_NAME default package}.
+	 *
+	 * @param compiler  the compiler, must not be {@code null}
+	 *
+	 * @throws NullPointerException  if {@code compiler} is {@code null}
+	 */
+	public AheadOfTimeCompiler(LuaCompiler compiler) {
+		this(compiler, DEFAULT_PACKAGE_NAME);
+	}
+
+	private static String checkPackageName(String packageName) {
+		for (String s : packageName.split("\\.", -1)) {
+			boolean valid = !s.isEmpty() && Character.isJavaIdentifierStart(s.charAt(0));
+			for (int i = 1; valid && i < s.length(); i++) {
+				valid = Character.isJavaIdentifierPart(s.charAt(i));
+			}
+			if (!valid) {
+				throw new IllegalArgumentException("Invalid package name: \"" + packageName + "\"");
+			}
+		}
+		return packageName;
+	}
+
+	/**
+	 * Returns the name of the main class of the module {@code moduleName} compiled
+	 * into the package {@code packageName}.
+	 *
+	 * <p>The class name is the module name in which every character other than
+	 * an ASCII letter or digit is replaced by an underscore followed by the four
+	 * hexadecimal digits of its code, prefixed by {@code "Chunk_"}. The mapping
+	 * is injective, and the resulting names never contain the character {@code '$'}
+	 * used in the names of the classes of nested functions.</p>
+	 *
+	 * @param packageName  the package name, must not be {@code null}
+	 * @param moduleName  the module name, must not be {@code null}
+	 * @return  the name of the main class of the module
+	 *
+	 * @throws NullPointerException  if {@code packageName} or {@code moduleName}
+	 *                               is {@code null}
+	 */
+	public static String className(String packageName, String moduleName) {
+		StringBuilder bld = new StringBuilder();
+		bld.append(Objects.requireNonNull(packageName)).append(".Chunk_");
+		for (int i = 0; i < moduleName.length(); i++) {
+			char c = moduleName.charAt(i);
+			if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')) {
+				bld.append(c);
+			}
+			else {
+				bld.append('_').append(String.format("%04x", (int) c));
+			}
+		}
+		return bld.toString();
+	}
+
+	/**
+	 * Returns the module name of the source file {@code file} in the source tree
+	 * rooted at {@code sourceRoot}, or {@code null} if {@code file} is not a Lua source
+	 * file in the tree.
+	 *
+	 * @param sourceRoot  the root of the source tree, must not be {@code null}
+	 * @param file  the source file, must not be {@code null}
+	 * @return  the module name of {@code file}, or {@code null} if {@code file}
+	 *          is not a Lua source file in the tree
+	 *
+	 * @throws NullPointerException  if {@code sourceRoot} or {@code file} is {@code null}
+	 */
+	public static String moduleName(Path sourceRoot, Path file) {
+		Path rel = sourceRoot.relativize(file);
+		String fileName = rel.getFileName().toString();
+		if (rel.startsWith("..") || !fileName.endsWith(SOURCE_SUFFIX)) {
+			return null;
+		}
+
+		List<String> parts = new ArrayList<>();
+		for (Path p : rel) {
+			parts.add(p.toString());
+		}
+		String last = fileName.substring(0, fileName.length() - SOURCE_SUFFIX.length());
+		parts.remove(parts.size() - 1);
+		if (!(last.equals(INIT_MODULE) && !parts.isEmpty())) {
+			parts.add(last);
+		}
+
+		StringBuilder bld = new StringBuilder();
+		for (String p : parts) {
+			if (p.isEmpty()) {
+				return null;
+			}
+			if (bld.length() > 0) {
+				bld.append('.');
+			}
+			bld.append(p);
+		}
+		return bld.toString();
+	}
+
+	/**
+	 * Returns the names of the modules compiled so far.
+	 *
+	 * @return  an unmodifiable set of module names, in lexicographic order
+	 */
+	public Set<String> moduleNames() {
+		return Collections.unmodifiableSet(modules.keySet());
+	}
+
+	/**
+	 * Compiles the source text {@code sourceText} of the module {@code moduleName}.
+	 *
+	 * @param moduleName  the module name, must not be {@code null}
+	 * @param sourceText  the source text, must not be {@code null}
+	 *
+	 * @throws NullPointerException  if {@code moduleName} or {@code sourceText} is {@code null}
+	 * @throws IllegalStateException  if the module {@code moduleName} has already been added
+	 * @throws LoaderException  if {@code sourceText} cannot be compiled
+	 */
+	public void add(String moduleName, String sourceText) throws LoaderException {
+		Objects.requireNonNull(moduleName);
+		Objects.requireNonNull(sourceText);
+
+		if (modules.containsKey(moduleName)) {
+			throw new IllegalStateException("Module already added: " + moduleName);
+		}
+
+		CompiledModule cm;
+		try {
+			cm = compiler.compile(sourceText, moduleName, className(packageName, moduleName));
+		}
+		catch (TokenMgrError ex) {
+			throw CompilerChunkLoader.loaderException(ex, moduleName);
+		}
+		catch (ParseException ex) {
+			throw CompilerChunkLoader.loaderException(ex, moduleName);
+		}
+		catch (RuntimeException ex) {
+			throw new LoaderException(ex, moduleName);
+		}
+
+		modules.put(moduleName, new Compiled(cm, PrecompiledChunkLoader.sourceDigest(sourceText)));
+	}
+
+	/**
+	 * Compiles all Lua source files in the source tree rooted at {@code sourceRoot}.
+	 * Source files are decoded using {@link #SOURCE_CHARSET}.
+	 *
+	 * @param sourceRoot  the root of the source tree, must not be {@code null}
+	 * @return  the number of modules compiled
+	 *
+	 * @throws NullPointerException  if {@code sourceRoot} is {@code null}
+	 * @throws IOException  if the source tree cannot be read
+	 * @throws IllegalStateException  if a module in the tree has already been added
+	 * @throws LoaderException  if a source file cannot be compiled
+	 */
+	public int addTree(final Path sourceRoot) throws IOException, LoaderException {
+		Objects.requireNonNull(sourceRoot);
+
+		final Map<String, Path> files = new TreeMap<>();
+		Files.walkFileTree(sourceRoot, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				String moduleName = moduleName(sourceRoot, file);
+				if (moduleName != null && attrs.isRegularFile()) {
+					Path other = files.put(moduleName, file);
+					if (other != null) {
+						throw new IOException("Module " + moduleName + " defined by both "
+								+ other + " and " + file);
+					}
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+
+		for (Map.Entry<String, Path> e : files.entrySet()) {
+			String sourceText = new String(Files.readAllBytes(e.getValue()), SOURCE_CHARSET);
+			add(e.getKey(), sourceText);
+		}
+
+		return files.size();
+	}
+
+	private byte[] indexBytes() throws IOException {
+		Properties index = new Properties();
+		for (Map.Entry<String, Compiled> e : modules.entrySet()) {
+			Compiled c = e.getValue();
+			index.setProperty(e.getKey(), c.module.mainClassName() + " " + c.digest);
+		}
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		index.store(out, null);
+
+		// for reproducible output, drop the timestamp comment and sort the entries
+		// (every entry is stored on a single line)
+		List<String> lines = new ArrayList<>();
+		for (String line : new String(out.toByteArray(), INDEX_CHARSET).split("\r?\n")) {
+			if (!line.isEmpty() && !line.startsWith("#")) {
+				lines.add(line);
+			}
+		}
+		Collections.sort(lines);
+
+		StringBuilder bld = new StringBuilder();
+		for (String line : lines) {
+			bld.append(line).append('\n');
+		}
+		return bld.toString().getBytes(INDEX_CHARSET);
+	}
+
+	private static String classFileName(String className) {
+		return className.replace('.', '/') + ".class";
+	}
+
+	/**
+	 * Writes the compiled classes and the index resource to the directory
+	 * {@code outputDirectory}, creating it if necessary.
+	 *
+	 * @param outputDirectory  the output directory, must not be {@code null}
+	 *
+	 * @throws NullPointerException  if {@code outputDirectory} is {@code null}
+	 * @throws IOException  if an I/O error occurs
+	 */
+	public void writeToDirectory(Path outputDirectory) throws IOException {
+		Objects.requireNonNull(outputDirectory);
+
+		for (Compiled c : modules.values()) {
+			for (Map.Entry<String, ByteVector> e : c.module.classMap().entrySet()) {
+				Path file = outputDirectory.resolve(classFileName(e.getKey()));
+				Files.createDirectories(file.getParent());
+				Files.write(file, e.getValue().copyToNewArray());
+			}
+		}
+
+		Path indexFile = outputDirectory.resolve(PrecompiledChunkLoader.INDEX_RESOURCE_NAME);
+		Files.createDirectories(indexFile.getParent());
+		Files.write(indexFile, indexBytes());
+	}
+
+	/**
+	 * Writes the compiled classes and the index resource to a new jar file
+	 * {@code jarFile}, replacing it if it exists.
+	 *
+	 * @param jarFile  the jar file, must not be {@code null}
+	 *
+	 * @throws NullPointerException  if {@code jarFile} is {@code null}
+	 * @throws IOException  if an I/O error occurs
+	 */
+	public void writeToJar(Path jarFile) throws IOException {
+		Objects.requireNonNull(jarFile);
+
+		Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+
+		Path parent = jarFile.toAbsolutePath().getParent();
+		if (parent != null) {
+			Files.createDirectories(parent);
+		}
+
+		try (OutputStream os = Files.newOutputStream(jarFile);
+				JarOutputStream out = new JarOutputStream(os, manifest)) {
+
+			for (Compiled c : modules.values()) {
+				for (Map.Entry<String, ByteVector> e : c.module.classMap().entrySet()) {
+					out.putNextEntry(new JarEntry(classFileName(e.getKey())));
+					out.write(e.getValue().copyToNewArray());
+					out.closeEntry();
+				}
+			}
+
+			out.putNextEntry(new JarEntry(PrecompiledChunkLoader.INDEX_RESOURCE_NAME));
+			out.write(indexBytes());
+			out.closeEntry();
+		}
+	}
+
+	private static void usage() {
+		System.err.println("usage: " + AheadOfTimeCompiler.class.getName()
+				+ " [-p PACKAGE] [-o OUTPUT] SOURCE_DIR...");
+		System.err.println("  -p PACKAGE  package of the compiled classes (default: " + DEFAULT_PACKAGE_NAME + ")");
+		System.err.println("  -o OUTPUT   output jar file (*.jar) or directory (default: lua.jar)");
+		System.exit(1);
+	}
+
+	/**
+	 * Compiles the Lua source trees given on the command line using the
+	 * {@linkplain CompilerSettings#defaultSettings() default compiler settings}.
+	 *
+	 * @param args  command-line arguments
+	 *
+	 * @throws IOException  if an I/O error occurs
+	 */
+	public static void main(String[] args) throws IOException {
+		String packageName = DEFAULT_PACKAGE_NAME;
+		String output = "lua.jar";
+		List<String> sourceDirs = new ArrayList<>();
+
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if ((arg.equals("-p") || arg.equals("-o")) && i + 1 < args.length) {
+				if (arg.equals("-p")) {
+					packageName = args[++i];
+				}
+				else {
+					output = args[++i];
+				}
+			}
+			else if (arg.startsWith("-")) {
+				usage();
+			}
+			else {
+				sourceDirs.add(arg);
+			}
+		}
+
+		if (sourceDirs.isEmpty()) {
+			usage();
+		}
+
+		AheadOfTimeCompiler aot = new AheadOfTimeCompiler(new LuaCompiler(), packageName);
+		try {
+			for (String dir : sourceDirs) {
+				aot.addTree(Paths.get(dir));
+			}
+		}
+		catch (LoaderException ex) {
+			System.err.println(ex.getLuaStyleErrorMessage());
+			System.exit(1);
+		}
+
+		Path out = Paths.get(output);
+		if (output.endsWith(".jar")) {
+			aot.writeToJar(out);
+		}
+		else {
+			aot.writeToDirectory(out);
+		}
+		System.err.println("Compiled " + aot.moduleNames().size() + " module(s) to " + out);
+	}
+
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.compiler;
+
+/**
+ * A cache of compiled chunks, used by the {@link CompilerChunkLoader} to avoid
+ * recompiling chunks it has compiled before.
+ *
+ * <p>Caches are best-effort: a cache may drop entries at any time, and failures
+ * to store or retrieve an entry are not reported to the caller (a failed retrieval
+ * is treated as a cache miss). Implementations must be thread-safe.</p>
+ */
+public interface ChunkCache {
+
+	/**
+	 * Returns the compiled chunk cached under the key {@code key}, or {@code null}
+	 * if there is no such chunk in this cache.
+	 *
+	 * <p>The main class name of the returned chunk must be
+	 * {@link ChunkKey#rootClassName() key.rootClassName()}.</p>
+	 *
+	 * @param key  the chunk key, must not be {@code null}
+	 * @return  the compiled chunk cached under {@code key}, or {@code null} if not found
+	 *
+	 * @throws NullPointerException  if {@code key} is {@code null}
+	 */
+	CompiledModule get(ChunkKey key);
+
+	/**
+	 * Stores the compiled chunk {@code chunk} in this cache under the key {@code key}.
+	 *
+	 * @param key  the chunk key, must not be {@code null}
+	 * @param chunk  the compiled chunk, must not be {@code null}
+	 *
+	 * @throws NullPointerException  if {@code key} or {@code chunk} is {@code null}
+	 */
+	void put(ChunkKey key, CompiledModule chunk);
+
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.compiler;
+
+import net.sandius.rembulan.runtime.LuaFunction;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Objects;
+import java.util.Properties;
+
+/**
+ * A key identifying a compiled chunk in a {@link ChunkCache}.
+ *
+ * <p>The key is a SHA-256 digest of everything the compiled classes depend on: the source
+ * text, the chunk name (used as the source file name in debugging information), the prefix
+ * of the main class name, the compiler settings affecting the generated code, the version
+ * of the code generator, and the versions of the compiler and of the runtime the compiled
+ * classes link against. For snapshot versions, the time of the build of the compiler
+ * and of the runtime is included as well, since their code may change without a change
+ * of the version. Chunks compiled from equal inputs by the same build of the compiler
+ * for the same build of the runtime therefore have equal keys.</p>
+ *
+ * <p>The key determines the {@linkplain #rootClassName() name of the main class}
+ * of the compiled chunk, so that chunks loaded from a cache may be installed into
+ * a class loader alongside freshly-compiled ones.</p>
+ */
+public final class ChunkKey {
+
+	/**
+	 * The version of the cached chunk format. This must be incremented whenever
+	 * the compiled code changes in a way not reflected in the compiler version.
+	 */
+	static final int FORMAT_VERSION = 1;
+
+	/**
+	 * The version of the code generator. This must be incremented (along with
+	 * {@link #FORMAT_VERSION}) whenever the bytecode emitted for a chunk changes,
+	 * in particular when it starts to use different runtime methods (e.g. those
+	 * of {@code Dispatch} or {@code FieldCache}).
+	 */
+	static final int CODEGEN_VERSION = 1;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	static final String COMPILER_VERSION = buildVersion(ChunkKey.class);
+	static final String RUNTIME_VERSION = buildVersion(LuaFunction.class);
+
+	private final String digest;
+	private final String rootClassName;
+
+	private ChunkKey(String digest, String rootClassName) {
+		this.digest = Objects.requireNonNull(digest);
+		this.rootClassName = Objects.requireNonNull(rootClassName);
+	}
+
+	// returns the version of the module containing the class c, as recorded in the resource
+	// version.properties in the package of c; for snapshots, includes the build timestamp
+	private static String buildVersion(Class<?> c) {
+		Properties props = new Properties();
+		try (InputStream in = c.getResourceAsStream("version.properties")) {
+			if (in != null) {
+				props.load(in);
+			}
+		}
+		catch (IOException ex) {
+			// ignore, use the default
+		}
+
+		String version = props.getProperty("version", "unknown");
+		if (version.endsWith("-SNAPSHOT")) {
+			version += "+" + props.getProperty("build", "unknown");
+		}
+		return version;
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException ex) {
+			// every Java platform is required to support SHA-256
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	private static void update(MessageDigest md, String s) {
+		byte[] bytes = s.getBytes(UTF_8);
+		int len = bytes.length;
+		md.update(new byte[] { (byte) (len >>> 24), (byte) (len >>> 16), (byte) (len >>> 8), (byte) len });
+		md.update(bytes);
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder bld = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			bld.append(Character.forDigit((b >>> 4) & 0xf, 16));
+			bld.append(Character.forDigit(b & 0xf, 16));
+		}
+		return bld.toString();
+	}
+
+	/**
+	 * Returns the key of the chunk compiled from the source text {@code sourceText}
+	 * with the chunk name {@code chunkName} and the main class name prefixed
+	 * by {@code rootClassPrefix}, using a compiler with the settings {@code settings}.
+	 *
+	 * @param settings  the compiler settings, must not be {@code null}
+	 * @param rootClassPrefix  the class name prefix, must not be {@code null}
+	 * @param chunkName  the chunk name, must not be {@code null}
+	 * @param sourceText  the source text, must not be {@code null}
+	 * @return  the corresponding chunk key
+	 *
+	 * @throws NullPointerException  if any of the arguments is {@code null}
+	 */
+	public static ChunkKey of(CompilerSettings settings, String rootClassPrefix, String chunkName, String sourceText) {
+		Objects.requireNonNull(settings);
+		Objects.requireNonNull(rootClassPrefix);
+		Objects.requireNonNull(chunkName);
+		Objects.requireNonNull(sourceText);
+
+		MessageDigest md = newDigest();
+
+		update(md, Integer.toString(FORMAT_VERSION));
+		update(md, Integer.toString(CODEGEN_VERSION));
+		update(md, COMPILER_VERSION);
+		update(md, RUNTIME_VERSION);
+
+		// the parallelism does not affect the generated code
+		update(md, settings.cpuAccountingMode().name());
+		update(md, Boolean.toString(settings.constFolding()));
+		update(md, Boolean.toString(settings.constCaching()));
+		update(md, Boolean.toString(settings.fieldCaching()));
+		update(md, Boolean.toString(settings.invokeDynamicCalls()));
+		update(md, Integer.toString(settings.nodeSizeLimit()));
+
+		update(md, rootClassPrefix);
+		update(md, chunkName);
+		update(md, sourceText);
+
+		String digest = toHex(md.digest());
+		return new ChunkKey(digest, rootClassPrefix + "h" + digest);
+	}
+
+	/**
+	 * Returns the digest of this key as a string of hexadecimal digits.
+	 *
+	 * @return  the digest of this key
+	 */
+	public String digest() {
+		return digest;
+	}
+
+	/**
+	 * Returns the name of the main class of the chunk identified by this key.
+	 *
+	 * @return  the main class name
+	 */
+	public String rootClassName() {
+		return rootClassName;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+
+		ChunkKey that = (ChunkKey) o;
+		return this.digest.equals(that.digest);
+	}
+
+	@Override
+	public int hashCode() {
+		return digest.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return digest;
+	}
+
+}
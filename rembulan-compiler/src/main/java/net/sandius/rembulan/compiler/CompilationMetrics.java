@@ -0,0 +1,137 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.compiler;
+
+import net.sandius.rembulan.util.Check;
+
+/**
+ * Timing information about the compilation of a single chunk.
+ *
+ * <p>All durations are wall-clock times in nanoseconds. When the functions of the chunk
+ * are compiled in parallel, the processing and emission times are the times elapsed
+ * between the submission of the first function and the completion of the last one.</p>
+ */
+public final class CompilationMetrics {
+
+	private final int numOfFunctions;
+	private final int parallelism;
+	private final long parseNanos;
+	private final long translateNanos;
+	private final long processNanos;
+	private final long emitNanos;
+
+	/**
+	 * Constructs new compilation metrics.
+	 *
+	 * @param numOfFunctions  the number of functions compiled, must be non-negative
+	 * @param parallelism  the parallelism used, must be positive
+	 * @param parseNanos  time spent parsing, in nanoseconds, must be non-negative
+	 * @param translateNanos  time spent translating to IR, in nanoseconds, must be non-negative
+	 * @param processNanos  time spent optimising and analysing the IR, in nanoseconds,
+	 *                      must be non-negative
+	 * @param emitNanos  time spent emitting bytecode, in nanoseconds, must be non-negative
+	 *
+	 * @throws IllegalArgumentException  if any of the arguments is out of range
+	 */
+	public CompilationMetrics(int numOfFunctions, int parallelism,
+			long parseNanos, long translateNanos, long processNanos, long emitNanos) {
+
+		this.numOfFunctions = Check.nonNegative(numOfFunctions);
+		this.parallelism = Check.positive(parallelism);
+		this.parseNanos = Check.nonNegative(parseNanos);
+		this.translateNanos = Check.nonNegative(translateNanos);
+		this.processNanos = Check.nonNegative(processNanos);
+		this.emitNanos = Check.nonNegative(emitNanos);
+	}
+
+	/**
+	 * Returns the number of functions compiled to classes.
+	 *
+	 * @return  the number of functions
+	 */
+	public int numOfFunctions() {
+		return numOfFunctions;
+	}
+
+	/**
+	 * Returns the parallelism used in the compilation. The value {@code 1} means that
+	 * the chunk was compiled sequentially.
+	 *
+	 * @return  the parallelism
+	 */
+	public int parallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Returns the time spent parsing the source text.
+	 *
+	 * @return  the parsing time in nanoseconds
+	 */
+	public long parseNanos() {
+		return parseNanos;
+	}
+
+	/**
+	 * Returns the time spent translating the syntax tree to the intermediate representation.
+	 *
+	 * @return  the translation time in nanoseconds
+	 */
+	public long translateNanos() {
+		return translateNanos;
+	}
+
+	/**
+	 * Returns the time spent optimising and analysing the functions.
+	 *
+	 * @return  the processing time in nanoseconds
+	 */
+	public long processNanos() {
+		return processNanos;
+	}
+
+	/**
+	 * Returns the time spent emitting bytecode for the functions.
+	 *
+	 * @return  the emission time in nanoseconds
+	 */
+	public long emitNanos() {
+		return emitNanos;
+	}
+
+	/**
+	 * Returns the total compilation time.
+	 *
+	 * @return  the total time in nanoseconds
+	 */
+	public long totalNanos() {
+		return parseNanos + translateNanos + processNanos + emitNanos;
+	}
+
+	@Override
+	public String toString() {
+		return "CompilationMetrics{" +
+				"functions=" + numOfFunctions +
+				", parallelism=" + parallelism +
+				", parse=" + parseNanos +
+				", translate=" + translateNanos +
+				", process=" + processNanos +
+				", emit=" + emitNanos +
+				'}';
+	}
+
+}
@@ -26,16 +26,22 @@ public class CompiledModule implements CompiledChunk {
 
 	private final Map<String, ByteVector> classMap;
 	private final String mainClassName;
+	private final CompilationMetrics metrics;
 
-	public CompiledModule(Map<String, ByteVector> classMap, String mainClassName) {
+	public CompiledModule(Map<String, ByteVector> classMap, String mainClassName, CompilationMetrics metrics) {
 		this.classMap = Check.notNull(classMap);
 		this.mainClassName = Check.notNull(mainClassName);
+		this.metrics = metrics;
 
 		if (!classMap.containsKey(mainClassName)) {
 			throw new IllegalStateException("No main class in class map");
 		}
 	}
 
+	public CompiledModule(Map<String, ByteVector> classMap, String mainClassName) {
+		this(classMap, mainClassName, null);
+	}
+
 	@Override
 	public Map<String, ByteVector> classMap() {
 		return classMap;
@@ -46,4 +52,13 @@ public class CompiledModule implements CompiledChunk {
 		return mainClassName;
 	}
 
+	/**
+	 * Returns the metrics of the compilation that produced this module.
+	 *
+	 * @return  the compilation metrics, or {@code null} if not available
+	 */
+	public CompilationMetrics metrics() {
+		return metrics;
+	}
+
 }
@@ -30,22 +30,77 @@ import java.util.Objects;
 /**
  * A chunk loader that uses the {@linkplain LuaCompiler compiler} to convert Lua source
  * text to Java classfiles, and loads these classfiles into the VM using a {@link ClassLoader}.
+ *
+ * <p>A chunk loader may optionally use a {@link ChunkCache} to avoid recompiling
+ * chunks. In that case, main chunk classes are named after the {@linkplain ChunkKey key}
+ * of the chunk rather than numbered, and loading the same chunk repeatedly into
+ * the same chunk loader instantiates the already-loaded class.</p>
  */
 public class CompilerChunkLoader implements ChunkLoader {
 
 	private final ChunkClassLoader chunkClassLoader;
 	private final String rootClassPrefix;
 	private final LuaCompiler compiler;
+	private final ChunkCache cache;
 
 	private int idx;
 
-	CompilerChunkLoader(ClassLoader classLoader, LuaCompiler compiler, String rootClassPrefix) {
-		this.chunkClassLoader = new ChunkClassLoader(Objects.requireNonNull(classLoader));
+	CompilerChunkLoader(ChunkClassLoader chunkClassLoader, LuaCompiler compiler, String rootClassPrefix, ChunkCache cache) {
+		this.chunkClassLoader = Objects.requireNonNull(chunkClassLoader);
 		this.compiler = Objects.requireNonNull(compiler);
 		this.rootClassPrefix = Objects.requireNonNull(rootClassPrefix);
+		this.cache = cache;
 		this.idx = 0;
 	}
 
+	/**
+	 * Returns a new instance of {@code CompilerChunkLoader} that uses the specified
+	 * class loader {@code classLoader} to load classes it compiles using {@code compiler}
+	 * or retrieves from the chunk cache {@code cache}, with every main chunk class having
+	 * the class name {@code rootClassPrefix} followed by a suffix derived from
+	 * the {@linkplain ChunkKey key} of the chunk.
+	 *
+	 * @param classLoader  the class loader used by this chunk loader, must not be {@code null}
+	 * @param compiler  the compiler instance used by this chunk loader, must not be {@code null}
+	 * @param rootClassPrefix  the class name prefix for compiled classes, must not be {@code null}
+	 * @param cache  the chunk cache used by this chunk loader, must not be {@code null}
+	 * @return  a new instance of {@code CompilerChunkLoader}
+	 *
+	 * @throws NullPointerException  if {@code classLoader}, {@code compiler},
+	 *                               {@code rootClassPrefix} or {@code cache} is {@code null}
+	 */
+	public static CompilerChunkLoader of(ClassLoader classLoader, LuaCompiler compiler, String rootClassPrefix,
+			ChunkCache cache) {
+		return new CompilerChunkLoader(new ChunkClassLoader(Objects.requireNonNull(classLoader)),
+				compiler, rootClassPrefix, Objects.requireNonNull(cache));
+	}
+
+	/**
+	 * Returns a new instance of {@code CompilerChunkLoader} that installs the classes
+	 * it compiles using {@code compiler} or retrieves from the chunk cache {@code cache}
+	 * into the chunk class loader {@code chunkClassLoader}, with every main chunk class
+	 * having the class name {@code rootClassPrefix} followed by a suffix derived from
+	 * the {@linkplain ChunkKey key} of the chunk.
+	 *
+	 * <p>Chunk loaders sharing the chunk class loader and the class name prefix share
+	 * the loaded chunk classes: once a chunk has been loaded by one of them, loading
+	 * the same chunk by any other instantiates the same class.</p>
+	 *
+	 * @param chunkClassLoader  the chunk class loader shared by the chunk loaders,
+	 *                          must not be {@code null}
+	 * @param compiler  the compiler instance used by this chunk loader, must not be {@code null}
+	 * @param rootClassPrefix  the class name prefix for compiled classes, must not be {@code null}
+	 * @param cache  the chunk cache used by this chunk loader, must not be {@code null}
+	 * @return  a new instance of {@code CompilerChunkLoader}
+	 *
+	 * @throws NullPointerException  if {@code chunkClassLoader}, {@code compiler},
+	 *                               {@code rootClassPrefix} or {@code cache} is {@code null}
+	 */
+	public static CompilerChunkLoader ofSharedClassLoader(ChunkClassLoader chunkClassLoader, LuaCompiler compiler,
+			String rootClassPrefix, ChunkCache cache) {
+		return new CompilerChunkLoader(chunkClassLoader, compiler, rootClassPrefix, Objects.requireNonNull(cache));
+	}
+
 	/**
 	 * Returns a new instance of {@code CompilerChunkLoader} that uses the specified
 	 * class loader {@code classLoader} to load classes it compiles using {@code compiler},
@@ -61,7 +116,8 @@ public class CompilerChunkLoader implements ChunkLoader {
 	 *                               or {@code rootClassPrefix} is {@code null}
 	 */
 	public static CompilerChunkLoader of(ClassLoader classLoader, LuaCompiler compiler, String rootClassPrefix) {
-		return new CompilerChunkLoader(classLoader, compiler, rootClassPrefix);
+		return new CompilerChunkLoader(new ChunkClassLoader(Objects.requireNonNull(classLoader)),
+				compiler, rootClassPrefix, null);
 	}
 
 	/**
@@ -81,7 +137,7 @@ public class CompilerChunkLoader implements ChunkLoader {
 	 *                               or {@code rootClassPrefix} is {@code null}
 	 */
 	public static CompilerChunkLoader of(ClassLoader classLoader, CompilerSettings compilerSettings, String rootClassPrefix) {
-		return new CompilerChunkLoader(classLoader, new LuaCompiler(compilerSettings), rootClassPrefix);
+		return of(classLoader, new LuaCompiler(compilerSettings), rootClassPrefix);
 	}
 
 	/**
@@ -158,6 +214,71 @@ public class CompilerChunkLoader implements ChunkLoader {
 		return chunkClassLoader;
 	}
 
+	/**
+	 * Returns the chunk cache used by this chunk loader.
+	 *
+	 * @return  the chunk cache used by this chunk loader, or {@code null} if this chunk
+	 *          loader does not use a cache
+	 */
+	public ChunkCache getChunkCache() {
+		return cache;
+	}
+
+	// returns the name of the main class of the installed chunk
+	private String compileAndInstall(String chunkName, String sourceText)
+			throws ParseException, TokenMgrError {
+
+		if (cache == null) {
+			String rootClassName = rootClassPrefix + (idx++);
+			return chunkClassLoader.install(compiler.compile(sourceText, chunkName, rootClassName));
+		}
+		else {
+			ChunkKey key = ChunkKey.of(compiler.settings(), rootClassPrefix, chunkName, sourceText);
+			String rootClassName = key.rootClassName();
+
+			if (chunkClassLoader.isInstalled(rootClassName)) {
+				// loaded before, reuse the class
+				return rootClassName;
+			}
+
+			CompiledModule result = cache.get(key);
+			if (result == null) {
+				result = compiler.compile(sourceText, chunkName, rootClassName);
+				cache.put(key, result);
+			}
+
+			try {
+				return chunkClassLoader.install(result);
+			}
+			catch (IllegalStateException ex) {
+				if (chunkClassLoader.isInstalled(rootClassName)) {
+					// installed concurrently by another chunk loader sharing the class loader
+					return rootClassName;
+				}
+				else {
+					throw ex;
+				}
+			}
+		}
+	}
+
+	static LoaderException loaderException(TokenMgrError ex, String chunkName) {
+		String msg = ex.getMessage();
+		int line = 0;  // TODO
+		boolean partial = msg != null && msg.contains("Encountered: <EOF>");  // TODO: is there really no better way?
+		return new LoaderException(ex, chunkName, line, partial);
+	}
+
+	static LoaderException loaderException(ParseException ex, String chunkName) {
+		boolean partial = ex.currentToken != null
+				&& ex.currentToken.next != null
+				&& ex.currentToken.next.kind == Parser.EOF;
+		int line = ex.currentToken != null
+				? ex.currentToken.beginLine
+				: 0;
+		return new LoaderException(ex, chunkName, line, partial);
+	}
+
 	@Override
 	public LuaFunction loadTextChunk(Variable env, String chunkName, String sourceText) throws LoaderException {
 		Objects.requireNonNull(env);
@@ -165,29 +286,17 @@ public class CompilerChunkLoader implements ChunkLoader {
 		Objects.requireNonNull(sourceText);
 
 		synchronized (this) {
-			String rootClassName = rootClassPrefix + (idx++);
 			try {
-				CompiledModule result = compiler.compile(sourceText, chunkName, rootClassName);
-
-				String mainClassName = chunkClassLoader.install(result);
+				String mainClassName = compileAndInstall(chunkName, sourceText);
 				Class<?> clazz = chunkClassLoader.loadClass(mainClassName);
 
 				return (LuaFunction) clazz.getConstructor(Variable.class).newInstance(env);
 			}
 			catch (TokenMgrError ex) {
-				String msg = ex.getMessage();
-				int line = 0;  // TODO
-				boolean partial = msg != null && msg.contains("Encountered: <EOF>");  // TODO: is there really no better way?
-				throw new LoaderException(ex, chunkName, line, partial);
+				throw loaderException(ex, chunkName);
 			}
 			catch (ParseException ex) {
-				boolean partial = ex.currentToken != null
-						&& ex.currentToken.next != null
-						&& ex.currentToken.next.kind == Parser.EOF;
-				int line = ex.currentToken != null
-						? ex.currentToken.beginLine
-						: 0;
-				throw new LoaderException(ex, chunkName, line, partial);
+				throw loaderException(ex, chunkName);
 			}
 			catch (RuntimeException | LinkageError | ReflectiveOperationException ex) {
 				throw new LoaderException(ex, chunkName, 0, false);
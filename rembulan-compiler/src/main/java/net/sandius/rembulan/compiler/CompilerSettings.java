@@ -31,11 +31,22 @@ import java.util.Objects;
  *       time (note that this does not have an influence on the number of ticks counted);</li>
  *     <li><b>const caching</b> (boolean): when {@code true}, boxed numeric constants are stored
  *       as static fields rather than being instantiated (and boxed) at execution time;</li>
+ *     <li><b>field caching</b> (boolean): when {@code true}, table accesses with constant
+ *       string keys (such as {@code t.field}) use per-site inline caches
+ *       (see {@link net.sandius.rembulan.runtime.FieldCache});</li>
+ *     <li><b>invokedynamic calls</b> (boolean): when {@code true}, non-tail calls are compiled
+ *       to {@code invokedynamic} call sites linked by {@link net.sandius.rembulan.runtime.CallSites},
+ *       which call monomorphic targets directly rather than through
+ *       {@link net.sandius.rembulan.runtime.Dispatch};</li>
  *     <li><b>node size limit</b> (int): when positive, long functions are split up into smaller
  *       Java methods (each containing at most the specified number of IR nodes); otherwise,
  *       a single method containing the entire function code is generated. Java class files
  *       impose a strict limit of 64 kB per method: this setting allows the compilation
- *       of arbitrarily-long Lua functions.</li>
+ *       of arbitrarily-long Lua functions;</li>
+ *     <li><b>parallelism</b> (int): when greater than 1, the functions of a chunk are optimised
+ *       and compiled to bytecode in parallel, using at most the specified number of threads
+ *       of a {@link java.util.concurrent.ForkJoinPool}; otherwise, they are compiled sequentially
+ *       in the calling thread. The compiled code does not depend on this setting.</li>
  * </ul>
  *
  * <p>To obtain the settings with sensible defaults, use {@link CompilerSettings#defaultSettings()}.
@@ -63,7 +74,22 @@ public final class CompilerSettings {
 		 * and potentially pause by invoking
 		 * {@link net.sandius.rembulan.runtime.ExecutionContext#pauseIfRequested()}.</p>
 		 */
-		IN_EVERY_BASIC_BLOCK
+		IN_EVERY_BASIC_BLOCK,
+
+		/**
+		 * Check CPU time usage at function entries and loop back-edges only.
+		 *
+		 * <p>Ticks are counted as in {@link #IN_EVERY_BASIC_BLOCK}, but accumulated in a local
+		 * variable in the compiled function. The accumulated ticks are registered by invoking
+		 * {@link net.sandius.rembulan.runtime.ExecutionContext#registerTicks(int)} at the beginning
+		 * of the function and at loop back-edges, where the function potentially pauses by invoking
+		 * {@link net.sandius.rembulan.runtime.ExecutionContext#pauseIfRequested()}, and whenever
+		 * the control leaves the function (by returning, tail-calling, suspending or throwing
+		 * an exception). The total number of ticks registered is therefore the same as
+		 * in {@link #IN_EVERY_BASIC_BLOCK}, while the per-block overhead is reduced to
+		 * a local variable update.</p>
+		 */
+		AT_LOOP_BACKEDGES
 
 	}
 
@@ -82,26 +108,50 @@ public final class CompilerSettings {
 	 */
 	public static final boolean DEFAULT_CONST_CACHING_MODE = true;
 
+	/**
+	 * The default field caching mode.
+	 */
+	public static final boolean DEFAULT_FIELD_CACHING_MODE = true;
+
+	/**
+	 * The default invokedynamic calls mode.
+	 */
+	public static final boolean DEFAULT_INVOKEDYNAMIC_CALLS_MODE = false;
+
 	/**
 	 * The default method size limit.
 	 */
 	public static final int DEFAULT_NODE_SIZE_LIMIT = 2000;
 
+	/**
+	 * The default parallelism.
+	 */
+	public static final int DEFAULT_PARALLELISM = 1;
+
 	private final CPUAccountingMode cpuAccountingMode;
 	private final boolean constFolding;
 	private final boolean constCaching;
+	private final boolean fieldCaching;
+	private final boolean invokeDynamicCalls;
 	private final int nodeSizeLimit;
+	private final int parallelism;
 
 	CompilerSettings(
 			CPUAccountingMode cpuAccountingMode,
 			boolean constFolding,
 			boolean constCaching,
-			int nodeSizeLimit) {
+			boolean fieldCaching,
+			boolean invokeDynamicCalls,
+			int nodeSizeLimit,
+			int parallelism) {
 
 		this.cpuAccountingMode = Objects.requireNonNull(cpuAccountingMode);
 		this.constFolding = constFolding;
 		this.constCaching = constCaching;
+		this.fieldCaching = fieldCaching;
+		this.invokeDynamicCalls = invokeDynamicCalls;
 		this.nodeSizeLimit = nodeSizeLimit;
+		this.parallelism = parallelism;
 	}
 
 	@Override
@@ -114,7 +164,10 @@ public final class CompilerSettings {
 		return this.cpuAccountingMode == that.cpuAccountingMode
 				&& this.constFolding == that.constFolding
 				&& this.constCaching == that.constCaching
-				&& this.nodeSizeLimit == that.nodeSizeLimit;
+				&& this.fieldCaching == that.fieldCaching
+				&& this.invokeDynamicCalls == that.invokeDynamicCalls
+				&& this.nodeSizeLimit == that.nodeSizeLimit
+				&& this.parallelism == that.parallelism;
 	}
 
 	@Override
@@ -122,7 +175,10 @@ public final class CompilerSettings {
 		int result = cpuAccountingMode.hashCode();
 		result = 31 * result + (constFolding ? 1 : 0);
 		result = 31 * result + (constCaching ? 1 : 0);
+		result = 31 * result + (fieldCaching ? 1 : 0);
+		result = 31 * result + (invokeDynamicCalls ? 1 : 0);
 		result = 31 * result + nodeSizeLimit;
+		result = 31 * result + parallelism;
 		return result;
 	}
 
@@ -130,6 +186,37 @@ public final class CompilerSettings {
 	 * Returns the compiler settings with the given parameters.
 	 *
 	 * <p>When {@code nodeSizeLimit} is non-positive, no chunking of the body method
+	 * will be performed. When {@code parallelism} is not greater than 1, functions
+	 * are compiled sequentially.</p>
+	 *
+	 * @param cpuAccountingMode  CPU accounting mode, must not be {@code null}
+	 * @param constFolding  const folding mode
+	 * @param constCaching  const caching mode
+	 * @param fieldCaching  field caching mode
+	 * @param invokeDynamicCalls  invokedynamic calls mode
+	 * @param nodeSizeLimit  node size limit
+	 * @param parallelism  parallelism
+	 * @return  the corresponding compiler settings
+	 *
+	 * @throws NullPointerException  if {@code cpuAccountingMode} is {@code null}
+	 */
+	public static CompilerSettings of(
+			CPUAccountingMode cpuAccountingMode,
+			boolean constFolding,
+			boolean constCaching,
+			boolean fieldCaching,
+			boolean invokeDynamicCalls,
+			int nodeSizeLimit,
+			int parallelism) {
+
+		return new CompilerSettings(cpuAccountingMode, constFolding, constCaching, fieldCaching, invokeDynamicCalls, nodeSizeLimit, parallelism);
+	}
+
+	/**
+	 * Returns the compiler settings with the given parameters, and the default
+	 * field caching mode, invokedynamic calls mode and parallelism.
+	 *
+	 * <p>When {@code nodeSizeLimit} is non-positive, no chunking of the body method
 	 * will be performed.</p>
 	 *
 	 * @param cpuAccountingMode  CPU accounting mode, must not be {@code null}
@@ -146,7 +233,14 @@ public final class CompilerSettings {
 			boolean constCaching,
 			int nodeSizeLimit) {
 
-		return new CompilerSettings(cpuAccountingMode, constFolding, constCaching, nodeSizeLimit);
+		return of(
+				cpuAccountingMode,
+				constFolding,
+				constCaching,
+				DEFAULT_FIELD_CACHING_MODE,
+				DEFAULT_INVOKEDYNAMIC_CALLS_MODE,
+				nodeSizeLimit,
+				DEFAULT_PARALLELISM);
 	}
 
 	/**
@@ -159,7 +253,10 @@ public final class CompilerSettings {
 				DEFAULT_CPU_ACCOUNTING_MODE,
 				DEFAULT_CONST_FOLDING_MODE,
 				DEFAULT_CONST_CACHING_MODE,
-				DEFAULT_NODE_SIZE_LIMIT);
+				DEFAULT_FIELD_CACHING_MODE,
+				DEFAULT_INVOKEDYNAMIC_CALLS_MODE,
+				DEFAULT_NODE_SIZE_LIMIT,
+				DEFAULT_PARALLELISM);
 	}
 
 	/**
@@ -198,6 +295,24 @@ public final class CompilerSettings {
 		return constCaching;
 	}
 
+	/**
+	 * Returns the field caching mode.
+	 *
+	 * @return  the field caching mode
+	 */
+	public boolean fieldCaching() {
+		return fieldCaching;
+	}
+
+	/**
+	 * Returns the invokedynamic calls mode.
+	 *
+	 * @return  the invokedynamic calls mode
+	 */
+	public boolean invokeDynamicCalls() {
+		return invokeDynamicCalls;
+	}
+
 	/**
 	 * Returns the node size limit.
 	 *
@@ -207,6 +322,15 @@ public final class CompilerSettings {
 		return nodeSizeLimit;
 	}
 
+	/**
+	 * Returns the parallelism.
+	 *
+	 * @return  the parallelism
+	 */
+	public int parallelism() {
+		return parallelism;
+	}
+
 	/**
 	 * Returns compiler settings derived from this compiler settings by updating
 	 * the CPU accounting mode to {@code mode}.
@@ -219,7 +343,7 @@ public final class CompilerSettings {
 	 */
 	public CompilerSettings withCPUAccountingMode(CPUAccountingMode mode) {
 		return mode != this.cpuAccountingMode
-				? new CompilerSettings(mode, constFolding, constCaching, nodeSizeLimit)
+				? new CompilerSettings(mode, constFolding, constCaching, fieldCaching, invokeDynamicCalls, nodeSizeLimit, parallelism)
 				: this;
 	}
 
@@ -233,7 +357,7 @@ public final class CompilerSettings {
 	 */
 	public CompilerSettings withConstFolding(boolean mode) {
 		return mode != this.constFolding
-				? new CompilerSettings(cpuAccountingMode, mode, constCaching, nodeSizeLimit)
+				? new CompilerSettings(cpuAccountingMode, mode, constCaching, fieldCaching, invokeDynamicCalls, nodeSizeLimit, parallelism)
 				: this;
 	}
 
@@ -247,7 +371,35 @@ public final class CompilerSettings {
 	 */
 	public CompilerSettings withConstCaching(boolean mode) {
 		return mode != this.constCaching
-				? new CompilerSettings(cpuAccountingMode, constFolding, mode, nodeSizeLimit)
+				? new CompilerSettings(cpuAccountingMode, constFolding, mode, fieldCaching, invokeDynamicCalls, nodeSizeLimit, parallelism)
+				: this;
+	}
+
+	/**
+	 * Returns compiler settings derived from this compiler settings by updating
+	 * the field caching mode to {@code mode}.
+	 *
+	 * @param mode  new field caching mode
+	 * @return  settings derived from {@code this} by updating the field caching mode
+	 *          to {@code mode}
+	 */
+	public CompilerSettings withFieldCaching(boolean mode) {
+		return mode != this.fieldCaching
+				? new CompilerSettings(cpuAccountingMode, constFolding, constCaching, mode, invokeDynamicCalls, nodeSizeLimit, parallelism)
+				: this;
+	}
+
+	/**
+	 * Returns compiler settings derived from this compiler settings by updating
+	 * the invokedynamic calls mode to {@code mode}.
+	 *
+	 * @param mode  new invokedynamic calls mode
+	 * @return  settings derived from {@code this} by updating the invokedynamic calls mode
+	 *          to {@code mode}
+	 */
+	public CompilerSettings withInvokeDynamicCalls(boolean mode) {
+		return mode != this.invokeDynamicCalls
+				? new CompilerSettings(cpuAccountingMode, constFolding, constCaching, fieldCaching, mode, nodeSizeLimit, parallelism)
 				: this;
 	}
 
@@ -261,7 +413,21 @@ public final class CompilerSettings {
 	 */
 	public CompilerSettings withNodeSizeLimit(int limit) {
 		return limit != this.nodeSizeLimit
-				? new CompilerSettings(cpuAccountingMode, constFolding, constCaching, limit)
+				? new CompilerSettings(cpuAccountingMode, constFolding, constCaching, fieldCaching, invokeDynamicCalls, limit, parallelism)
+				: this;
+	}
+
+	/**
+	 * Returns compiler settings derived from this compiler settings by updating
+	 * the parallelism to {@code parallelism}.
+	 *
+	 * @param parallelism  new parallelism
+	 * @return  settings derived from {@code this} by updating the parallelism
+	 *          to {@code parallelism}
+	 */
+	public CompilerSettings withParallelism(int parallelism) {
+		return parallelism != this.parallelism
+				? new CompilerSettings(cpuAccountingMode, constFolding, constCaching, fieldCaching, invokeDynamicCalls, nodeSizeLimit, parallelism)
 				: this;
 	}
 
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.compiler;
+
+import net.sandius.rembulan.util.ByteVector;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A chunk cache storing compiled chunks as files in a directory, allowing compiled
+ * chunks to be reused across VM instances.
+ *
+ * <p>Every chunk is stored in a single file named after the digest of its key, containing
+ * the class files of the chunk. Files are written atomically (by writing a temporary file
+ * and renaming it), so that the directory may be shared by several processes. Files that
+ * cannot be read or that are malformed are treated as cache misses. Since the chunk key
+ * includes the compiler version, stale entries are never used, but they are not removed
+ * from the directory either.</p>
+ */
+public class DiskChunkCache implements ChunkCache {
+
+	private static final int MAGIC = 0x52424c43;  // "RBLC"
+
+	private static final String SUFFIX = ".rbc";
+
+	private final Path directory;
+
+	/**
+	 * Constructs a new disk chunk cache storing the compiled chunks in the directory
+	 * {@code directory}. The directory is created when the first chunk is stored
+	 * if it does not exist.
+	 *
+	 * @param directory  the cache directory, must not be {@code null}
+	 *
+	 * @throws NullPointerException  if {@code directory} is {@code null}
+	 */
+	public DiskChunkCache(Path directory) {
+		this.directory = Objects.requireNonNull(directory);
+	}
+
+	/**
+	 * Returns the cache directory.
+	 *
+	 * @return  the cache directory
+	 */
+	public Path directory() {
+		return directory;
+	}
+
+	private Path fileFor(ChunkKey key) {
+		return directory.resolve(key.digest() + SUFFIX);
+	}
+
+	@Override
+	public CompiledModule get(ChunkKey key) {
+		Path file = fileFor(Objects.requireNonNull(key));
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			return read(in, key);
+		}
+		catch (IOException | RuntimeException ex) {
+			// missing, unreadable or malformed entry
+			return null;
+		}
+	}
+
+	@Override
+	public void put(ChunkKey key, CompiledModule chunk) {
+		Objects.requireNonNull(key);
+		Objects.requireNonNull(chunk);
+
+		Path tmp = null;
+		try {
+			Files.createDirectories(directory);
+			tmp = Files.createTempFile(directory, key.digest(), ".tmp");
+
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+				write(out, key, chunk);
+			}
+
+			Path file = fileFor(key);
+			try {
+				Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (AtomicMoveNotSupportedException ex) {
+				Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+			tmp = null;
+		}
+		catch (IOException ex) {
+			// ignore, the chunk will be recompiled next time
+		}
+		finally {
+			if (tmp != null) {
+				try {
+					Files.deleteIfExists(tmp);
+				}
+				catch (IOException ex) {
+					// ignore
+				}
+			}
+		}
+	}
+
+	private static void write(DataOutputStream out, ChunkKey key, CompiledModule chunk) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(ChunkKey.FORMAT_VERSION);
+		out.writeUTF(key.digest());
+		out.writeUTF(chunk.mainClassName());
+
+		Map<String, ByteVector> classMap = chunk.classMap();
+		out.writeInt(classMap.size());
+		for (Map.Entry<String, ByteVector> e : classMap.entrySet()) {
+			byte[] bytes = e.getValue().copyToNewArray();
+			out.writeUTF(e.getKey());
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	private static CompiledModule read(DataInputStream in, ChunkKey key) throws IOException {
+		if (in.readInt() != MAGIC
+				|| in.readInt() != ChunkKey.FORMAT_VERSION
+				|| !in.readUTF().equals(key.digest())) {
+			return null;
+		}
+
+		String mainClassName = in.readUTF();
+		if (!mainClassName.equals(key.rootClassName())) {
+			return null;
+		}
+
+		int n = in.readInt();
+		if (n <= 0) {
+			return null;
+		}
+
+		Map<String, ByteVector> classMap = new LinkedHashMap<>();
+		for (int i = 0; i < n; i++) {
+			String name = in.readUTF();
+			int len = in.readInt();
+			if (len < 0) {
+				return null;
+			}
+			byte[] bytes = new byte[len];
+			in.readFully(bytes);
+			classMap.put(name, ByteVector.wrap(bytes));
+		}
+
+		if (in.read() != -1 || !classMap.containsKey(mainClassName)) {
+			// trailing garbage or missing main class
+			return null;
+		}
+
+		return new CompiledModule(Collections.unmodifiableMap(classMap), mainClassName);
+	}
+
+}
@@ -354,11 +354,43 @@ class IRTranslatorTransformer extends Transformer {
 		insns.add(new BinOp(bop, dest, swap ? r : l, swap ? l : r));
 	}
 
+	private void concat(BinaryOperationExpr e) {
+		// the concatenation is right-associative: a .. b .. c is (a .. (b .. c))
+		List<Expr> operands = new ArrayList<>();
+		Expr x = e;
+		while (x instanceof BinaryOperationExpr && ((BinaryOperationExpr) x).op() == Operator.Binary.CONCAT) {
+			BinaryOperationExpr be = (BinaryOperationExpr) x;
+			operands.add(be.left());
+			x = be.right();
+		}
+		operands.add(x);
+
+		if (operands.size() == 2) {
+			eagerBinOp(e.op(), e.left(), e.right());
+		}
+		else {
+			// chained concatenation: translate into a single n-ary operation
+			List<Val> args = new ArrayList<>();
+			for (Expr o : operands) {
+				o.accept(this);
+				args.add(popVal());
+			}
+
+			Val dest = provider.newVal();
+			vals.push(dest);
+
+			// TODO: line
+
+			insns.add(new Concat(dest, Collections.unmodifiableList(args)));
+		}
+	}
+
 	@Override
 	public Expr transform(BinaryOperationExpr e) {
 		switch (e.op()) {
 			case AND: and(e.left(), e.right()); break;
 			case OR: or(e.left(), e.right()); break;
+			case CONCAT: concat(e); break;
 			default: eagerBinOp(e.op(), e.left(), e.right()); break;
 		}
 		return e;
@@ -530,9 +562,15 @@ class IRTranslatorTransformer extends Transformer {
 
 		Val dest = provider.newVal();
 
-		for (TableConstructorExpr.FieldInitialiser fi : e.fields()) {
+		Iterator<TableConstructorExpr.FieldInitialiser> fit = e.fields().iterator();
+		while (fit.hasNext()) {
+			TableConstructorExpr.FieldInitialiser fi = fit.next();
 			if (fi.key() == null) {
-				array += 1;
+				// a multi-value expression in tail position is appended using TabRawAppendMulti,
+				// which sizes the array part at runtime
+				if (!(fi.value() instanceof MultiExpr && !fit.hasNext())) {
+					array += 1;
+				}
 			}
 			else {
 				hash += 1;
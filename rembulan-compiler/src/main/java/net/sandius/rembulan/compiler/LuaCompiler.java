@@ -42,23 +42,43 @@ import net.sandius.rembulan.parser.ast.Chunk;
 import net.sandius.rembulan.util.ByteVector;
 import net.sandius.rembulan.util.Check;
 
-import java.io.ByteArrayInputStream;
+import java.io.StringReader;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * A Lua-to-Java-bytecode compiler.
+ *
+ * <p>When the {@linkplain CompilerSettings#parallelism() parallelism} in the compiler
+ * settings is greater than 1, the functions of a chunk are optimised and compiled
+ * to bytecode in parallel in a {@link ForkJoinPool}. The pools are shared by all compiler
+ * instances with the same parallelism and created when first needed; their worker threads
+ * are daemon threads that terminate when idle, so compiler instances do not need to be
+ * shut down. The compiled module does not depend
+ * on the parallelism: its classes are always listed in the order of their definition
+ * in the source.</p>
  */
 public class LuaCompiler {
 
 	private final CompilerSettings settings;
 
+	// pools shared by all compiler instances, indexed by parallelism
+	private static final ConcurrentMap<Integer, ForkJoinPool> POOLS = new ConcurrentHashMap<>();
+
 	/**
 	 * Constructs a new compiler instance with the given settings.
 	 *
@@ -88,8 +108,8 @@ public class LuaCompiler {
 	}
 
 	private static Chunk parse(String sourceText) throws ParseException, TokenMgrError {
-		ByteArrayInputStream bais = new ByteArrayInputStream(sourceText.getBytes());
-		Parser parser = new Parser(bais);
+		// the source text is already decoded: read it directly rather than through an encoding
+		Parser parser = new Parser(new StringReader(sourceText));
 		return parser.Chunk();
 	}
 
@@ -98,9 +118,57 @@ public class LuaCompiler {
 		return IRTranslator.translate(chunk);
 	}
 
-	private Iterable<IRFunc> sortTopologically(Module module) {
-		// TODO
-		return module.fns();
+	// returns null if the compilation should be sequential
+	private ForkJoinPool pool(int numOfTasks) {
+		if (settings.parallelism() <= 1 || numOfTasks <= 1) {
+			return null;
+		}
+
+		Integer parallelism = settings.parallelism();
+		ForkJoinPool pool = POOLS.get(parallelism);
+		if (pool == null) {
+			ForkJoinPool newPool = new ForkJoinPool(parallelism);
+			pool = POOLS.putIfAbsent(parallelism, newPool);
+			if (pool == null) {
+				pool = newPool;
+			}
+			else {
+				newPool.shutdown();
+			}
+		}
+		return pool;
+	}
+
+	private interface Step<T, R> {
+		R apply(T input);
+	}
+
+	// applies step to every element of inputs, preserving the order of the results
+	private <T, R> List<R> forEach(List<T> inputs, final Step<T, R> step) {
+		List<R> results = new ArrayList<>(inputs.size());
+
+		ForkJoinPool pool = pool(inputs.size());
+		if (pool == null) {
+			for (T input : inputs) {
+				results.add(step.apply(input));
+			}
+		}
+		else {
+			List<ForkJoinTask<R>> tasks = new ArrayList<>(inputs.size());
+			for (final T input : inputs) {
+				tasks.add(pool.submit(new RecursiveTask<R>() {
+					@Override
+					protected R compute() {
+						return step.apply(input);
+					}
+				}));
+			}
+			for (ForkJoinTask<R> task : tasks) {
+				results.add(task.join());
+			}
+		}
+
+		return results;
 	}
 
 	private IRFunc optimise(IRFunc fn) {
@@ -155,32 +223,46 @@ public class LuaCompiler {
 		return new ProcessedFunc(fn, slots, types, deps);
 	}
 
-	private Iterable<ProcessedFunc> processModule(Module m) {
-		Map<FunctionId, ProcessedFunc> pfs = new HashMap<>();
+	private List<ProcessedFunc> processModule(Module m) {
+		// functions are processed independently of each other
+		List<ProcessedFunc> processed = forEach(m.fns(), new Step<IRFunc, ProcessedFunc>() {
+			@Override
+			public ProcessedFunc apply(IRFunc fn) {
+				return processFunction(fn);
+			}
+		});
 
-		for (IRFunc fn : sortTopologically(m)) {
-			ProcessedFunc pf = processFunction(fn);
-			pfs.put(fn.id(), pf);
+		Map<FunctionId, ProcessedFunc> pfs = new HashMap<>();
+		for (ProcessedFunc pf : processed) {
+			pfs.put(pf.fn.id(), pf);
 		}
 
 		ProcessedFunc main = pfs.get(FunctionId.root());
 		assert (main != null);
 
-		Set<ProcessedFunc> result = new HashSet<>();
+		Set<ProcessedFunc> reachable = new HashSet<>();
 		Deque<ProcessedFunc> open = new ArrayDeque<>();
 
 		// only add functions reachable from main
 		open.add(main);
 		while (!open.isEmpty()) {
 			ProcessedFunc pf = open.pop();
-			if (!result.contains(pf)) {
-				result.add(pf);
+			if (!reachable.contains(pf)) {
+				reachable.add(pf);
 				for (FunctionId id : pf.deps.nestedRefs()) {
 					open.push(pfs.get(id));
 				}
 			}
 		}
 
+		// keep the module order
+		List<ProcessedFunc> result = new ArrayList<>(reachable.size());
+		for (ProcessedFunc pf : processed) {
+			if (reachable.contains(pf)) {
+				result.add(pf);
+			}
+		}
+
 		return result;
 	}
 
@@ -210,19 +292,33 @@ public class LuaCompiler {
 	 * @throws ParseException  when {@code sourceText} cannot be parsed following the Lua
 	 *                         grammar
 	 */
-	public CompiledModule compile(String sourceText, String sourceFileName, String rootClassName)
+	public CompiledModule compile(String sourceText, final String sourceFileName, final String rootClassName)
 			throws ParseException, TokenMgrError {
 
 		Check.notNull(sourceText);
+
+		long t0 = System.nanoTime();
 		Chunk ast = parse(sourceText);
+		long t1 = System.nanoTime();
 		Module module = translate(ast);
+		long t2 = System.nanoTime();
 
-		Iterable<ProcessedFunc> pfs = processModule(module);
+		List<ProcessedFunc> pfs = processModule(module);
+		long t3 = System.nanoTime();
 
-		Map<String, ByteVector> classMap = new HashMap<>();
+		List<CompiledClass> ccs = forEach(pfs, new Step<ProcessedFunc, CompiledClass>() {
+			@Override
+			public CompiledClass apply(ProcessedFunc pf) {
+				return compileFunction(pf, sourceFileName, rootClassName);
+			}
+		});
+		long t4 = System.nanoTime();
+
+		Map<String, ByteVector> classMap = new LinkedHashMap<>();
 		String mainClass = null;
-		for (ProcessedFunc pf : pfs) {
-			CompiledClass cc = compileFunction(pf, sourceFileName, rootClassName);
+		for (int i = 0; i < pfs.size(); i++) {
+			ProcessedFunc pf = pfs.get(i);
+			CompiledClass cc = ccs.get(i);
 
 			if (pf.fn.id().isRoot()) {
 				assert (mainClass == null);
@@ -236,7 +332,12 @@ public class LuaCompiler {
 			throw new IllegalStateException("Module main class not found");
 		}
 
-		return new CompiledModule(Collections.unmodifiableMap(classMap), mainClass);
+		CompilationMetrics metrics = new CompilationMetrics(
+				pfs.size(),
+				pool(pfs.size()) != null ? settings.parallelism() : 1,
+				t1 - t0, t2 - t1, t3 - t2, t4 - t3);
+
+		return new CompiledModule(Collections.unmodifiableMap(classMap), mainClass, metrics);
 	}
 
 }
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.compiler;
+
+import net.sandius.rembulan.util.ByteVector;
+import net.sandius.rembulan.util.Check;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A thread-safe chunk cache keeping compiled chunks in memory, meant to be shared
+ * by several chunk loaders.
+ *
+ * <p>The cache is bounded by the total size of the class files it holds. When storing
+ * a chunk would exceed this bound, the least recently used chunks are evicted. Chunks
+ * larger than the bound are not cached at all.</p>
+ *
+ * <p>The cache keeps track of the number of hits, misses and evictions.</p>
+ */
+public class MemoryChunkCache implements ChunkCache {
+
+	private final long maxBytes;
+
+	// in access order; guarded by this
+	private final LinkedHashMap<ChunkKey, Entry> entries;
+	private long bytes;
+
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	private static class Entry {
+
+		final CompiledModule chunk;
+		final long size;
+
+		Entry(CompiledModule chunk, long size) {
+			this.chunk = chunk;
+			this.size = size;
+		}
+
+	}
+
+	/**
+	 * Constructs a new in-memory chunk cache holding at most {@code maxBytes} bytes
+	 * of class files.
+	 *
+	 * @param maxBytes  the maximum total size of cached class files in bytes,
+	 *                  must be positive
+	 *
+	 * @throws IllegalArgumentException  if {@code maxBytes} is not positive
+	 */
+	public MemoryChunkCache(long maxBytes) {
+		this.maxBytes = Check.positive(maxBytes);
+		this.entries = new LinkedHashMap<>(16, 0.75f, true);
+		this.bytes = 0L;
+	}
+
+	private static long sizeOf(CompiledModule chunk) {
+		long size = 0L;
+		for (ByteVector bv : chunk.classMap().values()) {
+			size += bv.size();
+		}
+		return size;
+	}
+
+	@Override
+	public CompiledModule get(ChunkKey key) {
+		Objects.requireNonNull(key);
+
+		synchronized (this) {
+			Entry e = entries.get(key);
+			if (e != null) {
+				hits += 1;
+				return e.chunk;
+			}
+			else {
+				misses += 1;
+				return null;
+			}
+		}
+	}
+
+	@Override
+	public void put(ChunkKey key, CompiledModule chunk) {
+		Objects.requireNonNull(key);
+		Objects.requireNonNull(chunk);
+
+		long size = sizeOf(chunk);
+		if (size > maxBytes) {
+			return;
+		}
+
+		synchronized (this) {
+			Entry old = entries.put(key, new Entry(chunk, size));
+			if (old != null) {
+				bytes -= old.size;
+			}
+			bytes += size;
+
+			// evict the least recently used entries
+			Iterator<Map.Entry<ChunkKey, Entry>> it = entries.entrySet().iterator();
+			while (bytes > maxBytes && it.hasNext()) {
+				Map.Entry<ChunkKey, Entry> eldest = it.next();
+				bytes -= eldest.getValue().size;
+				it.remove();
+				evictions += 1;
+			}
+		}
+	}
+
+	/**
+	 * Removes all chunks from this cache. The statistics are not reset.
+	 */
+	public void clear() {
+		synchronized (this) {
+			entries.clear();
+			bytes = 0L;
+		}
+	}
+
+	/**
+	 * Returns the maximum total size of class files held by this cache.
+	 *
+	 * @return  the maximum size in bytes
+	 */
+	public long maxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * Returns the total size of class files currently held by this cache.
+	 *
+	 * @return  the size in bytes
+	 */
+	public long bytes() {
+		synchronized (this) {
+			return bytes;
+		}
+	}
+
+	/**
+	 * Returns the number of chunks currently held by this cache.
+	 *
+	 * @return  the number of chunks
+	 */
+	public int size() {
+		synchronized (this) {
+			return entries.size();
+		}
+	}
+
+	/**
+	 * Returns the number of lookups that found a chunk in this cache.
+	 *
+	 * @return  the number of hits
+	 */
+	public long hitCount() {
+		synchronized (this) {
+			return hits;
+		}
+	}
+
+	/**
+	 * Returns the number of lookups that did not find a chunk in this cache.
+	 *
+	 * @return  the number of misses
+	 */
+	public long missCount() {
+		synchronized (this) {
+			return misses;
+		}
+	}
+
+	/**
+	 * Returns the number of chunks evicted from this cache in order to make room
+	 * for other chunks.
+	 *
+	 * @return  the number of evictions
+	 */
+	public long evictionCount() {
+		synchronized (this) {
+			return evictions;
+		}
+	}
+
+	@Override
+	public String toString() {
+		synchronized (this) {
+			return "MemoryChunkCache{" +
+				"size=" + entries.size() +
+				", bytes=" + bytes +
+				", maxBytes=" + maxBytes +
+				", hits=" + hits +
+				", misses=" + misses +
+				", evictions=" + evictions +
+				'}';
+		}
+	}
+
+}
@@ -18,7 +18,7 @@ package net.sandius.rembulan.compiler.analysis;
 
 import net.sandius.rembulan.compiler.ir.*;
 
-abstract class AbstractUseDefVisitor extends IRVisitor {
+public abstract class AbstractUseDefVisitor extends IRVisitor {
 
 	protected abstract void def(Val v);
 	protected abstract void use(Val v);
@@ -73,6 +73,14 @@ abstract class AbstractUseDefVisitor extends IRVisitor {
 		def(node.dest());
 	}
 
+	@Override
+	public void visit(Concat node) {
+		for (Val v : node.args()) {
+			use(v);
+		}
+		def(node.dest());
+	}
+
 	@Override
 	public void visit(TabNew node) {
 		def(node.dest());
@@ -17,6 +17,7 @@
 package net.sandius.rembulan.compiler.analysis;
 
 import net.sandius.rembulan.compiler.analysis.types.Type;
+import net.sandius.rembulan.compiler.ir.BinOp;
 
 import static net.sandius.rembulan.compiler.analysis.types.LuaTypes.NUMBER;
 import static net.sandius.rembulan.compiler.analysis.types.LuaTypes.NUMBER_FLOAT;
@@ -30,6 +31,24 @@ public abstract class StaticMathImplementation {
 
 	public static StaticMathImplementation MUST_BE_INTEGER = new MustBeInteger();
 
+	public static StaticMathImplementation of(BinOp.Op op) {
+		switch (op) {
+			case ADD:  return MAY_BE_INTEGER;
+			case SUB:  return MAY_BE_INTEGER;
+			case MUL:  return MAY_BE_INTEGER;
+			case MOD:  return MAY_BE_INTEGER;
+			case POW:  return MUST_BE_FLOAT;
+			case DIV:  return MUST_BE_FLOAT;
+			case IDIV: return MAY_BE_INTEGER;
+			case BAND: return MUST_BE_INTEGER;
+			case BOR:  return MUST_BE_INTEGER;
+			case BXOR: return MUST_BE_INTEGER;
+			case SHL:  return MUST_BE_INTEGER;
+			case SHR:  return MUST_BE_INTEGER;
+			default:   return null;
+		}
+	}
+
 	public abstract NumericOperationType opType(Type left, Type right);
 
 	public abstract NumericOperationType opType(Type arg);
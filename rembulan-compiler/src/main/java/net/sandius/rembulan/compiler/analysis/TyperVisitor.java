@@ -28,12 +28,12 @@ import net.sandius.rembulan.util.Check;
 import java.util.ArrayDeque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
 
 import static net.sandius.rembulan.compiler.analysis.StaticMathImplementation.MAY_BE_INTEGER;
-import static net.sandius.rembulan.compiler.analysis.StaticMathImplementation.MUST_BE_FLOAT;
 import static net.sandius.rembulan.compiler.analysis.StaticMathImplementation.MUST_BE_INTEGER;
 
 class TyperVisitor extends CodeVisitor {
@@ -369,22 +369,8 @@ class TyperVisitor extends CodeVisitor {
 		assign(node.dest(), LuaTypes.STRING.newLiteralType(node.value()));
 	}
 
-	private static StaticMathImplementation staticMath(BinOp.Op op) {
-		switch (op) {
-			case ADD:  return MAY_BE_INTEGER;
-			case SUB:  return MAY_BE_INTEGER;
-			case MUL:  return MAY_BE_INTEGER;
-			case MOD:  return MAY_BE_INTEGER;
-			case POW:  return MUST_BE_FLOAT;
-			case DIV:  return MUST_BE_FLOAT;
-			case IDIV: return MAY_BE_INTEGER;
-			case BAND: return MUST_BE_INTEGER;
-			case BOR:  return MUST_BE_INTEGER;
-			case BXOR: return MUST_BE_INTEGER;
-			case SHL:  return MUST_BE_INTEGER;
-			case SHR:  return MUST_BE_INTEGER;
-			default:   return null;
-		}
+	private static boolean numeric(Type l, Type r) {
+		return l.isSubtypeOf(LuaTypes.NUMBER) && r.isSubtypeOf(LuaTypes.NUMBER);
 	}
 
 	private static boolean stringable(Type t) {
@@ -403,7 +389,7 @@ class TyperVisitor extends CodeVisitor {
 			result = emulatedResult;
 		}
 		else {
-			StaticMathImplementation math = staticMath(node.op());
+			StaticMathImplementation math = StaticMathImplementation.of(node.op());
 
 			if (math != null) {
 				NumericOperationType ot = math.opType(l, r);
@@ -427,10 +413,18 @@ class TyperVisitor extends CodeVisitor {
 
 					case EQ:
 					case NEQ:
+						result = LuaTypes.BOOLEAN;
+						if (!numeric(l, r)) {
+							mayCallMetamethod();  // TODO: may be restricted further (see §2.4 of LRM)
+						}
+						break;
+
 					case LT:
 					case LE:
 						result = LuaTypes.BOOLEAN;
-						mayCallMetamethod();  // TODO: may be restricted (see §2.4 of LRM)
+						if (!numeric(l, r) && !(l.isSubtypeOf(LuaTypes.STRING) && r.isSubtypeOf(LuaTypes.STRING))) {
+							mayCallMetamethod();
+						}
 						break;
 					default: throw new UnsupportedOperationException("Illegal binary operation: " + node.op());
 				}
@@ -458,6 +452,43 @@ class TyperVisitor extends CodeVisitor {
 				case LEN:  result = a.isSubtypeOf(LuaTypes.STRING) ? LuaTypes.NUMBER_INTEGER : LuaTypes.ANY; break;
 				default: throw new UnsupportedOperationException("Illegal unary operation: " + node.op());
 			}
+
+			if (result.equals(LuaTypes.ANY)) {
+				mayCallMetamethod();
+			}
+		}
+
+		assign(node.dest(), result);
+	}
+
+	@Override
+	public void visit(Concat node) {
+		List<Val> args = node.args();
+
+		// emulate the operation from the right for as long as the operands are literals
+		Type folded = typeOf(args.get(args.size() - 1));
+		for (int i = args.size() - 2; i >= 0 && folded != null; i--) {
+			folded = Typer.emulateOp(BinOp.Op.CONCAT, typeOf(args.get(i)), folded);
+		}
+
+		final Type result;
+
+		if (folded != null) {
+			result = folded;
+		}
+		else {
+			boolean allStringable = true;
+			for (Val v : args) {
+				allStringable &= stringable(typeOf(v));
+			}
+
+			if (allStringable) {
+				result = LuaTypes.STRING;
+			}
+			else {
+				result = LuaTypes.ANY;
+				mayCallMetamethod();
+			}
 		}
 
 		assign(node.dest(), result);
@@ -291,6 +291,10 @@ public class ASMBytecodeEmitter extends BytecodeEmitter {
 			classNode.fields.add(cfi.fieldNode());
 		}
 
+		for (RunMethod.FieldCacheInstance fci : runMethod.fieldCaches()) {
+			classNode.fields.add(fci.fieldNode());
+		}
+
 		ConstructorMethod ctor = new ConstructorMethod(this, runMethod);
 
 		classNode.methods.add(ctor.methodNode());
@@ -20,20 +20,28 @@ import net.sandius.rembulan.Table;
 import net.sandius.rembulan.Variable;
 import net.sandius.rembulan.compiler.CompilerSettings;
 import net.sandius.rembulan.compiler.FunctionId;
+import net.sandius.rembulan.compiler.analysis.NumericOperationType;
 import net.sandius.rembulan.compiler.analysis.SlotAllocInfo;
+import net.sandius.rembulan.compiler.analysis.StaticMathImplementation;
 import net.sandius.rembulan.compiler.analysis.TypeInfo;
+import net.sandius.rembulan.compiler.analysis.types.LiteralType;
+import net.sandius.rembulan.compiler.analysis.types.LuaTypes;
 import net.sandius.rembulan.compiler.gen.ClassNameTranslator;
 import net.sandius.rembulan.compiler.gen.asm.helpers.ASMUtils;
 import net.sandius.rembulan.compiler.gen.asm.helpers.BoxedPrimitivesMethods;
 import net.sandius.rembulan.compiler.gen.asm.helpers.ConversionMethods;
 import net.sandius.rembulan.compiler.gen.asm.helpers.DispatchMethods;
 import net.sandius.rembulan.compiler.gen.asm.helpers.ExecutionContextMethods;
+import net.sandius.rembulan.compiler.gen.asm.helpers.FieldCacheMethods;
+import net.sandius.rembulan.compiler.gen.asm.helpers.OperatorMethods;
 import net.sandius.rembulan.compiler.gen.asm.helpers.ReturnBufferMethods;
 import net.sandius.rembulan.compiler.gen.asm.helpers.TableMethods;
+import net.sandius.rembulan.compiler.gen.asm.helpers.UtilMethods;
 import net.sandius.rembulan.compiler.gen.asm.helpers.VariableMethods;
 import net.sandius.rembulan.compiler.ir.*;
 import net.sandius.rembulan.runtime.ExecutionContext;
 import net.sandius.rembulan.runtime.ReturnBuffer;
+import net.sandius.rembulan.runtime.UnresolvedControlThrowable;
 import net.sandius.rembulan.util.Check;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
@@ -45,6 +53,8 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 import static net.sandius.rembulan.compiler.gen.asm.helpers.DispatchMethods.*;
 import static org.objectweb.asm.Opcodes.*;
@@ -56,12 +66,24 @@ class BytecodeEmitVisitor extends CodeVisitor {
 
 	private final SlotAllocInfo slots;
 	private final TypeInfo types;
+	private final UnboxedLocals unboxed;
 
 	private final int segmentIdx;
 	private final RunMethod.LabelResolver resolver;
 
 	final Map<Object, LabelNode> labels;
 	private final ArrayList<LabelNode> resumptionPoints;
+	private final Map<List<Integer>, LabelNode> suspensionStubLabels;
+	private final SortedMap<Integer, LabelNode> suspensionStates;
+	private final InsnList suspensionStubs;
+	private final LabelNode suspensionStubsEnd;
+	private final InsnList resumptionStubs;
+
+	private final LabelNode entryLabel;
+	private boolean selfTailCalls;
+
+	private BasicBlock currentBlock;
+	private boolean entryChecked;
 
 	private final InsnList il;
 	private final List<LocalVariableNode> locals;
@@ -69,14 +91,17 @@ class BytecodeEmitVisitor extends CodeVisitor {
 	private final List<RunMethod.ClosureFieldInstance> instanceLevelClosures;
 
 	private final List<RunMethod.ConstFieldInstance> constFields;
+	private final List<RunMethod.FieldCacheInstance> fieldCaches;
 
 	public BytecodeEmitVisitor(
 			ASMBytecodeEmitter context,
 			RunMethod runMethod,
 			SlotAllocInfo slots,
 			TypeInfo types,
+			UnboxedLocals unboxed,
 			List<RunMethod.ClosureFieldInstance> instanceLevelClosures,
 			List<RunMethod.ConstFieldInstance> constFields,
+			List<RunMethod.FieldCacheInstance> fieldCaches,
 			int segmentIdx,
 			RunMethod.LabelResolver resolver) {
 
@@ -84,18 +109,31 @@ class BytecodeEmitVisitor extends CodeVisitor {
 		this.runMethod = Check.notNull(runMethod);
 		this.slots = Check.notNull(slots);
 		this.types = Check.notNull(types);
+		this.unboxed = Check.notNull(unboxed);
 
 		this.segmentIdx = segmentIdx;
 		this.resolver = Check.notNull(resolver);
 
 		this.labels = new HashMap<>();
 		this.resumptionPoints = new ArrayList<>();
+		this.suspensionStubLabels = new HashMap<>();
+		this.suspensionStates = new TreeMap<>();
+		this.suspensionStubs = new InsnList();
+		this.suspensionStubsEnd = new LabelNode();
+		this.resumptionStubs = new InsnList();
+
+		this.entryLabel = new LabelNode();
+		this.selfTailCalls = false;
+
+		this.currentBlock = null;
+		this.entryChecked = false;
 
 		this.il = new InsnList();
 		this.locals = new ArrayList<>();
 
 		this.instanceLevelClosures = Check.notNull(instanceLevelClosures);
 		this.constFields = Check.notNull(constFields);
+		this.fieldCaches = Check.notNull(fieldCaches);
 	}
 
 	private boolean isSub() {
@@ -106,10 +144,25 @@ class BytecodeEmitVisitor extends CodeVisitor {
 		return il;
 	}
 
+	// the out-of-line resumption code of operations returning their result directly
+	public InsnList resumptionStubs() {
+		return resumptionStubs;
+	}
+
 	public List<LocalVariableNode> locals() {
 		return locals;
 	}
 
+	// the label at the beginning of the function body, following the resumption dispatch
+	public LabelNode entryLabel() {
+		return entryLabel;
+	}
+
+	// true iff the emitted code contains self-recursive tail calls jumping to entryLabel
+	public boolean hasSelfTailCalls() {
+		return selfTailCalls;
+	}
+
 	public List<RunMethod.ClosureFieldInstance> instanceLevelClosures() {
 		return instanceLevelClosures;
 	}
@@ -127,7 +180,143 @@ class BytecodeEmitVisitor extends CodeVisitor {
 	}
 
 	protected int nextLocalVariableIndex() {
-		return runMethod.slotOffset() + slots.numSlots();
+		return runMethod.slotOffset() + slots.numSlots() + unboxed.size() + runMethod.numOfExtraLocals();
+	}
+
+	private static InsnList box(Type primitiveType) {
+		InsnList il = new InsnList();
+		if (primitiveType.equals(Type.LONG_TYPE)) {
+			il.add(BoxedPrimitivesMethods.boxInteger());
+		}
+		else {
+			il.add(BoxedPrimitivesMethods.box(Type.DOUBLE_TYPE, Type.getType(Double.class)));
+		}
+		return il;
+	}
+
+	private static InsnList unbox(Type primitiveType) {
+		InsnList il = new InsnList();
+		il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Number.class)));
+		if (primitiveType.equals(Type.LONG_TYPE)) {
+			il.add(BoxedPrimitivesMethods.longValue(Number.class));
+		}
+		else {
+			il.add(BoxedPrimitivesMethods.doubleValue(Number.class));
+		}
+		return il;
+	}
+
+	// converts the value on the stack top from the primitive type from to the
+	// primitive type to; null stands for a boxed value
+	private static InsnList convert(Type from, Type to) {
+		InsnList il = new InsnList();
+		if (from == null && to != null) {
+			il.add(unbox(to));
+		}
+		else if (from != null && to == null) {
+			il.add(box(from));
+		}
+		else if (from != null && !from.equals(to)) {
+			if (from.equals(Type.LONG_TYPE)) {
+				il.add(new InsnNode(L2D));
+			}
+			else {
+				il.add(box(from));
+				il.add(unbox(to));
+			}
+		}
+		return il;
+	}
+
+	private InsnList load(int slot, UnboxedLocals.Local u, Type as) {
+		InsnList il = new InsnList();
+		if (u != null) {
+			il.add(new VarInsnNode(u.type().getOpcode(ILOAD), u.index()));
+			il.add(convert(u.type(), as));
+		}
+		else {
+			il.add(new VarInsnNode(ALOAD, slot));
+			il.add(convert(null, as));
+		}
+		return il;
+	}
+
+	private InsnList store(int slot, UnboxedLocals.Local u, Type from) {
+		InsnList il = new InsnList();
+		if (u != null) {
+			il.add(convert(from, u.type()));
+			il.add(new VarInsnNode(u.type().getOpcode(ISTORE), u.index()));
+		}
+		else {
+			il.add(convert(from, null));
+			il.add(new VarInsnNode(ASTORE, slot));
+		}
+		return il;
+	}
+
+	// pushes the value of v on the stack, as a primitive of type as, or boxed if as is null
+	private InsnList load(AbstractVal v, Type as) {
+		if (as != null && types.typeOf(v) instanceof LiteralType) {
+			Object value = ((LiteralType<?>) types.typeOf(v)).value();
+			if (value instanceof Long || value instanceof Double) {
+				InsnList il = new InsnList();
+				if (value instanceof Long) {
+					il.add(ASMUtils.loadLong((Long) value));
+					il.add(convert(Type.LONG_TYPE, as));
+				}
+				else {
+					il.add(ASMUtils.loadDouble((Double) value));
+					il.add(convert(Type.DOUBLE_TYPE, as));
+				}
+				return il;
+			}
+		}
+
+		UnboxedLocals.Local u = unboxed.local(v);
+		return load(u == null ? slot(v) : -1, u, as);
+	}
+
+	private InsnList load(AbstractVal v) {
+		return load(v, null);
+	}
+
+	private InsnList load(Var v, Type as) {
+		UnboxedLocals.Local u = unboxed.local(v);
+		return load(u == null ? slot(v) : -1, u, as);
+	}
+
+	private InsnList load(Var v) {
+		return load(v, null);
+	}
+
+	// stores the value on the stack top (a primitive of type from, or boxed if from is null) to v
+	private InsnList store(AbstractVal v, Type from) {
+		UnboxedLocals.Local u = unboxed.local(v);
+		return store(u == null ? slot(v) : -1, u, from);
+	}
+
+	private InsnList store(AbstractVal v) {
+		return store(v, null);
+	}
+
+	private InsnList store(Var v, Type from) {
+		UnboxedLocals.Local u = unboxed.local(v);
+		return store(u == null ? slot(v) : -1, u, from);
+	}
+
+	private InsnList store(Var v) {
+		return store(v, null);
+	}
+
+	// the primitive type of v, or null if v is boxed
+	private Type unboxedTypeOf(AbstractVal v) {
+		UnboxedLocals.Local u = unboxed.local(v);
+		return u != null ? u.type() : null;
+	}
+
+	private Type unboxedTypeOf(Var v) {
+		UnboxedLocals.Local u = unboxed.local(v);
+		return u != null ? u.type() : null;
 	}
 
 	private LabelNode l(Object o) {
@@ -174,6 +363,25 @@ class BytecodeEmitVisitor extends CodeVisitor {
 		return cfi.accessInsns();
 	}
 
+	// returns the constant key of a table access if it can be cached, null otherwise
+	private String cacheableFieldKey(Val key) {
+		if (context.compilerSettings.fieldCaching() && types.typeOf(key) instanceof LiteralType) {
+			Object k = ((LiteralType<?>) types.typeOf(key)).value();
+			if (k instanceof String && !((String) k).startsWith("__")) {
+				return (String) k;
+			}
+		}
+		return null;
+	}
+
+	private InsnList loadNewFieldCache(String key) {
+		// one cache per access site
+		RunMethod.FieldCacheInstance fci = new RunMethod.FieldCacheInstance(
+				key, "_fc_" + fieldCaches.size(), context.thisClassType());
+		fieldCaches.add(fci);
+		return fci.accessInsns();
+	}
+
 	public AbstractInsnNode loadExecutionContext() {
 		return new VarInsnNode(ALOAD, runMethod.LV_CONTEXT);
 	}
@@ -226,23 +434,43 @@ class BytecodeEmitVisitor extends CodeVisitor {
 		}
 	}
 
+	@Override
+	public void visit(BasicBlock block) {
+		currentBlock = block;
+		try {
+			super.visit(block);
+		}
+		finally {
+			currentBlock = null;
+		}
+	}
+
 	class ResumptionPoint {
 
 		public final int index;
 
-		private ResumptionPoint(int index) {
+		// unboxed values and variables that must be saved when suspending at this point
+		private final List<AbstractVal> liveVals;
+		private final List<Var> liveVars;
+
+		private ResumptionPoint(int index, List<AbstractVal> liveVals, List<Var> liveVars) {
 			this.index = index;
+			this.liveVals = Check.notNull(liveVals);
+			this.liveVars = Check.notNull(liveVars);
 		}
 
 		public LabelNode label() {
 			return l(this);
 		}
 
-		public InsnList save() {
-			int st = !isSub()
+		private int state() {
+			return !isSub()
 					? index + 1
 					: segmentIdx << RunMethod.ST_SHIFT_SEGMENT | (index + 1);
-			return saveState(st);
+		}
+
+		public InsnList save() {
+			return saveState(state());
 		}
 
 		public InsnList resume() {
@@ -251,13 +479,71 @@ class BytecodeEmitVisitor extends CodeVisitor {
 			il.add(label());
 			il.add(ASMUtils.frameSame());
 
+			if (!liveVals.isEmpty() || !liveVars.isEmpty()) {
+				addSuspensionStub();
+			}
+
 			return il;
 		}
+
+		// for operations that return their result (an Object) on the stack rather than
+		// in the return buffer: the code for resuming at this point is emitted out of line,
+		// and retrieves the result from the return buffer before rejoining the main code
+		// at the returned instructions (with the result on the stack)
+		public InsnList resumeValue() {
+			LabelNode l_after = new LabelNode();
+
+			resumptionStubs.add(resume());
+			resumptionStubs.add(retrieve_0());
+			resumptionStubs.add(new JumpInsnNode(GOTO, l_after));
+
+			InsnList il = new InsnList();
+			il.add(l_after);
+			il.add(ASMUtils.frameSame1(Object.class));
+			return il;
+		}
+
+		// the unboxed state is only saved to the registers when actually suspending
+		// (rather than on every pass through this resumption point); resumption points
+		// with the same live unboxed state share the code saving it
+		private void addSuspensionStub() {
+			List<Integer> key = new ArrayList<>();
+			for (AbstractVal v : liveVals) {
+				key.add(slot(v));
+				key.add(unboxed.local(v).index());
+			}
+			for (Var v : liveVars) {
+				key.add(slot(v));
+				key.add(unboxed.local(v).index());
+			}
+
+			LabelNode l_stub = suspensionStubLabels.get(key);
+			if (l_stub == null) {
+				l_stub = new LabelNode();
+				suspensionStubLabels.put(key, l_stub);
+
+				InsnList il = suspensionStubs;
+				il.add(l_stub);
+				il.add(ASMUtils.frameSame1(UnresolvedControlThrowable.class));
+				for (AbstractVal v : liveVals) {
+					il.add(load(v));
+					il.add(new VarInsnNode(ASTORE, slot(v)));
+				}
+				for (Var v : liveVars) {
+					il.add(load(v));
+					il.add(new VarInsnNode(ASTORE, slot(v)));
+				}
+				il.add(new JumpInsnNode(GOTO, suspensionStubsEnd));
+			}
+
+			suspensionStates.put(state(), l_stub);
+		}
+
 	}
 
-	protected ResumptionPoint newResumptionPoint() {
+	protected ResumptionPoint newResumptionPoint(IRNode node) {
 		int idx = resumptionPoints.size();
-		ResumptionPoint rp = new ResumptionPoint(idx);
+		ResumptionPoint rp = new ResumptionPoint(idx, unboxed.liveValsAcross(node), unboxed.liveVarsAcross(node));
 		resumptionPoints.add(rp.label());
 		return rp;
 	}
@@ -270,6 +556,43 @@ class BytecodeEmitVisitor extends CodeVisitor {
 		return resumptionPoints;
 	}
 
+	// saves the unboxed state live at the resumption point being suspended at to the registers;
+	// to be used in the resumption handler (with the control throwable on the stack)
+	public InsnList saveUnboxedState() {
+		InsnList il = new InsnList();
+
+		if (suspensionStates.isEmpty()) {
+			return il;
+		}
+
+		int[] keys = new int[suspensionStates.size()];
+		LabelNode[] labels = new LabelNode[suspensionStates.size()];
+		int i = 0;
+		for (Map.Entry<Integer, LabelNode> e : suspensionStates.entrySet()) {
+			keys[i] = e.getKey();
+			labels[i] = e.getValue();
+			i++;
+		}
+
+		il.add(new VarInsnNode(ILOAD, runMethod.LV_RESUME));
+		il.add(new LookupSwitchInsnNode(suspensionStubsEnd, keys, labels));
+		il.add(suspensionStubs);
+		il.add(suspensionStubsEnd);
+		il.add(ASMUtils.frameSame1(UnresolvedControlThrowable.class));
+
+		return il;
+	}
+
+	// initialises all unboxed locals, so that they are definitely assigned in all frames
+	public InsnList initUnboxedLocals() {
+		InsnList il = new InsnList();
+		for (UnboxedLocals.Local u : unboxed.locals()) {
+			il.add(new InsnNode(u.type().equals(Type.LONG_TYPE) ? LCONST_0 : DCONST_0));
+			il.add(new VarInsnNode(u.type().getOpcode(ISTORE), u.index()));
+		}
+		return il;
+	}
+
 	private InsnList _return() {
 		InsnList il = new InsnList();
 		if (!isSub()) {
@@ -284,6 +607,7 @@ class BytecodeEmitVisitor extends CodeVisitor {
 
 	private InsnList _nonLocalGoto(Label label) {
 		InsnList il = new InsnList();
+		il.add(registerTicks());
 		int st = resolver.labelStateIndex(label);
 		il.add(saveState(st));
 		il.add(runMethod.createSnapshot());
@@ -315,14 +639,16 @@ class BytecodeEmitVisitor extends CodeVisitor {
 
 	@Override
 	public void visit(PhiStore node) {
-		il.add(new VarInsnNode(ALOAD, slot(node.src())));
-		il.add(new VarInsnNode(ASTORE, slot(node.dest())));
+		Type t = unboxedTypeOf(node.dest());
+		il.add(load(node.src(), t));
+		il.add(store(node.dest(), t));
 	}
 
 	@Override
 	public void visit(PhiLoad node) {
-		il.add(new VarInsnNode(ALOAD, slot(node.src())));
-		il.add(new VarInsnNode(ASTORE, slot(node.dest())));
+		Type t = unboxedTypeOf(node.dest());
+		il.add(load(node.src(), t));
+		il.add(store(node.dest(), t));
 	}
 
 	@Override
@@ -330,67 +656,71 @@ class BytecodeEmitVisitor extends CodeVisitor {
 		if (types.isReified(node.var())) {
 			il.add(new TypeInsnNode(NEW, Type.getInternalName(Variable.class)));
 			il.add(new InsnNode(DUP));
-			il.add(new VarInsnNode(ALOAD, slot(node.src())));
+			il.add(load(node.src()));
 			il.add(VariableMethods.constructor());
-			il.add(new VarInsnNode(ASTORE, slot(node.var())));
+			il.add(store(node.var()));
 		}
 		else {
-			il.add(new VarInsnNode(ALOAD, slot(node.src())));
-			il.add(new VarInsnNode(ASTORE, slot(node.var())));
+			Type t = unboxedTypeOf(node.var());
+			il.add(load(node.src(), t));
+			il.add(store(node.var(), t));
 		}
 	}
 
 	@Override
 	public void visit(VarStore node) {
 		if (types.isReified(node.var())) {
-			il.add(new VarInsnNode(ALOAD, slot(node.var())));
+			il.add(load(node.var()));
 			il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Variable.class)));
-			il.add(new VarInsnNode(ALOAD, slot(node.src())));
+			il.add(load(node.src()));
 			il.add(VariableMethods.set());
 		}
 		else {
-			il.add(new VarInsnNode(ALOAD, slot(node.src())));
-			il.add(new VarInsnNode(ASTORE, slot(node.var())));
+			Type t = unboxedTypeOf(node.var());
+			il.add(load(node.src(), t));
+			il.add(store(node.var(), t));
 		}
 	}
 
 	@Override
 	public void visit(VarLoad node) {
 		if (types.isReified(node.var())) {
-			il.add(new VarInsnNode(ALOAD, slot(node.var())));
+			il.add(load(node.var()));
 			il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Variable.class)));
 			il.add(VariableMethods.get());
+			il.add(store(node.dest()));
 		}
 		else {
-			il.add(new VarInsnNode(ALOAD, slot(node.var())));
+			Type t = unboxedTypeOf(node.dest());
+			il.add(load(node.var(), t));
+			il.add(store(node.dest(), t));
 		}
-		il.add(new VarInsnNode(ASTORE, slot(node.dest())));
 	}
 
 	@Override
 	public void visit(UpLoad node) {
 		il.add(loadUpvalueRef(node.upval()));
 		il.add(VariableMethods.get());
-		il.add(new VarInsnNode(ASTORE, slot(node.dest())));
+		il.add(store(node.dest()));
 	}
 
 	@Override
 	public void visit(UpStore node) {
 		il.add(loadUpvalueRef(node.upval()));
-		il.add(new VarInsnNode(ALOAD, slot(node.src())));
+		il.add(load(node.src()));
 		il.add(VariableMethods.set());
 	}
 
 	@Override
 	public void visit(LoadConst.Nil node) {
 		il.add(new InsnNode(ACONST_NULL));
-		il.add(new VarInsnNode(ASTORE, slot(node.dest())));
+		il.add(store(node.dest()));
 	}
 
 	@Override
 	public void visit(LoadConst.Bool node) {
 		il.add(BoxedPrimitivesMethods.loadBoxedBoolean(node.value()));
-		il.add(new VarInsnNode(ASTORE, slot(node.dest())));
+		il.add(store(node.dest()));
 	}
 
 	@Override
@@ -402,7 +732,7 @@ class BytecodeEmitVisitor extends CodeVisitor {
 			il.add(ASMUtils.loadLong(node.value()));
 			il.add(BoxedPrimitivesMethods.box(Type.LONG_TYPE, Type.getType(Long.class)));
 		}
-		il.add(new VarInsnNode(ASTORE, slot(node.dest())));
+		il.add(store(node.dest()));
 	}
 
 	@Override
@@ -414,13 +744,13 @@ class BytecodeEmitVisitor extends CodeVisitor {
 			il.add(ASMUtils.loadDouble(node.value()));
 			il.add(BoxedPrimitivesMethods.box(Type.DOUBLE_TYPE, Type.getType(Double.class)));
 		}
-		il.add(new VarInsnNode(ASTORE, slot(node.dest())));
+		il.add(store(node.dest()));
 	}
 
 	@Override
 	public void visit(LoadConst.Str node) {
 		il.add(new LdcInsnNode(node.value()));
-		il.add(new VarInsnNode(ASTORE, slot(node.dest())));
+		il.add(store(node.dest()));
 	}
 
 	private static String dispatchMethodName(BinOp.Op op) {
@@ -458,96 +788,461 @@ class BytecodeEmitVisitor extends CodeVisitor {
 		}
 	}
 
+	private boolean isInteger(Val v) {
+		return types.typeOf(v).isSubtypeOf(LuaTypes.NUMBER_INTEGER);
+	}
+
+	private boolean isNumber(Val v) {
+		return types.typeOf(v).isSubtypeOf(LuaTypes.NUMBER);
+	}
+
+	private boolean isString(Val v) {
+		return types.typeOf(v).isSubtypeOf(LuaTypes.STRING);
+	}
+
+	// returns true if v is known not to be a table or a userdata: equality comparisons
+	// with such a value never involve the __eq metamethod
+	private boolean isRawComparable(Val v) {
+		return isNumber(v)
+				|| isString(v)
+				|| types.typeOf(v).isSubtypeOf(LuaTypes.NIL)
+				|| types.typeOf(v).isSubtypeOf(LuaTypes.BOOLEAN)
+				|| types.typeOf(v).isSubtypeOf(LuaTypes.FUNCTION);
+	}
+
+	// returns the primitive type of v if it is known to be an integer or a float, null otherwise
+	private Type exactNumericTypeOf(Val v) {
+		if (isInteger(v)) {
+			return Type.LONG_TYPE;
+		}
+		else if (types.typeOf(v).isSubtypeOf(LuaTypes.NUMBER_FLOAT)) {
+			return Type.DOUBLE_TYPE;
+		}
+		else {
+			return null;
+		}
+	}
+
+	// returns the primitive type of the control variable of the numeric for loop
+	// with the end condition cond if the loop can be evaluated on primitives, null otherwise
+	private Type loopVarTypeOf(Branch.Condition.NumLoopEnd cond) {
+		Type vt = exactNumericTypeOf(cond.var());
+		Type st = exactNumericTypeOf(cond.step());
+		if (vt == null || st == null) {
+			return null;
+		}
+		else {
+			// the step is an integer if the control variable is
+			return vt.equals(Type.DOUBLE_TYPE) || st.equals(Type.LONG_TYPE) ? vt : null;
+		}
+	}
+
+	// returns the type of the arithmetic or bitwise operation op on the given operands
+	// if it can be evaluated without dispatch, or null if it cannot
+	private NumericOperationType staticOpType(BinOp.Op op, Val left, Val right) {
+		StaticMathImplementation math = StaticMathImplementation.of(op);
+		if (math == null) {
+			return null;
+		}
+
+		if (math == StaticMathImplementation.MUST_BE_INTEGER && !(isInteger(left) && isInteger(right))) {
+			// conversion of floats to integers may fail
+			return null;
+		}
+
+		NumericOperationType ot = math.opType(types.typeOf(left), types.typeOf(right));
+		return ot != NumericOperationType.Any ? ot : null;
+	}
+
+	// primitive type of the operands and result of a numeric operation of type ot,
+	// or null if they are boxed
+	private static Type primitiveTypeOf(NumericOperationType ot) {
+		switch (ot) {
+			case Integer: return Type.LONG_TYPE;
+			case Float:   return Type.DOUBLE_TYPE;
+			default:      return null;
+		}
+	}
+
+	private void loadNumericOperand(Val v, NumericOperationType ot) {
+		il.add(load(v, primitiveTypeOf(ot)));
+		if (ot == NumericOperationType.Number) {
+			il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Number.class)));
+		}
+	}
+
+	// evaluates node without dispatch and stores the result in its destination;
+	// returns false (and emits nothing) if the operand types do not allow it
+	private boolean staticBinOp(BinOp node) {
+		String methodName = dispatchMethodName(node.op());
+
+		NumericOperationType ot = staticOpType(node.op(), node.left(), node.right());
+		if (ot != null) {
+			loadNumericOperand(node.left(), ot);
+			loadNumericOperand(node.right(), ot);
+			if (ot == NumericOperationType.Number) {
+				il.add(DispatchMethods.numeric(methodName, 2));
+			}
+			else {
+				il.add(OperatorMethods.rawBinaryOperator(methodName, primitiveTypeOf(ot), primitiveTypeOf(ot)));
+			}
+			il.add(store(node.dest(), primitiveTypeOf(ot)));
+			return true;
+		}
+
+		final Class<?> argClass;
+		switch (node.op()) {
+			case EQ:
+			case NEQ:
+				if (isNumber(node.left()) && isNumber(node.right())) argClass = Number.class;
+				else if (isRawComparable(node.left()) || isRawComparable(node.right())) argClass = null;
+				else return false;
+				break;
+
+			case LT:
+			case LE:
+				if (isNumber(node.left()) && isNumber(node.right())) argClass = Number.class;
+				else if (isString(node.left()) && isString(node.right())) argClass = String.class;
+				else return false;
+				break;
+
+			default:
+				return false;
+		}
+
+		String cmpName = node.op() == BinOp.Op.NEQ ? OP_EQ : methodName;
+
+		Type lt = exactNumericTypeOf(node.left());
+		Type rt = exactNumericTypeOf(node.right());
+
+		if (lt != null && rt != null) {
+			// both operands have known primitive types
+			il.add(load(node.left(), lt));
+			il.add(load(node.right(), rt));
+			il.add(OperatorMethods.rawComparison(cmpName, lt, rt));
+		}
+		else if (argClass == null) {
+			// no __eq metamethod can be involved
+			il.add(load(node.left()));
+			il.add(load(node.right()));
+			il.add(OperatorMethods.rawEqual());
+		}
+		else {
+			il.add(load(node.left()));
+			il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(argClass)));
+			il.add(load(node.right()));
+			il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(argClass)));
+			il.add(DispatchMethods.comparison(cmpName, argClass));
+		}
+
+		if (node.op() == BinOp.Op.NEQ) {
+			il.add(new InsnNode(ICONST_1));
+			il.add(new InsnNode(IXOR));
+		}
+
+		il.add(BoxedPrimitivesMethods.box(Type.BOOLEAN_TYPE, Type.getType(Boolean.class)));
+		il.add(store(node.dest()));
+		return true;
+	}
+
 	@Override
 	public void visit(BinOp node) {
-		ResumptionPoint rp = newResumptionPoint();
+		if (staticBinOp(node)) {
+			return;
+		}
+
+		ResumptionPoint rp = newResumptionPoint(node);
 		il.add(rp.save());
 
 		il.add(loadExecutionContext());
-		il.add(new VarInsnNode(ALOAD, slot(node.left())));
-		il.add(new VarInsnNode(ALOAD, slot(node.right())));
-		il.add(DispatchMethods.dynamic(dispatchMethodName(node.op()), 2));
+		il.add(load(node.left()));
+		il.add(load(node.right()));
+		il.add(DispatchMethods.dynamicValue(dispatchMethodName(node.op()), 2));
+
+		il.add(rp.resumeValue());
+		il.add(store(node.dest()));
+	}
+
+	// concatenates the arguments of node if they are all known to be strings or numbers
+	// (and therefore no __concat metamethod can be involved), and stores the result
+	// in its destination; returns false (and emits nothing) otherwise
+	private boolean staticConcat(Concat node) {
+		for (Val v : node.args()) {
+			if (!isString(v) && !isNumber(v)) {
+				return false;
+			}
+		}
+
+		il.add(new TypeInsnNode(NEW, Type.getInternalName(StringBuilder.class)));
+		il.add(new InsnNode(DUP));
+		il.add(ASMUtils.ctor(StringBuilder.class));
+		for (Val v : node.args()) {
+			Type t = exactNumericTypeOf(v);
+			if (t != null) {
+				il.add(load(v, t));
+				il.add(ConversionMethods.unboxedNumberToLuaFormatString(t));
+			}
+			else if (isNumber(v)) {
+				il.add(load(v));
+				il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Number.class)));
+				il.add(ConversionMethods.boxedNumberToLuaFormatString());
+			}
+			else {
+				il.add(load(v));
+				il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(String.class)));
+			}
+			il.add(UtilMethods.StringBuilder_append(Type.getType(String.class)));
+		}
+		il.add(UtilMethods.StringBuilder_toString());
+		il.add(store(node.dest()));
+		return true;
+	}
+
+	@Override
+	public void visit(Concat node) {
+		if (staticConcat(node)) {
+			return;
+		}
+
+		ResumptionPoint rp = newResumptionPoint(node);
+		il.add(rp.save());
+
+		il.add(loadExecutionContext());
+
+		// pack the arguments in an array
+		il.add(ASMUtils.loadInt(node.args().size()));
+		il.add(new TypeInsnNode(ANEWARRAY, Type.getInternalName(Object.class)));
+		int idx = 0;
+		for (Val v : node.args()) {
+			il.add(new InsnNode(DUP));
+			il.add(ASMUtils.loadInt(idx++));
+			il.add(load(v));
+			il.add(new InsnNode(AASTORE));
+		}
+
+		il.add(DispatchMethods.concat_array());
 
 		il.add(rp.resume());
 		il.add(retrieve_0());
-		il.add(new VarInsnNode(ASTORE, slot(node.dest())));
+		il.add(store(node.dest()));
+	}
+
+	// evaluates node without dispatch and stores the result in its destination;
+	// returns false (and emits nothing) if the operand type does not allow it
+	private boolean staticUnOp(UnOp node) {
+		switch (node.op()) {
+			case UNM: {
+				NumericOperationType ot = StaticMathImplementation.MAY_BE_INTEGER.opType(types.typeOf(node.arg()));
+				if (ot == NumericOperationType.Any) {
+					return false;
+				}
+
+				loadNumericOperand(node.arg(), ot);
+				if (ot == NumericOperationType.Number) {
+					il.add(DispatchMethods.numeric(OP_UNM, 1));
+				}
+				else {
+					il.add(OperatorMethods.rawUnaryOperator(OP_UNM, primitiveTypeOf(ot), primitiveTypeOf(ot)));
+				}
+				il.add(store(node.dest(), primitiveTypeOf(ot)));
+				return true;
+			}
+
+			case BNOT:
+				if (!isInteger(node.arg())) {
+					return false;
+				}
+
+				loadNumericOperand(node.arg(), NumericOperationType.Integer);
+				il.add(OperatorMethods.rawUnaryOperator(OP_BNOT, Type.LONG_TYPE, Type.LONG_TYPE));
+				il.add(store(node.dest(), Type.LONG_TYPE));
+				return true;
+
+			case LEN:
+				if (!isString(node.arg())) {
+					return false;
+				}
+
+				il.add(load(node.arg()));
+				il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(String.class)));
+				il.add(DispatchMethods.len_string());
+				il.add(store(node.dest(), Type.LONG_TYPE));
+				return true;
+
+			default:
+				return false;
+		}
 	}
 
 	@Override
 	public void visit(UnOp node) {
 		if (node.op() == UnOp.Op.NOT) {
-			il.add(new VarInsnNode(ALOAD, slot(node.arg())));
+			il.add(load(node.arg()));
 			il.add(ConversionMethods.booleanValueOf());
 			il.add(new InsnNode(ICONST_1));
 			il.add(new InsnNode(IXOR));
 			il.add(BoxedPrimitivesMethods.box(Type.BOOLEAN_TYPE, Type.getType(Boolean.class)));
+			il.add(store(node.dest()));
 		}
-		else {
-			ResumptionPoint rp = newResumptionPoint();
+		else if (!staticUnOp(node)) {
+			PlainTableGuard guard = node.op() == UnOp.Op.LEN ? new PlainTableGuard(node.arg()) : null;
+
+			ResumptionPoint rp = newResumptionPoint(node);
 			il.add(rp.save());
 
 			il.add(loadExecutionContext());
-			il.add(new VarInsnNode(ALOAD, slot(node.arg())));
-			il.add(DispatchMethods.dynamic(dispatchMethodName(node.op()), 1));
+			il.add(load(node.arg()));
+			il.add(DispatchMethods.dynamicValue(dispatchMethodName(node.op()), 1));
+
+			il.add(rp.resumeValue());
+			il.add(store(node.dest()));
+
+			if (guard != null) {
+				guard.fastPath();
+				il.add(TableMethods.rawlen());
+				il.add(store(node.dest(), Type.LONG_TYPE));
+				guard.end();
+			}
+		}
+	}
+
+	// a guard for operations on tables that may be evaluated using raw accesses
+	// (and without a resumption point) if the table has no metatable. The guard
+	// is emitted at construction, followed by the (single) slow path; the fast path
+	// follows the call to fastPath(), with the table on the stack.
+	private class PlainTableGuard {
 
-			il.add(rp.resume());
-			il.add(retrieve_0());
+		private final Val obj;
+		private final LabelNode l_fast;
+		private final LabelNode l_end;
+
+		PlainTableGuard(Val obj) {
+			this.obj = Check.notNull(obj);
+			this.l_fast = new LabelNode();
+			this.l_end = new LabelNode();
+
+			il.add(load(obj));
+			il.add(DispatchMethods.isPlainTable());
+			il.add(new JumpInsnNode(IFNE, l_fast));
+		}
+
+		void fastPath() {
+			il.add(new JumpInsnNode(GOTO, l_end));
+			il.add(l_fast);
+			il.add(ASMUtils.frameSame());
+			il.add(load(obj));
+			il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Table.class)));
+		}
+
+		void end() {
+			il.add(l_end);
+			il.add(ASMUtils.frameSame());
 		}
 
-		il.add(new VarInsnNode(ASTORE, slot(node.dest())));
 	}
 
 	@Override
 	public void visit(TabNew node) {
 		il.add(loadExecutionContext());
 		il.add(ExecutionContextMethods.newTable(node.array(), node.hash()));
-		il.add(new VarInsnNode(ASTORE, slot(node.dest())));
+		il.add(store(node.dest()));
 	}
 
 	@Override
 	public void visit(TabGet node) {
-		ResumptionPoint rp = newResumptionPoint();
+		String cacheKey = cacheableFieldKey(node.key());
+		PlainTableGuard guard = cacheKey == null ? new PlainTableGuard(node.obj()) : null;
+
+		ResumptionPoint rp = newResumptionPoint(node);
 		il.add(rp.save());
 
-		il.add(loadExecutionContext());
-		il.add(new VarInsnNode(ALOAD, slot(node.obj())));
-		il.add(new VarInsnNode(ALOAD, slot(node.key())));
-		il.add(DispatchMethods.index());
+		if (cacheKey != null) {
+			il.add(loadNewFieldCache(cacheKey));
+			il.add(loadExecutionContext());
+			il.add(load(node.obj()));
+			il.add(FieldCacheMethods.indexValue());
+		}
+		else {
+			il.add(loadExecutionContext());
+			il.add(load(node.obj()));
+			il.add(load(node.key()));
+			il.add(DispatchMethods.indexValue());
+		}
 
-		il.add(rp.resume());
-		il.add(retrieve_0());
-		il.add(new VarInsnNode(ASTORE, slot(node.dest())));
+		il.add(rp.resumeValue());
+		il.add(store(node.dest()));
+
+		if (guard != null) {
+			guard.fastPath();
+			if (isInteger(node.key())) {
+				il.add(load(node.key(), Type.LONG_TYPE));
+				il.add(TableMethods.rawget_int());
+			}
+			else {
+				il.add(load(node.key()));
+				il.add(TableMethods.rawget());
+			}
+			il.add(store(node.dest()));
+			guard.end();
+		}
 	}
 
 	@Override
 	public void visit(TabSet node) {
-		ResumptionPoint rp = newResumptionPoint();
+		String cacheKey = cacheableFieldKey(node.key());
+		PlainTableGuard guard = cacheKey == null ? new PlainTableGuard(node.obj()) : null;
+
+		ResumptionPoint rp = newResumptionPoint(node);
 		il.add(rp.save());
 
-		il.add(loadExecutionContext());
-		il.add(new VarInsnNode(ALOAD, slot(node.obj())));
-		il.add(new VarInsnNode(ALOAD, slot(node.key())));
-		il.add(new VarInsnNode(ALOAD, slot(node.value())));
-		il.add(DispatchMethods.setindex());
+		if (cacheKey != null) {
+			il.add(loadNewFieldCache(cacheKey));
+			il.add(loadExecutionContext());
+			il.add(load(node.obj()));
+			il.add(load(node.value()));
+			il.add(FieldCacheMethods.setindex());
+		}
+		else {
+			il.add(loadExecutionContext());
+			il.add(load(node.obj()));
+			il.add(load(node.key()));
+			il.add(load(node.value()));
+			il.add(DispatchMethods.setindex());
+		}
 
 		il.add(rp.resume());
+
+		if (guard != null) {
+			guard.fastPath();
+			if (isInteger(node.key())) {
+				il.add(load(node.key(), Type.LONG_TYPE));
+				il.add(load(node.value()));
+				il.add(TableMethods.rawset_int());
+			}
+			else {
+				il.add(load(node.key()));
+				il.add(load(node.value()));
+				il.add(TableMethods.rawset());
+			}
+			guard.end();
+		}
 	}
 
 	@Override
 	public void visit(TabRawSet node) {
-		il.add(new VarInsnNode(ALOAD, slot(node.obj())));
+		il.add(load(node.obj()));
 		il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Table.class)));
-		il.add(new VarInsnNode(ALOAD, slot(node.key())));
-		il.add(new VarInsnNode(ALOAD, slot(node.value())));
+		il.add(load(node.key()));
+		il.add(load(node.value()));
 		il.add(TableMethods.rawset());
 	}
 
 	@Override
 	public void visit(TabRawSetInt node) {
-		il.add(new VarInsnNode(ALOAD, slot(node.obj())));
+		il.add(load(node.obj()));
 		il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Table.class)));
 		il.add(ASMUtils.loadLong(node.idx()));
-		il.add(new VarInsnNode(ALOAD, slot(node.value())));
+		il.add(load(node.value()));
 		il.add(TableMethods.rawset_int());
 	}
 
@@ -560,6 +1255,7 @@ class BytecodeEmitVisitor extends CodeVisitor {
 			ReturnBuffer rbuf = context.getReturnBuffer();
 			int i = 0;
 			context.registerTicks(rbuf.size());  // only when we care about ticks spent
+			tab.ensureArrayCapacity(OFFSET - 1 + rbuf.size());
 			while (i < rbuf.size()) {
 				tab.rawset(OFFSET + i, rbuf.get(i));
 				i++;
@@ -580,7 +1276,7 @@ class BytecodeEmitVisitor extends CodeVisitor {
 
 		il.add(begin);
 
-		il.add(new VarInsnNode(ALOAD, slot(node.obj())));
+		il.add(load(node.obj()));
 		il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Table.class)));
 		il.add(new VarInsnNode(ASTORE, lv_idx_tab));
 
@@ -592,13 +1288,29 @@ class BytecodeEmitVisitor extends CodeVisitor {
 		il.add(new VarInsnNode(ISTORE, lv_idx_i));
 
 		// context.registerTicks(rbuf.size());
-		if (countingTicks()) {
+		if (runMethod.accumulatesTicks()) {
+			il.add(new VarInsnNode(ILOAD, runMethod.ticksLocalIndex()));
+			il.add(new VarInsnNode(ALOAD, lv_idx_stack));
+			il.add(ReturnBufferMethods.size());
+			il.add(new InsnNode(IADD));
+			il.add(new VarInsnNode(ISTORE, runMethod.ticksLocalIndex()));
+		}
+		else if (countingTicks()) {
 			il.add(loadExecutionContext());
 			il.add(new VarInsnNode(ALOAD, lv_idx_stack));
 			il.add(ReturnBufferMethods.size());
 			il.add(ExecutionContextMethods.registerTicks());
 		}
 
+		// tab.ensureArrayCapacity(OFFSET - 1 + rbuf.size());
+		il.add(new VarInsnNode(ALOAD, lv_idx_tab));
+		il.add(ASMUtils.loadLong(node.firstIdx() - 1));
+		il.add(new VarInsnNode(ALOAD, lv_idx_stack));
+		il.add(ReturnBufferMethods.size());
+		il.add(new InsnNode(I2L));
+		il.add(new InsnNode(LADD));
+		il.add(TableMethods.ensureArrayCapacity());
+
 		il.add(top);
 		il.add(new FrameNode(F_APPEND, 3, new Object[] {
 					Type.getInternalName(Table.class),
@@ -693,7 +1405,7 @@ class BytecodeEmitVisitor extends CodeVisitor {
 				for (Val v : vl.addrs()) {
 					il.add(new VarInsnNode(ALOAD, lv_idx_args));
 					il.add(ASMUtils.loadInt(idx++));
-					il.add(new VarInsnNode(ALOAD, slot(v)));
+					il.add(load(v));
 					il.add(new InsnNode(AASTORE));
 				}
 
@@ -727,7 +1439,7 @@ class BytecodeEmitVisitor extends CodeVisitor {
 			if (k <= maxKind) {
 				// pass arguments on the JVM stack
 				for (Val v : vl.addrs()) {
-					il.add(new VarInsnNode(ALOAD, slot(v)));
+					il.add(load(v));
 				}
 				return k;
 			}
@@ -740,7 +1452,7 @@ class BytecodeEmitVisitor extends CodeVisitor {
 				for (Val v : vl.addrs()) {
 					il.add(new InsnNode(DUP));
 					il.add(ASMUtils.loadInt(idx++));
-					il.add(new VarInsnNode(ALOAD, slot(v)));
+					il.add(load(v));
 					il.add(new InsnNode(AASTORE));
 				}
 
@@ -751,6 +1463,7 @@ class BytecodeEmitVisitor extends CodeVisitor {
 
 	@Override
 	public void visit(Ret node) {
+		il.add(registerTicks());
 		il.add(loadExecutionContext());
 		il.add(loadReturnBuffer());
 		int kind = loadVList(node.args(), ReturnBufferMethods.MAX_SETTO_KIND);  // values
@@ -758,11 +1471,74 @@ class BytecodeEmitVisitor extends CodeVisitor {
 		il.add(_return());
 	}
 
+	// self-recursive tail calls may be turned into jumps to the function entry in non-segmented,
+	// non-vararg functions, provided that the number of arguments is known statically
+	private boolean isSelfTailCallCandidate(TCall node) {
+		return !isSub() && !context.isVararg() && !node.args().isMulti();
+	}
+
+	// if the call target is this function, assigns the arguments to the parameters
+	// and jumps to the function entry; otherwise, continues at l_call
+	private InsnList selfTailCall(TCall node, LabelNode l_call) {
+		InsnList il = new InsnList();
+
+		il.add(load(node.target()));
+		il.add(new VarInsnNode(ALOAD, 0));
+		il.add(new JumpInsnNode(IF_ACMPNE, l_call));
+
+		if (runMethod.accumulatesTicks() && !entryChecked) {
+			// this is a back-edge, and there is no check at the function entry
+			il.add(ticksCheck(node));
+		}
+
+		List<Var> params = context.fn.params();
+		List<Val> args = node.args().addrs();
+
+		// push all the parameter values first: arguments may share slots with parameters
+		for (int i = 0; i < params.size(); i++) {
+			boolean reified = types.isReified(params.get(i));
+
+			if (reified) {
+				il.add(new TypeInsnNode(NEW, Type.getInternalName(Variable.class)));
+				il.add(new InsnNode(DUP));
+			}
+
+			if (i < args.size()) {
+				il.add(load(args.get(i)));
+			}
+			else {
+				il.add(new InsnNode(ACONST_NULL));
+			}
+
+			if (reified) {
+				il.add(VariableMethods.constructor());
+			}
+		}
+
+		for (int i = params.size() - 1; i >= 0; i--) {
+			il.add(new VarInsnNode(ASTORE, slot(params.get(i))));
+		}
+
+		il.add(new JumpInsnNode(GOTO, entryLabel));
+
+		il.add(l_call);
+		il.add(ASMUtils.frameSame());
+
+		selfTailCalls = true;
+
+		return il;
+	}
+
 	@Override
 	public void visit(TCall node) {
+		if (isSelfTailCallCandidate(node)) {
+			il.add(selfTailCall(node, new LabelNode()));
+		}
+
+		il.add(registerTicks());
 		il.add(loadExecutionContext());
 		il.add(loadReturnBuffer());
-		il.add(new VarInsnNode(ALOAD, slot(node.target())));  // call target
+		il.add(load(node.target()));  // call target
 		int kind = loadVList(node.args(), ReturnBufferMethods.MAX_TAILCALL_KIND);  // call args
 		il.add(ReturnBufferMethods.tailCall(kind));
 		il.add(_return());
@@ -770,13 +1546,15 @@ class BytecodeEmitVisitor extends CodeVisitor {
 
 	@Override
 	public void visit(Call node) {
-		ResumptionPoint rp = newResumptionPoint();
+		ResumptionPoint rp = newResumptionPoint(node);
 		il.add(rp.save());
 
 		il.add(loadExecutionContext());
-		il.add(new VarInsnNode(ALOAD, slot(node.fn())));  // call target
+		il.add(load(node.fn()));  // call target
 		int kind = loadVList(node.args(), DispatchMethods.MAX_CALL_KIND);  // call args
-		il.add(DispatchMethods.call(kind));
+		il.add(context.compilerSettings.invokeDynamicCalls()
+				? DispatchMethods.callSite(kind)
+				: DispatchMethods.call(kind));
 
 		il.add(rp.resume());
 	}
@@ -786,7 +1564,7 @@ class BytecodeEmitVisitor extends CodeVisitor {
 		il.add(loadExecutionContext());
 		il.add(loadReturnBuffer());
 		il.add(ReturnBufferMethods.get(node.idx()));
-		il.add(new VarInsnNode(ASTORE, slot(node.dest())));
+		il.add(store(node.dest()));
 	}
 
 	@Override
@@ -797,6 +1575,9 @@ class BytecodeEmitVisitor extends CodeVisitor {
 
 	@Override
 	public void visit(Jmp node) {
+		if (isBackEdge(node.jmpDest())) {
+			il.add(ticksCheck(node));
+		}
 		il.add(_goto(node.jmpDest()));
 	}
 
@@ -865,7 +1646,7 @@ class BytecodeEmitVisitor extends CodeVisitor {
 				else {
 					Var v = (Var) var;
 					assert (context.types.isReified(v));
-					il.add(new VarInsnNode(ALOAD, slot(v)));
+					il.add(load(v));
 					il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Variable.class)));
 				}
 			}
@@ -933,14 +1714,22 @@ class BytecodeEmitVisitor extends CodeVisitor {
 		}
 
 		il.add(cu.fetchInstanceInsns());
-		il.add(new VarInsnNode(ASTORE, slot(node.dest())));
+		il.add(store(node.dest()));
 	}
 
 	@Override
 	public void visit(ToNumber node) {
-		il.add(new VarInsnNode(ALOAD, slot(node.src())));
-		il.add(ConversionMethods.toNumericalValue(node.desc()));
-		il.add(new VarInsnNode(ASTORE, slot(node.dest())));
+		if (exactNumericTypeOf(node.src()) != null) {
+			// already a number
+			Type t = unboxedTypeOf(node.dest());
+			il.add(load(node.src(), t));
+			il.add(store(node.dest(), t));
+		}
+		else {
+			il.add(load(node.src()));
+			il.add(ConversionMethods.toNumericalValue(node.desc()));
+			il.add(store(node.dest()));
+		}
 	}
 
 	@Override
@@ -956,6 +1745,9 @@ class BytecodeEmitVisitor extends CodeVisitor {
 
 		try {
 			destLabel = branch.jmpDest();
+			if (isBackEdge(branch.jmpDest())) {
+				il.add(ticksCheck(branch));
+			}
 			branch.condition().accept(this);
 			il.add(_next(branch.next()));
 		}
@@ -967,7 +1759,7 @@ class BytecodeEmitVisitor extends CodeVisitor {
 	@Override
 	public void visit(Branch.Condition.Nil cond) {
 		assert (destLabel != null);
-		il.add(new VarInsnNode(ALOAD, slot(cond.addr())));
+		il.add(load(cond.addr()));
 
 		if (!isSub() || resolver.isLocalLabel(destLabel)) {
 			// local jump
@@ -986,7 +1778,7 @@ class BytecodeEmitVisitor extends CodeVisitor {
 	@Override
 	public void visit(Branch.Condition.Bool cond) {
 		assert (destLabel != null);
-		il.add(new VarInsnNode(ALOAD, slot(cond.addr())));
+		il.add(load(cond.addr()));
 		il.add(ConversionMethods.booleanValueOf());
 
 		if (!isSub() || resolver.isLocalLabel(destLabel)) {
@@ -1007,13 +1799,29 @@ class BytecodeEmitVisitor extends CodeVisitor {
 	@Override
 	public void visit(Branch.Condition.NumLoopEnd cond) {
 		assert (destLabel != null);
-		il.add(new VarInsnNode(ALOAD, slot(cond.var())));
-		il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Number.class)));
-		il.add(new VarInsnNode(ALOAD, slot(cond.limit())));
-		il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Number.class)));
-		il.add(new VarInsnNode(ALOAD, slot(cond.step())));
-		il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Number.class)));
-		il.add(DispatchMethods.continueLoop());
+
+		Type vt = loopVarTypeOf(cond);
+		if (vt != null) {
+			// counted loop: the control variable and step are primitives, and so is the limit
+			// if its type is known
+			Type lt = exactNumericTypeOf(cond.limit());
+			il.add(load(cond.var(), vt));
+			il.add(load(cond.limit(), lt));
+			if (lt == null) {
+				il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Number.class)));
+			}
+			il.add(load(cond.step(), vt));
+			il.add(DispatchMethods.continueLoop(vt, lt));
+		}
+		else {
+			il.add(load(cond.var()));
+			il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Number.class)));
+			il.add(load(cond.limit()));
+			il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Number.class)));
+			il.add(load(cond.step()));
+			il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Number.class)));
+			il.add(DispatchMethods.continueLoop());
+		}
 
 		if (!isSub() || resolver.isLocalLabel(destLabel)) {
 			// local jump
@@ -1029,7 +1837,7 @@ class BytecodeEmitVisitor extends CodeVisitor {
 		}
 	}
 
-	private void staticCpuWithdraw(int cost) {
+	private void staticCpuWithdraw(CPUWithdraw node, int cost) {
 		switch (context.compilerSettings.cpuAccountingMode()) {
 			case NO_CPU_ACCOUNTING: {
 				// no-op
@@ -1037,7 +1845,7 @@ class BytecodeEmitVisitor extends CodeVisitor {
 			}
 
 			case IN_EVERY_BASIC_BLOCK: {
-				ResumptionPoint rp = newResumptionPoint();
+				ResumptionPoint rp = newResumptionPoint(node);
 				il.add(rp.save());
 
 				il.add(loadExecutionContext());
@@ -1050,10 +1858,73 @@ class BytecodeEmitVisitor extends CodeVisitor {
 				break;
 			}
 
+			case AT_LOOP_BACKEDGES: {
+				if (!entryChecked && isEntryBlock(currentBlock)) {
+					// first withdrawal at the function entry
+					il.add(new IincInsnNode(runMethod.ticksLocalIndex(), cost));
+					il.add(ticksCheck(node));
+					entryChecked = true;
+				}
+				else {
+					il.add(new IincInsnNode(runMethod.ticksLocalIndex(), cost));
+				}
+				break;
+			}
+
 			default: throw new UnsupportedOperationException("Unsupported CPU accounting mode: " + context.compilerSettings.cpuAccountingMode());
 		}
 	}
 
+	// initialises the local variable accumulating ticks
+	public InsnList initTicks() {
+		InsnList il = new InsnList();
+		if (runMethod.accumulatesTicks()) {
+			il.add(new InsnNode(ICONST_0));
+			il.add(new VarInsnNode(ISTORE, runMethod.ticksLocalIndex()));
+		}
+		return il;
+	}
+
+	// registers the accumulated ticks, without resetting the accumulator; to be used
+	// when the control leaves the run method
+	public InsnList registerTicks() {
+		InsnList il = new InsnList();
+		if (runMethod.accumulatesTicks()) {
+			il.add(loadExecutionContext());
+			il.add(new VarInsnNode(ILOAD, runMethod.ticksLocalIndex()));
+			il.add(ExecutionContextMethods.registerTicks());
+		}
+		return il;
+	}
+
+	// registers the accumulated ticks and potentially pauses
+	private InsnList ticksCheck(IRNode node) {
+		InsnList il = new InsnList();
+
+		il.add(registerTicks());
+		il.add(new InsnNode(ICONST_0));
+		il.add(new VarInsnNode(ISTORE, runMethod.ticksLocalIndex()));
+
+		ResumptionPoint rp = newResumptionPoint(node);
+		il.add(rp.save());
+		il.add(loadExecutionContext());
+		il.add(ExecutionContextMethods.checkCallYield());
+		il.add(rp.resume());
+
+		return il;
+	}
+
+	private boolean isEntryBlock(BasicBlock block) {
+		return block != null && runMethod.blockIndex(block.label()) == 0;
+	}
+
+	// is a jump from the current block to label a back-edge at which ticks should be checked?
+	private boolean isBackEdge(Label label) {
+		return runMethod.accumulatesTicks()
+				&& currentBlock != null
+				&& runMethod.blockIndex(label) <= runMethod.blockIndex(currentBlock.label());
+	}
+
 	// do we care about counting ticks?
 	private boolean countingTicks() {
 		return (context.compilerSettings.cpuAccountingMode()
@@ -1062,7 +1933,7 @@ class BytecodeEmitVisitor extends CodeVisitor {
 
 	@Override
 	public void visit(CPUWithdraw node) {
-		staticCpuWithdraw(node.cost());
+		staticCpuWithdraw(node, node.cost());
 	}
 
 	@Override
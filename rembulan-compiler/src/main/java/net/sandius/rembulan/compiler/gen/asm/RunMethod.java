@@ -16,6 +16,7 @@
 
 package net.sandius.rembulan.compiler.gen.asm;
 
+import net.sandius.rembulan.compiler.CompilerSettings;
 import net.sandius.rembulan.compiler.gen.CodeSegmenter;
 import net.sandius.rembulan.compiler.gen.SegmentedCode;
 import net.sandius.rembulan.compiler.gen.asm.helpers.ASMUtils;
@@ -24,6 +25,7 @@ import net.sandius.rembulan.compiler.ir.BasicBlock;
 import net.sandius.rembulan.compiler.ir.Label;
 import net.sandius.rembulan.impl.DefaultSavedState;
 import net.sandius.rembulan.runtime.ExecutionContext;
+import net.sandius.rembulan.runtime.FieldCache;
 import net.sandius.rembulan.runtime.ResolvedControlThrowable;
 import net.sandius.rembulan.runtime.Resumable;
 import net.sandius.rembulan.runtime.UnresolvedControlThrowable;
@@ -33,7 +35,9 @@ import org.objectweb.asm.Type;
 import org.objectweb.asm.tree.*;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.objectweb.asm.Opcodes.*;
 
@@ -52,6 +56,12 @@ class RunMethod {
 
 	private final List<ClosureFieldInstance> closureFields;
 	private final List<ConstFieldInstance> constFields;
+	private final List<FieldCacheInstance> fieldCaches;
+
+	private final UnboxedLocals unboxed;
+
+	// positions of the blocks in the (segmented) function code
+	private final Map<Label, Integer> blockIndices;
 
 	interface LabelResolver {
 		boolean isLocalLabel(Label l);
@@ -73,11 +83,21 @@ class RunMethod {
 
 		this.closureFields = new ArrayList<>();
 		this.constFields = new ArrayList<>();
+		this.fieldCaches = new ArrayList<>();
+
+		this.blockIndices = new HashMap<>();
+		for (List<BasicBlock> segment : segmentedCode.segments()) {
+			for (BasicBlock b : segment) {
+				blockIndices.put(b.label(), blockIndices.size());
+			}
+		}
 
 		if (segmentedCode.isSingleton()) {
+			this.unboxed = UnboxedLocals.of(context.fn, context.types, context.slots, slotOffset() + numOfRegisters());
+
 			// as before
 			BytecodeEmitVisitor visitor = new BytecodeEmitVisitor(
-					context, this, context.slots, context.types, closureFields, constFields, -1,
+					context, this, context.slots, context.types, unboxed, closureFields, constFields, fieldCaches, -1,
 					new LabelResolver() {
 						@Override
 						public boolean isLocalLabel(Label l) {
@@ -96,13 +116,17 @@ class RunMethod {
 		else {
 			// split up into multiple segments
 
+			// values are kept unboxed in singleton run methods only, since values
+			// passed between segments are passed as registers
+			this.unboxed = UnboxedLocals.none();
+
 			boolean resumable = false;
 			for (int i = 0; i < segmentedCode.segments().size(); i++) {
 
 				final int thisSegmentIdx = i;
 
 				BytecodeEmitVisitor visitor = new BytecodeEmitVisitor(
-						context, this, context.slots, context.types, closureFields, constFields, i,
+						context, this, context.slots, context.types, unboxed, closureFields, constFields, fieldCaches, i,
 						new LabelResolver() {
 							@Override
 							public boolean isLocalLabel(Label l) {
@@ -127,6 +151,15 @@ class RunMethod {
 		}
 	}
 
+	// the position of the block labelled l in the function code
+	public int blockIndex(Label l) {
+		Integer idx = blockIndices.get(Check.notNull(l));
+		if (idx == null) {
+			throw new IllegalArgumentException("Label not found: " + l);
+		}
+		return idx;
+	}
+
 	public int numOfRegisters() {
 		return context.slots.numSlots();
 	}
@@ -135,6 +168,22 @@ class RunMethod {
 		return context.isVararg() ? LV_VARARGS + 1 : LV_VARARGS;
 	}
 
+	// true iff ticks are accumulated in a local variable and registered in batches
+	public boolean accumulatesTicks() {
+		return context.compilerSettings.cpuAccountingMode()
+				== CompilerSettings.CPUAccountingMode.AT_LOOP_BACKEDGES;
+	}
+
+	// index of the local variable holding the ticks not registered yet, if accumulating ticks
+	public int ticksLocalIndex() {
+		return slotOffset() + numOfRegisters() + unboxed.size();
+	}
+
+	// number of local variables following the registers and unboxed locals
+	public int numOfExtraLocals() {
+		return accumulatesTicks() ? 1 : 0;
+	}
+
 	public boolean isResumable() {
 		return resumable;
 	}
@@ -280,6 +329,16 @@ class RunMethod {
 		return il;
 	}
 
+	// registers the accumulated ticks and rethrows the exception on the stack top
+	private InsnList registerTicksHandler(LabelNode label, InsnList registerTicks) {
+		InsnList il = new InsnList();
+		il.add(label);
+		il.add(ASMUtils.frameSame1(Throwable.class));
+		il.add(registerTicks);
+		il.add(new InsnNode(ATHROW));
+		return il;
+	}
+
 	private InsnList dispatchTable(List<LabelNode> extLabels, List<LabelNode> resumptionLabels, LabelNode errorStateLabel) {
 		InsnList il = new InsnList();
 
@@ -315,12 +374,15 @@ class RunMethod {
 		return il;
 	}
 
-	protected InsnList resumptionHandler(LabelNode label) {
+	protected InsnList resumptionHandler(LabelNode label, InsnList registerTicks, InsnList saveUnboxedState) {
 		InsnList il = new InsnList();
 
 		il.add(label);
 		il.add(ASMUtils.frameSame1(UnresolvedControlThrowable.class));
 
+		il.add(registerTicks);
+		il.add(saveUnboxedState);
+
 		il.add(createSnapshot());
 
 		// register snapshot with the control exception
@@ -418,6 +480,64 @@ class RunMethod {
 		return constFields;
 	}
 
+	static class FieldCacheInstance {
+
+		private final Object key;
+		private final String fieldName;
+		private final Type ownerClassType;
+
+		public FieldCacheInstance(Object key, String fieldName, Type ownerClassType) {
+			this.key = Check.notNull(key);
+			this.fieldName = Check.notNull(fieldName);
+			this.ownerClassType = Check.notNull(ownerClassType);
+		}
+
+		public FieldNode fieldNode() {
+			return new FieldNode(
+					ACC_PRIVATE + ACC_STATIC + ACC_FINAL,
+					fieldName,
+					Type.getDescriptor(FieldCache.class),
+					null,
+					null);
+		}
+
+		public InsnList instantiateInsns() {
+			InsnList il = new InsnList();
+			il.add(new TypeInsnNode(NEW, Type.getInternalName(FieldCache.class)));
+			il.add(new InsnNode(DUP));
+			il.add(new LdcInsnNode(key));
+			il.add(new MethodInsnNode(
+					INVOKESPECIAL,
+					Type.getInternalName(FieldCache.class),
+					"<init>",
+					Type.getMethodDescriptor(
+							Type.VOID_TYPE,
+							Type.getType(Object.class)),
+					false));
+			il.add(new FieldInsnNode(
+					PUTSTATIC,
+					ownerClassType.getInternalName(),
+					fieldName,
+					Type.getDescriptor(FieldCache.class)));
+			return il;
+		}
+
+		public InsnList accessInsns() {
+			InsnList il = new InsnList();
+			il.add(new FieldInsnNode(
+					GETSTATIC,
+					ownerClassType.getInternalName(),
+					fieldName,
+					Type.getDescriptor(FieldCache.class)));
+			return il;
+		}
+
+	}
+
+	public List<FieldCacheInstance> fieldCaches() {
+		return fieldCaches;
+	}
+
 	private List<LocalVariableNode> baseLocals(LabelNode l_begin, LabelNode l_end) {
 		List<LocalVariableNode> locals = new ArrayList<>();
 
@@ -440,9 +560,109 @@ class RunMethod {
 			locals.add(new LocalVariableNode("s_" + i, Type.getDescriptor(Object.class), null, l_begin, l_end, slotOffset() + i));
 		}
 
+		for (UnboxedLocals.Local u : unboxed.locals()) {
+			locals.add(new LocalVariableNode("u_" + u.index(), u.type().getDescriptor(), null, l_begin, l_end, u.index()));
+		}
+
+		if (accumulatesTicks()) {
+			locals.add(new LocalVariableNode("ticks", Type.INT_TYPE.getDescriptor(), null, l_begin, l_end, ticksLocalIndex()));
+		}
+
 		return locals;
 	}
 
+	// verification types of the locals shared by all frames of the run method
+	private List<Object> frameLocals() {
+		List<Object> result = new ArrayList<>();
+		result.add(context.thisClassType().getInternalName());
+		result.add(Type.getInternalName(ExecutionContext.class));
+		result.add(Opcodes.INTEGER);
+		if (context.isVararg()) {
+			result.add(ASMUtils.arrayTypeFor(Object.class).getInternalName());
+		}
+		for (int i = 0; i < numOfRegisters(); i++) {
+			result.add(Type.getInternalName(Object.class));
+		}
+		result.addAll(unboxed.frameTypes());
+		if (accumulatesTicks()) {
+			result.add(Opcodes.INTEGER);
+		}
+		return result;
+	}
+
+	// when resuming, restores the unboxed locals from the registers they were saved to when
+	// suspending. All of them are restored, including those that were not saved (for which
+	// any value will do, since they are not live); registers not containing numbers are skipped
+	private InsnList restoreUnboxedLocals() {
+		InsnList il = new InsnList();
+
+		if (unboxed.isEmpty()) {
+			return il;
+		}
+
+		LabelNode l_done = new LabelNode();
+
+		il.add(new VarInsnNode(ILOAD, LV_RESUME));
+		il.add(new JumpInsnNode(IFEQ, l_done));
+
+		List<UnboxedLocals.Local> locals = unboxed.locals();
+		for (int i = 0; i < locals.size(); i++) {
+			UnboxedLocals.Local l = locals.get(i);
+			LabelNode l_skip = i + 1 < locals.size() ? new LabelNode() : l_done;
+
+			il.add(new VarInsnNode(ALOAD, slotOffset() + l.slot()));
+			il.add(new TypeInsnNode(INSTANCEOF, Type.getInternalName(Number.class)));
+			il.add(new JumpInsnNode(IFEQ, l_skip));
+			il.add(new VarInsnNode(ALOAD, slotOffset() + l.slot()));
+			il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Number.class)));
+			il.add(BoxedPrimitivesMethods.unbox(Number.class, l.type()));
+			il.add(new VarInsnNode(l.type().getOpcode(ISTORE), l.index()));
+
+			il.add(l_skip);
+			il.add(ASMUtils.frameSame());
+		}
+
+		return il;
+	}
+
+	// the frames in the run method are mostly F_SAME frames relative to the implicit
+	// initial frame; when there are unboxed locals (or the ticks local), they must be declared
+	// explicitly in the first frame
+	private void declareUnboxedLocals(InsnList insns) {
+		if (unboxed.isEmpty() && !accumulatesTicks()) {
+			return;
+		}
+
+		for (AbstractInsnNode n = insns.getFirst(); n != null; n = n.getNext()) {
+			if (n instanceof FrameNode) {
+				FrameNode f = (FrameNode) n;
+
+				List<Object> locals = frameLocals();
+				List<Object> stack = new ArrayList<>();
+
+				switch (f.type) {
+					case F_SAME:
+						break;
+					case F_SAME1:
+						stack.addAll(f.stack);
+						break;
+					case F_APPEND:
+						locals.addAll(f.local);
+						break;
+					default:
+						throw new IllegalStateException("Unexpected first frame type: " + f.type);
+				}
+
+				FrameNode full = new FrameNode(F_FULL,
+						locals.size(), locals.toArray(),
+						stack.size(), stack.toArray());
+
+				insns.set(f, full);
+				return;
+			}
+		}
+	}
+
 	private void addLocals(MethodNode node, LabelNode l_begin, LabelNode l_end, BytecodeEmitVisitor visitor) {
 		List<LocalVariableNode> locals = node.localVariables;
 		locals.addAll(baseLocals(l_begin, l_end));
@@ -480,12 +700,23 @@ class RunMethod {
 			l_head = visitor.labels.get(blocks.get(0).label());
 		}
 		else {
-			l_head = new LabelNode();
+			l_head = visitor.entryLabel();
 			els.add(l_head);
 		}
 
 		assert (l_head != null);
 
+		prefix.add(visitor.initUnboxedLocals());
+
+		LabelNode l_ticks_begin = new LabelNode();
+		LabelNode l_ticks_end = new LabelNode();
+		LabelNode l_ticks_handler = new LabelNode();
+
+		if (accumulatesTicks()) {
+			prefix.add(visitor.initTicks());
+			prefix.add(l_ticks_begin);
+		}
+
 		if (visitor.isResumable()) {
 			LabelNode l_error_state = new LabelNode();
 			LabelNode l_handler_begin = new LabelNode();
@@ -494,6 +725,7 @@ class RunMethod {
 
 			assert (!rls.isEmpty() || !els.isEmpty());
 
+			prefix.add(restoreUnboxedLocals());
 			prefix.add(dispatchTable(els, rls, l_error_state));
 
 			final LabelNode l_entry = l_head;
@@ -504,17 +736,34 @@ class RunMethod {
 			}
 
 			suffix.add(errorState(l_error_state));
-			suffix.add(resumptionHandler(l_handler_begin));
+			suffix.add(resumptionHandler(l_handler_begin, visitor.registerTicks(), visitor.saveUnboxedState()));
 
 			node.tryCatchBlocks.add(new TryCatchBlockNode(l_entry, l_error_state, l_handler_begin, Type.getInternalName(UnresolvedControlThrowable.class)));
 		}
+		else if (!sub && visitor.hasSelfTailCalls()) {
+			// target of the jumps emitted for self-recursive tail calls
+			prefix.add(l_head);
+			prefix.add(ASMUtils.frameSame());
+		}
 
 		insns.add(l_begin);
 		insns.add(prefix);
 		insns.add(visitor.instructions());
+		insns.add(visitor.resumptionStubs());
+
+		if (accumulatesTicks()) {
+			// register the accumulated ticks when the control leaves the method by an exception
+			// other than a suspension, which is handled by the resumption handler
+			insns.add(l_ticks_end);
+			suffix.add(registerTicksHandler(l_ticks_handler, visitor.registerTicks()));
+			node.tryCatchBlocks.add(new TryCatchBlockNode(l_ticks_begin, l_ticks_end, l_ticks_handler, null));
+		}
+
 		insns.add(suffix);
 		insns.add(l_end);
 
+		declareUnboxedLocals(insns);
+
 		addLocals(node, l_begin, l_end, visitor);
 
 		return node;
@@ -45,7 +45,9 @@ class StaticConstructorMethod {
 	}
 
 	public boolean isEmpty() {
-		return context.hasUpvalues() && runMethod.constFields().isEmpty();
+		return context.hasUpvalues()
+				&& runMethod.constFields().isEmpty()
+				&& runMethod.fieldCaches().isEmpty();
 	}
 
 	public MethodNode methodNode() {
@@ -83,6 +85,10 @@ class StaticConstructorMethod {
 			}
 		}
 
+		for (RunMethod.FieldCacheInstance fci : runMethod.fieldCaches()) {
+			il.add(fci.instantiateInsns());
+		}
+
 		il.add(new InsnNode(RETURN));
 		il.add(end);
 
@@ -0,0 +1,715 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.compiler.gen.asm;
+
+import net.sandius.rembulan.compiler.IRFunc;
+import net.sandius.rembulan.compiler.analysis.AbstractUseDefVisitor;
+import net.sandius.rembulan.compiler.analysis.LivenessAnalyser;
+import net.sandius.rembulan.compiler.analysis.LivenessInfo;
+import net.sandius.rembulan.compiler.analysis.SlotAllocInfo;
+import net.sandius.rembulan.compiler.analysis.StaticMathImplementation;
+import net.sandius.rembulan.compiler.analysis.TypeInfo;
+import net.sandius.rembulan.compiler.analysis.types.LiteralType;
+import net.sandius.rembulan.compiler.analysis.types.LuaTypes;
+import net.sandius.rembulan.compiler.ir.AbstractVal;
+import net.sandius.rembulan.compiler.ir.BasicBlock;
+import net.sandius.rembulan.compiler.ir.BinOp;
+import net.sandius.rembulan.compiler.ir.BlockTermNode;
+import net.sandius.rembulan.compiler.ir.BodyNode;
+import net.sandius.rembulan.compiler.ir.Branch;
+import net.sandius.rembulan.compiler.ir.CodeVisitor;
+import net.sandius.rembulan.compiler.ir.Concat;
+import net.sandius.rembulan.compiler.ir.IRNode;
+import net.sandius.rembulan.compiler.ir.MultiVal;
+import net.sandius.rembulan.compiler.ir.PhiLoad;
+import net.sandius.rembulan.compiler.ir.PhiStore;
+import net.sandius.rembulan.compiler.ir.PhiVal;
+import net.sandius.rembulan.compiler.ir.TabGet;
+import net.sandius.rembulan.compiler.ir.TabSet;
+import net.sandius.rembulan.compiler.ir.ToNumber;
+import net.sandius.rembulan.compiler.ir.UnOp;
+import net.sandius.rembulan.compiler.ir.UpVar;
+import net.sandius.rembulan.compiler.ir.Val;
+import net.sandius.rembulan.compiler.ir.Var;
+import net.sandius.rembulan.compiler.ir.VarInit;
+import net.sandius.rembulan.compiler.ir.VarLoad;
+import net.sandius.rembulan.compiler.ir.VarStore;
+import net.sandius.rembulan.util.Check;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Assignment of values and variables proven by the typer to be Lua integers or floats
+ * to unboxed JVM locals of type {@code long} or {@code double}, respectively.
+ *
+ * <p>The register slot of an unboxed value or variable is only used to save its
+ * (boxed) value when the run method is being suspended, and to restore it when
+ * the run method is resumed. The values that need to be saved at a resumption
+ * point are those live across the IR node containing it.</p>
+ */
+class UnboxedLocals {
+
+	static class Local {
+
+		private final Type type;
+		private final int index;
+		private final int slot;
+
+		Local(Type type, int index, int slot) {
+			this.type = Check.notNull(type);
+			this.index = index;
+			this.slot = slot;
+		}
+
+		public Type type() {
+			return type;
+		}
+
+		public int index() {
+			return index;
+		}
+
+		// the register slot of the values and variables kept in this local
+		public int slot() {
+			return slot;
+		}
+
+	}
+
+	private final Map<AbstractVal, Local> vals;
+	private final Map<Var, Local> vars;
+	private final List<Local> locals;
+
+	private final Map<IRNode, List<AbstractVal>> liveValsAcross;
+	private final Map<IRNode, List<Var>> liveVarsAcross;
+
+	private UnboxedLocals(
+			Map<AbstractVal, Local> vals,
+			Map<Var, Local> vars,
+			List<Local> locals,
+			Map<IRNode, List<AbstractVal>> liveValsAcross,
+			Map<IRNode, List<Var>> liveVarsAcross) {
+
+		this.vals = Check.notNull(vals);
+		this.vars = Check.notNull(vars);
+		this.locals = Check.notNull(locals);
+		this.liveValsAcross = Check.notNull(liveValsAcross);
+		this.liveVarsAcross = Check.notNull(liveVarsAcross);
+	}
+
+	static UnboxedLocals none() {
+		return new UnboxedLocals(
+				Collections.<AbstractVal, Local>emptyMap(),
+				Collections.<Var, Local>emptyMap(),
+				Collections.<Local>emptyList(),
+				Collections.<IRNode, List<AbstractVal>>emptyMap(),
+				Collections.<IRNode, List<Var>>emptyMap());
+	}
+
+	private static Type primitiveTypeOf(TypeInfo types, AbstractVal v) {
+		if (types.typeOf(v).isSubtypeOf(LuaTypes.NUMBER_INTEGER)) {
+			return Type.LONG_TYPE;
+		}
+		else if (types.typeOf(v).isSubtypeOf(LuaTypes.NUMBER_FLOAT)) {
+			return Type.DOUBLE_TYPE;
+		}
+		else {
+			return null;
+		}
+	}
+
+	// constants are loaded as primitives directly
+	private static boolean isConstant(TypeInfo types, Object o) {
+		return o instanceof AbstractVal && types.typeOf((AbstractVal) o) instanceof LiteralType;
+	}
+
+	private static int localKey(int slot, Type t) {
+		return 2 * slot + (t.equals(Type.LONG_TYPE) ? 0 : 1);
+	}
+
+	/**
+	 * Assigns unboxed locals to the values and variables of {@code fn}, starting
+	 * at the JVM local variable index {@code offset}.
+	 */
+	static UnboxedLocals of(IRFunc fn, TypeInfo types, SlotAllocInfo slots, int offset) {
+		Check.notNull(fn);
+		Check.notNull(types);
+		Check.notNull(slots);
+
+		// candidates are values and variables of a known numeric type (values and variables
+		// are treated uniformly here)
+		Map<Object, Type> candidates = new HashMap<>();
+
+		for (AbstractVal v : types.vals()) {
+			Type t = primitiveTypeOf(types, v);
+			// constants are better kept boxed (and cached), since they can be loaded
+			// as primitives directly
+			if (t != null && !(types.typeOf(v) instanceof LiteralType)) {
+				candidates.put(v, t);
+			}
+		}
+
+		// a variable is a candidate if all values assigned to it are of the same type
+		VarTypeVisitor varTypeVisitor = new VarTypeVisitor(types);
+		varTypeVisitor.visit(fn);
+
+		for (Map.Entry<Var, Type> e : varTypeVisitor.varTypes().entrySet()) {
+			Var v = e.getKey();
+			if (!types.isReified(v) && !fn.params().contains(v)) {
+				candidates.put(v, e.getValue());
+			}
+		}
+
+		// unboxing only pays off for values and variables that are never defined boxed
+		// (otherwise, they are merely unboxed earlier, at the cost of saving and restoring
+		// them at every resumption point they are live across), and for values that are
+		// never used boxed (otherwise, they would have to be boxed on every such use rather
+		// than once when defined). Variables may be used boxed: they are boxed when loaded
+		// into a boxed value, rather than on every assignment.
+		UseVisitor useVisitor = new UseVisitor(types);
+		new CodeVisitor(useVisitor).visit(fn);
+
+		candidates.keySet().removeAll(useVisitor.boxedDefs());
+		for (Object o : useVisitor.boxedUses()) {
+			if (o instanceof AbstractVal) {
+				candidates.remove(o);
+			}
+		}
+
+		boolean changed;
+		do {
+			changed = false;
+			for (Copy copy : useVisitor.copies()) {
+				boolean src = candidates.containsKey(copy.src);
+				boolean dest = candidates.containsKey(copy.dest);
+				if (src && !dest && copy.src instanceof AbstractVal) {
+					candidates.remove(copy.src);
+					changed = true;
+				}
+				else if (!src && dest && !isConstant(types, copy.src)) {
+					candidates.remove(copy.dest);
+					changed = true;
+				}
+			}
+		} while (changed);
+
+		// values and variables sharing a register do not interfere, and may therefore share
+		// an unboxed local as long as they are of the same type
+		SortedMap<Integer, Type> keys = new TreeMap<>();
+		for (AbstractVal v : types.vals()) {
+			Type t = candidates.get(v);
+			if (t != null) {
+				keys.put(localKey(slots.slotOf(v), t), t);
+			}
+		}
+		for (Var v : types.vars()) {
+			Type t = candidates.get(v);
+			if (t != null) {
+				keys.put(localKey(slots.slotOf(v), t), t);
+			}
+		}
+
+		Map<Integer, Local> localsByKey = new HashMap<>();
+		List<Local> locals = new ArrayList<>();
+
+		int idx = offset;
+		for (Map.Entry<Integer, Type> e : keys.entrySet()) {
+			Local l = new Local(e.getValue(), idx, e.getKey() / 2);
+			localsByKey.put(e.getKey(), l);
+			locals.add(l);
+			idx += e.getValue().getSize();
+		}
+
+		Map<AbstractVal, Local> vals = new HashMap<>();
+		Map<Var, Local> vars = new HashMap<>();
+
+		for (AbstractVal v : types.vals()) {
+			Type t = candidates.get(v);
+			if (t != null) {
+				vals.put(v, localsByKey.get(localKey(slots.slotOf(v), t)));
+			}
+		}
+		for (Var v : types.vars()) {
+			Type t = candidates.get(v);
+			if (t != null) {
+				vars.put(v, localsByKey.get(localKey(slots.slotOf(v), t)));
+			}
+		}
+
+		Map<IRNode, List<AbstractVal>> liveValsAcross = new IdentityHashMap<>();
+		Map<IRNode, List<Var>> liveVarsAcross = new IdentityHashMap<>();
+
+		if (!locals.isEmpty()) {
+			LivenessInfo liveness = LivenessAnalyser.computeLiveness(fn);
+
+			// the liveness sets are unordered: sort the live values and variables
+			// so that the generated code is deterministic
+			Comparator<AbstractVal> valOrder = new ByLocalIndex<>(vals);
+			Comparator<Var> varOrder = new ByLocalIndex<>(vars);
+
+			Iterator<BasicBlock> it = fn.code().blockIterator();
+			while (it.hasNext()) {
+				BasicBlock b = it.next();
+				for (int i = 0; i < b.body().size(); i++) {
+					BodyNode n = b.body().get(i);
+					IRNode succ = i + 1 < b.body().size() ? b.body().get(i + 1) : b.end();
+
+					// the live-in set of the successor is the live-out set of n; we do not query
+					// the entry of n itself, since nodes that compare equal (such as CPU withdrawals
+					// of the same cost) share their liveness entry. This may include the value
+					// defined by n, which is harmless.
+
+					List<AbstractVal> lvs = new ArrayList<>();
+					for (AbstractVal v : liveness.entry(succ).inVal()) {
+						if (vals.containsKey(v)) {
+							lvs.add(v);
+						}
+					}
+
+					List<Var> lws = new ArrayList<>();
+					for (Var v : liveness.entry(succ).inVar()) {
+						if (vars.containsKey(v)) {
+							lws.add(v);
+						}
+					}
+
+					Collections.sort(lvs, valOrder);
+					Collections.sort(lws, varOrder);
+
+					if (!lvs.isEmpty()) liveValsAcross.put(n, lvs);
+					if (!lws.isEmpty()) liveVarsAcross.put(n, lws);
+				}
+
+				// suspensions right before the block end (such as CPU checks at loop back-edges)
+				// need the live-in set of the block end; unlike body nodes, block ends that
+				// compare equal have the same live-in set
+				BlockTermNode end = b.end();
+
+				List<AbstractVal> lvs = new ArrayList<>();
+				for (AbstractVal v : liveness.entry(end).inVal()) {
+					if (vals.containsKey(v)) {
+						lvs.add(v);
+					}
+				}
+
+				List<Var> lws = new ArrayList<>();
+				for (Var v : liveness.entry(end).inVar()) {
+					if (vars.containsKey(v)) {
+						lws.add(v);
+					}
+				}
+
+				Collections.sort(lvs, valOrder);
+				Collections.sort(lws, varOrder);
+
+				if (!lvs.isEmpty()) liveValsAcross.put(end, lvs);
+				if (!lws.isEmpty()) liveVarsAcross.put(end, lws);
+			}
+		}
+
+		return new UnboxedLocals(vals, vars, locals, liveValsAcross, liveVarsAcross);
+	}
+
+	/**
+	 * Returns the unboxed local assigned to {@code v}, or {@code null} if {@code v}
+	 * is not unboxed.
+	 */
+	public Local local(AbstractVal v) {
+		return vals.get(Check.notNull(v));
+	}
+
+	/**
+	 * Returns the unboxed local assigned to {@code v}, or {@code null} if {@code v}
+	 * is not unboxed.
+	 */
+	public Local local(Var v) {
+		return vars.get(Check.notNull(v));
+	}
+
+	/**
+	 * Returns the unboxed values whose values must survive a suspension
+	 * in the middle of {@code node}.
+	 */
+	public List<AbstractVal> liveValsAcross(IRNode node) {
+		List<AbstractVal> l = liveValsAcross.get(node);
+		return l != null ? l : Collections.<AbstractVal>emptyList();
+	}
+
+	/**
+	 * Returns the unboxed variables whose values must survive a suspension
+	 * in the middle of {@code node}.
+	 */
+	public List<Var> liveVarsAcross(IRNode node) {
+		List<Var> l = liveVarsAcross.get(node);
+		return l != null ? l : Collections.<Var>emptyList();
+	}
+
+	public boolean isEmpty() {
+		return locals.isEmpty();
+	}
+
+	/**
+	 * Returns the number of JVM local variable slots taken up by the unboxed locals.
+	 */
+	public int size() {
+		int n = 0;
+		for (Local l : locals) {
+			n += l.type().getSize();
+		}
+		return n;
+	}
+
+	/**
+	 * Returns the unboxed locals, in the order of their indices.
+	 */
+	public List<Local> locals() {
+		return locals;
+	}
+
+	/**
+	 * Returns the verification types of the unboxed locals, in the order of their indices,
+	 * in the format used by {@link org.objectweb.asm.tree.FrameNode}.
+	 */
+	public List<Object> frameTypes() {
+		List<Object> result = new ArrayList<>();
+		for (Local l : locals) {
+			result.add(l.type().equals(Type.LONG_TYPE) ? Opcodes.LONG : Opcodes.DOUBLE);
+		}
+		return result;
+	}
+
+	private static class ByLocalIndex<T> implements Comparator<T> {
+
+		private final Map<T, Local> locals;
+
+		ByLocalIndex(Map<T, Local> locals) {
+			this.locals = locals;
+		}
+
+		@Override
+		public int compare(T a, T b) {
+			return Integer.compare(locals.get(a).index(), locals.get(b).index());
+		}
+
+	}
+
+	private static class VarTypeVisitor extends CodeVisitor {
+
+		private final TypeInfo types;
+		private final Map<Var, Type> varTypes;
+		private final Set<Var> boxed;
+
+		VarTypeVisitor(TypeInfo types) {
+			this.types = Check.notNull(types);
+			this.varTypes = new HashMap<>();
+			this.boxed = new HashSet<>();
+		}
+
+		public Map<Var, Type> varTypes() {
+			Map<Var, Type> result = new HashMap<>();
+			for (Map.Entry<Var, Type> e : varTypes.entrySet()) {
+				if (!boxed.contains(e.getKey())) {
+					result.put(e.getKey(), e.getValue());
+				}
+			}
+			return result;
+		}
+
+		private void assign(Var var, Val src) {
+			Type t = primitiveTypeOf(types, src);
+			Type u = varTypes.get(var);
+			if (t == null || (u != null && !u.equals(t))) {
+				boxed.add(var);
+			}
+			else {
+				varTypes.put(var, t);
+			}
+		}
+
+		@Override
+		public void visit(VarInit node) {
+			assign(node.var(), node.src());
+		}
+
+		@Override
+		public void visit(VarStore node) {
+			assign(node.var(), node.src());
+		}
+
+	}
+
+	private static class Copy {
+
+		final Object src;
+		final Object dest;
+
+		Copy(Object src, Object dest) {
+			this.src = Check.notNull(src);
+			this.dest = Check.notNull(dest);
+		}
+
+	}
+
+	// collects the values and variables used or defined boxed, and the copies between values
+	// and variables (that box or unbox unless both the source and the destination are unboxed);
+	// operands and results of operations evaluated on primitives are neither
+	private static class UseVisitor extends AbstractUseDefVisitor {
+
+		private final TypeInfo types;
+		private final Set<Object> boxedUses;
+		private final Set<Object> boxedDefs;
+		private final List<Copy> copies;
+
+		UseVisitor(TypeInfo types) {
+			this.types = Check.notNull(types);
+			this.boxedUses = new HashSet<>();
+			this.boxedDefs = new HashSet<>();
+			this.copies = new ArrayList<>();
+		}
+
+		public Set<Object> boxedUses() {
+			return boxedUses;
+		}
+
+		public Set<Object> boxedDefs() {
+			return boxedDefs;
+		}
+
+		public List<Copy> copies() {
+			return copies;
+		}
+
+		private boolean isInteger(Val v) {
+			return types.typeOf(v).isSubtypeOf(LuaTypes.NUMBER_INTEGER);
+		}
+
+		private boolean isExactNumber(Val v) {
+			return primitiveTypeOf(types, v) != null;
+		}
+
+		// must agree with the cases evaluated on primitives in BytecodeEmitVisitor
+		private boolean isPrimitive(BinOp node) {
+			if (!isExactNumber(node.left()) || !isExactNumber(node.right())) {
+				return false;
+			}
+
+			switch (node.op()) {
+				case EQ:
+				case NEQ:
+				case LT:
+				case LE:
+					return true;
+
+				default:
+					StaticMathImplementation math = StaticMathImplementation.of(node.op());
+					return math != null
+							&& (math != StaticMathImplementation.MUST_BE_INTEGER
+									|| (isInteger(node.left()) && isInteger(node.right())));
+			}
+		}
+
+		private boolean isPrimitive(UnOp node) {
+			switch (node.op()) {
+				case UNM: return isExactNumber(node.arg());
+				case BNOT: return isInteger(node.arg());
+				default: return false;
+			}
+		}
+
+		@Override
+		protected void def(Val v) {
+			boxedDefs.add(v);
+		}
+
+		@Override
+		protected void use(Val v) {
+			boxedUses.add(v);
+		}
+
+		@Override
+		protected void def(PhiVal pv) {
+			boxedDefs.add(pv);
+		}
+
+		@Override
+		protected void use(PhiVal pv) {
+			boxedUses.add(pv);
+		}
+
+		@Override
+		protected void def(MultiVal mv) {
+			// no effect
+		}
+
+		@Override
+		protected void use(MultiVal mv) {
+			// no effect
+		}
+
+		@Override
+		protected void def(Var v) {
+			boxedDefs.add(v);
+		}
+
+		@Override
+		protected void use(Var v) {
+			boxedUses.add(v);
+		}
+
+		@Override
+		protected void def(UpVar uv) {
+			// no effect
+		}
+
+		@Override
+		protected void use(UpVar uv) {
+			// no effect
+		}
+
+		@Override
+		public void visit(BinOp node) {
+			if (!isPrimitive(node)) {
+				super.visit(node);
+			}
+		}
+
+		@Override
+		public void visit(UnOp node) {
+			if (!isPrimitive(node)) {
+				super.visit(node);
+			}
+		}
+
+		@Override
+		public void visit(Concat node) {
+			// must agree with BytecodeEmitVisitor: when all arguments are strings or numbers,
+			// the numeric arguments of known type are converted to strings as primitives
+			boolean primitive = true;
+			for (Val v : node.args()) {
+				if (!types.typeOf(v).isSubtypeOf(LuaTypes.STRING) && !types.typeOf(v).isSubtypeOf(LuaTypes.NUMBER)) {
+					primitive = false;
+				}
+			}
+
+			for (Val v : node.args()) {
+				if (!primitive || !isExactNumber(v)) {
+					use(v);
+				}
+			}
+			def(node.dest());
+		}
+
+		// integer keys are used as primitives when accessing tables without a metatable,
+		// and only boxed when dispatching
+		@Override
+		public void visit(TabGet node) {
+			use(node.obj());
+			if (!isInteger(node.key())) {
+				use(node.key());
+			}
+			def(node.dest());
+		}
+
+		@Override
+		public void visit(TabSet node) {
+			use(node.obj());
+			if (!isInteger(node.key())) {
+				use(node.key());
+			}
+			use(node.value());
+		}
+
+		@Override
+		public void visit(Branch.Condition.NumLoopEnd cond) {
+			// must agree with BytecodeEmitVisitor: the control variable and the step are used
+			// as primitives when both have known numeric types, and so is a limit of known type
+			if (isExactNumber(cond.var()) && isExactNumber(cond.step())) {
+				if (!isExactNumber(cond.limit())) {
+					use(cond.limit());
+				}
+			}
+			else {
+				super.visit(cond);
+			}
+		}
+
+		@Override
+		public void visit(PhiStore node) {
+			copies.add(new Copy(node.src(), node.dest()));
+		}
+
+		@Override
+		public void visit(PhiLoad node) {
+			copies.add(new Copy(node.src(), node.dest()));
+		}
+
+		@Override
+		public void visit(VarInit node) {
+			if (types.isReified(node.var())) {
+				super.visit(node);
+			}
+			else {
+				copies.add(new Copy(node.src(), node.var()));
+			}
+		}
+
+		@Override
+		public void visit(VarStore node) {
+			if (types.isReified(node.var())) {
+				super.visit(node);
+			}
+			else {
+				copies.add(new Copy(node.src(), node.var()));
+			}
+		}
+
+		@Override
+		public void visit(VarLoad node) {
+			if (types.isReified(node.var())) {
+				super.visit(node);
+			}
+			else {
+				copies.add(new Copy(node.var(), node.dest()));
+			}
+		}
+
+		@Override
+		public void visit(ToNumber node) {
+			if (isExactNumber(node.src())) {
+				copies.add(new Copy(node.src(), node.dest()));
+			}
+			else {
+				super.visit(node);
+			}
+		}
+
+	}
+
+}
@@ -16,6 +16,7 @@
 
 package net.sandius.rembulan.compiler.gen.asm.helpers;
 
+import net.sandius.rembulan.LongCache;
 import net.sandius.rembulan.util.Check;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.tree.AbstractInsnNode;
@@ -105,6 +106,17 @@ public class BoxedPrimitivesMethods {
 		return box(from, Type.getType(to));
 	}
 
+	public static MethodInsnNode boxInteger() {
+		return new MethodInsnNode(
+				INVOKESTATIC,
+				Type.getInternalName(LongCache.class),
+				"valueOf",
+				Type.getMethodDescriptor(
+						Type.getType(Long.class),
+						Type.LONG_TYPE),
+				false);
+	}
+
 	public static AbstractInsnNode unbox(Class clazz, Type requiredType) {
 		if (requiredType.equals(Type.LONG_TYPE)) {
 			return BoxedPrimitivesMethods.longValue(clazz);
@@ -16,15 +16,22 @@
 
 package net.sandius.rembulan.compiler.gen.asm.helpers;
 
+import net.sandius.rembulan.runtime.CallSites;
 import net.sandius.rembulan.runtime.Dispatch;
 import net.sandius.rembulan.runtime.ExecutionContext;
+import org.objectweb.asm.Handle;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.InvokeDynamicInsnNode;
 import org.objectweb.asm.tree.MethodInsnNode;
 
+import java.lang.invoke.CallSite;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.util.ArrayList;
 import java.util.Arrays;
 
+import static org.objectweb.asm.Opcodes.H_INVOKESTATIC;
 import static org.objectweb.asm.Opcodes.INVOKESTATIC;
 
 public class DispatchMethods {
@@ -78,6 +85,24 @@ public class DispatchMethods {
 				false);
 	}
 
+	// the variant of the dispatch method methodName returning its result rather than
+	// storing it to the return buffer
+	public static AbstractInsnNode dynamicValue(String methodName, int numArgs) {
+		ArrayList<Type> args = new ArrayList<>();
+		args.add(Type.getType(ExecutionContext.class));
+		for (int i = 0; i < numArgs; i++) {
+			args.add(Type.getType(Object.class));
+		}
+		return new MethodInsnNode(
+				INVOKESTATIC,
+				Type.getInternalName(Dispatch.class),
+				methodName + "Value",
+				Type.getMethodDescriptor(
+						Type.getType(Object.class),
+						args.toArray(new Type[0])),
+				false);
+	}
+
 	public static AbstractInsnNode numeric(String methodName, int numArgs) {
 		Type[] args = new Type[numArgs];
 		Arrays.fill(args, Type.getType(Number.class));
@@ -91,10 +116,60 @@ public class DispatchMethods {
 				false);
 	}
 
+	public static AbstractInsnNode comparison(String methodName, Class<?> argClass) {
+		return new MethodInsnNode(
+				INVOKESTATIC,
+				Type.getInternalName(Dispatch.class),
+				methodName,
+				Type.getMethodDescriptor(
+						Type.BOOLEAN_TYPE,
+						Type.getType(argClass),
+						Type.getType(argClass)),
+				false);
+	}
+
+	public static AbstractInsnNode len_string() {
+		return new MethodInsnNode(
+				INVOKESTATIC,
+				Type.getInternalName(Dispatch.class),
+				OP_LEN,
+				Type.getMethodDescriptor(
+						Type.LONG_TYPE,
+						Type.getType(String.class)),
+				false);
+	}
+
+	public static AbstractInsnNode isPlainTable() {
+		return new MethodInsnNode(
+				INVOKESTATIC,
+				Type.getInternalName(Dispatch.class),
+				"isPlainTable",
+				Type.getMethodDescriptor(
+						Type.BOOLEAN_TYPE,
+						Type.getType(Object.class)),
+				false);
+	}
+
+	public static AbstractInsnNode concat_array() {
+		return new MethodInsnNode(
+				INVOKESTATIC,
+				Type.getInternalName(Dispatch.class),
+				OP_CONCAT,
+				Type.getMethodDescriptor(
+						Type.VOID_TYPE,
+						Type.getType(ExecutionContext.class),
+						ASMUtils.arrayTypeFor(Object.class)),
+				false);
+	}
+
 	public static AbstractInsnNode index() {
 		return dynamic(OP_INDEX, 2);
 	}
 
+	public static AbstractInsnNode indexValue() {
+		return dynamicValue(OP_INDEX, 2);
+	}
+
 	public static AbstractInsnNode setindex() {
 		return dynamic(OP_SETINDEX, 3);
 	}
@@ -119,6 +194,24 @@ public class DispatchMethods {
 		return call_method(kind).toMethodInsnNode();
 	}
 
+	// an invokedynamic call site with the same type as call(kind)
+	public static AbstractInsnNode callSite(int kind) {
+		Handle bootstrap = new Handle(
+				H_INVOKESTATIC,
+				Type.getInternalName(CallSites.class),
+				"bootstrap",
+				Type.getMethodDescriptor(
+						Type.getType(CallSite.class),
+						Type.getType(MethodHandles.Lookup.class),
+						Type.getType(String.class),
+						Type.getType(MethodType.class)));
+
+		return new InvokeDynamicInsnNode(
+				OP_CALL,
+				call_method(kind).getMethodType().getDescriptor(),
+				bootstrap);
+	}
+
 	public static AbstractInsnNode continueLoop() {
 		return new MethodInsnNode(
 				INVOKESTATIC,
@@ -132,4 +225,19 @@ public class DispatchMethods {
 				false);
 	}
 
+	// variant of continueLoop() for a control variable (and step) of the primitive type
+	// varType, and a limit of the primitive type limitType, or a Number if limitType is null
+	public static AbstractInsnNode continueLoop(Type varType, Type limitType) {
+		return new MethodInsnNode(
+				INVOKESTATIC,
+				Type.getInternalName(Dispatch.class),
+				"signed_le",
+				Type.getMethodDescriptor(
+						Type.BOOLEAN_TYPE,
+						varType,
+						limitType != null ? limitType : Type.getType(Number.class),
+						varType),
+				false);
+	}
+
 }
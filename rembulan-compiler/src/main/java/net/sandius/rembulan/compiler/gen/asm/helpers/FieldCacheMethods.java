@@ -0,0 +1,74 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.compiler.gen.asm.helpers;
+
+import net.sandius.rembulan.runtime.ExecutionContext;
+import net.sandius.rembulan.runtime.FieldCache;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+
+import static org.objectweb.asm.Opcodes.INVOKEVIRTUAL;
+
+public class FieldCacheMethods {
+
+	private FieldCacheMethods() {
+		// not to be instantiated
+	}
+
+	private static Type selfTpe() {
+		return Type.getType(FieldCache.class);
+	}
+
+	public static AbstractInsnNode index() {
+		return new MethodInsnNode(
+				INVOKEVIRTUAL,
+				selfTpe().getInternalName(),
+				"index",
+				Type.getMethodDescriptor(
+						Type.VOID_TYPE,
+						Type.getType(ExecutionContext.class),
+						Type.getType(Object.class)),
+				false);
+	}
+
+	public static AbstractInsnNode indexValue() {
+		return new MethodInsnNode(
+				INVOKEVIRTUAL,
+				selfTpe().getInternalName(),
+				"indexValue",
+				Type.getMethodDescriptor(
+						Type.getType(Object.class),
+						Type.getType(ExecutionContext.class),
+						Type.getType(Object.class)),
+				false);
+	}
+
+	public static AbstractInsnNode setindex() {
+		return new MethodInsnNode(
+				INVOKEVIRTUAL,
+				selfTpe().getInternalName(),
+				"setindex",
+				Type.getMethodDescriptor(
+						Type.VOID_TYPE,
+						Type.getType(ExecutionContext.class),
+						Type.getType(Object.class),
+						Type.getType(Object.class)),
+				false);
+	}
+
+}
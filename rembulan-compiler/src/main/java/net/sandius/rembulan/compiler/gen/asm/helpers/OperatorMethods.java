@@ -17,6 +17,7 @@
 package net.sandius.rembulan.compiler.gen.asm.helpers;
 
 import net.sandius.rembulan.LuaMathOperators;
+import net.sandius.rembulan.Ordering;
 import net.sandius.rembulan.Table;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.tree.AbstractInsnNode;
@@ -47,6 +48,41 @@ public class OperatorMethods {
 				false);
 	}
 
+	public static AbstractInsnNode rawUnaryOperator(String methodName, Type returnType, Type argType) {
+		return new MethodInsnNode(
+				INVOKESTATIC,
+				Type.getInternalName(LuaMathOperators.class),
+				methodName,
+				Type.getMethodDescriptor(
+						returnType,
+						argType),
+				false);
+	}
+
+	public static AbstractInsnNode rawComparison(String methodName, Type leftType, Type rightType) {
+		return new MethodInsnNode(
+				INVOKESTATIC,
+				Type.getInternalName(LuaMathOperators.class),
+				methodName,
+				Type.getMethodDescriptor(
+						Type.BOOLEAN_TYPE,
+						leftType,
+						rightType),
+				false);
+	}
+
+	public static AbstractInsnNode rawEqual() {
+		return new MethodInsnNode(
+				INVOKESTATIC,
+				Type.getInternalName(Ordering.class),
+				"isRawEqual",
+				Type.getMethodDescriptor(
+						Type.BOOLEAN_TYPE,
+						Type.getType(Object.class),
+						Type.getType(Object.class)),
+				false);
+	}
+
 	public static AbstractInsnNode stringLen() {
 		return new MethodInsnNode(
 				INVOKESTATIC,
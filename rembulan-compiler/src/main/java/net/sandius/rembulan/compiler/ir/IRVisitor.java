@@ -58,6 +58,10 @@ public abstract class IRVisitor {
 		if (v != null) v.visit(node);
 	}
 
+	public void visit(Concat node) {
+		if (v != null) v.visit(node);
+	}
+
 
 	public void visit(TabNew node) {
 		if (v != null) v.visit(node);
@@ -73,7 +73,8 @@ class BranchInlinerVisitor extends CodeTransformerVisitor {
 			// t evaluates to false
 			inline = !cond.expected();
 		}
-		else if (t.isSubtypeOf(LuaTypes.ANY) && !t.equals(LuaTypes.ANY) && !t.isSubtypeOf(LuaTypes.BOOLEAN)) {
+		else if (t.isSubtypeOf(LuaTypes.ANY) && !t.equals(LuaTypes.ANY)
+				&& !t.isSubtypeOf(LuaTypes.BOOLEAN) && !LuaTypes.BOOLEAN.isSubtypeOf(t)) {
 			// t evaluates to true
 			inline = cond.expected();
 		}
@@ -21,13 +21,13 @@ import net.sandius.rembulan.compiler.IRFunc;
 public class CPUAccounter {
 
 	public static IRFunc insertCPUAccounting(IRFunc fn) {
-		CPUAccountingVisitor visitor = new CPUAccountingVisitor(CPUAccountingVisitor.INITIALISE);
+		CPUAccountingVisitor visitor = new CPUAccountingVisitor(new CPUAccountingVisitor.Initialise());
 		visitor.visit(fn);
 		return fn.update(visitor.result());
   	}
 
 	public static IRFunc collectCPUAccounting(IRFunc fn) {
-		CPUAccountingVisitor visitor = new CPUAccountingVisitor(CPUAccountingVisitor.COLLECT);
+		CPUAccountingVisitor visitor = new CPUAccountingVisitor(new CPUAccountingVisitor.Collect());
 		visitor.visit(fn);
 		return fn.update(visitor.result());
   	}
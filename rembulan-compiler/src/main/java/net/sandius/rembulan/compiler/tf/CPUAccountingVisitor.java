@@ -58,7 +58,9 @@ class CPUAccountingVisitor extends CodeTransformerVisitor {
 
 	}
 
-	public static final Account INITIALISE = new Account() {
+	// accounts are stateful: a fresh instance must be used for every transformation
+
+	public static class Initialise extends Account {
 		@Override
 		public void cpuNode(CPUWithdraw node) {
 			// no-op
@@ -79,9 +81,9 @@ class CPUAccountingVisitor extends CodeTransformerVisitor {
 			// no-op
 		}
 
-	};
+	}
 
-	public static final Account COLLECT = new Account() {
+	public static class Collect extends Account {
 		@Override
 		public void cpuNode(CPUWithdraw node) {
 			add(node.cost());
@@ -102,7 +104,7 @@ class CPUAccountingVisitor extends CodeTransformerVisitor {
 			// no-op
 		}
 
-	};
+	}
 
 	private static class Visitor extends DefaultNodeActionVisitor {
 
@@ -140,6 +142,11 @@ class CPUAccountingVisitor extends CodeTransformerVisitor {
 			account.staticCost();
 		}
 
+		@Override
+		public void visit(Concat node) {
+			account.staticCost();
+		}
+
 		@Override
 		public void visit(TabNew node) {
 			account.staticCost();
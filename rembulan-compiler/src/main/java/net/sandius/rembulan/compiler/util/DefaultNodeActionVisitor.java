@@ -57,6 +57,11 @@ public abstract class DefaultNodeActionVisitor extends IRVisitor {
 		action(node);
 	}
 
+	@Override
+	public void visit(Concat node) {
+		action(node);
+	}
+
 	@Override
 	public void visit(TabNew node) {
 		action(node);
@@ -66,6 +66,11 @@ public class IRPrinterVisitor extends CodeVisitor {
 		ps.println("\t" + node.op().toString().toLowerCase() + " " + node.dest() + " " + node.arg());
 	}
 
+	@Override
+	public void visit(Concat node) {
+		ps.println("\tconcat " + node.dest() + " [" + Util.listToString(node.args(), " ") + "]");
+	}
+
 	@Override
 	public void visit(TabNew node) {
 		ps.println("\ttabnew " + node.dest() + " " + node.array() + " " + node.hash());
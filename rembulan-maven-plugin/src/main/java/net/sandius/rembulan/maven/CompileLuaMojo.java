@@ -0,0 +1,172 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.maven;
+
+import net.sandius.rembulan.compiler.AheadOfTimeCompiler;
+import net.sandius.rembulan.compiler.CompilerSettings;
+import net.sandius.rembulan.compiler.LuaCompiler;
+import net.sandius.rembulan.load.LoaderException;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Compiles the Lua sources of the project to Java classes ahead of time.
+ *
+ * <p>The compiled classes and the index used by
+ * {@link net.sandius.rembulan.load.PrecompiledChunkLoader} are written to the output
+ * directory of the build, and are therefore packaged in the jar of the project.
+ * See {@link AheadOfTimeCompiler} for the mapping of source files to module names.</p>
+ *
+ * <p>Compiler settings that are not configured take their
+ * {@linkplain CompilerSettings#defaultSettings() default values}.</p>
+ */
+@Mojo(name = "compile", defaultPhase = LifecyclePhase.PROCESS_CLASSES, threadSafe = true)
+public class CompileLuaMojo extends AbstractMojo {
+
+	/**
+	 * The root of the Lua source tree.
+	 */
+	@Parameter(defaultValue = "${project.basedir}/src/main/lua", required = true)
+	private File sourceDirectory;
+
+	/**
+	 * The directory the compiled classes are written to.
+	 */
+	@Parameter(defaultValue = "${project.build.outputDirectory}", required = true)
+	private File outputDirectory;
+
+	/**
+	 * The package of the compiled classes.
+	 */
+	@Parameter(defaultValue = AheadOfTimeCompiler.DEFAULT_PACKAGE_NAME, required = true)
+	private String packageName;
+
+	/**
+	 * The CPU accounting mode.
+	 */
+	@Parameter
+	private CompilerSettings.CPUAccountingMode cpuAccountingMode;
+
+	/**
+	 * The constant folding mode.
+	 */
+	@Parameter
+	private Boolean constFolding;
+
+	/**
+	 * The constant caching mode.
+	 */
+	@Parameter
+	private Boolean constCaching;
+
+	/**
+	 * The field caching mode.
+	 */
+	@Parameter
+	private Boolean fieldCaching;
+
+	/**
+	 * Whether to compile Lua function calls to {@code invokedynamic} instructions.
+	 */
+	@Parameter
+	private Boolean invokeDynamicCalls;
+
+	/**
+	 * The node size limit.
+	 */
+	@Parameter
+	private Integer nodeSizeLimit;
+
+	/**
+	 * The number of threads used to compile the functions of a module.
+	 */
+	@Parameter
+	private Integer parallelism;
+
+	/**
+	 * Skips the compilation.
+	 */
+	@Parameter(property = "rembulan.compile.skip", defaultValue = "false")
+	private boolean skip;
+
+	private CompilerSettings settings() {
+		CompilerSettings settings = CompilerSettings.defaultSettings();
+		if (cpuAccountingMode != null) {
+			settings = settings.withCPUAccountingMode(cpuAccountingMode);
+		}
+		if (constFolding != null) {
+			settings = settings.withConstFolding(constFolding);
+		}
+		if (constCaching != null) {
+			settings = settings.withConstCaching(constCaching);
+		}
+		if (fieldCaching != null) {
+			settings = settings.withFieldCaching(fieldCaching);
+		}
+		if (invokeDynamicCalls != null) {
+			settings = settings.withInvokeDynamicCalls(invokeDynamicCalls);
+		}
+		if (nodeSizeLimit != null) {
+			settings = settings.withNodeSizeLimit(nodeSizeLimit);
+		}
+		if (parallelism != null) {
+			settings = settings.withParallelism(parallelism);
+		}
+		return settings;
+	}
+
+	@Override
+	public void execute() throws MojoExecutionException, MojoFailureException {
+		if (skip) {
+			getLog().info("Skipping Lua compilation");
+			return;
+		}
+
+		if (!sourceDirectory.isDirectory()) {
+			getLog().info("No Lua sources in " + sourceDirectory);
+			return;
+		}
+
+		AheadOfTimeCompiler aot;
+		try {
+			aot = new AheadOfTimeCompiler(new LuaCompiler(settings()), packageName);
+		}
+		catch (IllegalArgumentException ex) {
+			throw new MojoExecutionException(ex.getMessage(), ex);
+		}
+
+		try {
+			int n = aot.addTree(sourceDirectory.toPath());
+			aot.writeToDirectory(outputDirectory.toPath());
+			getLog().info("Compiled " + n + " Lua module(s) to " + outputDirectory);
+		}
+		catch (LoaderException ex) {
+			throw new MojoFailureException(ex.getLuaStyleErrorMessage(), ex);
+		}
+		catch (IOException ex) {
+			throw new MojoExecutionException("Error compiling Lua sources in " + sourceDirectory, ex);
+		}
+	}
+
+}
@@ -169,17 +169,17 @@ public abstract class Arithmetic {
 
 		@Override
 		public Long add(Number a, Number b) {
-			return LuaMathOperators.add(a.longValue(), b.longValue());
+			return LongCache.valueOf(LuaMathOperators.add(a.longValue(), b.longValue()));
 		}
 
 		@Override
 		public Long sub(Number a, Number b) {
-			return LuaMathOperators.sub(a.longValue(), b.longValue());
+			return LongCache.valueOf(LuaMathOperators.sub(a.longValue(), b.longValue()));
 		}
 
 		@Override
 		public Long mul(Number a, Number b) {
-			return LuaMathOperators.mul(a.longValue(), b.longValue());
+			return LongCache.valueOf(LuaMathOperators.mul(a.longValue(), b.longValue()));
 		}
 
 		@Override
@@ -189,12 +189,12 @@ public abstract class Arithmetic {
 
 		@Override
 		public Long mod(Number a, Number b) {
-			return LuaMathOperators.mod(a.longValue(), b.longValue());
+			return LongCache.valueOf(LuaMathOperators.mod(a.longValue(), b.longValue()));
 		}
 
 		@Override
 		public Long idiv(Number a, Number b) {
-			return LuaMathOperators.idiv(a.longValue(), b.longValue());
+			return LongCache.valueOf(LuaMathOperators.idiv(a.longValue(), b.longValue()));
 		}
 
 		@Override
@@ -204,7 +204,7 @@ public abstract class Arithmetic {
 
 		@Override
 		public Long unm(Number n) {
-			return LuaMathOperators.unm(n.longValue());
+			return LongCache.valueOf(LuaMathOperators.unm(n.longValue()));
 		}
 
 	}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan;
+
+/**
+ * A cache of boxed Lua integers.
+ *
+ * <p>{@link Long#valueOf(long)} only caches values in the range [-128, 127], while Lua
+ * programs commonly produce larger small integers (e.g. as loop counters, array
+ * indices or lengths). This class caches the boxed values in the range
+ * [{@value #LOW}, {@value #HIGH}], allowing arithmetic on such integers to proceed
+ * without allocation.</p>
+ *
+ * <p>Note that Lua integers have no identity: callers must not rely on the values
+ * returned by {@link #valueOf(long)} being (or not being) identical.</p>
+ */
+public final class LongCache {
+
+	/**
+	 * The lowest cached value.
+	 */
+	public static final int LOW = -128;
+
+	/**
+	 * The highest cached value.
+	 */
+	public static final int HIGH = 1023;
+
+	private static final Long[] CACHE;
+
+	static {
+		CACHE = new Long[HIGH - LOW + 1];
+		for (int i = 0; i < CACHE.length; i++) {
+			CACHE[i] = Long.valueOf(i + LOW);
+		}
+	}
+
+	private LongCache() {
+		// not to be instantiated
+	}
+
+	/**
+	 * Returns a {@code Long} instance representing the integer {@code l}. When {@code l}
+	 * is in the range [{@value #LOW}, {@value #HIGH}], returns a cached instance; otherwise,
+	 * returns the result of {@link Long#valueOf(long)}.
+	 *
+	 * @param l  the integer value
+	 * @return  a {@code Long} representing {@code l}
+	 */
+	public static Long valueOf(long l) {
+		return l >= LOW && l <= HIGH
+				? CACHE[(int) l - LOW]
+				: Long.valueOf(l);
+	}
+
+}
@@ -165,6 +165,171 @@ public final class Metatables {
 	 */
 	public static final String MT_MODE = "__mode";
 
+	/**
+	 * The flag representing the absence of {@link #MT_ADD} in the metamethod cache
+	 * of a metatable (see {@link #rawgetMetamethod(Table, String, int)}).
+	 */
+	public static final int MT_ADD_FLAG = 1;
+
+	/**
+	 * The flag representing the absence of {@link #MT_SUB} in the metamethod cache
+	 * of a metatable (see {@link #rawgetMetamethod(Table, String, int)}).
+	 */
+	public static final int MT_SUB_FLAG = 1 << 1;
+
+	/**
+	 * The flag representing the absence of {@link #MT_MUL} in the metamethod cache
+	 * of a metatable (see {@link #rawgetMetamethod(Table, String, int)}).
+	 */
+	public static final int MT_MUL_FLAG = 1 << 2;
+
+	/**
+	 * The flag representing the absence of {@link #MT_DIV} in the metamethod cache
+	 * of a metatable (see {@link #rawgetMetamethod(Table, String, int)}).
+	 */
+	public static final int MT_DIV_FLAG = 1 << 3;
+
+	/**
+	 * The flag representing the absence of {@link #MT_MOD} in the metamethod cache
+	 * of a metatable (see {@link #rawgetMetamethod(Table, String, int)}).
+	 */
+	public static final int MT_MOD_FLAG = 1 << 4;
+
+	/**
+	 * The flag representing the absence of {@link #MT_POW} in the metamethod cache
+	 * of a metatable (see {@link #rawgetMetamethod(Table, String, int)}).
+	 */
+	public static final int MT_POW_FLAG = 1 << 5;
+
+	/**
+	 * The flag representing the absence of {@link #MT_UNM} in the metamethod cache
+	 * of a metatable (see {@link #rawgetMetamethod(Table, String, int)}).
+	 */
+	public static final int MT_UNM_FLAG = 1 << 6;
+
+	/**
+	 * The flag representing the absence of {@link #MT_IDIV} in the metamethod cache
+	 * of a metatable (see {@link #rawgetMetamethod(Table, String, int)}).
+	 */
+	public static final int MT_IDIV_FLAG = 1 << 7;
+
+	/**
+	 * The flag representing the absence of {@link #MT_BAND} in the metamethod cache
+	 * of a metatable (see {@link #rawgetMetamethod(Table, String, int)}).
+	 */
+	public static final int MT_BAND_FLAG = 1 << 8;
+
+	/**
+	 * The flag representing the absence of {@link #MT_BOR} in the metamethod cache
+	 * of a metatable (see {@link #rawgetMetamethod(Table, String, int)}).
+	 */
+	public static final int MT_BOR_FLAG = 1 << 9;
+
+	/**
+	 * The flag representing the absence of {@link #MT_BXOR} in the metamethod cache
+	 * of a metatable (see {@link #rawgetMetamethod(Table, String, int)}).
+	 */
+	public static final int MT_BXOR_FLAG = 1 << 10;
+
+	/**
+	 * The flag representing the absence of {@link #MT_BNOT} in the metamethod cache
+	 * of a metatable (see {@link #rawgetMetamethod(Table, String, int)}).
+	 */
+	public static final int MT_BNOT_FLAG = 1 << 11;
+
+	/**
+	 * The flag representing the absence of {@link #MT_SHL} in the metamethod cache
+	 * of a metatable (see {@link #rawgetMetamethod(Table, String, int)}).
+	 */
+	public static final int MT_SHL_FLAG = 1 << 12;
+
+	/**
+	 * The flag representing the absence of {@link #MT_SHR} in the metamethod cache
+	 * of a metatable (see {@link #rawgetMetamethod(Table, String, int)}).
+	 */
+	public static final int MT_SHR_FLAG = 1 << 13;
+
+	/**
+	 * The flag representing the absence of {@link #MT_CONCAT} in the metamethod cache
+	 * of a metatable (see {@link #rawgetMetamethod(Table, String, int)}).
+	 */
+	public static final int MT_CONCAT_FLAG = 1 << 14;
+
+	/**
+	 * The flag representing the absence of {@link #MT_LEN} in the metamethod cache
+	 * of a metatable (see {@link #rawgetMetamethod(Table, String, int)}).
+	 */
+	public static final int MT_LEN_FLAG = 1 << 15;
+
+	/**
+	 * The flag representing the absence of {@link #MT_EQ} in the metamethod cache
+	 * of a metatable (see {@link #rawgetMetamethod(Table, String, int)}).
+	 */
+	public static final int MT_EQ_FLAG = 1 << 16;
+
+	/**
+	 * The flag representing the absence of {@link #MT_LT} in the metamethod cache
+	 * of a metatable (see {@link #rawgetMetamethod(Table, String, int)}).
+	 */
+	public static final int MT_LT_FLAG = 1 << 17;
+
+	/**
+	 * The flag representing the absence of {@link #MT_LE} in the metamethod cache
+	 * of a metatable (see {@link #rawgetMetamethod(Table, String, int)}).
+	 */
+	public static final int MT_LE_FLAG = 1 << 18;
+
+	/**
+	 * The flag representing the absence of {@link #MT_INDEX} in the metamethod cache
+	 * of a metatable (see {@link #rawgetMetamethod(Table, String, int)}).
+	 */
+	public static final int MT_INDEX_FLAG = 1 << 19;
+
+	/**
+	 * The flag representing the absence of {@link #MT_NEWINDEX} in the metamethod cache
+	 * of a metatable (see {@link #rawgetMetamethod(Table, String, int)}).
+	 */
+	public static final int MT_NEWINDEX_FLAG = 1 << 20;
+
+	/**
+	 * The flag representing the absence of {@link #MT_CALL} in the metamethod cache
+	 * of a metatable (see {@link #rawgetMetamethod(Table, String, int)}).
+	 */
+	public static final int MT_CALL_FLAG = 1 << 21;
+
+	/**
+	 * Returns the entry with the key {@code event} in the metatable {@code mt}, or {@code null}
+	 * if there is no such entry.
+	 *
+	 * <p>When {@code flag} is non-zero, it must be the flag corresponding to {@code event}
+	 * (e.g. {@link #MT_INDEX_FLAG} for {@link #MT_INDEX}). The absence of the entry is then
+	 * recorded in {@code mt}, in the manner of the flags of metatables in PUC-Lua:
+	 * subsequent lookups of an absent metamethod cost a single bit test instead of a table
+	 * access. This is only done for tables that opt into the cache
+	 * (see {@link Table#cachesAbsentMetamethods()}); the record is discarded by {@code mt}
+	 * whenever a string key beginning with {@code "__"} is assigned to in it.</p>
+	 *
+	 * @param mt  the metatable, must not be {@code null}
+	 * @param event  the key to look up in the metatable, must not be {@code null}
+	 * @param flag  the flag corresponding to {@code event}, or {@code 0} if the lookup
+	 *              should not be cached
+	 * @return  a non-{@code null} value if {@code event} is a key in {@code mt};
+	 *          {@code null} otherwise
+	 *
+	 * @throws NullPointerException  if {@code mt} or {@code event} is {@code null}
+	 */
+	public static Object rawgetMetamethod(Table mt, String event, int flag) {
+		if (flag != 0 && mt.isMetamethodAbsent(flag)) {
+			return null;
+		}
+
+		Object handler = mt.rawget(event);
+		if (handler == null && flag != 0) {
+			mt.setMetamethodAbsent(flag);
+		}
+		return handler;
+	}
+
 	/**
 	 * Returns the entry with the key {@code event} of the metatable of the {@link LuaObject}
 	 * {@code o}. If {@code o} does not have a metatable or {@code event} does not exist in it as
@@ -184,12 +349,30 @@ public final class Metatables {
 	 * @throws NullPointerException  if {@code o} or {@code event} is {@code null}
 	 */
 	public static Object getMetamethod(String event, LuaObject o) {
+		return getMetamethod(event, 0, o);
+	}
+
+	/**
+	 * Returns the entry with the key {@code event} of the metatable of the {@link LuaObject}
+	 * {@code o}, caching its absence using {@code flag}
+	 * (see {@link #rawgetMetamethod(Table, String, int)}). If {@code o} does not have
+	 * a metatable or {@code event} does not exist in it as a key, returns {@code null}.
+	 *
+	 * @param event  the key to look up in the metatable, must not be {@code null}
+	 * @param flag  the flag corresponding to {@code event}, or {@code 0}
+	 * @param o  the object in question, must not be {@code null}
+	 * @return a non-{@code null} value if {@code event} is a key in {@code o}'s metatable;
+	 *         {@code null} otherwise
+	 *
+	 * @throws NullPointerException  if {@code o} or {@code event} is {@code null}
+	 */
+	public static Object getMetamethod(String event, int flag, LuaObject o) {
 		Objects.requireNonNull(event);
 		Objects.requireNonNull(o);
 
 		Table mt = o.getMetatable();
 		if (mt != null) {
-			return mt.rawget(event);
+			return rawgetMetamethod(mt, event, flag);
 		}
 		else {
 			return null;
@@ -212,12 +395,31 @@ public final class Metatables {
 	 * @throws NullPointerException  if {@code metatableProvider} or {@code event} is {@code null}
 	 */
 	public static Object getMetamethod(MetatableProvider metatableProvider, String event, Object o) {
+		return getMetamethod(metatableProvider, event, 0, o);
+	}
+
+	/**
+	 * Returns the entry with the key {@code event} of the metatable of the object {@code o},
+	 * caching its absence using {@code flag} (see {@link #rawgetMetamethod(Table, String, int)}).
+	 * If {@code o} does not have a metatable or {@code event} does not exist in it as
+	 * a key, returns {@code null}.
+	 *
+	 * @param metatableProvider  the metatable provider, must not be {@code null}
+	 * @param event  the key to look up in the metatable, must not be {@code null}
+	 * @param flag  the flag corresponding to {@code event}, or {@code 0}
+	 * @param o  the object in question, may be {@code null}
+	 * @return  a non-{@code null} value if {@code event} is a key in {@code o}'s metatable;
+	 *          {@code null} otherwise
+	 *
+	 * @throws NullPointerException  if {@code metatableProvider} or {@code event} is {@code null}
+	 */
+	public static Object getMetamethod(MetatableProvider metatableProvider, String event, int flag, Object o) {
 		Objects.requireNonNull(event);
 		// o can be null
 
 		Table mt = metatableProvider.getMetatable(o);
 		if (mt != null) {
-			return mt.rawget(event);
+			return rawgetMetamethod(mt, event, flag);
 		}
 		else {
 			return null;
@@ -243,10 +445,30 @@ public final class Metatables {
 	 * @throws NullPointerException  if {@code metatableProvider} or {@code event} is {@code null}
 	 */
 	public static Object binaryHandlerFor(MetatableProvider metatableProvider, String event, Object a, Object b) {
+		return binaryHandlerFor(metatableProvider, event, 0, a, b);
+	}
+
+	/**
+	 * Returns the metatable entry {@code event} for {@code a} or in {@code b}, or {@code null}
+	 * if neither {@code a} nor {@code b} has such an entry in their metatable, caching
+	 * the absence of the entry using {@code flag} (see {@link #rawgetMetamethod(Table, String, int)}).
+	 *
+	 * @param metatableProvider  the metatable provider, must not be {@code null}
+	 * @param event  the key to look up in the metatable, must not be {@code null}
+	 * @param flag  the flag corresponding to {@code event}, or {@code 0}
+	 * @param a  the first object to try, may be {@code null}
+	 * @param b  the second object to try, may be {@code null}
+	 *
+	 * @return  a non-{@code null} value if {@code event} is a key in {@code a}'s or {@code b}'s
+	 *          metatable (in this order); {@code null} otherwise
+	 *
+	 * @throws NullPointerException  if {@code metatableProvider} or {@code event} is {@code null}
+	 */
+	public static Object binaryHandlerFor(MetatableProvider metatableProvider, String event, int flag, Object a, Object b) {
 		Objects.requireNonNull(metatableProvider);
 		Objects.requireNonNull(event);
-		Object ma = Metatables.getMetamethod(metatableProvider, event, a);
-		return ma != null ? ma : Metatables.getMetamethod(metatableProvider, event, b);
+		Object ma = Metatables.getMetamethod(metatableProvider, event, flag, a);
+		return ma != null ? ma : Metatables.getMetamethod(metatableProvider, event, flag, b);
 	}
 
 }
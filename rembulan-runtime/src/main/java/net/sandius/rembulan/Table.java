@@ -89,8 +89,10 @@ public abstract class Table extends LuaObject {
 	 * <ul>
 	 *     <li>float keys that have an integer value must be treated as integer keys
 	 *       (e.g. by using {@link Conversions#normaliseKey(Object)};</li>
-	 *     <li>updates of the value associated with the key {@code "__mode"}
-	 *       must call {@link #updateBasetableModes(Object, Object)}.</li>
+	 *     <li>updates of the value associated with the key {@code "__mode"} must call
+	 *       {@link #updateBasetableModes(Object, Object)}; if the table caches the absence
+	 *       of metamethods (see {@link #cachesAbsentMetamethods()}), so must the updates
+	 *       of any string key beginning with {@code "__"}.</li>
 	 * </ul>
 	 *
 	 * @param key  the key, must not be {@code null} or <i>NaN</i>
@@ -119,6 +121,36 @@ public abstract class Table extends LuaObject {
 		rawset(Long.valueOf(idx), value);
 	}
 
+	/**
+	 * Hints to this table that values are about to be associated with (most of)
+	 * the integer keys 1..{@code size}, giving the implementation an opportunity to allocate
+	 * storage for them in advance.
+	 *
+	 * <p>This method must not change the contents of the table. The default implementation
+	 * does nothing.</p>
+	 *
+	 * @param size  the expected number of integer keys
+	 */
+	public void ensureArrayCapacity(long size) {
+		// no-op by default
+	}
+
+	/**
+	 * Attempts to sort the values associated with the keys 1..{@code len} in ascending
+	 * order without consulting any metamethods, provided that they are all numbers and
+	 * the implementation is able to do so directly on its internal representation.
+	 *
+	 * <p>When this method returns {@code false}, the table must be left unmodified.
+	 * The default implementation does nothing and returns {@code false}.</p>
+	 *
+	 * @param len  the length of the sequence to sort
+	 * @return  {@code true} if the sequence has been sorted, {@code false} if the table
+	 *          was left unmodified
+	 */
+	public boolean rawSortNumbers(long len) {
+		return false;
+	}
+
 	/**
 	 * If this table is a sequence, returns the length of this sequence.
 	 *
@@ -180,10 +212,10 @@ public abstract class Table extends LuaObject {
 	 * to {@link #successorKeyOf(Object)} will visit all keys in this table exactly once
 	 * (in an unspecified order):</p>
 	 * <pre>
-	 *     Object k = table.initialIndex();
+	 *     Object k = table.initialKey();
 	 *     while (k != null) {
 	 *         // process the key k
-	 *         k = table.nextIndex(k);
+	 *         k = table.successorKeyOf(k);
 	 *     }
 	 *     // at this point, we visited all keys in table exactly once
 	 * </pre>
@@ -213,6 +245,181 @@ public abstract class Table extends LuaObject {
 	 */
 	public abstract Object successorKeyOf(Object key);
 
+	/**
+	 * Returns the traversal index of the initial entry in this table, or {@code -1}
+	 * if this table is empty.
+	 *
+	 * <p>Traversal indices provide an alternative to {@link #initialKey()}
+	 * and {@link #successorKeyOf(Object)} for iterating through the entries in this table
+	 * that does not require a key lookup in every step:</p>
+	 * <pre>
+	 *     long i = table.initialIndex();
+	 *     while (i &gt;= 0) {
+	 *         Object k = table.keyAt(i);
+	 *         Object v = table.valueAt(i);
+	 *         // process the entry (k, v)
+	 *         i = table.successorIndexOf(i);
+	 *     }
+	 * </pre>
+	 *
+	 * <p>The entries are visited in the same order as when iterating using keys. Traversal
+	 * indices are non-negative, and remain valid in the same circumstances as the keys
+	 * used for iteration.</p>
+	 *
+	 * <p>The default implementation of the traversal index methods is based
+	 * on {@link #initialKey()} and {@link #successorKeyOf(Object)}, and all methods
+	 * except for this one take time linear in the size of the table. Implementations
+	 * are strongly encouraged to override them.</p>
+	 *
+	 * @return  the traversal index of the initial entry, or {@code -1} if the table is empty
+	 */
+	public long initialIndex() {
+		return initialKey() != null ? 0L : -1L;
+	}
+
+	/**
+	 * Returns the traversal index of the entry following the entry at the traversal index
+	 * {@code index}, or {@code -1} if there is no such entry.
+	 *
+	 * @param index  the traversal index
+	 * @return  the traversal index of the next entry, or {@code -1} if {@code index} is
+	 *          the index of the last entry
+	 *
+	 * @throws IllegalArgumentException  if {@code index} is not a valid traversal index
+	 *
+	 * @see #initialIndex()
+	 */
+	public long successorIndexOf(long index) {
+		return successorKeyOf(keyAt(index)) != null ? index + 1 : -1L;
+	}
+
+	/**
+	 * Returns the traversal index of the entry with the key {@code key}, or {@code -1}
+	 * if {@code key} does not have a traversal index in this table.
+	 *
+	 * @param key  the key, may be {@code null}
+	 * @return  the traversal index of {@code key}, or {@code -1} if {@code key} does not
+	 *          have a traversal index
+	 *
+	 * @see #initialIndex()
+	 */
+	public long indexOf(Object key) {
+		key = Conversions.normaliseKey(key);
+		if (key == null) {
+			return -1L;
+		}
+
+		long index = 0;
+		for (Object k = initialKey(); k != null; k = successorKeyOf(k)) {
+			if (k.equals(key)) {
+				return index;
+			}
+			index += 1;
+		}
+		return -1L;
+	}
+
+	/**
+	 * Returns the key of the entry at the traversal index {@code index}. The key
+	 * is {@code null} if the entry has been removed from a table with weak keys by
+	 * the garbage collector.
+	 *
+	 * @param index  the traversal index
+	 * @return  the key at {@code index}, may be {@code null}
+	 *
+	 * @throws IllegalArgumentException  if {@code index} is not a valid traversal index
+	 *
+	 * @see #initialIndex()
+	 */
+	public Object keyAt(long index) {
+		Object k = index >= 0 ? initialKey() : null;
+		for (long i = 0; k != null && i < index; i++) {
+			k = successorKeyOf(k);
+		}
+		if (k == null) {
+			throw new IllegalArgumentException("invalid traversal index: " + index);
+		}
+		return k;
+	}
+
+	/**
+	 * Returns the value of the entry at the traversal index {@code index}. The value
+	 * is {@code null} if the entry has been removed from the table after the index
+	 * has been obtained.
+	 *
+	 * @param index  the traversal index
+	 * @return  the value at {@code index}, may be {@code null}
+	 *
+	 * @throws IllegalArgumentException  if {@code index} is not a valid traversal index
+	 *
+	 * @see #initialIndex()
+	 */
+	public Object valueAt(long index) {
+		return rawget(keyAt(index));
+	}
+
+	/**
+	 * Returns a <i>hint</i> for accessing the value associated with {@code key} using
+	 * {@link #rawgetHinted(long, Object)} and {@link #rawsetHinted(long, Object, Object)},
+	 * or {@code -1} if there is no value associated with {@code key} in this table or if this
+	 * table does not provide hints for {@code key}.
+	 *
+	 * <p>Hints are meant to be used by inline caches for accesses with constant keys.
+	 * A hint is opaque, and may become stale at any time (e.g. when the table is modified):
+	 * the hinted methods validate the hints they are given. Implementations are however
+	 * expected to produce the same hint for a key in tables of the same structure.</p>
+	 *
+	 * <p>The default implementation returns {@code -1}.</p>
+	 *
+	 * @param key  the key, may be {@code null}
+	 * @return  a non-negative hint for {@code key}, or {@code -1} if no hint is available
+	 */
+	public long hintOf(Object key) {
+		return -1L;
+	}
+
+	/**
+	 * Retrieves the value associated with {@code key} using the hint {@code hint}
+	 * (see {@link #hintOf(Object)}), provided that {@code hint} refers to the entry with
+	 * the key {@code key} (compared by identity). Otherwise, returns {@code null}.
+	 *
+	 * <p>Note that a {@code null} result does not imply that there is no value associated
+	 * with {@code key} in this table: in that case, the callers should fall back to
+	 * {@link #rawget(Object)}.</p>
+	 *
+	 * <p>The default implementation returns {@code null}.</p>
+	 *
+	 * @param hint  the hint
+	 * @param key  the key, may be {@code null}
+	 * @return  the value associated with {@code key} if {@code hint} is valid for {@code key};
+	 *          {@code null} otherwise
+	 */
+	public Object rawgetHinted(long hint, Object key) {
+		return null;
+	}
+
+	/**
+	 * Replaces the value associated with {@code key} by {@code value} using the hint
+	 * {@code hint} (see {@link #hintOf(Object)}), provided that {@code hint} refers to the entry
+	 * with the key {@code key} (compared by identity), the entry has a non-{@code null} value,
+	 * and {@code value} is not {@code null}. Returns {@code true} if the value has been
+	 * replaced, and {@code false} if the table has been left unmodified.
+	 *
+	 * <p>Since this method does not call {@link #updateBasetableModes(Object, Object)},
+	 * it must not be used with keys that are strings beginning with {@code "__"}.</p>
+	 *
+	 * <p>The default implementation returns {@code false}.</p>
+	 *
+	 * @param hint  the hint
+	 * @param key  the key, may be {@code null}
+	 * @param value  the new value, may be {@code null}
+	 * @return  {@code true} if the value associated with {@code key} has been replaced;
+	 *          {@code false} otherwise
+	 */
+	public boolean rawsetHinted(long hint, Object key, Object value) {
+		return false;
+	}
+
 	/**
 	 * The metatable of this table, may be {@code null}.
 	 */
@@ -231,6 +438,42 @@ public abstract class Table extends LuaObject {
 	 */
 	private final Set<Table> basetables = Collections.newSetFromMap(new WeakHashMap<Table, Boolean>());
 
+	/**
+	 * A bit set of the metamethod events known to be absent from this table when used
+	 * as a metatable. Maintained by {@link Metatables#rawgetMetamethod(Table, String, int)}
+	 * when {@link #cachesAbsentMetamethods()} is {@code true},
+	 * cleared by {@link #updateBasetableModes(Object, Object)}.
+	 */
+	private int absentMetamethods;
+
+	boolean isMetamethodAbsent(int flag) {
+		return (absentMetamethods & flag) != 0;
+	}
+
+	void setMetamethodAbsent(int flag) {
+		// not thread-safe!
+		if (cachesAbsentMetamethods()) {
+			absentMetamethods |= flag;
+		}
+	}
+
+	/**
+	 * Returns {@code true} if the absence of metamethods may be cached in this table
+	 * when it is used as a metatable (see {@link Metatables#rawgetMetamethod(Table, String, int)}).
+	 *
+	 * <p>Implementations that return {@code true} <b>must</b> call
+	 * {@link #updateBasetableModes(Object, Object)} on every update of a string key
+	 * beginning with {@code "__"}, not just of {@link Metatables#MT_MODE}: otherwise,
+	 * assignments to metamethod keys may be masked by the cache.</p>
+	 *
+	 * <p>The default implementation returns {@code false}.</p>
+	 *
+	 * @return  {@code true} if this table caches the absence of metamethods
+	 */
+	protected boolean cachesAbsentMetamethods() {
+		return false;
+	}
+
 	/**
 	 * Sets the metatable of this table to {@code mt}. {@code mt} may be {@code null}:
 	 * in that case, removes the metatable from this object.
@@ -284,21 +527,31 @@ public abstract class Table extends LuaObject {
 	/**
 	 * If {@code key} is equal to {@link Metatables#MT_MODE}, updates the weakness of the tables
 	 * that use this table as their metatable (i.e., the <i>basetables</i> of this table).
+	 * If {@code key} is a string beginning with {@code "__"}, discards the cached
+	 * information about the metamethods absent from this table
+	 * (see {@link #cachesAbsentMetamethods()}).
 	 * Otherwise, this method has no effect.
 	 *
 	 * <p>Whenever applicable, this method <b>must</b> be called by the implementations
 	 * of {@link #rawset(Object, Object)} in order to ensure that assignments to
 	 * the {@link Metatables#MT_MODE} key update the weakness mode of the tables that use this
-	 * table as a metatable, as required by §2.5.2 of the Lua Reference Manual.</p>
+	 * table as a metatable, as required by §2.5.2 of the Lua Reference Manual, and that
+	 * assignments to metamethod keys are not masked by the metamethod cache.</p>
 	 *
-	 * <p>It is safe not to call this method when {@code key} is known not to be equal to
-	 * {@link Metatables#MT_MODE}.</p>
+	 * <p>It is safe not to call this method when {@code key} is known not to be
+	 * equal to {@link Metatables#MT_MODE}, or, for tables that cache the absence
+	 * of metamethods, when {@code key} is known not to be a string beginning
+	 * with {@code "__"}.</p>
 	 *
 	 * @param key  the key, may be {@code null}
 	 * @param value  the value, may be {@code null}
 	 */
 	protected void updateBasetableModes(Object key, Object value) {
 		// not thread-safe!
+		if (absentMetamethods != 0 && key instanceof String && ((String) key).startsWith("__")) {
+			absentMetamethods = 0;
+		}
+
 		if (Metatables.MT_MODE.equals(key)) {
 			boolean wk = false;
 			boolean wv = false;
@@ -0,0 +1,987 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.impl;
+
+import net.sandius.rembulan.Conversions;
+import net.sandius.rembulan.Table;
+import net.sandius.rembulan.TableFactory;
+
+import java.util.Arrays;
+
+/**
+ * Implementation of the Lua table that splits its contents into an <i>array part</i>
+ * and a <i>hash part</i>, in the manner of the reference implementation of Lua.
+ *
+ * <p>The array part stores the values associated with the integer keys
+ * 1..<i>n</i> (where <i>n</i> is the size of the array part) in a plain array, so that
+ * access to sequences requires neither boxing of the keys nor hashing. All other keys
+ * are stored in the hash part, which is an open-addressing hash table. Whenever the hash
+ * part needs to grow, the table is <i>rehashed</i>: the size of the array part is chosen
+ * to be the largest <i>n</i> such that more than half of the slots 1..<i>n</i> are in use,
+ * and integer keys are migrated between the two parts accordingly.</p>
+ *
+ * <p>As long as the array part holds a sequence of values of the same numeric type
+ * (i.e., a sequence of integers or a sequence of floats), it is stored in a primitive
+ * {@code long[]} or {@code double[]} array rather than in an array of boxed values.
+ * The table reverts to an {@code Object[]} array part once a value of a different type
+ * is stored in it or the sequence is broken by a hole.</p>
+ *
+ * <p>The table supports weak keys and values: when the table becomes weak (as a result
+ * of the {@code "__mode"} field of its metatable), its contents are moved to a separate
+ * storage that holds keys and/or values using weak references.</p>
+ */
+public class ArrayHashTable extends Table {
+
+	private static final Object[] EMPTY = new Object[0];
+
+	// the maximal size of the array part is 2^MAX_ARRAY_BITS
+	private static final int MAX_ARRAY_BITS = 30;
+
+	private Object[] array;  // array[i] is the value associated with the key (i + 1)
+
+	// specialised array part: when one of longArray and doubleArray is non-null, array is empty,
+	// and the values associated with the keys 1..arrayCount are stored in the first arrayCount
+	// elements of the non-null array; the size of the array part is the length of that array.
+	// An empty specialised array part (arrayCount == 0) switches its type freely.
+	private long[] longArray;
+	private double[] doubleArray;
+	private int arrayCount;  // 0 unless specialised
+
+	// hash part: keys and values in parallel arrays, length 0 or a power of 2;
+	// a key with a null value is a dead key, kept so as not to break probe sequences
+	// and traversals
+	private Object[] hashKeys;
+	private Object[] hashValues;
+	private int hashCount;  // number of live keys in the hash part
+	private int hashUsed;  // number of live and dead keys in the hash part
+	private int hashIntegerCount;  // number of live integer keys in the hash part
+
+	// the cached length of the table (i.e., a border), or -1 if unknown; maintained by rawset,
+	// and only used when the table is not weak
+	private long border;
+
+	// non-null iff the table has weak keys or values; when non-null, the array and hash parts
+	// are empty and all entries are stored here
+	private WeakEntryMap weak;
+
+	/**
+	 * Constructs a new empty table with storage pre-allocated for {@code array} values
+	 * in the array part and {@code hash} entries in the hash part.
+	 *
+	 * @param array  initial size of the array part, negative values are treated as {@code 0}
+	 * @param hash  initial capacity of the hash part, negative values are treated as {@code 0}
+	 */
+	public ArrayHashTable(int array, int hash) {
+		int capacity = hashCapacityFor(Math.max(0, hash));
+		this.array = array > 0 ? new Object[Math.min(array, 1 << MAX_ARRAY_BITS)] : EMPTY;
+		this.hashKeys = capacity > 0 ? new Object[capacity] : EMPTY;
+		this.hashValues = capacity > 0 ? new Object[capacity] : EMPTY;
+		this.longArray = null;
+		this.doubleArray = null;
+		this.arrayCount = 0;
+		this.hashCount = 0;
+		this.hashUsed = 0;
+		this.hashIntegerCount = 0;
+		this.border = 0L;
+		this.weak = null;
+	}
+
+	/**
+	 * Constructs a new empty table.
+	 */
+	public ArrayHashTable() {
+		this(0, 0);
+	}
+
+	static class Factory implements TableFactory {
+		@Override
+		public Table newTable() {
+			return newTable(0, 0);
+		}
+
+		@Override
+		public Table newTable(int array, int hash) {
+			return new ArrayHashTable(array, hash);
+		}
+	}
+
+	private static final TableFactory FACTORY_INSTANCE = new Factory();
+
+	/**
+	 * Returns the table factory for constructing instances of {@code ArrayHashTable}.
+	 *
+	 * @return  the table factory for {@code ArrayHashTable}s
+	 */
+	public static TableFactory factory() {
+		return FACTORY_INSTANCE;
+	}
+
+	@Override
+	public Object rawget(Object key) {
+		key = Conversions.normaliseKey(key);
+		if (key instanceof Long) {
+			return rawget(((Long) key).longValue());
+		}
+		else {
+			return key != null ? hashGet(key) : null;
+		}
+	}
+
+	@Override
+	public Object rawget(long idx) {
+		Object[] a = array;
+		if (idx - 1 >= 0 && idx - 1 < a.length) {
+			return a[(int) (idx - 1)];
+		}
+		else if (idx - 1 >= 0 && idx - 1 < arrayCount) {
+			// note: the casts prevent the conditional from being a numeric one
+			long[] la = longArray;
+			return la != null
+					? (Object) Long.valueOf(la[(int) (idx - 1)])
+					: (Object) Double.valueOf(doubleArray[(int) (idx - 1)]);
+		}
+		else {
+			return hashCount > 0 || weak != null ? hashGet(Long.valueOf(idx)) : null;
+		}
+	}
+
+	@Override
+	public void rawset(Object key, Object value) {
+		key = Conversions.normaliseKey(key);
+
+		if (key == null) {
+			throw new IllegalArgumentException("table index is nil");
+		}
+		if (key instanceof Long) {
+			rawset(((Long) key).longValue(), value);
+			return;
+		}
+		if (key instanceof Double && Double.isNaN(((Double) key).doubleValue())) {
+			throw new IllegalArgumentException("table index is NaN");
+		}
+
+		hashSet(key, value);
+
+		updateBasetableModes(key, value);
+	}
+
+	@Override
+	protected boolean cachesAbsentMetamethods() {
+		// rawset calls updateBasetableModes for every key
+		return true;
+	}
+
+	@Override
+	public void rawset(long idx, Object value) {
+		Object[] a = array;
+		if (idx - 1 >= 0 && idx - 1 < a.length) {
+			a[(int) (idx - 1)] = value;
+		}
+		else if (!isSpecialised() || !specialisedSet(idx, value)) {
+			hashSet(Long.valueOf(idx), value);
+		}
+
+		if (border >= 0) {
+			updateBorder(idx, value);
+		}
+	}
+
+	// updates the cached border after the value associated with the key idx has been set
+	// to value, assuming that border >= 0
+	private void updateBorder(long idx, Object value) {
+		long b = border;
+		if (value != null) {
+			if (idx == b + 1) {
+				// appending: the sequence may now continue past idx
+				border = rawget(idx + 1) == null ? idx : -1L;
+			}
+		}
+		else if (idx == b) {
+			// removing the last element: there may be a hole before it
+			border = idx == 1 || rawget(idx - 1) != null ? idx - 1 : -1L;
+		}
+		// otherwise, border remains a border
+	}
+
+	private boolean isSpecialised() {
+		return longArray != null || doubleArray != null;
+	}
+
+	private int arraySize() {
+		return longArray != null
+				? longArray.length
+				: (doubleArray != null ? doubleArray.length : array.length);
+	}
+
+	// returns the value at the index i of the array part, assuming 0 <= i < arraySize()
+	private Object arrayValueAt(int i) {
+		if (i < array.length) {
+			return array[i];
+		}
+		else if (i < arrayCount) {
+			return longArray != null
+					? (Object) Long.valueOf(longArray[i])
+					: (Object) Double.valueOf(doubleArray[i]);
+		}
+		else {
+			return null;
+		}
+	}
+
+	// attempts to set the value of the key idx in the specialised array part, growing it
+	// if idx immediately follows a full array part; deoptimises the array part if the value
+	// cannot be stored in it. Returns false iff idx belongs to the hash part.
+	private boolean specialisedSet(long idx, Object value) {
+		int size = arraySize();
+		if (idx - 1 < 0 || idx - 1 > size) {
+			return false;
+		}
+
+		int i = (int) (idx - 1);
+		int n = arrayCount;
+
+		if (value == null) {
+			if (i == n - 1) {
+				// removing the last value
+				arrayCount = n - 1;
+			}
+			else if (i < n - 1) {
+				// a hole in the sequence
+				deoptimise();
+				array[i] = null;
+			}
+			// else: nothing to remove (and if i == size, not in the array part)
+			return i < size;
+		}
+
+		if (n == 0 && i == 0) {
+			// the array part is empty: adapt its type to the value
+			if (value instanceof Long && longArray == null) {
+				longArray = new long[size];
+				doubleArray = null;
+			}
+			else if (value instanceof Double && doubleArray == null) {
+				doubleArray = new double[size];
+				longArray = null;
+			}
+		}
+
+		boolean fits = longArray != null ? value instanceof Long : value instanceof Double;
+
+		if (fits && i <= n) {
+			if (i == size) {
+				// appending to a full array part: grow it, unless it would need to absorb integer
+				// keys from the hash part
+				if (hashIntegerCount > 0 || size >= 1 << MAX_ARRAY_BITS) {
+					return false;
+				}
+				int newSize = (int) Math.min(2L * size, 1 << MAX_ARRAY_BITS);
+				if (longArray != null) {
+					longArray = Arrays.copyOf(longArray, newSize);
+				}
+				else {
+					doubleArray = Arrays.copyOf(doubleArray, newSize);
+				}
+			}
+
+			if (longArray != null) {
+				longArray[i] = ((Long) value).longValue();
+			}
+			else {
+				doubleArray[i] = ((Double) value).doubleValue();
+			}
+			if (i == n) {
+				arrayCount = n + 1;
+			}
+			return true;
+		}
+		else if (i < size) {
+			deoptimise();
+			array[i] = value;
+			return true;
+		}
+		else {
+			return false;
+		}
+	}
+
+	// converts a specialised array part to an Object[] array part
+	private void deoptimise() {
+		Object[] a = new Object[arraySize()];
+		for (int i = 0; i < arrayCount; i++) {
+			a[i] = arrayValueAt(i);
+		}
+		array = a;
+		longArray = null;
+		doubleArray = null;
+		arrayCount = 0;
+	}
+
+	// converts the Object[] array part to a specialised array part if it contains a sequence
+	// of integers or floats (or nothing at all)
+	private void trySpecialise() {
+		Object[] a = array;
+		if (a.length == 0) {
+			return;
+		}
+
+		Class<?> type = a[0] != null ? a[0].getClass() : null;
+		if (type != null && type != Long.class && type != Double.class) {
+			return;
+		}
+
+		int n = 0;
+		while (n < a.length && a[n] != null && a[n].getClass() == type) {
+			n += 1;
+		}
+		for (int i = n; i < a.length; i++) {
+			if (a[i] != null) {
+				return;
+			}
+		}
+
+		if (type == Double.class) {
+			double[] da = new double[a.length];
+			for (int i = 0; i < n; i++) {
+				da[i] = ((Double) a[i]).doubleValue();
+			}
+			doubleArray = da;
+		}
+		else {
+			long[] la = new long[a.length];
+			for (int i = 0; i < n; i++) {
+				la[i] = ((Long) a[i]).longValue();
+			}
+			longArray = la;
+		}
+		array = EMPTY;
+		arrayCount = n;
+	}
+
+	/**
+	 * Sorts the values associated with the keys 1..{@code len} in ascending order, provided
+	 * that they are all integers or all floats different from NaN, and are stored
+	 * in the specialised array part of this table. Otherwise, the table is left unmodified.
+	 *
+	 * <p>This method is a fast path for the raw sorting of numeric sequences that does not
+	 * require the values to be boxed.</p>
+	 *
+	 * @param len  the length of the sequence to sort
+	 * @return  {@code true} if the sequence has been sorted, {@code false} if the table
+	 *          was left unmodified
+	 */
+	@Override
+	public boolean rawSortNumbers(long len) {
+		if (!isSpecialised() || len < 0 || len > arrayCount) {
+			return false;
+		}
+
+		int n = (int) len;
+		if (longArray != null) {
+			Arrays.sort(longArray, 0, n);
+			return true;
+		}
+		else {
+			double[] da = doubleArray;
+			for (int i = 0; i < n; i++) {
+				if (Double.isNaN(da[i])) {
+					// leave the handling of NaNs to the generic algorithm
+					return false;
+				}
+			}
+			Arrays.sort(da, 0, n);
+			return true;
+		}
+	}
+
+	@Override
+	public void ensureArrayCapacity(long size) {
+		if (weak == null && size > arraySize()) {
+			resize((int) Math.min(size, 1 << MAX_ARRAY_BITS), hashCount);
+		}
+	}
+
+	@Override
+	public long rawlen() {
+		if (weak != null) {
+			return super.rawlen();
+		}
+
+		long b = border;
+		if (b < 0) {
+			b = findBorder();
+			border = b;
+		}
+		return b;
+	}
+
+	private long findBorder() {
+		if (isSpecialised()) {
+			int size = arraySize();
+			if (arrayCount < size || hashCount == 0 || hashGet(Long.valueOf(size + 1L)) == null) {
+				return arrayCount;
+			}
+			else {
+				// the sequence continues into the hash part
+				return super.rawlen();
+			}
+		}
+
+		Object[] a = array;
+		int n = a.length;
+
+		if (n > 0 && a[n - 1] == null) {
+			// there is a border in the array part: binary search for it
+
+			int min = 0;  // a[min - 1] != null or min == 0
+			int max = n;  // a[max - 1] == null
+
+			while (max - min > 1) {
+				int mid = (min + max) >>> 1;
+				if (a[mid - 1] == null) {
+					max = mid;
+				}
+				else {
+					min = mid;
+				}
+			}
+
+			return min;
+		}
+		else if (hashCount == 0 || hashGet(Long.valueOf(n + 1L)) == null) {
+			return n;
+		}
+		else {
+			// the sequence continues into the hash part
+			return super.rawlen();
+		}
+	}
+
+	@Override
+	public Object initialKey() {
+		long index = initialIndex();
+		return index >= 0 ? keyAt(index) : null;
+	}
+
+	@Override
+	public Object successorKeyOf(Object key) {
+		long index = indexOf(key);
+		if (index < 0) {
+			throw new IllegalArgumentException("invalid key to 'next'");
+		}
+		long next = successorIndexOf(index);
+		return next >= 0 ? keyAt(next) : null;
+	}
+
+	// traversal indices: index i < arraySize() refers to the key (i + 1) in the array part,
+	// index (arraySize() + j) refers to the j-th slot of the hash part
+
+	@Override
+	public long initialIndex() {
+		if (weak != null) {
+			return weak.initialIndex();
+		}
+
+		return nextIndexFrom(0);
+	}
+
+	@Override
+	public long successorIndexOf(long index) {
+		if (weak != null) {
+			return weak.successorIndexOf(index);
+		}
+
+		if (index < 0 || index >= (long) arraySize() + hashKeys.length) {
+			throw new IllegalArgumentException("invalid traversal index: " + index);
+		}
+		return nextIndexFrom((int) index + 1);
+	}
+
+	@Override
+	public long indexOf(Object key) {
+		key = Conversions.normaliseKey(key);
+
+		if (key == null) {
+			return -1L;
+		}
+		if (weak != null) {
+			return weak.indexOf(key);
+		}
+
+		if (key instanceof Long) {
+			long idx = ((Long) key).longValue();
+			if (idx - 1 >= 0 && idx - 1 < arraySize()) {
+				return idx - 1;
+			}
+		}
+
+		int slot = hashSlotOf(key);
+		return slot >= 0 ? arraySize() + slot : -1L;
+	}
+
+	@Override
+	public Object keyAt(long index) {
+		if (weak != null) {
+			return weak.keyAt(index);
+		}
+
+		int n = arraySize();
+		if (index >= 0 && index < n) {
+			return Long.valueOf(index + 1);
+		}
+		else if (index >= n && index - n < hashKeys.length && hashKeys[(int) (index - n)] != null) {
+			return hashKeys[(int) (index - n)];
+		}
+		else {
+			throw new IllegalArgumentException("invalid traversal index: " + index);
+		}
+	}
+
+	@Override
+	public Object valueAt(long index) {
+		if (weak != null) {
+			return weak.valueAt(index);
+		}
+
+		int n = arraySize();
+		if (index >= 0 && index < n) {
+			return arrayValueAt((int) index);
+		}
+		else if (index >= n && index - n < hashKeys.length && hashKeys[(int) (index - n)] != null) {
+			return hashValues[(int) (index - n)];
+		}
+		else {
+			throw new IllegalArgumentException("invalid traversal index: " + index);
+		}
+	}
+
+	// hints are slots of the hash part; keys in the array part have no hints
+
+	@Override
+	public long hintOf(Object key) {
+		if (weak != null || key == null || key instanceof Number) {
+			return -1L;
+		}
+		int slot = hashSlotOf(key);
+		return slot >= 0 && hashValues[slot] != null ? slot : -1L;
+	}
+
+	@Override
+	public Object rawgetHinted(long hint, Object key) {
+		Object[] ks = hashKeys;
+		return hint >= 0 && hint < ks.length && ks[(int) hint] == key
+				? hashValues[(int) hint]
+				: null;
+	}
+
+	@Override
+	public boolean rawsetHinted(long hint, Object key, Object value) {
+		Object[] ks = hashKeys;
+		if (value != null && hint >= 0 && hint < ks.length && ks[(int) hint] == key
+				&& hashValues[(int) hint] != null) {
+			hashValues[(int) hint] = value;
+			return true;
+		}
+		else {
+			return false;
+		}
+	}
+
+	private long nextIndexFrom(int from) {
+		int n = arraySize();
+		if (isSpecialised()) {
+			if (from < arrayCount) {
+				return from;
+			}
+		}
+		else {
+			Object[] a = array;
+			for (int i = from; i < n; i++) {
+				if (a[i] != null) {
+					return i;
+				}
+			}
+		}
+
+		Object[] vs = hashValues;
+		for (int j = Math.max(0, from - n); j < vs.length; j++) {
+			if (vs[j] != null) {
+				return n + j;
+			}
+		}
+
+		return -1L;
+	}
+
+	@Override
+	protected void setMode(boolean weakKeys, boolean weakValues) {
+		WeakEntryMap old = weak;
+
+		if (old != null && old.hasWeakKeys() == weakKeys && old.hasWeakValues() == weakValues) {
+			// no change
+			return;
+		}
+		if (old == null && !weakKeys && !weakValues) {
+			// no change
+			return;
+		}
+
+		// collect the entries before the storage is replaced
+		Object[] keys = new Object[old != null ? old.size() : arraySize() + hashCount];
+		Object[] values = new Object[keys.length];
+		int n = 0;
+		for (long i = initialIndex(); i >= 0 && n < keys.length; i = successorIndexOf(i)) {
+			Object v = valueAt(i);
+			if (v != null) {
+				keys[n] = keyAt(i);
+				values[n] = v;
+				n += 1;
+			}
+		}
+
+		array = EMPTY;
+		longArray = null;
+		doubleArray = null;
+		arrayCount = 0;
+		hashKeys = EMPTY;
+		hashValues = EMPTY;
+		hashCount = 0;
+		hashUsed = 0;
+		hashIntegerCount = 0;
+		border = -1L;
+		weak = weakKeys || weakValues ? new WeakEntryMap(weakKeys, weakValues, n) : null;
+
+		for (int i = 0; i < n; i++) {
+			hashSet(keys[i], values[i]);
+		}
+	}
+
+	private static int hash(Object key) {
+		int h = key.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+	private int hashSlotOf(Object key) {
+		Object[] ks = hashKeys;
+		if (ks.length == 0) {
+			return -1;
+		}
+
+		int mask = ks.length - 1;
+		int i = hash(key) & mask;
+		Object k;
+		while ((k = ks[i]) != null) {
+			if (k == key || k.equals(key)) {
+				return i;
+			}
+			i = (i + 1) & mask;
+		}
+		return -1;
+	}
+
+	private Object hashGet(Object key) {
+		if (weak != null) {
+			return weak.get(key);
+		}
+
+		int slot = hashSlotOf(key);
+		return slot >= 0 ? hashValues[slot] : null;
+	}
+
+	private void hashSet(Object key, Object value) {
+		if (weak != null) {
+			weak.put(key, value);
+			return;
+		}
+
+		Object[] ks = hashKeys;
+
+		int free = -1;
+
+		if (ks.length > 0) {
+			int mask = ks.length - 1;
+			int i = hash(key) & mask;
+			Object k;
+			while ((k = ks[i]) != null) {
+				if (k == key || k.equals(key)) {
+					// existing (possibly dead) key
+					Object old = hashValues[i];
+					hashValues[i] = value;
+					if (old == null && value != null) {
+						hashCount += 1;
+						if (k instanceof Long) hashIntegerCount += 1;
+					}
+					else if (old != null && value == null) {
+						hashCount -= 1;
+						if (k instanceof Long) hashIntegerCount -= 1;
+					}
+					return;
+				}
+				if (free < 0 && hashValues[i] == null) {
+					// a dead key: may be reused for a new key
+					free = i;
+				}
+				i = (i + 1) & mask;
+			}
+
+			if (value == null) {
+				// no such key, nothing to remove
+				return;
+			}
+
+			if (key instanceof String) {
+				// store the canonical instance of short keys (see StringInterner)
+				key = StringInterner.intern((String) key);
+			}
+
+			if (free >= 0) {
+				hashKeys[free] = key;
+				hashValues[free] = value;
+				hashCount += 1;
+				if (key instanceof Long) hashIntegerCount += 1;
+				return;
+			}
+			else if (hashUsed + 1 <= maxUsed(ks.length)) {
+				hashKeys[i] = key;
+				hashValues[i] = value;
+				hashCount += 1;
+				hashUsed += 1;
+				if (key instanceof Long) hashIntegerCount += 1;
+				return;
+			}
+		}
+		else if (value == null) {
+			return;
+		}
+
+		// no room for the new key
+		rehash(key);
+		if (key instanceof Long) {
+			rawset(((Long) key).longValue(), value);
+		}
+		else {
+			hashSet(key, value);
+		}
+	}
+
+	private static int maxUsed(int capacity) {
+		return capacity - (capacity >>> 2);  // load factor 0.75
+	}
+
+	private static int hashCapacityFor(int count) {
+		if (count == 0) {
+			return 0;
+		}
+		int capacity = 4;
+		while (maxUsed(capacity) < count) {
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+
+	// returns the index i such that 2^(i-1) < k <= 2^i, for 1 <= k <= 2^MAX_ARRAY_BITS;
+	// returns -1 if k is outside of this range
+	private static int arraySliceOf(long k) {
+		if (k < 1 || k > (1L << MAX_ARRAY_BITS)) {
+			return -1;
+		}
+		else {
+			return 64 - Long.numberOfLeadingZeros(k - 1);
+		}
+	}
+
+	private static void countIntegerKey(Object key, int[] nums) {
+		if (key instanceof Long) {
+			int s = arraySliceOf(((Long) key).longValue());
+			if (s >= 0) {
+				nums[s] += 1;
+			}
+		}
+	}
+
+	private int countArrayKeys(int[] nums) {
+		Object[] a = array;
+		int size = arraySize();
+		boolean specialised = isSpecialised();
+		int total = 0;
+		for (int s = 0, lo = 0; lo < size; s++) {
+			int hi = Math.min(1 << s, size);  // slice s covers indices [lo, hi)
+			int count = 0;
+			if (specialised) {
+				count = Math.max(0, Math.min(hi, arrayCount) - lo);
+			}
+			else {
+				for (int i = lo; i < hi; i++) {
+					if (a[i] != null) count += 1;
+				}
+			}
+			nums[s] += count;
+			total += count;
+			lo = hi;
+		}
+		return total;
+	}
+
+	// given the counts of integer keys per slice, returns the optimal size of the array part
+	// (the largest power of two n such that more than n/2 slots in 1..n are in use)
+	private static int optimalArraySize(int[] nums, int integerKeyCount) {
+		int accum = 0;
+		int optimal = 0;
+		for (int s = 0; s <= MAX_ARRAY_BITS && integerKeyCount > (1 << s) / 2; s++) {
+			if (nums[s] > 0) {
+				accum += nums[s];
+				if (accum > (1 << s) / 2) {
+					optimal = 1 << s;
+				}
+			}
+		}
+		return optimal;
+	}
+
+	private void rehash(Object extraKey) {
+		int[] nums = new int[MAX_ARRAY_BITS + 1];
+
+		int totalCount = countArrayKeys(nums);
+		for (int i = 0; i < hashKeys.length; i++) {
+			if (hashValues[i] != null) {
+				countIntegerKey(hashKeys[i], nums);
+				totalCount += 1;
+			}
+		}
+		countIntegerKey(extraKey, nums);
+		totalCount += 1;
+
+		int integerKeyCount = 0;
+		for (int n : nums) {
+			integerKeyCount += n;
+		}
+
+		int arraySize = optimalArraySize(nums, integerKeyCount);
+
+		int inArray = 0;
+		for (int s = 0; (1 << s) <= arraySize; s++) {
+			inArray += nums[s];
+		}
+
+		resize(arraySize, totalCount - inArray);
+	}
+
+	private void resize(int arraySize, int hashSize) {
+		if (isSpecialised()) {
+			if (arraySize > 0 && hashIntegerCount == 0) {
+				// no keys will be moved from the hash part to the array part
+				resizeSpecialised(arraySize, hashSize);
+				return;
+			}
+			else {
+				deoptimise();
+			}
+		}
+
+		Object[] oldArray = array;
+		Object[] oldKeys = hashKeys;
+		Object[] oldValues = hashValues;
+
+		int capacity = hashCapacityFor(hashSize);
+
+		Object[] newArray = new Object[arraySize];
+		System.arraycopy(oldArray, 0, newArray, 0, Math.min(oldArray.length, arraySize));
+
+		array = newArray;
+		hashKeys = capacity > 0 ? new Object[capacity] : EMPTY;
+		hashValues = capacity > 0 ? new Object[capacity] : EMPTY;
+		hashCount = 0;
+		hashUsed = 0;
+		hashIntegerCount = 0;
+
+		// move the excess of the array part to the hash part
+		for (int i = arraySize; i < oldArray.length; i++) {
+			Object v = oldArray[i];
+			if (v != null) {
+				hashInsertNew(Long.valueOf(i + 1L), v);
+			}
+		}
+
+		// reinsert the live entries of the old hash part
+		for (int i = 0; i < oldKeys.length; i++) {
+			Object k = oldKeys[i];
+			Object v = oldValues[i];
+			if (v != null) {
+				if (k instanceof Long) {
+					long idx = ((Long) k).longValue();
+					if (idx - 1 >= 0 && idx - 1 < arraySize) {
+						newArray[(int) (idx - 1)] = v;
+						continue;
+					}
+				}
+				hashInsertNew(k, v);
+			}
+		}
+
+		trySpecialise();
+	}
+
+	// resizes the table while keeping the array part specialised, assuming there are no
+	// integer keys in the hash part
+	private void resizeSpecialised(int arraySize, int hashSize) {
+		Object[] oldKeys = hashKeys;
+		Object[] oldValues = hashValues;
+
+		int capacity = hashCapacityFor(hashSize);
+
+		hashKeys = capacity > 0 ? new Object[capacity] : EMPTY;
+		hashValues = capacity > 0 ? new Object[capacity] : EMPTY;
+		hashCount = 0;
+		hashUsed = 0;
+		hashIntegerCount = 0;
+
+		// move the excess of the array part to the hash part
+		for (int i = arraySize; i < arrayCount; i++) {
+			hashInsertNew(Long.valueOf(i + 1L), arrayValueAt(i));
+		}
+
+		arrayCount = Math.min(arrayCount, arraySize);
+		if (longArray != null) {
+			longArray = Arrays.copyOf(longArray, arraySize);
+		}
+		else {
+			doubleArray = Arrays.copyOf(doubleArray, arraySize);
+		}
+
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldValues[i] != null) {
+				hashInsertNew(oldKeys[i], oldValues[i]);
+			}
+		}
+	}
+
+	// inserts a key known not to be in the hash part, assuming there is room for it
+	private void hashInsertNew(Object key, Object value) {
+		Object[] ks = hashKeys;
+		int mask = ks.length - 1;
+		int i = hash(key) & mask;
+		while (ks[i] != null) {
+			i = (i + 1) & mask;
+		}
+		ks[i] = key;
+		hashValues[i] = value;
+		hashCount += 1;
+		hashUsed += 1;
+		if (key instanceof Long) hashIntegerCount += 1;
+	}
+
+}
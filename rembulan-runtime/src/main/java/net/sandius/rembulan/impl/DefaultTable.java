@@ -19,20 +19,53 @@ package net.sandius.rembulan.impl;
 import net.sandius.rembulan.Conversions;
 import net.sandius.rembulan.Table;
 import net.sandius.rembulan.TableFactory;
-import net.sandius.rembulan.util.TraversableHashMap;
 
-import java.util.NoSuchElementException;
+import java.util.HashMap;
 
 /**
  * Default implementation of the Lua table storing all key-value pairs in a hashmap.
  * The table implementation does not support weak keys or values.
+ *
+ * <p>The hashmap maps keys to their <i>slots</i>, and the entries are stored in the slots
+ * in the order of insertion. The slot of an entry is its traversal index, so that
+ * the traversal methods take constant time. Removed entries keep their slots until
+ * a new key is inserted, which ensures that traversals are not broken by entries being
+ * removed while they are in progress.</p>
  */
 public class DefaultTable extends Table {
 
-	private final TraversableHashMap<Object, Object> values;
+	private static final Object[] EMPTY = new Object[0];
+
+	private final HashMap<Object, Integer> slots;  // key -> slot, including removed keys
+
+	// keys and values in the traversal (i.e., insertion) order; the value in the slot
+	// of a removed key is null
+	private Object[] keys;
+	private Object[] values;
+	private int used;  // number of used slots, including the slots of removed keys
+
+	// the cached length of the table (i.e., a border), or -1 if unknown; maintained by rawset
+	private long border;
 
+	/**
+	 * Constructs a new empty table with room for {@code capacity} entries.
+	 *
+	 * @param capacity  the expected number of entries, negative values are treated as {@code 0}
+	 */
+	public DefaultTable(int capacity) {
+		capacity = Math.max(0, capacity);
+		this.slots = capacity > 0 ? new HashMap<Object, Integer>(capacity + capacity / 3 + 1) : new HashMap<Object, Integer>();
+		this.keys = capacity > 0 ? new Object[capacity] : EMPTY;
+		this.values = capacity > 0 ? new Object[capacity] : EMPTY;
+		this.used = 0;
+		this.border = 0L;
+	}
+
+	/**
+	 * Constructs a new empty table.
+	 */
 	public DefaultTable() {
-		this.values = new TraversableHashMap<>();
+		this(0);
 	}
 
 	static class Factory implements TableFactory {
@@ -43,7 +76,7 @@ public class DefaultTable extends Table {
 
 		@Override
 		public Table newTable(int array, int hash) {
-			return new DefaultTable();
+			return new DefaultTable(Math.max(0, array) + Math.max(0, hash));
 		}
 	}
 
@@ -58,10 +91,16 @@ public class DefaultTable extends Table {
 		return FACTORY_INSTANCE;
 	}
 
+	// key must be normalised and non-null
+	private Object get(Object key) {
+		Integer slot = slots.get(key);
+		return slot != null ? values[slot] : null;
+	}
+
 	@Override
 	public Object rawget(Object key) {
 		key = Conversions.normaliseKey(key);
-		return key != null ? values.get(key) : null;
+		return key != null ? get(key) : null;
 	}
 
 	@Override
@@ -75,29 +114,159 @@ public class DefaultTable extends Table {
 			throw new IllegalArgumentException("table index is NaN");
 		}
 
-		if (value == null) {
-			values.remove(key);
+		Integer slot = slots.get(key);
+		if (slot != null) {
+			// the key keeps its slot even if it has been removed
+			values[slot] = value;
+		}
+		else if (value != null) {
+			insert(key, value);
 		}
-		else {
-			values.put(key, value);
+
+		if (border >= 0 && key instanceof Long) {
+			updateBorder(((Long) key).longValue(), value);
 		}
 
 		updateBasetableModes(key, value);
 	}
 
+	@Override
+	protected boolean cachesAbsentMetamethods() {
+		// rawset calls updateBasetableModes for every key
+		return true;
+	}
+
+	private void insert(Object key, Object value) {
+		if (used == keys.length) {
+			int live = 0;
+			for (int i = 0; i < used; i++) {
+				if (values[i] != null) {
+					live += 1;
+				}
+			}
+			rebuild(Math.max(4, live * 2));
+		}
+
+		keys[used] = key;
+		values[used] = value;
+		slots.put(key, used);
+		used += 1;
+	}
+
+	// drops the removed keys, moving the entries to the beginning of the new arrays
+	// while preserving their order; invalidates traversal indices, and therefore may
+	// only be called when a new key is being inserted
+	private void rebuild(int capacity) {
+		Object[] oldKeys = keys;
+		Object[] oldValues = values;
+		int oldUsed = used;
+
+		keys = new Object[capacity];
+		values = new Object[capacity];
+		used = 0;
+
+		for (int i = 0; i < oldUsed; i++) {
+			Object k = oldKeys[i];
+			Object v = oldValues[i];
+			if (v != null) {
+				keys[used] = k;
+				values[used] = v;
+				if (used != i) {
+					slots.put(k, used);
+				}
+				used += 1;
+			}
+			else {
+				slots.remove(k);
+			}
+		}
+	}
+
+	// updates the cached border after the value associated with the key idx has been set
+	// to value, assuming that border >= 0
+	private void updateBorder(long idx, Object value) {
+		long b = border;
+		if (value != null) {
+			if (idx == b + 1) {
+				// appending: the sequence may now continue past idx
+				border = get(Long.valueOf(idx + 1)) != null ? -1L : idx;
+			}
+		}
+		else if (idx == b) {
+			// removing the last element: there may be a hole before it
+			border = idx == 1 || get(Long.valueOf(idx - 1)) != null ? idx - 1 : -1L;
+		}
+		// otherwise, border remains a border
+	}
+
+	@Override
+	public long rawlen() {
+		long b = border;
+		if (b < 0) {
+			b = super.rawlen();
+			border = b;
+		}
+		return b;
+	}
+
+	private long nextIndexFrom(int from) {
+		for (int i = from; i < used; i++) {
+			if (values[i] != null) {
+				return i;
+			}
+		}
+		return -1L;
+	}
+
+	// returns the slot of the traversal index, which may be the slot of a removed key
+	private int slotOf(long index) {
+		if (index < 0 || index >= used) {
+			throw new IllegalArgumentException("invalid traversal index: " + index);
+		}
+		return (int) index;
+	}
+
 	@Override
 	public Object initialKey() {
-		return values.getFirstKey();
+		long index = initialIndex();
+		return index >= 0 ? keys[(int) index] : null;
 	}
 
 	@Override
 	public Object successorKeyOf(Object key) {
-		try {
-			return values.getSuccessorOf(key);
-		}
-		catch (NoSuchElementException | NullPointerException ex) {
-			throw new IllegalArgumentException("invalid key to 'next'", ex);
+		long index = indexOf(key);
+		if (index < 0) {
+			throw new IllegalArgumentException("invalid key to 'next'");
 		}
+		long next = successorIndexOf(index);
+		return next >= 0 ? keys[(int) next] : null;
+	}
+
+	@Override
+	public long initialIndex() {
+		return nextIndexFrom(0);
+	}
+
+	@Override
+	public long successorIndexOf(long index) {
+		return nextIndexFrom(slotOf(index) + 1);
+	}
+
+	@Override
+	public long indexOf(Object key) {
+		key = Conversions.normaliseKey(key);
+		Integer slot = key != null ? slots.get(key) : null;
+		return slot != null ? slot.longValue() : -1L;
+	}
+
+	@Override
+	public Object keyAt(long index) {
+		return keys[slotOf(index)];
+	}
+
+	@Override
+	public Object valueAt(long index) {
+		return values[slotOf(index)];
 	}
 
 	@Override
@@ -53,22 +53,26 @@ public class ImmutableTable extends Table {
 
 	private final Map<Object, Entry> entries;
 	private final Object initialKey;  // null iff the table is empty
+	private final Object[] keys;  // keys in the traversal order
 
 	static class Entry {
 
 		private final Object value;
 		private final Object nextKey;  // may be null
+		private final int index;  // traversal index
 
-		private Entry(Object value, Object nextKey) {
+		private Entry(Object value, Object nextKey, int index) {
 			this.value = Objects.requireNonNull(value);
 			this.nextKey = nextKey;
+			this.index = index;
 		}
 
 	}
 
-	ImmutableTable(Map<Object, Entry> entries, Object initialKey) {
+	ImmutableTable(Map<Object, Entry> entries, Object initialKey, Object[] keys) {
 		this.entries = Objects.requireNonNull(entries);
 		this.initialKey = initialKey;
+		this.keys = Objects.requireNonNull(keys);
 	}
 
 	/**
@@ -97,7 +101,10 @@ public class ImmutableTable extends Table {
 	 *                                   a {@code null} or <i>NaN</i> key
 	 */
 	public static ImmutableTable of(Iterable<Map.Entry<Object, Object>> entries) {
-		Builder builder = new Builder();
+		return of(new Builder(), entries);
+	}
+
+	private static ImmutableTable of(Builder builder, Iterable<Map.Entry<Object, Object>> entries) {
 		for (Map.Entry<Object, Object> entry : entries) {
 			builder.add(entry.getKey(), entry.getValue());
 		}
@@ -125,7 +132,7 @@ public class ImmutableTable extends Table {
 	 * @throws IllegalArgumentException  if {@code map} contains a {@code null} or <i>NaN</i> key
 	 */
 	public static ImmutableTable of(Map<Object, Object> map) {
-		return of(map.entrySet());
+		return of(new Builder(new TraversableHashMap<>(map.size())), map.entrySet());
 	}
 
 	/**
@@ -211,6 +218,12 @@ public class ImmutableTable extends Table {
 		throw new UnsupportedOperationException("table is immutable");
 	}
 
+	@Override
+	protected boolean cachesAbsentMetamethods() {
+		// the contents of this table never change
+		return true;
+	}
+
 	@Override
 	public Object initialKey() {
 		return initialKey;
@@ -228,6 +241,39 @@ public class ImmutableTable extends Table {
 		}
 	}
 
+	@Override
+	public long initialIndex() {
+		return keys.length > 0 ? 0L : -1L;
+	}
+
+	@Override
+	public long successorIndexOf(long index) {
+		if (index < 0 || index >= keys.length) {
+			throw new IllegalArgumentException("invalid traversal index: " + index);
+		}
+		return index + 1 < keys.length ? index + 1 : -1L;
+	}
+
+	@Override
+	public long indexOf(Object key) {
+		key = Conversions.normaliseKey(key);
+		Entry e = key != null ? entries.get(key) : null;
+		return e != null ? e.index : -1L;
+	}
+
+	@Override
+	public Object keyAt(long index) {
+		if (index < 0 || index >= keys.length) {
+			throw new IllegalArgumentException("invalid traversal index: " + index);
+		}
+		return keys[(int) index];
+	}
+
+	@Override
+	public Object valueAt(long index) {
+		return entries.get(keyAt(index)).value;
+	}
+
 	@Override
 	protected void setMode(boolean weakKeys, boolean weakValues) {
 		// no-op
@@ -258,7 +304,7 @@ public class ImmutableTable extends Table {
 		}
 
 		private static <K, V> TraversableHashMap<K, V> mapCopy(TraversableHashMap<K, V> map) {
-			TraversableHashMap<K, V> result = new TraversableHashMap<>();
+			TraversableHashMap<K, V> result = new TraversableHashMap<>(map.size());
 			result.putAll(map);
 			return result;
 		}
@@ -324,12 +370,15 @@ public class ImmutableTable extends Table {
 		 */
 		public ImmutableTable build() {
 			Map<Object, Entry> tableEntries = new HashMap<>();
+			Object[] keys = new Object[entries.size()];
 
+			int index = 0;
 			for (Map.Entry<Object, Object> e : entries.entrySet()) {
 				Object k = e.getKey();
-				tableEntries.put(e.getKey(), new Entry(e.getValue(), entries.getSuccessorOf(k)));
+				tableEntries.put(e.getKey(), new Entry(e.getValue(), entries.getSuccessorOf(k), index));
+				keys[index++] = k;
 			}
-			return new ImmutableTable(Collections.unmodifiableMap(tableEntries), entries.getFirstKey());
+			return new ImmutableTable(Collections.unmodifiableMap(tableEntries), entries.getFirstKey(), keys);
 		}
 
 	}
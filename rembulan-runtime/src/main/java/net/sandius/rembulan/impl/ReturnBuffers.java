@@ -18,28 +18,119 @@ package net.sandius.rembulan.impl;
 
 import net.sandius.rembulan.runtime.ReturnBuffer;
 
+import java.util.Objects;
+
 /**
  * Static factory for instantiating return buffers.
  *
  * <p>To obtain a new instance of the default return buffer implementation,
- * use {@link ReturnBuffers#newDefaultReturnBuffer()}.</p>
+ * use {@link ReturnBuffers#newDefaultReturnBuffer()}. The implementation used
+ * by default is determined by the {@linkplain #getDefaultPolicy() default policy},
+ * which may be changed using {@link #setDefaultPolicy(Policy)}, or using
+ * the system property {@value #POLICY_PROPERTY_NAME} (with the name of
+ * a {@link Policy} constant as its value).</p>
  */
 public final class ReturnBuffers {
 
+	/**
+	 * The name of the system property used to select the initial default policy.
+	 */
+	public static final String POLICY_PROPERTY_NAME = "net.sandius.rembulan.impl.ReturnBufferPolicy";
+
+	/**
+	 * An enum representing the return buffer implementations available through
+	 * this factory.
+	 */
+	public enum Policy {
+
+		/**
+		 * Stores the values in an array freshly allocated on every assignment.
+		 */
+		SIMPLE,
+
+		/**
+		 * Stores the first two values in fields, and the remaining values in a re-sizable
+		 * array.
+		 */
+		PAIR_CACHING,
+
+		/**
+		 * Stores the first three values in fields, and the remaining values in
+		 * a lazily-allocated re-sizable array. Assignments of up to three values
+		 * do not access the array.
+		 */
+		TRIPLE_CACHING
+
+	}
+
+	private static volatile Policy defaultPolicy = initialDefaultPolicy();
+
 	private ReturnBuffers() {
 		// not to be instantiated
 	}
 
+	private static Policy initialDefaultPolicy() {
+		String s = System.getProperty(POLICY_PROPERTY_NAME);
+		if (s != null) {
+			try {
+				return Policy.valueOf(s.trim().toUpperCase());
+			}
+			catch (IllegalArgumentException ex) {
+				// unknown policy name, ignore
+			}
+		}
+		return Policy.TRIPLE_CACHING;
+	}
+
+	/**
+	 * Returns the policy used by {@link #newDefaultReturnBuffer()}.
+	 *
+	 * @return  the default return buffer policy
+	 */
+	public static Policy getDefaultPolicy() {
+		return defaultPolicy;
+	}
+
+	/**
+	 * Sets the policy used by {@link #newDefaultReturnBuffer()}. The change does not
+	 * affect return buffers that have already been instantiated.
+	 *
+	 * @param policy  the new default policy, must not be {@code null}
+	 *
+	 * @throws NullPointerException  if {@code policy} is {@code null}
+	 */
+	public static void setDefaultPolicy(Policy policy) {
+		defaultPolicy = Objects.requireNonNull(policy);
+	}
+
+	/**
+	 * Returns a new instance of the return buffer implementation selected by {@code policy}.
+	 *
+	 * @param policy  the return buffer policy, must not be {@code null}
+	 * @return  a new return buffer
+	 *
+	 * @throws NullPointerException  if {@code policy} is {@code null}
+	 */
+	public static ReturnBuffer newReturnBuffer(Policy policy) {
+		switch (policy) {
+			case SIMPLE:         return new SimpleReturnBuffer();
+			case PAIR_CACHING:   return new PairCachingReturnBuffer();
+			case TRIPLE_CACHING: return new TripleCachingReturnBuffer();
+			default: throw new IllegalArgumentException("Illegal policy: " + policy);
+		}
+	}
+
 	/**
-	 * Returns a new instance of the default return buffer implementation.
+	 * Returns a new instance of the default return buffer implementation,
+	 * as selected by the {@linkplain #getDefaultPolicy() default policy}.
 	 *
-	 * <p>This implementation optimises access to the first two values in the
-	 * buffer.</p>
+	 * <p>Unless configured otherwise, this implementation optimises access to the first
+	 * three values in the buffer.</p>
 	 *
 	 * @return  a new instance of the default return buffer
 	 */
 	public static ReturnBuffer newDefaultReturnBuffer() {
-		return new PairCachingReturnBuffer();
+		return newReturnBuffer(defaultPolicy);
 	}
 
 }
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An immutable sequence of string keys, mapping each key to a slot (its position in the sequence).
+ *
+ * <p>Shapes form a tree rooted in an empty shape: the children of a shape are the shapes
+ * obtained by appending a single key to it (the <i>transitions</i> of the shape). Tables
+ * that acquire the same keys in the same order therefore share the same shape.</p>
+ *
+ * <p>The number of keys in a shape, the number of transitions from a shape and the total
+ * number of shapes in a tree are bounded. Tables for which no shape can be provided
+ * are expected to store their keys in a dictionary instead.</p>
+ *
+ * <p>Shapes are thread-safe.</p>
+ */
+final class Shape {
+
+	/**
+	 * The maximal number of keys in a shape.
+	 */
+	static final int MAX_SIZE = 32;
+
+	// the maximal number of transitions from a single non-empty shape; shapes with more
+	// transitions are used by tables in a dictionary-like manner
+	private static final int MAX_TRANSITIONS = 32;
+
+	// the maximal number of transitions from the empty shape, which is shared by all tables
+	private static final int MAX_ROOT_TRANSITIONS = 1024;
+
+	/**
+	 * The maximal number of shapes in a tree, including the empty shape.
+	 */
+	static final int MAX_SHAPES = 8192;
+
+	private final String[] keys;
+
+	// the number of shapes in the tree, shared by all shapes in the tree
+	private final AtomicInteger count;
+
+	// open-addressing index of keys: index[i] is (slot + 1), or 0 when unused;
+	// length is a power of 2
+	private final int[] index;
+
+	// guarded by this
+	private final Map<String, Shape> transitions;
+
+	private Shape(String[] keys, AtomicInteger count) {
+		this.keys = keys;
+		this.count = count;
+		this.index = new int[indexCapacityFor(keys.length)];
+		this.transitions = new HashMap<>(4);
+
+		int mask = index.length - 1;
+		for (int slot = 0; slot < keys.length; slot++) {
+			int i = hash(keys[slot]) & mask;
+			while (index[i] != 0) {
+				i = (i + 1) & mask;
+			}
+			index[i] = slot + 1;
+		}
+	}
+
+	/**
+	 * Returns a new empty shape, the root of a new tree of shapes.
+	 *
+	 * @return  a new empty shape
+	 */
+	static Shape empty() {
+		return new Shape(new String[0], new AtomicInteger(1));
+	}
+
+	private static int indexCapacityFor(int size) {
+		int capacity = 4;
+		while (capacity < 2 * size) {
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+
+	private static int hash(String key) {
+		int h = key.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Returns the number of keys in this shape.
+	 *
+	 * @return  the number of keys in this shape
+	 */
+	int size() {
+		return keys.length;
+	}
+
+	/**
+	 * Returns the key in the slot {@code slot}.
+	 *
+	 * @param slot  the slot, must be between {@code 0} (inclusive) and {@link #size()} (exclusive)
+	 * @return  the key in {@code slot}
+	 */
+	String keyAt(int slot) {
+		return keys[slot];
+	}
+
+	/**
+	 * Returns the slot of the key {@code key}, or {@code -1} if {@code key} is not in this shape.
+	 *
+	 * @param key  the key, must not be {@code null}
+	 * @return  the slot of {@code key}, or {@code -1} if {@code key} is not in this shape
+	 */
+	int slotOf(String key) {
+		int[] idx = index;
+		int mask = idx.length - 1;
+		int i = hash(key) & mask;
+		int s;
+		while ((s = idx[i]) != 0) {
+			String k = keys[s - 1];
+			if (k == key || k.equals(key)) {
+				return s - 1;
+			}
+			i = (i + 1) & mask;
+		}
+		return -1;
+	}
+
+	// reserves room for a new shape in the tree, returns false if the tree is full
+	private boolean reserve() {
+		int n;
+		do {
+			n = count.get();
+			if (n >= MAX_SHAPES) {
+				return false;
+			}
+		} while (!count.compareAndSet(n, n + 1));
+		return true;
+	}
+
+	/**
+	 * Returns the shape obtained by appending {@code key} to this shape, or {@code null}
+	 * if such a shape would exceed the limits on the number of keys, transitions or shapes.
+	 *
+	 * @param key  the key to append, must not be {@code null} and must not be in this shape
+	 * @return  the shape with the additional key {@code key}, or {@code null} if there is
+	 *          no such shape
+	 */
+	synchronized Shape withKey(String key) {
+		Shape result = transitions.get(key);
+		int maxTransitions = keys.length > 0 ? MAX_TRANSITIONS : MAX_ROOT_TRANSITIONS;
+		if (result == null && keys.length < MAX_SIZE && transitions.size() < maxTransitions && reserve()) {
+			String[] ks = new String[keys.length + 1];
+			System.arraycopy(keys, 0, ks, 0, keys.length);
+			ks[keys.length] = StringInterner.intern(key);
+			result = new Shape(ks, count);
+			transitions.put(key, result);
+		}
+		return result;
+	}
+
+}
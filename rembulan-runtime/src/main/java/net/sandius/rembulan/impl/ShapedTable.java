@@ -0,0 +1,368 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.impl;
+
+import net.sandius.rembulan.Table;
+import net.sandius.rembulan.TableFactory;
+
+/**
+ * Implementation of the Lua table optimised for record-like tables, i.e., tables with
+ * a small, fixed set of string keys.
+ *
+ * <p>The string keys of the table are described by a <i>shape</i>, an immutable sequence
+ * of keys shared by all tables (constructed by the same factory) that acquired the same keys
+ * in the same order. The values associated with these keys are stored in a flat array
+ * indexed by the position of the key in the shape. Adding a new string key to the table
+ * is a transition to another shape; removing a key keeps it in the shape, leaving
+ * its slot empty.</p>
+ *
+ * <p>All other keys are stored in an {@link ArrayHashTable}. Tables that outgrow
+ * the limits of shapes (because they have too many string keys, they use a shape that
+ * has too many transitions, the factory has created too many shapes, or they have
+ * too many removed keys) switch to the <i>dictionary mode</i>, in which all keys are
+ * stored in the {@code ArrayHashTable}. Tables with weak keys or values always use
+ * the dictionary mode.</p>
+ */
+public class ShapedTable extends Table {
+
+	private static final Object[] EMPTY = new Object[0];
+
+	// traversal indices below this value refer to slots of the shape
+	private static final long SHAPE_INDEX_LIMIT = Shape.MAX_SIZE;
+
+	// the maximal number of empty slots in the shape before the table switches
+	// to the dictionary mode
+	private static final int MAX_REMOVED = 8;
+
+	private Shape shape;  // null iff in dictionary mode
+	private Object[] slots;  // slots[i] is the value associated with shape.keyAt(i), may be null
+	private int removed;  // number of empty slots in [0, shape.size())
+
+	// storage for the remaining keys, null if there are none
+	private ArrayHashTable rest;
+
+	/**
+	 * Constructs a new empty table with the empty shape {@code root} and storage
+	 * pre-allocated for {@code array} values in the array part and {@code hash} entries
+	 * in the hash part.
+	 *
+	 * @param root  the empty shape, must not be {@code null}
+	 * @param array  initial size of the array part, negative values are treated as {@code 0}
+	 * @param hash  initial capacity of the hash part, negative values are treated as {@code 0}
+	 */
+	ShapedTable(Shape root, int array, int hash) {
+		this.shape = root;
+		this.slots = hash > 0 ? new Object[Math.min(hash, Shape.MAX_SIZE)] : EMPTY;
+		this.removed = 0;
+		this.rest = array > 0 ? new ArrayHashTable(array, 0) : null;
+	}
+
+	static class Factory implements TableFactory {
+
+		private final Shape root = Shape.empty();
+
+		@Override
+		public Table newTable() {
+			return newTable(0, 0);
+		}
+
+		@Override
+		public Table newTable(int array, int hash) {
+			return new ShapedTable(root, array, hash);
+		}
+
+	}
+
+	/**
+	 * Returns a new table factory for constructing instances of {@code ShapedTable}.
+	 * All tables constructed by the returned factory share their shapes.
+	 *
+	 * @return  a new table factory for {@code ShapedTable}s
+	 */
+	public static TableFactory factory() {
+		return new Factory();
+	}
+
+	private ArrayHashTable restForWrite() {
+		ArrayHashTable r = rest;
+		if (r == null) {
+			rest = r = new ArrayHashTable();
+		}
+		return r;
+	}
+
+	@Override
+	public Object rawget(Object key) {
+		Shape s = shape;
+		if (s != null && key instanceof String) {
+			int slot = s.slotOf((String) key);
+			return slot >= 0 ? slots[slot] : null;
+		}
+		else {
+			return rest != null ? rest.rawget(key) : null;
+		}
+	}
+
+	@Override
+	public Object rawget(long idx) {
+		return rest != null ? rest.rawget(idx) : null;
+	}
+
+	@Override
+	public void rawset(Object key, Object value) {
+		if (key == null) {
+			throw new IllegalArgumentException("table index is nil");
+		}
+
+		if (shape != null && key instanceof String) {
+			shapeSet((String) key, value);
+		}
+		else if (rest != null || value != null) {
+			restForWrite().rawset(key, value);
+		}
+		else if (key instanceof Double && Double.isNaN(((Double) key).doubleValue())) {
+			throw new IllegalArgumentException("table index is NaN");
+		}
+
+		updateBasetableModes(key, value);
+	}
+
+	@Override
+	protected boolean cachesAbsentMetamethods() {
+		// rawset calls updateBasetableModes for every key
+		return true;
+	}
+
+	@Override
+	public void rawset(long idx, Object value) {
+		if (rest != null || value != null) {
+			restForWrite().rawset(idx, value);
+		}
+	}
+
+	private void shapeSet(String key, Object value) {
+		int slot = shape.slotOf(key);
+
+		if (slot >= 0) {
+			Object old = slots[slot];
+			slots[slot] = value;
+			if (old != null && value == null) removed += 1;
+			else if (old == null && value != null) removed -= 1;
+		}
+		else if (value != null) {
+			Shape next = removed < MAX_REMOVED ? shape.withKey(key) : null;
+
+			if (next != null) {
+				int n = shape.size();
+				if (n == slots.length) {
+					Object[] newSlots = new Object[Math.min(Math.max(4, 2 * n), Shape.MAX_SIZE)];
+					System.arraycopy(slots, 0, newSlots, 0, n);
+					slots = newSlots;
+				}
+				slots[n] = value;
+				shape = next;
+			}
+			else {
+				toDictionary();
+				rest.rawset(key, value);
+			}
+		}
+		// else: no such key, nothing to remove
+	}
+
+	// moves all entries to rest
+	private void toDictionary() {
+		Shape s = shape;
+		if (s == null) {
+			return;
+		}
+
+		ArrayHashTable r = restForWrite();
+		for (int i = 0; i < s.size(); i++) {
+			Object v = slots[i];
+			if (v != null) {
+				r.rawset(s.keyAt(i), v);
+			}
+		}
+
+		shape = null;
+		slots = EMPTY;
+		removed = 0;
+	}
+
+	@Override
+	public void ensureArrayCapacity(long size) {
+		if (size > 0) {
+			restForWrite().ensureArrayCapacity(size);
+		}
+	}
+
+	@Override
+	public long rawlen() {
+		return rest != null ? rest.rawlen() : 0L;
+	}
+
+	@Override
+	public Object initialKey() {
+		long index = initialIndex();
+		return index >= 0 ? keyAt(index) : null;
+	}
+
+	@Override
+	public Object successorKeyOf(Object key) {
+		long index = indexOf(key);
+		if (index < 0) {
+			throw new IllegalArgumentException("invalid key to 'next'");
+		}
+		long next = successorIndexOf(index);
+		return next >= 0 ? keyAt(next) : null;
+	}
+
+	// traversal indices: index i < SHAPE_INDEX_LIMIT refers to the slot i of the shape,
+	// index (SHAPE_INDEX_LIMIT + j) refers to the traversal index j of rest
+
+	private static long restIndex(long index) {
+		return index >= 0 ? SHAPE_INDEX_LIMIT + index : -1L;
+	}
+
+	private long nextIndexFrom(int from) {
+		Shape s = shape;
+		if (s != null) {
+			for (int i = from; i < s.size(); i++) {
+				if (slots[i] != null) {
+					return i;
+				}
+			}
+		}
+		return rest != null ? restIndex(rest.initialIndex()) : -1L;
+	}
+
+	private int checkedSlot(long index) {
+		if (shape == null || index < 0 || index >= shape.size()) {
+			throw new IllegalArgumentException("invalid traversal index: " + index);
+		}
+		return (int) index;
+	}
+
+	private ArrayHashTable checkedRest(long index) {
+		if (rest == null) {
+			throw new IllegalArgumentException("invalid traversal index: " + index);
+		}
+		return rest;
+	}
+
+	@Override
+	public long initialIndex() {
+		return nextIndexFrom(0);
+	}
+
+	@Override
+	public long successorIndexOf(long index) {
+		if (index < SHAPE_INDEX_LIMIT) {
+			return nextIndexFrom(checkedSlot(index) + 1);
+		}
+		else {
+			return restIndex(checkedRest(index).successorIndexOf(index - SHAPE_INDEX_LIMIT));
+		}
+	}
+
+	@Override
+	public long indexOf(Object key) {
+		if (shape != null && key instanceof String) {
+			return shape.slotOf((String) key);
+		}
+		else {
+			return rest != null ? restIndex(rest.indexOf(key)) : -1L;
+		}
+	}
+
+	@Override
+	public Object keyAt(long index) {
+		if (index < SHAPE_INDEX_LIMIT) {
+			return shape.keyAt(checkedSlot(index));
+		}
+		else {
+			return checkedRest(index).keyAt(index - SHAPE_INDEX_LIMIT);
+		}
+	}
+
+	@Override
+	public Object valueAt(long index) {
+		if (index < SHAPE_INDEX_LIMIT) {
+			return slots[checkedSlot(index)];
+		}
+		else {
+			return checkedRest(index).valueAt(index - SHAPE_INDEX_LIMIT);
+		}
+	}
+
+	// hints below SHAPE_INDEX_LIMIT are slots of the shape, hint (SHAPE_INDEX_LIMIT + h)
+	// refers to the hint h of rest
+
+	@Override
+	public long hintOf(Object key) {
+		if (shape != null && key instanceof String) {
+			int slot = shape.slotOf((String) key);
+			return slot >= 0 && slots[slot] != null ? slot : -1L;
+		}
+		else {
+			return rest != null ? restIndex(rest.hintOf(key)) : -1L;
+		}
+	}
+
+	@Override
+	public Object rawgetHinted(long hint, Object key) {
+		if (hint < SHAPE_INDEX_LIMIT) {
+			Shape s = shape;
+			return s != null && hint >= 0 && hint < s.size() && s.keyAt((int) hint) == key
+					? slots[(int) hint]
+					: null;
+		}
+		else {
+			return rest != null ? rest.rawgetHinted(hint - SHAPE_INDEX_LIMIT, key) : null;
+		}
+	}
+
+	@Override
+	public boolean rawsetHinted(long hint, Object key, Object value) {
+		if (hint < SHAPE_INDEX_LIMIT) {
+			Shape s = shape;
+			if (value != null && s != null && hint >= 0 && hint < s.size() && s.keyAt((int) hint) == key
+					&& slots[(int) hint] != null) {
+				slots[(int) hint] = value;
+				return true;
+			}
+			else {
+				return false;
+			}
+		}
+		else {
+			return rest != null && rest.rawsetHinted(hint - SHAPE_INDEX_LIMIT, key, value);
+		}
+	}
+
+	@Override
+	protected void setMode(boolean weakKeys, boolean weakValues) {
+		if (weakKeys || weakValues) {
+			toDictionary();
+		}
+		if (rest != null) {
+			rest.setMode(weakKeys, weakValues);
+		}
+	}
+
+}
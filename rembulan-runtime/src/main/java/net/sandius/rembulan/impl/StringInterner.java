@@ -0,0 +1,167 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.impl;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * A bounded pool of canonical instances of short strings used as table keys.
+ *
+ * <p>Tables add the short string keys they store to the pool using {@link #intern(String)},
+ * and store the canonical instance. Keys computed at runtime (e.g. by {@code string.sub})
+ * may then be looked up in the pool using {@link #canonical(String, int, int)}: when found,
+ * the key is identical to the key stored in the table, so comparing the two amounts
+ * to an identity check, and its hash code has already been computed.</p>
+ *
+ * <p>The pool is a direct-mapped cache of weak references indexed by the hash code
+ * of the string. A string is only added to an entry that is empty or whose string has been
+ * collected: pooled strings are never evicted by other strings, and the pool allocates
+ * at most one weak reference per entry for as long as the pooled string is reachable.
+ * The pool therefore never grows beyond its fixed capacity, does not prevent
+ * the collection of the strings it contains, and does not guarantee that equal strings
+ * are always represented by the same instance. Only strings of at most {@link #MAX_LENGTH}
+ * characters are pooled.</p>
+ *
+ * <p>This class is thread-safe. Concurrent accesses to an entry of the pool may cause
+ * a string not to be added to the pool, but never cause a non-equal string to be returned.</p>
+ */
+public final class StringInterner {
+
+	/**
+	 * The maximal length of pooled strings.
+	 */
+	public static final int MAX_LENGTH = 32;
+
+	private static final int CAPACITY = 1 << 12;  // must be a power of 2
+
+	// the entries are read and written without synchronisation: reference writes are atomic,
+	// and a stale or partially-constructed entry is indistinguishable from an empty one
+	private static final WeakReference<?>[] pool = new WeakReference<?>[CAPACITY];
+
+	// after this many lookups in a row have missed the pool, only every SAMPLING_PERIOD-th
+	// lookup consults it, until one of them hits
+	private static final int MAX_MISSES = 1 << 10;
+	private static final int SAMPLING_PERIOD = 1 << 6;  // must be a power of 2
+
+	// the number of lookups that missed the pool since the last hit; updated without
+	// synchronisation, since it is only used as a heuristic
+	private static int misses = 0;
+
+	private StringInterner() {
+		// not to be instantiated
+	}
+
+	// empties the pool
+	static void clear() {
+		for (int i = 0; i < CAPACITY; i++) {
+			pool[i] = null;
+		}
+		misses = 0;
+	}
+
+	private static int indexOf(int hash) {
+		return (hash ^ (hash >>> 16)) & (CAPACITY - 1);
+	}
+
+	/**
+	 * Returns the canonical instance of the string {@code s}, or {@code s} itself
+	 * if {@code s} is too long to be pooled.
+	 *
+	 * <p>If the pool does not contain a string equal to {@code s}, {@code s} is added
+	 * to the pool if its entry is vacant, and is returned.</p>
+	 *
+	 * @param s  the string to intern, must not be {@code null}
+	 * @return  a string equal to {@code s}
+	 *
+	 * @throws NullPointerException  if {@code s} is {@code null}
+	 */
+	public static String intern(String s) {
+		if (s.length() > MAX_LENGTH) {
+			return s;
+		}
+
+		int idx = indexOf(s.hashCode());
+		WeakReference<?> ref = pool[idx];
+		String p = ref != null ? (String) ref.get() : null;
+		if (p == null) {
+			// the entry is vacant
+			pool[idx] = new WeakReference<>(s);
+			return s;
+		}
+		else {
+			return s.equals(p) ? p : s;
+		}
+	}
+
+	/**
+	 * Returns the canonical instance of the substring of {@code s} beginning at the index
+	 * {@code begin} and extending to the index {@code end - 1} if it is in the pool,
+	 * or a new substring otherwise. Unlike {@link #intern(String)}, this method never
+	 * adds strings to the pool, and does not allocate the substring when it is in the pool.
+	 *
+	 * @param s  the string, must not be {@code null}
+	 * @param begin  the beginning index, inclusive
+	 * @param end  the ending index, exclusive
+	 * @return  a string equal to {@code s.substring(begin, end)}
+	 *
+	 * @throws NullPointerException  if {@code s} is {@code null}
+	 * @throws IndexOutOfBoundsException  if {@code begin} is negative, or {@code end} is larger
+	 *                                    than the length of {@code s}, or {@code begin} is larger
+	 *                                    than {@code end}
+	 */
+	public static String canonical(String s, int begin, int end) {
+		int len = end - begin;
+		if (len > MAX_LENGTH || (begin == 0 && end == s.length())) {
+			return s.substring(begin, end);
+		}
+
+		if (begin < 0 || end > s.length() || len < 0) {
+			throw new IndexOutOfBoundsException("begin " + begin + ", end " + end + ", length " + s.length());
+		}
+
+		int m = misses;
+		if (m >= MAX_MISSES) {
+			// the substrings are mostly not in the pool: avoid hashing them twice
+			misses = m + 1;
+			if ((m & (SAMPLING_PERIOD - 1)) != 0) {
+				return s.substring(begin, end);
+			}
+		}
+
+		// same as s.substring(begin, end).hashCode()
+		int h = 0;
+		for (int i = begin; i < end; i++) {
+			h = 31 * h + s.charAt(i);
+		}
+
+		WeakReference<?> ref = pool[indexOf(h)];
+		String p = ref != null ? (String) ref.get() : null;
+		if (p != null && p.length() == len && s.regionMatches(begin, p, 0, len)) {
+			if (m != 0) {
+				misses = 0;
+			}
+			return p;
+		}
+		else {
+			if (m < MAX_MISSES) {
+				misses = m + 1;
+			}
+			return s.substring(begin, end);
+		}
+	}
+
+}
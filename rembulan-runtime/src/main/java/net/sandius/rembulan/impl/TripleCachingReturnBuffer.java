@@ -0,0 +1,341 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.impl;
+
+import net.sandius.rembulan.runtime.ReturnBuffer;
+
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * A return buffer implementation that stores the first three values in private fields,
+ * and the remaining values in a lazily-allocated re-sizable array.
+ *
+ * <p>Assignments of up to three values touch the fields only: the overflow array
+ * is only consulted when the buffer previously held more than three values.</p>
+ */
+class TripleCachingReturnBuffer implements ReturnBuffer {
+
+	private static final Object[] EMPTY_ARRAY = new Object[0];
+
+	// number of values stored in fields
+	private static final int NUM_FIELDS = 3;
+
+	// by default, handle up to 11 values without reallocating
+	private static final int DEFAULT_PREFERRED_BUF_SIZE = 8;
+
+	// size to trim the overflow array down to as soon as possible
+	private final int preferredBufSize;
+
+	private int size;
+	private Object _0;
+	private Object _1;
+	private Object _2;
+	private Object[] _buf;
+
+	private Object tailCallTarget;
+	private boolean tailCall;
+
+	public TripleCachingReturnBuffer(int preferredBufSize) {
+		if (preferredBufSize < 0) {
+			throw new IllegalArgumentException("Preferred array size must be non-negative");
+		}
+
+		this.preferredBufSize = preferredBufSize;
+
+		this._0 = null;
+		this._1 = null;
+		this._2 = null;
+		this._buf = EMPTY_ARRAY;
+		this.size = 0;
+
+		this.tailCallTarget = null;
+		this.tailCall = false;
+	}
+
+	public TripleCachingReturnBuffer() {
+		this(DEFAULT_PREFERRED_BUF_SIZE);
+	}
+
+	@Override
+	public boolean isCall() {
+		return tailCall;
+	}
+
+	@Override
+	public Object getCallTarget() {
+		if (tailCall) {
+			return tailCallTarget;
+		}
+		else {
+			throw new IllegalStateException("Not a tail call");
+		}
+	}
+
+	private void unsetTailCall() {
+		tailCall = false;
+		tailCallTarget = null;
+	}
+
+	private void _setTailCall(Object target) {
+		tailCall = true;
+		tailCallTarget = target;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	// makes the overflow array big enough to hold bufSize values, releasing the references
+	// to the values stored in it past bufSize; must be called before updating size
+	private void ensureBufSize(int bufSize) {
+		int oldBufSize = size - NUM_FIELDS;
+
+		if (bufSize > _buf.length) {
+			// initialised to nulls, we're done
+			_buf = new Object[Math.max(bufSize, preferredBufSize)];
+		}
+		else if (_buf.length > preferredBufSize && bufSize <= preferredBufSize) {
+			// trim down
+			_buf = new Object[preferredBufSize];
+		}
+		else {
+			// still fits, null everything between bufSize and oldBufSize
+			for (int i = bufSize; i < oldBufSize; i++) {
+				_buf[i] = null;
+			}
+		}
+	}
+
+	private void _set(Object a, Object b, Object c, int size) {
+		if (this.size > NUM_FIELDS) {
+			ensureBufSize(0);
+		}
+		_0 = a;
+		_1 = b;
+		_2 = c;
+		this.size = size;
+	}
+
+	private void _set(Object a, Object b, Object c, Object d, Object e, int size) {
+		ensureBufSize(size - NUM_FIELDS);
+		_0 = a;
+		_1 = b;
+		_2 = c;
+		_buf[0] = d;
+		if (size > NUM_FIELDS + 1) {
+			_buf[1] = e;
+		}
+		this.size = size;
+	}
+
+	private void _setArray(Object[] a) {
+		int sz = a.length;
+
+		if (sz > NUM_FIELDS) {
+			ensureBufSize(sz - NUM_FIELDS);
+			System.arraycopy(a, NUM_FIELDS, _buf, 0, sz - NUM_FIELDS);
+		}
+		else if (size > NUM_FIELDS) {
+			ensureBufSize(0);
+		}
+
+		Object o0 = null, o1 = null, o2 = null;
+		switch (sz) {
+			default:
+			case 3: o2 = a[2];
+			case 2: o1 = a[1];
+			case 1: o0 = a[0];
+			case 0:
+		}
+		_0 = o0;
+		_1 = o1;
+		_2 = o2;
+
+		size = sz;
+	}
+
+	private void _setCollection(Collection<?> collection) {
+		int sz = collection.size();
+
+		if (sz > NUM_FIELDS || size > NUM_FIELDS) {
+			ensureBufSize(Math.max(0, sz - NUM_FIELDS));
+		}
+
+		Iterator<?> it = collection.iterator();
+
+		_0 = it.hasNext() ? it.next() : null;
+		_1 = it.hasNext() ? it.next() : null;
+		_2 = it.hasNext() ? it.next() : null;
+
+		for (int i = 0; i < sz - NUM_FIELDS; i++) {
+			_buf[i] = it.next();
+		}
+
+		size = sz;
+	}
+
+	@Override
+	public void setTo() {
+		unsetTailCall();
+		_set(null, null, null, 0);
+	}
+
+	@Override
+	public void setTo(Object a) {
+		unsetTailCall();
+		_set(a, null, null, 1);
+	}
+
+	@Override
+	public void setTo(Object a, Object b) {
+		unsetTailCall();
+		_set(a, b, null, 2);
+	}
+
+	@Override
+	public void setTo(Object a, Object b, Object c) {
+		unsetTailCall();
+		_set(a, b, c, 3);
+	}
+
+	@Override
+	public void setTo(Object a, Object b, Object c, Object d) {
+		unsetTailCall();
+		_set(a, b, c, d, null, 4);
+	}
+
+	@Override
+	public void setTo(Object a, Object b, Object c, Object d, Object e) {
+		unsetTailCall();
+		_set(a, b, c, d, e, 5);
+	}
+
+	@Override
+	public void setToContentsOf(Object[] a) {
+		unsetTailCall();
+		_setArray(a);
+	}
+
+	@Override
+	public void setToContentsOf(Collection<?> collection) {
+		unsetTailCall();
+		_setCollection(collection);
+	}
+
+	@Override
+	public void setToCall(Object target) {
+		_setTailCall(target);
+		_set(null, null, null, 0);
+	}
+
+	@Override
+	public void setToCall(Object target, Object arg1) {
+		_setTailCall(target);
+		_set(arg1, null, null, 1);
+	}
+
+	@Override
+	public void setToCall(Object target, Object arg1, Object arg2) {
+		_setTailCall(target);
+		_set(arg1, arg2, null, 2);
+	}
+
+	@Override
+	public void setToCall(Object target, Object arg1, Object arg2, Object arg3) {
+		_setTailCall(target);
+		_set(arg1, arg2, arg3, 3);
+	}
+
+	@Override
+	public void setToCall(Object target, Object arg1, Object arg2, Object arg3, Object arg4) {
+		_setTailCall(target);
+		_set(arg1, arg2, arg3, arg4, null, 4);
+	}
+
+	@Override
+	public void setToCall(Object target, Object arg1, Object arg2, Object arg3, Object arg4, Object arg5) {
+		_setTailCall(target);
+		_set(arg1, arg2, arg3, arg4, arg5, 5);
+	}
+
+	@Override
+	public void setToCallWithContentsOf(Object target, Object[] args) {
+		_setTailCall(target);
+		_setArray(args);
+	}
+
+	@Override
+	public void setToCallWithContentsOf(Object target, Collection<?> args) {
+		_setTailCall(target);
+		_setCollection(args);
+	}
+
+	@Override
+	public Object[] getAsArray() {
+		switch (size) {
+			case 0: return EMPTY_ARRAY;
+			case 1: return new Object[] { _0 };
+			case 2: return new Object[] { _0, _1 };
+			case 3: return new Object[] { _0, _1, _2 };
+			default:
+				Object[] result = new Object[size];
+				result[0] = _0;
+				result[1] = _1;
+				result[2] = _2;
+				System.arraycopy(_buf, 0, result, NUM_FIELDS, size - NUM_FIELDS);
+				return result;
+		}
+	}
+
+	@Override
+	public Object get(int idx) {
+		switch (idx) {
+			case 0:  return _0;
+			case 1:  return _1;
+			case 2:  return _2;
+			default: return idx > 0 && idx < size ? _buf[idx - NUM_FIELDS] : null;
+		}
+	}
+
+	@Override
+	public Object get0() {
+		return _0;
+	}
+
+	@Override
+	public Object get1() {
+		return _1;
+	}
+
+	@Override
+	public Object get2() {
+		return _2;
+	}
+
+	@Override
+	public Object get3() {
+		return size > 3 ? _buf[0] : null;
+	}
+
+	@Override
+	public Object get4() {
+		return size > 4 ? _buf[1] : null;
+	}
+
+}
@@ -0,0 +1,315 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.impl;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+/**
+ * Storage for the contents of a table with weak keys, weak values, or both.
+ *
+ * <p>Keys and values that are subject to garbage collection (i.e., everything except
+ * booleans, numbers and strings, see §2.5.2 of the Lua Reference Manual) are held through
+ * weak references registered with a reference queue. Entries whose references have been
+ * cleared by the garbage collector are purged <i>incrementally</i>: every call
+ * of {@link #put(Object, Object)} and {@link #successorIndexOf(long)} processes a bounded
+ * number of cleared references, so the cost of purging is spread over the normal use
+ * of the table rather than paid by a sweep of the entire table.</p>
+ *
+ * <p>Removed (and purged) entries remain in the map as dead entries until the map is rebuilt
+ * on the insertion of a new key. This ensures that traversals are not broken by entries
+ * being removed while they are in progress.</p>
+ *
+ * <p>All keys passed to the methods of this class are expected to be normalised
+ * (see {@link net.sandius.rembulan.Conversions#normaliseKey(Object)}).</p>
+ */
+final class WeakEntryMap {
+
+	// maximal number of cleared references processed by a single put or successorIndexOf call
+	private static final int PURGE_BUDGET = 8;
+
+	private final boolean weakKeys;
+	private final boolean weakValues;
+
+	private final ReferenceQueue<Object> queue;
+
+	private Entry[] buckets;  // length is a power of 2
+
+	// live and dead entries in the traversal (i.e., insertion) order; the traversal index
+	// of an entry is its position in this array
+	private Entry[] entries;
+	private int used;  // number of live and dead entries
+
+	private int size;  // number of live entries
+
+	WeakEntryMap(boolean weakKeys, boolean weakValues, int expectedSize) {
+		this.weakKeys = weakKeys;
+		this.weakValues = weakValues;
+		this.queue = new ReferenceQueue<>();
+		int capacity = capacityFor(expectedSize);
+		this.buckets = new Entry[capacity];
+		this.entries = new Entry[maxUsed(capacity)];
+		this.used = 0;
+		this.size = 0;
+	}
+
+	static final class Ref extends WeakReference<Object> {
+
+		private final Entry entry;
+
+		Ref(Object referent, ReferenceQueue<Object> queue, Entry entry) {
+			super(referent, queue);
+			this.entry = entry;
+		}
+
+	}
+
+	static final class Entry {
+
+		private final int hash;
+		private int index;
+
+		// exactly one of key and keyRef is non-null
+		private Object key;
+		private Ref keyRef;
+
+		// at most one of value and valueRef is non-null; both are null iff the entry is dead
+		private Object value;
+		private Ref valueRef;
+
+		private Entry nextInBucket;
+
+		Entry(int hash, int index) {
+			this.hash = hash;
+			this.index = index;
+		}
+
+		Object key() {
+			return keyRef != null ? keyRef.get() : key;
+		}
+
+		Object value() {
+			return valueRef != null ? valueRef.get() : value;
+		}
+
+		boolean isDead() {
+			return value == null && valueRef == null;
+		}
+
+		boolean isLive() {
+			return key() != null && value() != null;
+		}
+
+	}
+
+	/**
+	 * Returns {@code true} iff {@code o} is subject to removal from weak tables.
+	 * According to §2.5.2 of the Lua Reference Manual, values without an explicit
+	 * construction, such as numbers, and strings are not removed from weak tables.
+	 */
+	static boolean isCollectable(Object o) {
+		return !(o == null || o instanceof Boolean || o instanceof Number || o instanceof String);
+	}
+
+	boolean hasWeakKeys() {
+		return weakKeys;
+	}
+
+	boolean hasWeakValues() {
+		return weakValues;
+	}
+
+	int size() {
+		return size;
+	}
+
+	private static int maxUsed(int capacity) {
+		return capacity - (capacity >>> 2);  // load factor 0.75
+	}
+
+	private static int capacityFor(int count) {
+		int capacity = 8;
+		while (maxUsed(capacity) < count) {
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+
+	private static int hash(Object key) {
+		int h = key.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+	private Entry findEntry(Object key) {
+		int h = hash(key);
+		for (Entry e = buckets[h & (buckets.length - 1)]; e != null; e = e.nextInBucket) {
+			if (e.hash == h) {
+				Object k = e.key();
+				if (k == key || (k != null && k.equals(key))) {
+					return e;
+				}
+			}
+		}
+		return null;
+	}
+
+	private void setValue(Entry e, Object value) {
+		if (weakValues && isCollectable(value)) {
+			e.value = null;
+			e.valueRef = new Ref(value, queue, e);
+		}
+		else {
+			e.value = value;
+			e.valueRef = null;
+		}
+	}
+
+	private void kill(Entry e) {
+		if (!e.isDead()) {
+			e.value = null;
+			e.valueRef = null;
+			size -= 1;
+		}
+	}
+
+	private void purge(int budget) {
+		Reference<?> r;
+		while (budget-- > 0 && (r = queue.poll()) != null) {
+			Entry e = ((Ref) r).entry;
+			// the reference may be stale, i.e. belong to a value that has since been replaced
+			if (r == e.keyRef || r == e.valueRef) {
+				kill(e);
+			}
+		}
+	}
+
+	Object get(Object key) {
+		Entry e = findEntry(key);
+		return e != null ? e.value() : null;
+	}
+
+	void put(Object key, Object value) {
+		purge(PURGE_BUDGET);
+
+		Entry e = findEntry(key);
+
+		if (e != null) {
+			if (value == null) {
+				kill(e);
+			}
+			else {
+				if (e.isDead()) {
+					size += 1;
+				}
+				setValue(e, value);
+			}
+		}
+		else if (value != null) {
+			if (used == entries.length) {
+				purge(Integer.MAX_VALUE);
+				rebuild(capacityFor(size + 1));
+			}
+
+			e = new Entry(hash(key), used);
+			if (weakKeys && isCollectable(key)) {
+				e.keyRef = new Ref(key, queue, e);
+			}
+			else {
+				e.key = key;
+			}
+			setValue(e, value);
+
+			int b = e.hash & (buckets.length - 1);
+			e.nextInBucket = buckets[b];
+			buckets[b] = e;
+			entries[used] = e;
+
+			size += 1;
+			used += 1;
+		}
+	}
+
+	// drops dead entries and entries with cleared references
+	private void rebuild(int capacity) {
+		Entry[] oldEntries = entries;
+		int oldUsed = used;
+
+		buckets = new Entry[capacity];
+		entries = new Entry[maxUsed(capacity)];
+		used = 0;
+		size = 0;
+
+		for (int i = 0; i < oldUsed; i++) {
+			Entry e = oldEntries[i];
+			if (e.isLive()) {
+				int b = e.hash & (capacity - 1);
+				e.nextInBucket = buckets[b];
+				buckets[b] = e;
+				e.index = used;
+				entries[used] = e;
+
+				size += 1;
+				used += 1;
+			}
+			else {
+				// mark as dead so that pending references to it have no effect
+				e.value = null;
+				e.valueRef = null;
+			}
+		}
+	}
+
+	private long nextIndexFrom(int from) {
+		for (int i = from; i < used; i++) {
+			if (entries[i].isLive()) {
+				return i;
+			}
+		}
+		return -1L;
+	}
+
+	private Entry entryAt(long index) {
+		if (index < 0 || index >= used) {
+			throw new IllegalArgumentException("invalid traversal index: " + index);
+		}
+		return entries[(int) index];
+	}
+
+	long initialIndex() {
+		return nextIndexFrom(0);
+	}
+
+	long successorIndexOf(long index) {
+		purge(PURGE_BUDGET);
+		return nextIndexFrom(entryAt(index).index + 1);
+	}
+
+	long indexOf(Object key) {
+		Entry e = findEntry(key);
+		return e != null ? e.index : -1L;
+	}
+
+	Object keyAt(long index) {
+		return entryAt(index).key();
+	}
+
+	Object valueAt(long index) {
+		return entryAt(index).value();
+	}
+
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.load;
+
+import net.sandius.rembulan.Variable;
+import net.sandius.rembulan.runtime.LuaFunction;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A chunk loader that instantiates Lua chunks compiled ahead of time into Java classes,
+ * and available to a class loader (typically, packaged in a jar on the class path).
+ *
+ * <p>Precompiled chunks are identified by their module names. The mapping of module names
+ * to classes is read from the index resources named {@link #INDEX_RESOURCE_NAME}: these
+ * are property files mapping module names to the name of the main class of the chunk,
+ * followed by a space and the {@linkplain #sourceDigest(String) digest} of the source text
+ * the chunk was compiled from. When several index resources define the same module name,
+ * the first one found by the class loader takes precedence.</p>
+ *
+ * <p>Precompiled chunks may be loaded directly by their module names using
+ * {@link #loadModule(Variable, String)}, without the source text. When used
+ * as a {@link ChunkLoader}, this loader uses the chunk name as the module name,
+ * and loads the precompiled chunk only if it was compiled from the given source text.
+ * Otherwise, loading is delegated to the fallback chunk loader, if any.</p>
+ *
+ * <p>Since the precompiled classes are loaded by an ordinary class loader, they may be
+ * included in a class data sharing archive.</p>
+ */
+public class PrecompiledChunkLoader implements ChunkLoader {
+
+	/**
+	 * The name of the index resources.
+	 */
+	public static final String INDEX_RESOURCE_NAME = "META-INF/rembulan/chunks.properties";
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final ClassLoader classLoader;
+	private final Map<String, Entry> index;
+	private final ChunkLoader fallback;
+
+	private final ConcurrentMap<String, Constructor<?>> constructors;
+
+	private static class Entry {
+
+		final String className;
+		final String digest;
+
+		Entry(String className, String digest) {
+			this.className = Objects.requireNonNull(className);
+			this.digest = Objects.requireNonNull(digest);
+		}
+
+	}
+
+	PrecompiledChunkLoader(ClassLoader classLoader, Map<String, Entry> index, ChunkLoader fallback) {
+		this.classLoader = Objects.requireNonNull(classLoader);
+		this.index = Objects.requireNonNull(index);
+		this.fallback = fallback;
+		this.constructors = new ConcurrentHashMap<>();
+	}
+
+	private static Map<String, Entry> readIndex(ClassLoader classLoader) throws IOException {
+		Map<String, Entry> index = new HashMap<>();
+
+		Enumeration<URL> urls = classLoader.getResources(INDEX_RESOURCE_NAME);
+		while (urls.hasMoreElements()) {
+			URL url = urls.nextElement();
+
+			Properties props = new Properties();
+			try (InputStream in = url.openStream()) {
+				props.load(in);
+			}
+
+			for (String moduleName : props.stringPropertyNames()) {
+				String value = props.getProperty(moduleName).trim();
+				int sep = value.indexOf(' ');
+				if (sep < 0) {
+					throw new IOException("Malformed index entry for module '" + moduleName + "' in " + url);
+				}
+
+				if (!index.containsKey(moduleName)) {
+					index.put(moduleName, new Entry(value.substring(0, sep), value.substring(sep + 1).trim()));
+				}
+			}
+		}
+
+		return index;
+	}
+
+	/**
+	 * Returns a new instance of {@code PrecompiledChunkLoader} that loads the precompiled
+	 * chunks listed in the index resources available to {@code classLoader}, delegating
+	 * the loading of other chunks to {@code fallback}.
+	 *
+	 * @param classLoader  the class loader used to load the precompiled chunks,
+	 *                     must not be {@code null}
+	 * @param fallback  the fallback chunk loader, may be {@code null}
+	 * @return  a new instance of {@code PrecompiledChunkLoader}
+	 *
+	 * @throws NullPointerException  if {@code classLoader} is {@code null}
+	 * @throws IOException  if an index resource cannot be read or is malformed
+	 */
+	public static PrecompiledChunkLoader of(ClassLoader classLoader, ChunkLoader fallback) throws IOException {
+		return new PrecompiledChunkLoader(classLoader, readIndex(classLoader), fallback);
+	}
+
+	/**
+	 * Returns a new instance of {@code PrecompiledChunkLoader} that loads the precompiled
+	 * chunks listed in the index resources available to {@code classLoader}, without
+	 * a fallback chunk loader.
+	 *
+	 * @param classLoader  the class loader used to load the precompiled chunks,
+	 *                     must not be {@code null}
+	 * @return  a new instance of {@code PrecompiledChunkLoader}
+	 *
+	 * @throws NullPointerException  if {@code classLoader} is {@code null}
+	 * @throws IOException  if an index resource cannot be read or is malformed
+	 */
+	public static PrecompiledChunkLoader of(ClassLoader classLoader) throws IOException {
+		return of(classLoader, null);
+	}
+
+	/**
+	 * Returns the digest of the source text {@code sourceText} used to verify that
+	 * a precompiled chunk corresponds to the source text: the SHA-256 hash of {@code sourceText}
+	 * encoded in UTF-8, as a string of hexadecimal digits.
+	 *
+	 * @param sourceText  the source text, must not be {@code null}
+	 * @return  the digest of {@code sourceText}
+	 *
+	 * @throws NullPointerException  if {@code sourceText} is {@code null}
+	 */
+	public static String sourceDigest(String sourceText) {
+		byte[] bytes = sourceText.getBytes(UTF_8);
+
+		MessageDigest md;
+		try {
+			md = MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException ex) {
+			// every Java platform is required to support SHA-256
+			throw new IllegalStateException(ex);
+		}
+
+		StringBuilder bld = new StringBuilder();
+		for (byte b : md.digest(bytes)) {
+			bld.append(Character.forDigit((b >>> 4) & 0xf, 16));
+			bld.append(Character.forDigit(b & 0xf, 16));
+		}
+		return bld.toString();
+	}
+
+	/**
+	 * Returns the fallback chunk loader.
+	 *
+	 * @return  the fallback chunk loader, or {@code null} if there is none
+	 */
+	public ChunkLoader getFallback() {
+		return fallback;
+	}
+
+	/**
+	 * Returns the module names of the precompiled chunks available to this loader.
+	 *
+	 * @return  an unmodifiable set of module names
+	 */
+	public Set<String> moduleNames() {
+		return Collections.unmodifiableSet(index.keySet());
+	}
+
+	/**
+	 * Returns {@code true} if the precompiled chunk for the module {@code moduleName}
+	 * is available to this loader.
+	 *
+	 * @param moduleName  the module name, must not be {@code null}
+	 * @return  {@code true} iff the chunk for {@code moduleName} is available
+	 *
+	 * @throws NullPointerException  if {@code moduleName} is {@code null}
+	 */
+	public boolean isPrecompiled(String moduleName) {
+		return index.containsKey(Objects.requireNonNull(moduleName));
+	}
+
+	private LuaFunction instantiate(Variable env, String moduleName, String className) throws LoaderException {
+		try {
+			Constructor<?> constructor = constructors.get(className);
+			if (constructor == null) {
+				Class<?> clazz = Class.forName(className, true, classLoader);
+				constructor = clazz.getConstructor(Variable.class);
+				constructors.putIfAbsent(className, constructor);
+			}
+			return (LuaFunction) constructor.newInstance(env);
+		}
+		catch (RuntimeException | LinkageError | ReflectiveOperationException ex) {
+			throw new LoaderException(ex, moduleName, 0, false);
+		}
+	}
+
+	/**
+	 * Loads the precompiled chunk for the module {@code moduleName} and returns it
+	 * as an instance of {@link LuaFunction}, supplying {@code env} as the chunk's sole
+	 * upvalue.
+	 *
+	 * @param env  the variable to be used as the sole upvalue of the chunk,
+	 *             must not be {@code null}
+	 * @param moduleName  the module name, must not be {@code null}
+	 * @return  a function object
+	 *
+	 * @throws LoaderException  if there is no precompiled chunk for {@code moduleName},
+	 *                          or if it cannot be loaded
+	 * @throws NullPointerException  if {@code env} or {@code moduleName} is {@code null}
+	 */
+	public LuaFunction loadModule(Variable env, String moduleName) throws LoaderException {
+		Objects.requireNonNull(env);
+		Entry entry = index.get(Objects.requireNonNull(moduleName));
+		if (entry == null) {
+			throw new LoaderException(new IllegalArgumentException(
+					"no precompiled chunk for module '" + moduleName + "'"), moduleName);
+		}
+		return instantiate(env, moduleName, entry.className);
+	}
+
+	@Override
+	public LuaFunction loadTextChunk(Variable env, String chunkName, String chunk) throws LoaderException {
+		Objects.requireNonNull(env);
+		Objects.requireNonNull(chunkName);
+		Objects.requireNonNull(chunk);
+
+		Entry entry = index.get(chunkName);
+		if (entry != null && entry.digest.equals(sourceDigest(chunk))) {
+			return instantiate(env, chunkName, entry.className);
+		}
+		else if (fallback != null) {
+			return fallback.loadTextChunk(env, chunkName, chunk);
+		}
+		else {
+			throw new LoaderException(new IllegalArgumentException(
+					"no precompiled chunk for module '" + chunkName + "' matching the source text"), chunkName);
+		}
+	}
+
+}
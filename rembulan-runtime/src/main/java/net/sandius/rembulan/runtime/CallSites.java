@@ -0,0 +1,204 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.runtime;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+
+/**
+ * Bootstrap methods for the {@code invokedynamic} call sites emitted by the compiler
+ * for Lua function calls.
+ *
+ * <p>A call site has the same type as the corresponding {@code Dispatch.call} method,
+ * i.e., it takes the execution context, the call target and the call arguments
+ * (either individually, or as an array), and has the same semantics: the results of the call
+ * are stored in the return buffer, tail calls are evaluated, and non-local control changes
+ * are signalled by an {@link UnresolvedControlThrowable}.</p>
+ *
+ * <p>When the call target is a {@link LuaFunction}, the call site is linked to a direct
+ * invocation of the {@code invoke} method of the target's class, guarded by a test
+ * of the target's class. When the guard fails, the site is relinked to the new class.
+ * Sites that have been relinked more than {@link #MAX_RELINKS} times are considered
+ * megamorphic, and are permanently linked to {@code Dispatch.call}. So are sites whose
+ * target is not a {@code LuaFunction} (e.g., a table with a {@code __call} metamethod),
+ * since such targets cannot be called directly.</p>
+ */
+public final class CallSites {
+
+	/**
+	 * The maximum number of times a call site is relinked before it is linked
+	 * to the generic call dispatch.
+	 */
+	public static final int MAX_RELINKS = 8;
+
+	private static final MethodHandle HAS_CLASS;
+	private static final MethodHandle EVALUATE_TAIL_CALLS;
+	private static final MethodHandle UNRESOLVE;
+	private static final MethodHandle FALLBACK;
+
+	static {
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		try {
+			HAS_CLASS = lookup.findStatic(CallSites.class, "hasClass",
+					MethodType.methodType(boolean.class, Class.class, Object.class));
+			EVALUATE_TAIL_CALLS = lookup.findStatic(Dispatch.class, "evaluateTailCalls",
+					MethodType.methodType(void.class, ExecutionContext.class));
+			UNRESOLVE = lookup.findStatic(CallSites.class, "unresolve",
+					MethodType.methodType(void.class, ResolvedControlThrowable.class));
+			FALLBACK = lookup.findVirtual(LuaCallSite.class, "fallback",
+					MethodType.methodType(void.class, ExecutionContext.class, Object.class, Object[].class));
+		}
+		catch (NoSuchMethodException | IllegalAccessException ex) {
+			throw new LinkageError("Unable to initialise call site method handles", ex);
+		}
+	}
+
+	private CallSites() {
+		// not to be instantiated
+	}
+
+	/**
+	 * The bootstrap method for Lua function call sites.
+	 *
+	 * @param lookup  the lookup object of the caller, must not be {@code null}
+	 * @param name  the name of the call site (ignored)
+	 * @param type  the type of the call site, must not be {@code null}
+	 * @return  a new call site
+	 *
+	 * @throws NullPointerException  if {@code lookup} or {@code type} is {@code null}
+	 * @throws NoSuchMethodException  if {@code type} does not correspond to
+	 *                                a {@code Dispatch.call} method
+	 * @throws IllegalAccessException  if the {@code Dispatch.call} method is not accessible
+	 */
+	@SuppressWarnings("unused")
+	public static CallSite bootstrap(MethodHandles.Lookup lookup, String name, MethodType type)
+			throws NoSuchMethodException, IllegalAccessException {
+
+		MethodHandle generic = lookup.findStatic(Dispatch.class, "call", type);
+		return new LuaCallSite(type, generic);
+	}
+
+	@SuppressWarnings("unused")
+	private static boolean hasClass(Class<?> clazz, Object o) {
+		return o != null && o.getClass() == clazz;
+	}
+
+	@SuppressWarnings("unused")
+	private static void unresolve(ResolvedControlThrowable ct) throws UnresolvedControlThrowable {
+		throw ct.unresolve();
+	}
+
+	// returns true iff the parameters of type following the call target are an argument array
+	private static boolean isArrayArgs(MethodType type) {
+		return type.parameterCount() == 3 && type.parameterType(2) == Object[].class;
+	}
+
+	// (ExecutionContext, Object target, args...) -> boolean: true iff target's class is clazz
+	private static MethodHandle guard(MethodType type, Class<?> clazz) {
+		MethodHandle test = MethodHandles.insertArguments(HAS_CLASS, 0, clazz);
+		test = MethodHandles.dropArguments(test, 0, ExecutionContext.class);
+		return MethodHandles.dropArguments(test, 2, type.parameterList().subList(2, type.parameterCount()));
+	}
+
+	// (ExecutionContext, Object target, args...) -> void: the direct invocation of clazz.invoke
+	// on target, followed by the evaluation of tail calls
+	private static MethodHandle directCall(MethodType type, Class<? extends LuaFunction> clazz) {
+		MethodType invokeType = type.dropParameterTypes(1, 2);
+
+		MethodHandle invoke;
+		Class<?> owner;
+		try {
+			owner = clazz;
+			invoke = MethodHandles.publicLookup().findVirtual(clazz, "invoke", invokeType);
+		}
+		catch (NoSuchMethodException | IllegalAccessException ex) {
+			// not accessible directly, go through the public supertype
+			try {
+				owner = LuaFunction.class;
+				invoke = MethodHandles.publicLookup().findVirtual(LuaFunction.class, "invoke", invokeType);
+			}
+			catch (NoSuchMethodException | IllegalAccessException ex2) {
+				throw new LinkageError("Unable to link call site of type " + type, ex2);
+			}
+		}
+
+		// swap the receiver and the execution context
+		int[] reorder = new int[type.parameterCount()];
+		for (int i = 0; i < reorder.length; i++) {
+			reorder[i] = i;
+		}
+		reorder[0] = 1;
+		reorder[1] = 0;
+		invoke = MethodHandles.permuteArguments(invoke, type.changeParameterType(1, owner), reorder);
+		invoke = invoke.asType(type);
+
+		MethodHandle tailCalls = MethodHandles.dropArguments(
+				EVALUATE_TAIL_CALLS, 1, type.parameterList().subList(1, type.parameterCount()));
+		MethodHandle call = MethodHandles.foldArguments(tailCalls, invoke);
+
+		MethodHandle handler = MethodHandles.dropArguments(UNRESOLVE, 1, type.parameterList());
+		return MethodHandles.catchException(call, ResolvedControlThrowable.class, handler);
+	}
+
+	static class LuaCallSite extends MutableCallSite {
+
+		private final MethodHandle generic;
+		private final MethodHandle fallback;
+
+		private int relinks;
+
+		LuaCallSite(MethodType type, MethodHandle generic) {
+			super(type);
+			this.generic = generic;
+
+			MethodHandle fb = FALLBACK.bindTo(this);
+			if (!isArrayArgs(type)) {
+				fb = fb.asCollector(Object[].class, type.parameterCount() - 2);
+			}
+			this.fallback = fb.asType(type);
+
+			this.relinks = 0;
+			setTarget(fallback);
+		}
+
+		private void relink(Object target) {
+			if (relinks < MAX_RELINKS && target instanceof LuaFunction) {
+				relinks += 1;
+				Class<? extends LuaFunction> clazz = ((LuaFunction) target).getClass();
+				setTarget(MethodHandles.guardWithTest(
+						guard(type(), clazz),
+						directCall(type(), clazz),
+						fallback));
+			}
+			else {
+				// megamorphic, or not directly callable
+				setTarget(generic);
+			}
+		}
+
+		@SuppressWarnings("unused")
+		void fallback(ExecutionContext context, Object target, Object[] args) throws UnresolvedControlThrowable {
+			relink(target);
+			Dispatch.call(context, target, args);
+		}
+
+	}
+
+}
@@ -86,7 +86,14 @@ public final class Coroutine {
 		@Override
 		public void resume(ExecutionContext context, Object target) throws ResolvedControlThrowable {
 			try {
-				Dispatch.call(context, target, context.getReturnBuffer().getAsArray());
+				ReturnBuffer r = context.getReturnBuffer();
+				switch (r.size()) {
+					case 0: Dispatch.call(context, target); break;
+					case 1: Dispatch.call(context, target, r.get0()); break;
+					case 2: Dispatch.call(context, target, r.get0(), r.get1()); break;
+					case 3: Dispatch.call(context, target, r.get0(), r.get1(), r.get2()); break;
+					default: Dispatch.call(context, target, r.getAsArray()); break;
+				}
 			}
 			catch (UnresolvedControlThrowable ct) {
 				throw ct.resolve();
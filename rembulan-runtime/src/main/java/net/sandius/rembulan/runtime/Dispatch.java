@@ -18,6 +18,7 @@ package net.sandius.rembulan.runtime;
 
 import net.sandius.rembulan.Arithmetic;
 import net.sandius.rembulan.Conversions;
+import net.sandius.rembulan.LongCache;
 import net.sandius.rembulan.LuaMathOperators;
 import net.sandius.rembulan.MetatableProvider;
 import net.sandius.rembulan.Metatables;
@@ -41,7 +42,7 @@ public final class Dispatch {
 			return (LuaFunction) target;
 		}
 		else {
-			Object handler = Metatables.getMetamethod(metatableProvider, Metatables.MT_CALL, target);
+			Object handler = Metatables.getMetamethod(metatableProvider, Metatables.MT_CALL, Metatables.MT_CALL_FLAG, target);
 
 			if (handler instanceof LuaFunction) {
 				return (LuaFunction) handler;
@@ -406,8 +407,8 @@ public final class Dispatch {
 		}
 	}
 
-	private static void try_mt_arithmetic(ExecutionContext context, String event, Object a, Object b) throws UnresolvedControlThrowable {
-		Object handler = Metatables.binaryHandlerFor(context, event, a, b);
+	private static void try_mt_arithmetic(ExecutionContext context, String event, int flag, Object a, Object b) throws UnresolvedControlThrowable {
+		Object handler = Metatables.binaryHandlerFor(context, event, flag, a, b);
 
 		if (handler != null) {
 			call(context, handler, a, b);
@@ -417,8 +418,8 @@ public final class Dispatch {
 		}
 	}
 
-	private static void try_mt_arithmetic(ExecutionContext context, String event, Object o) throws UnresolvedControlThrowable {
-		Object handler = Metatables.getMetamethod(context, event, o);
+	private static void try_mt_arithmetic(ExecutionContext context, String event, int flag, Object o) throws UnresolvedControlThrowable {
+		Object handler = Metatables.getMetamethod(context, event, flag, o);
 
 		if (handler != null) {
 			call(context, handler, o, o);
@@ -455,7 +456,43 @@ public final class Dispatch {
 			context.getReturnBuffer().setTo(math.add(na, nb));
 		}
 		else {
-			try_mt_arithmetic(context, Metatables.MT_ADD, a, b);
+			try_mt_arithmetic(context, Metatables.MT_ADD, Metatables.MT_ADD_FLAG, a, b);
+		}
+	}
+
+	/**
+	 * Evaluates the Lua expression {@code a + b}, including the handling of metamethods,
+	 * and returns the result.
+	 * <b>This method throws an {@link UnresolvedControlThrowable}</b>: non-local control
+	 * changes are expected to be resolved by the caller of this method.
+	 *
+	 * <p>This method differs from {@link #add(ExecutionContext, Object, Object)} in that
+	 * the return buffer is only used when a metamethod is involved.</p>
+	 *
+	 * @param context  execution context, must not be {@code null}
+	 * @param a  the first operand, may be any value
+	 * @param b  the second operand, may be any value
+	 * @return  the value of the Lua expression {@code a + b}
+	 *
+	 * @throws UnresolvedControlThrowable  if the evaluation called a metamethod and the metamethod
+	 *                           initiates a non-local control change
+	 * @throws NullPointerException  if {@code context} is {@code null}
+	 * @throws IllegalOperationAttemptException  if {@code a} or {@code b} does not have
+	 *                                           an arithmetic value and neither {@code a} nor
+	 *                                           {@code b} has the {@code __add} metamethod
+	 */
+	@SuppressWarnings("unused")
+	public static Object addValue(ExecutionContext context, Object a, Object b) throws UnresolvedControlThrowable {
+		Number na = Conversions.arithmeticValueOf(a);
+		Number nb = Conversions.arithmeticValueOf(b);
+		Arithmetic math = Arithmetic.of(na, nb);
+
+		if (math != null) {
+			return math.add(na, nb);
+		}
+		else {
+			add(context, a, b);
+			return context.getReturnBuffer().get0();
 		}
 	}
 
@@ -503,7 +540,43 @@ public final class Dispatch {
 			context.getReturnBuffer().setTo(m.sub(na, nb));
 		}
 		else {
-			try_mt_arithmetic(context, Metatables.MT_SUB, a, b);
+			try_mt_arithmetic(context, Metatables.MT_SUB, Metatables.MT_SUB_FLAG, a, b);
+		}
+	}
+
+	/**
+	 * Evaluates the Lua expression {@code a - b}, including the handling of metamethods,
+	 * and returns the result.
+	 * <b>This method throws an {@link UnresolvedControlThrowable}</b>: non-local control
+	 * changes are expected to be resolved by the caller of this method.
+	 *
+	 * <p>This method differs from {@link #sub(ExecutionContext, Object, Object)} in that
+	 * the return buffer is only used when a metamethod is involved.</p>
+	 *
+	 * @param context  execution context, must not be {@code null}
+	 * @param a  the first operand, may be any value
+	 * @param b  the second operand, may be any value
+	 * @return  the value of the Lua expression {@code a - b}
+	 *
+	 * @throws UnresolvedControlThrowable  if the evaluation called a metamethod and the metamethod
+	 *                           initiates a non-local control change
+	 * @throws NullPointerException  if {@code context} is {@code null}
+	 * @throws IllegalOperationAttemptException  if {@code a} or {@code b} does not have
+	 *                                           an arithmetic value and neither {@code a} nor
+	 *                                           {@code b} has the {@code __sub} metamethod
+	 */
+	@SuppressWarnings("unused")
+	public static Object subValue(ExecutionContext context, Object a, Object b) throws UnresolvedControlThrowable {
+		Number na = Conversions.arithmeticValueOf(a);
+		Number nb = Conversions.arithmeticValueOf(b);
+		Arithmetic math = Arithmetic.of(na, nb);
+
+		if (math != null) {
+			return math.sub(na, nb);
+		}
+		else {
+			sub(context, a, b);
+			return context.getReturnBuffer().get0();
 		}
 	}
 
@@ -551,7 +624,43 @@ public final class Dispatch {
 			context.getReturnBuffer().setTo(m.mul(na, nb));
 		}
 		else {
-			try_mt_arithmetic(context, Metatables.MT_MUL, a, b);
+			try_mt_arithmetic(context, Metatables.MT_MUL, Metatables.MT_MUL_FLAG, a, b);
+		}
+	}
+
+	/**
+	 * Evaluates the Lua expression {@code a * b}, including the handling of metamethods,
+	 * and returns the result.
+	 * <b>This method throws an {@link UnresolvedControlThrowable}</b>: non-local control
+	 * changes are expected to be resolved by the caller of this method.
+	 *
+	 * <p>This method differs from {@link #mul(ExecutionContext, Object, Object)} in that
+	 * the return buffer is only used when a metamethod is involved.</p>
+	 *
+	 * @param context  execution context, must not be {@code null}
+	 * @param a  the first operand, may be any value
+	 * @param b  the second operand, may be any value
+	 * @return  the value of the Lua expression {@code a * b}
+	 *
+	 * @throws UnresolvedControlThrowable  if the evaluation called a metamethod and the metamethod
+	 *                           initiates a non-local control change
+	 * @throws NullPointerException  if {@code context} is {@code null}
+	 * @throws IllegalOperationAttemptException  if {@code a} or {@code b} does not have
+	 *                                           an arithmetic value and neither {@code a} nor
+	 *                                           {@code b} has the {@code __mul} metamethod
+	 */
+	@SuppressWarnings("unused")
+	public static Object mulValue(ExecutionContext context, Object a, Object b) throws UnresolvedControlThrowable {
+		Number na = Conversions.arithmeticValueOf(a);
+		Number nb = Conversions.arithmeticValueOf(b);
+		Arithmetic math = Arithmetic.of(na, nb);
+
+		if (math != null) {
+			return math.mul(na, nb);
+		}
+		else {
+			mul(context, a, b);
+			return context.getReturnBuffer().get0();
 		}
 	}
 
@@ -599,7 +708,43 @@ public final class Dispatch {
 			context.getReturnBuffer().setTo(m.div(na, nb));
 		}
 		else {
-			try_mt_arithmetic(context, Metatables.MT_DIV, a, b);
+			try_mt_arithmetic(context, Metatables.MT_DIV, Metatables.MT_DIV_FLAG, a, b);
+		}
+	}
+
+	/**
+	 * Evaluates the Lua expression {@code a / b}, including the handling of metamethods,
+	 * and returns the result.
+	 * <b>This method throws an {@link UnresolvedControlThrowable}</b>: non-local control
+	 * changes are expected to be resolved by the caller of this method.
+	 *
+	 * <p>This method differs from {@link #div(ExecutionContext, Object, Object)} in that
+	 * the return buffer is only used when a metamethod is involved.</p>
+	 *
+	 * @param context  execution context, must not be {@code null}
+	 * @param a  the first operand, may be any value
+	 * @param b  the second operand, may be any value
+	 * @return  the value of the Lua expression {@code a / b}
+	 *
+	 * @throws UnresolvedControlThrowable  if the evaluation called a metamethod and the metamethod
+	 *                           initiates a non-local control change
+	 * @throws NullPointerException  if {@code context} is {@code null}
+	 * @throws IllegalOperationAttemptException  if {@code a} or {@code b} does not have
+	 *                                           an arithmetic value and neither {@code a} nor
+	 *                                           {@code b} has the {@code __div} metamethod
+	 */
+	@SuppressWarnings("unused")
+	public static Object divValue(ExecutionContext context, Object a, Object b) throws UnresolvedControlThrowable {
+		Number na = Conversions.arithmeticValueOf(a);
+		Number nb = Conversions.arithmeticValueOf(b);
+		Arithmetic math = Arithmetic.of(na, nb);
+
+		if (math != null) {
+			return math.div(na, nb);
+		}
+		else {
+			div(context, a, b);
+			return context.getReturnBuffer().get0();
 		}
 	}
 
@@ -647,7 +792,43 @@ public final class Dispatch {
 			context.getReturnBuffer().setTo(m.mod(na, nb));
 		}
 		else {
-			try_mt_arithmetic(context, Metatables.MT_MOD, a, b);
+			try_mt_arithmetic(context, Metatables.MT_MOD, Metatables.MT_MOD_FLAG, a, b);
+		}
+	}
+
+	/**
+	 * Evaluates the Lua expression {@code a % b}, including the handling of metamethods,
+	 * and returns the result.
+	 * <b>This method throws an {@link UnresolvedControlThrowable}</b>: non-local control
+	 * changes are expected to be resolved by the caller of this method.
+	 *
+	 * <p>This method differs from {@link #mod(ExecutionContext, Object, Object)} in that
+	 * the return buffer is only used when a metamethod is involved.</p>
+	 *
+	 * @param context  execution context, must not be {@code null}
+	 * @param a  the first operand, may be any value
+	 * @param b  the second operand, may be any value
+	 * @return  the value of the Lua expression {@code a % b}
+	 *
+	 * @throws UnresolvedControlThrowable  if the evaluation called a metamethod and the metamethod
+	 *                           initiates a non-local control change
+	 * @throws NullPointerException  if {@code context} is {@code null}
+	 * @throws IllegalOperationAttemptException  if {@code a} or {@code b} does not have
+	 *                                           an arithmetic value and neither {@code a} nor
+	 *                                           {@code b} has the {@code __mod} metamethod
+	 */
+	@SuppressWarnings("unused")
+	public static Object modValue(ExecutionContext context, Object a, Object b) throws UnresolvedControlThrowable {
+		Number na = Conversions.arithmeticValueOf(a);
+		Number nb = Conversions.arithmeticValueOf(b);
+		Arithmetic math = Arithmetic.of(na, nb);
+
+		if (math != null) {
+			return math.mod(na, nb);
+		}
+		else {
+			mod(context, a, b);
+			return context.getReturnBuffer().get0();
 		}
 	}
 
@@ -695,7 +876,43 @@ public final class Dispatch {
 			context.getReturnBuffer().setTo(m.idiv(na, nb));
 		}
 		else {
-			try_mt_arithmetic(context, Metatables.MT_IDIV, a, b);
+			try_mt_arithmetic(context, Metatables.MT_IDIV, Metatables.MT_IDIV_FLAG, a, b);
+		}
+	}
+
+	/**
+	 * Evaluates the Lua expression {@code a // b}, including the handling of metamethods,
+	 * and returns the result.
+	 * <b>This method throws an {@link UnresolvedControlThrowable}</b>: non-local control
+	 * changes are expected to be resolved by the caller of this method.
+	 *
+	 * <p>This method differs from {@link #idiv(ExecutionContext, Object, Object)} in that
+	 * the return buffer is only used when a metamethod is involved.</p>
+	 *
+	 * @param context  execution context, must not be {@code null}
+	 * @param a  the first operand, may be any value
+	 * @param b  the second operand, may be any value
+	 * @return  the value of the Lua expression {@code a // b}
+	 *
+	 * @throws UnresolvedControlThrowable  if the evaluation called a metamethod and the metamethod
+	 *                           initiates a non-local control change
+	 * @throws NullPointerException  if {@code context} is {@code null}
+	 * @throws IllegalOperationAttemptException  if {@code a} or {@code b} does not have
+	 *                                           an arithmetic value and neither {@code a} nor
+	 *                                           {@code b} has the {@code __idiv} metamethod
+	 */
+	@SuppressWarnings("unused")
+	public static Object idivValue(ExecutionContext context, Object a, Object b) throws UnresolvedControlThrowable {
+		Number na = Conversions.arithmeticValueOf(a);
+		Number nb = Conversions.arithmeticValueOf(b);
+		Arithmetic math = Arithmetic.of(na, nb);
+
+		if (math != null) {
+			return math.idiv(na, nb);
+		}
+		else {
+			idiv(context, a, b);
+			return context.getReturnBuffer().get0();
 		}
 	}
 
@@ -743,7 +960,43 @@ public final class Dispatch {
 			context.getReturnBuffer().setTo(m.pow(na, nb));
 		}
 		else {
-			try_mt_arithmetic(context, Metatables.MT_POW, a, b);
+			try_mt_arithmetic(context, Metatables.MT_POW, Metatables.MT_POW_FLAG, a, b);
+		}
+	}
+
+	/**
+	 * Evaluates the Lua expression {@code a ^ b}, including the handling of metamethods,
+	 * and returns the result.
+	 * <b>This method throws an {@link UnresolvedControlThrowable}</b>: non-local control
+	 * changes are expected to be resolved by the caller of this method.
+	 *
+	 * <p>This method differs from {@link #pow(ExecutionContext, Object, Object)} in that
+	 * the return buffer is only used when a metamethod is involved.</p>
+	 *
+	 * @param context  execution context, must not be {@code null}
+	 * @param a  the first operand, may be any value
+	 * @param b  the second operand, may be any value
+	 * @return  the value of the Lua expression {@code a ^ b}
+	 *
+	 * @throws UnresolvedControlThrowable  if the evaluation called a metamethod and the metamethod
+	 *                           initiates a non-local control change
+	 * @throws NullPointerException  if {@code context} is {@code null}
+	 * @throws IllegalOperationAttemptException  if {@code a} or {@code b} does not have
+	 *                                           an arithmetic value and neither {@code a} nor
+	 *                                           {@code b} has the {@code __pow} metamethod
+	 */
+	@SuppressWarnings("unused")
+	public static Object powValue(ExecutionContext context, Object a, Object b) throws UnresolvedControlThrowable {
+		Number na = Conversions.arithmeticValueOf(a);
+		Number nb = Conversions.arithmeticValueOf(b);
+		Arithmetic math = Arithmetic.of(na, nb);
+
+		if (math != null) {
+			return math.pow(na, nb);
+		}
+		else {
+			pow(context, a, b);
+			return context.getReturnBuffer().get0();
 		}
 	}
 
@@ -765,8 +1018,8 @@ public final class Dispatch {
 		return Arithmetic.of(a, b).pow(a, b);
 	}
 
-	private static void try_mt_bitwise(ExecutionContext context, String event, Object a, Object b) throws UnresolvedControlThrowable {
-		Object handler = Metatables.binaryHandlerFor(context, event, a, b);
+	private static void try_mt_bitwise(ExecutionContext context, String event, int flag, Object a, Object b) throws UnresolvedControlThrowable {
+		Object handler = Metatables.binaryHandlerFor(context, event, flag, a, b);
 
 		if (handler != null) {
 			call(context, handler, a, b);
@@ -776,8 +1029,8 @@ public final class Dispatch {
 		}
 	}
 
-	private static void try_mt_bitwise(ExecutionContext context, String event, Object o) throws UnresolvedControlThrowable {
-		Object handler = Metatables.getMetamethod(context, event, o);
+	private static void try_mt_bitwise(ExecutionContext context, String event, int flag, Object o) throws UnresolvedControlThrowable {
+		Object handler = Metatables.getMetamethod(context, event, flag, o);
 
 		if (handler != null) {
 			call(context, handler, o, o);
@@ -810,10 +1063,45 @@ public final class Dispatch {
 		Long lb = Conversions.integerValueOf(b);
 
 		if (la != null && lb != null) {
-			context.getReturnBuffer().setTo(LuaMathOperators.band(la, lb));
+			context.getReturnBuffer().setTo(LongCache.valueOf(LuaMathOperators.band(la, lb)));
 		}
 		else {
-			try_mt_bitwise(context, Metatables.MT_BAND, a, b);
+			try_mt_bitwise(context, Metatables.MT_BAND, Metatables.MT_BAND_FLAG, a, b);
+		}
+	}
+
+	/**
+	 * Evaluates the Lua expression {@code a & b}, including the handling of metamethods,
+	 * and returns the result.
+	 * <b>This method throws an {@link UnresolvedControlThrowable}</b>: non-local control
+	 * changes are expected to be resolved by the caller of this method.
+	 *
+	 * <p>This method differs from {@link #band(ExecutionContext, Object, Object)} in that
+	 * the return buffer is only used when a metamethod is involved.</p>
+	 *
+	 * @param context  execution context, must not be {@code null}
+	 * @param a  the first operand, may be any value
+	 * @param b  the second operand, may be any value
+	 * @return  the value of the Lua expression {@code a & b}
+	 *
+	 * @throws UnresolvedControlThrowable  if the evaluation called a metamethod and the metamethod
+	 *                           initiates a non-local control change
+	 * @throws NullPointerException  if {@code context} is {@code null}
+	 * @throws IllegalOperationAttemptException  if {@code a} or {@code b} does not have
+	 *                                           an integer value and neither {@code a} nor
+	 *                                           {@code b} has the {@code __band} metamethod
+	 */
+	@SuppressWarnings("unused")
+	public static Object bandValue(ExecutionContext context, Object a, Object b) throws UnresolvedControlThrowable {
+		Long la = Conversions.integerValueOf(a);
+		Long lb = Conversions.integerValueOf(b);
+
+		if (la != null && lb != null) {
+			return LongCache.valueOf(LuaMathOperators.band(la, lb));
+		}
+		else {
+			band(context, a, b);
+			return context.getReturnBuffer().get0();
 		}
 	}
 
@@ -840,10 +1128,45 @@ public final class Dispatch {
 		Long lb = Conversions.integerValueOf(b);
 
 		if (la != null && lb != null) {
-			context.getReturnBuffer().setTo(LuaMathOperators.bor(la, lb));
+			context.getReturnBuffer().setTo(LongCache.valueOf(LuaMathOperators.bor(la, lb)));
+		}
+		else {
+			try_mt_bitwise(context, Metatables.MT_BOR, Metatables.MT_BOR_FLAG, a, b);
+		}
+	}
+
+	/**
+	 * Evaluates the Lua expression {@code a | b}, including the handling of metamethods,
+	 * and returns the result.
+	 * <b>This method throws an {@link UnresolvedControlThrowable}</b>: non-local control
+	 * changes are expected to be resolved by the caller of this method.
+	 *
+	 * <p>This method differs from {@link #bor(ExecutionContext, Object, Object)} in that
+	 * the return buffer is only used when a metamethod is involved.</p>
+	 *
+	 * @param context  execution context, must not be {@code null}
+	 * @param a  the first operand, may be any value
+	 * @param b  the second operand, may be any value
+	 * @return  the value of the Lua expression {@code a | b}
+	 *
+	 * @throws UnresolvedControlThrowable  if the evaluation called a metamethod and the metamethod
+	 *                           initiates a non-local control change
+	 * @throws NullPointerException  if {@code context} is {@code null}
+	 * @throws IllegalOperationAttemptException  if {@code a} or {@code b} does not have
+	 *                                           an integer value and neither {@code a} nor
+	 *                                           {@code b} has the {@code __bor} metamethod
+	 */
+	@SuppressWarnings("unused")
+	public static Object borValue(ExecutionContext context, Object a, Object b) throws UnresolvedControlThrowable {
+		Long la = Conversions.integerValueOf(a);
+		Long lb = Conversions.integerValueOf(b);
+
+		if (la != null && lb != null) {
+			return LongCache.valueOf(LuaMathOperators.bor(la, lb));
 		}
 		else {
-			try_mt_bitwise(context, Metatables.MT_BOR, a, b);
+			bor(context, a, b);
+			return context.getReturnBuffer().get0();
 		}
 	}
 
@@ -870,10 +1193,45 @@ public final class Dispatch {
 		Long lb = Conversions.integerValueOf(b);
 
 		if (la != null && lb != null) {
-			context.getReturnBuffer().setTo(LuaMathOperators.bxor(la, lb));
+			context.getReturnBuffer().setTo(LongCache.valueOf(LuaMathOperators.bxor(la, lb)));
+		}
+		else {
+			try_mt_bitwise(context, Metatables.MT_BXOR, Metatables.MT_BXOR_FLAG, a, b);
+		}
+	}
+
+	/**
+	 * Evaluates the Lua expression {@code a ~ b}, including the handling of metamethods,
+	 * and returns the result.
+	 * <b>This method throws an {@link UnresolvedControlThrowable}</b>: non-local control
+	 * changes are expected to be resolved by the caller of this method.
+	 *
+	 * <p>This method differs from {@link #bxor(ExecutionContext, Object, Object)} in that
+	 * the return buffer is only used when a metamethod is involved.</p>
+	 *
+	 * @param context  execution context, must not be {@code null}
+	 * @param a  the first operand, may be any value
+	 * @param b  the second operand, may be any value
+	 * @return  the value of the Lua expression {@code a ~ b}
+	 *
+	 * @throws UnresolvedControlThrowable  if the evaluation called a metamethod and the metamethod
+	 *                           initiates a non-local control change
+	 * @throws NullPointerException  if {@code context} is {@code null}
+	 * @throws IllegalOperationAttemptException  if {@code a} or {@code b} does not have
+	 *                                           an integer value and neither {@code a} nor
+	 *                                           {@code b} has the {@code __bxor} metamethod
+	 */
+	@SuppressWarnings("unused")
+	public static Object bxorValue(ExecutionContext context, Object a, Object b) throws UnresolvedControlThrowable {
+		Long la = Conversions.integerValueOf(a);
+		Long lb = Conversions.integerValueOf(b);
+
+		if (la != null && lb != null) {
+			return LongCache.valueOf(LuaMathOperators.bxor(la, lb));
 		}
 		else {
-			try_mt_bitwise(context, Metatables.MT_BXOR, a, b);
+			bxor(context, a, b);
+			return context.getReturnBuffer().get0();
 		}
 	}
 
@@ -900,10 +1258,45 @@ public final class Dispatch {
 		Long lb = Conversions.integerValueOf(b);
 
 		if (la != null && lb != null) {
-			context.getReturnBuffer().setTo(LuaMathOperators.shl(la, lb));
+			context.getReturnBuffer().setTo(LongCache.valueOf(LuaMathOperators.shl(la, lb)));
+		}
+		else {
+			try_mt_bitwise(context, Metatables.MT_SHL, Metatables.MT_SHL_FLAG, a, b);
+		}
+	}
+
+	/**
+	 * Evaluates the Lua expression {@code a << b}, including the handling of metamethods,
+	 * and returns the result.
+	 * <b>This method throws an {@link UnresolvedControlThrowable}</b>: non-local control
+	 * changes are expected to be resolved by the caller of this method.
+	 *
+	 * <p>This method differs from {@link #shl(ExecutionContext, Object, Object)} in that
+	 * the return buffer is only used when a metamethod is involved.</p>
+	 *
+	 * @param context  execution context, must not be {@code null}
+	 * @param a  the first operand, may be any value
+	 * @param b  the second operand, may be any value
+	 * @return  the value of the Lua expression {@code a << b}
+	 *
+	 * @throws UnresolvedControlThrowable  if the evaluation called a metamethod and the metamethod
+	 *                           initiates a non-local control change
+	 * @throws NullPointerException  if {@code context} is {@code null}
+	 * @throws IllegalOperationAttemptException  if {@code a} or {@code b} does not have
+	 *                                           an integer value and neither {@code a} nor
+	 *                                           {@code b} has the {@code __shl} metamethod
+	 */
+	@SuppressWarnings("unused")
+	public static Object shlValue(ExecutionContext context, Object a, Object b) throws UnresolvedControlThrowable {
+		Long la = Conversions.integerValueOf(a);
+		Long lb = Conversions.integerValueOf(b);
+
+		if (la != null && lb != null) {
+			return LongCache.valueOf(LuaMathOperators.shl(la, lb));
 		}
 		else {
-			try_mt_bitwise(context, Metatables.MT_SHL, a, b);
+			shl(context, a, b);
+			return context.getReturnBuffer().get0();
 		}
 	}
 
@@ -930,10 +1323,45 @@ public final class Dispatch {
 		Long lb = Conversions.integerValueOf(b);
 
 		if (la != null && lb != null) {
-			context.getReturnBuffer().setTo(LuaMathOperators.shr(la, lb));
+			context.getReturnBuffer().setTo(LongCache.valueOf(LuaMathOperators.shr(la, lb)));
 		}
 		else {
-			try_mt_bitwise(context, Metatables.MT_SHR, a, b);
+			try_mt_bitwise(context, Metatables.MT_SHR, Metatables.MT_SHR_FLAG, a, b);
+		}
+	}
+
+	/**
+	 * Evaluates the Lua expression {@code a >> b}, including the handling of metamethods,
+	 * and returns the result.
+	 * <b>This method throws an {@link UnresolvedControlThrowable}</b>: non-local control
+	 * changes are expected to be resolved by the caller of this method.
+	 *
+	 * <p>This method differs from {@link #shr(ExecutionContext, Object, Object)} in that
+	 * the return buffer is only used when a metamethod is involved.</p>
+	 *
+	 * @param context  execution context, must not be {@code null}
+	 * @param a  the first operand, may be any value
+	 * @param b  the second operand, may be any value
+	 * @return  the value of the Lua expression {@code a >> b}
+	 *
+	 * @throws UnresolvedControlThrowable  if the evaluation called a metamethod and the metamethod
+	 *                           initiates a non-local control change
+	 * @throws NullPointerException  if {@code context} is {@code null}
+	 * @throws IllegalOperationAttemptException  if {@code a} or {@code b} does not have
+	 *                                           an integer value and neither {@code a} nor
+	 *                                           {@code b} has the {@code __shr} metamethod
+	 */
+	@SuppressWarnings("unused")
+	public static Object shrValue(ExecutionContext context, Object a, Object b) throws UnresolvedControlThrowable {
+		Long la = Conversions.integerValueOf(a);
+		Long lb = Conversions.integerValueOf(b);
+
+		if (la != null && lb != null) {
+			return LongCache.valueOf(LuaMathOperators.shr(la, lb));
+		}
+		else {
+			shr(context, a, b);
+			return context.getReturnBuffer().get0();
 		}
 	}
 
@@ -960,7 +1388,40 @@ public final class Dispatch {
 			context.getReturnBuffer().setTo(m.unm(no));
 		}
 		else {
-			try_mt_arithmetic(context, Metatables.MT_UNM, o);
+			try_mt_arithmetic(context, Metatables.MT_UNM, Metatables.MT_UNM_FLAG, o);
+		}
+	}
+
+	/**
+	 * Evaluates the Lua expression {@code -a}, including the handling of metamethods,
+	 * and returns the result.
+	 * <b>This method throws an {@link UnresolvedControlThrowable}</b>: non-local control
+	 * changes are expected to be resolved by the caller of this method.
+	 *
+	 * <p>This method differs from {@link #unm(ExecutionContext, Object)} in that
+	 * the return buffer is only used when a metamethod is involved.</p>
+	 *
+	 * @param context  execution context, must not be {@code null}
+	 * @param o  the argument, may be any value
+	 * @return  the value of the Lua expression {@code -a}
+	 *
+	 * @throws UnresolvedControlThrowable  if the evaluation called a metamethod and the metamethod
+	 *                           initiates a non-local control change
+	 * @throws NullPointerException  if {@code context} is {@code null}
+	 * @throws IllegalOperationAttemptException  if {@code o} does not have an arithmetic value
+	 *                                           and does not have the {@code __unm} metamethod
+	 */
+	@SuppressWarnings("unused")
+	public static Object unmValue(ExecutionContext context, Object o) throws UnresolvedControlThrowable {
+		Number no = Conversions.arithmeticValueOf(o);
+		Arithmetic m = Arithmetic.of(no);
+
+		if (m != null) {
+			return m.unm(no);
+		}
+		else {
+			unm(context, o);
+			return context.getReturnBuffer().get0();
 		}
 	}
 
@@ -1000,13 +1461,60 @@ public final class Dispatch {
 		Long lo = Conversions.integerValueOf(o);
 
 		if (lo != null) {
-			context.getReturnBuffer().setTo(LuaMathOperators.bnot(lo));
+			context.getReturnBuffer().setTo(LongCache.valueOf(LuaMathOperators.bnot(lo)));
+		}
+		else {
+			try_mt_bitwise(context, Metatables.MT_BNOT, Metatables.MT_BNOT_FLAG, o);
+		}
+	}
+
+	/**
+	 * Evaluates the Lua expression {@code ~o}, including the handling of metamethods,
+	 * and returns the result.
+	 * <b>This method throws an {@link UnresolvedControlThrowable}</b>: non-local control
+	 * changes are expected to be resolved by the caller of this method.
+	 *
+	 * <p>This method differs from {@link #bnot(ExecutionContext, Object)} in that
+	 * the return buffer is only used when a metamethod is involved.</p>
+	 *
+	 * @param context  execution context, must not be {@code null}
+	 * @param o  the argument, may be any value
+	 * @return  the value of the Lua expression {@code ~o}
+	 *
+	 * @throws UnresolvedControlThrowable  if the evaluation called a metamethod and the metamethod
+	 *                           initiates a non-local control change
+	 * @throws NullPointerException  if {@code context} is {@code null}
+	 * @throws IllegalOperationAttemptException  if {@code o} does not have an integer value
+	 *                                           and does not have the {@code __bnot} metamethod
+	 */
+	@SuppressWarnings("unused")
+	public static Object bnotValue(ExecutionContext context, Object o) throws UnresolvedControlThrowable {
+		Long lo = Conversions.integerValueOf(o);
+
+		if (lo != null) {
+			return LongCache.valueOf(LuaMathOperators.bnot(lo));
 		}
 		else {
-			try_mt_bitwise(context, Metatables.MT_BNOT, o);
+			bnot(context, o);
+			return context.getReturnBuffer().get0();
 		}
 	}
 
+	/**
+	 * Returns {@code true} iff {@code o} is a table without a metatable.
+	 *
+	 * <p>No metamethods are consulted when indexing such a table, when assigning
+	 * to its fields, or when taking its length: these operations may therefore be
+	 * evaluated using the raw accessors of {@link Table}.</p>
+	 *
+	 * @param o  the object to examine, may be any value
+	 * @return  {@code true} iff {@code o} is a table without a metatable
+	 */
+	@SuppressWarnings("unused")
+	public static boolean isPlainTable(Object o) {
+		return o instanceof Table && ((Table) o).getMetatable() == null;
+	}
+
 	/**
 	 * Returns the value of the Lua expression {@code #s}, where {@code s} is a string.
 	 *
@@ -1020,7 +1528,7 @@ public final class Dispatch {
 	 */
 	@SuppressWarnings("unused")
 	public static long len(String s) {
-		return s.getBytes().length;  // FIXME: wasteful!
+		return s.length();
 	}
 
 	/**
@@ -1041,15 +1549,15 @@ public final class Dispatch {
 	@SuppressWarnings("unused")
 	public static void len(ExecutionContext context, Object o) throws UnresolvedControlThrowable {
 		if (o instanceof String) {
-			context.getReturnBuffer().setTo(len((String) o));
+			context.getReturnBuffer().setTo(LongCache.valueOf(len((String) o)));
 		}
 		else {
-			Object handler = Metatables.getMetamethod(context, Metatables.MT_LEN, o);
+			Object handler = Metatables.getMetamethod(context, Metatables.MT_LEN, Metatables.MT_LEN_FLAG, o);
 			if (handler != null) {
 				call(context, handler, o, o);
 			}
 			else if (o instanceof Table) {
-				context.getReturnBuffer().setTo(((Table) o).rawlen());
+				context.getReturnBuffer().setTo(LongCache.valueOf(((Table) o).rawlen()));
 			}
 			else {
 				throw Errors.illegalGetLengthAttempt(o);
@@ -1057,40 +1565,231 @@ public final class Dispatch {
 		}
 	}
 
-	/**
-	 * Evaluates the Lua expression {@code a .. b}, including the handling of metamethods,
-	 * and stores the result to the return buffer associated with {@code context}.
-	 * <b>This method throws an {@link UnresolvedControlThrowable}</b>: non-local control
-	 * changes are expected to be resolved by the caller of this method.
-	 *
-	 * @param context  execution context, must not be {@code null}
-	 * @param a  the first operand, may be any value
-	 * @param b  the second operand, may be any value
-	 *
-	 * @throws UnresolvedControlThrowable  if the evaluation called a metamethod and the metamethod
-	 *                           initiates a non-local control change
-	 * @throws NullPointerException  if {@code context} is {@code null}
-	 * @throws IllegalOperationAttemptException  if {@code a} or {@code b} does not have
-	 *                                           a string value and neither {@code a} nor
-	 *                                           {@code b} has the {@code __concat} metamethod
-	 */
-	@SuppressWarnings("unused")
-	public static void concat(ExecutionContext context, Object a, Object b) throws UnresolvedControlThrowable {
-		String sa = Conversions.stringValueOf(a);
-		String sb = Conversions.stringValueOf(b);
+	/**
+	 * Evaluates the Lua expression {@code #o}, including the handling of metamethods,
+	 * and returns the result.
+	 * <b>This method throws an {@link UnresolvedControlThrowable}</b>: non-local control
+	 * changes are expected to be resolved by the caller of this method.
+	 *
+	 * <p>This method differs from {@link #len(ExecutionContext, Object)} in that
+	 * the return buffer is only used when a metamethod is involved.</p>
+	 *
+	 * @param context  execution context, must not be {@code null}
+	 * @param o  the argument, may be any value
+	 * @return  the value of the Lua expression {@code #o}
+	 *
+	 * @throws UnresolvedControlThrowable  if the evaluation called a metamethod and the metamethod
+	 *                           initiates a non-local control change
+	 * @throws NullPointerException  if {@code context} is {@code null}
+	 * @throws IllegalOperationAttemptException  if {@code o} is not a string, does not have
+	 *                                           the {@code __len} metamethod, or is not a table
+	 */
+	@SuppressWarnings("unused")
+	public static Object lenValue(ExecutionContext context, Object o) throws UnresolvedControlThrowable {
+		if (o instanceof String) {
+			return LongCache.valueOf(len((String) o));
+		}
+		else {
+			len(context, o);
+			return context.getReturnBuffer().get0();
+		}
+	}
+
+	/**
+	 * Evaluates the Lua expression {@code a .. b}, including the handling of metamethods,
+	 * and stores the result to the return buffer associated with {@code context}.
+	 * <b>This method throws an {@link UnresolvedControlThrowable}</b>: non-local control
+	 * changes are expected to be resolved by the caller of this method.
+	 *
+	 * <p>When both operands have string values, the result is a new {@code String}
+	 * holding a copy of both. Building a string by repeated concatenation
+	 * (e.g. {@code s = s .. piece} in a loop) therefore takes time quadratic in the length
+	 * of the result; Lua code should collect the pieces in a table and join them using
+	 * {@code table.concat} instead.</p>
+	 *
+	 * @param context  execution context, must not be {@code null}
+	 * @param a  the first operand, may be any value
+	 * @param b  the second operand, may be any value
+	 *
+	 * @throws UnresolvedControlThrowable  if the evaluation called a metamethod and the metamethod
+	 *                           initiates a non-local control change
+	 * @throws NullPointerException  if {@code context} is {@code null}
+	 * @throws IllegalOperationAttemptException  if {@code a} or {@code b} does not have
+	 *                                           a string value and neither {@code a} nor
+	 *                                           {@code b} has the {@code __concat} metamethod
+	 */
+	@SuppressWarnings("unused")
+	public static void concat(ExecutionContext context, Object a, Object b) throws UnresolvedControlThrowable {
+		String sa = Conversions.stringValueOf(a);
+		String sb = Conversions.stringValueOf(b);
+
+		if (sa != null && sb != null) {
+			context.getReturnBuffer().setTo(sa.concat(sb));
+		}
+		else {
+			Object handler = Metatables.binaryHandlerFor(context, Metatables.MT_CONCAT, Metatables.MT_CONCAT_FLAG, a, b);
+			if (handler != null) {
+				call(context, handler, a, b);
+			}
+			else {
+				throw Errors.illegalConcatenationAttempt(a, b);
+			}
+		}
+	}
+
+	/**
+	 * Evaluates the Lua expression {@code a .. b}, including the handling of metamethods,
+	 * and returns the result.
+	 * <b>This method throws an {@link UnresolvedControlThrowable}</b>: non-local control
+	 * changes are expected to be resolved by the caller of this method.
+	 *
+	 * <p>This method differs from {@link #concat(ExecutionContext, Object, Object)} in that
+	 * the return buffer is only used when a metamethod is involved.</p>
+	 *
+	 * @param context  execution context, must not be {@code null}
+	 * @param a  the first operand, may be any value
+	 * @param b  the second operand, may be any value
+	 * @return  the value of the Lua expression {@code a .. b}
+	 *
+	 * @throws UnresolvedControlThrowable  if the evaluation called a metamethod and the metamethod
+	 *                           initiates a non-local control change
+	 * @throws NullPointerException  if {@code context} is {@code null}
+	 * @throws IllegalOperationAttemptException  if {@code a} or {@code b} does not have
+	 *                                           a string value and neither {@code a} nor
+	 *                                           {@code b} has the {@code __concat} metamethod
+	 */
+	@SuppressWarnings("unused")
+	public static Object concatValue(ExecutionContext context, Object a, Object b) throws UnresolvedControlThrowable {
+		String sa = Conversions.stringValueOf(a);
+		String sb = Conversions.stringValueOf(b);
+
+		if (sa != null && sb != null) {
+			return sa.concat(sb);
+		}
+		else {
+			concat(context, a, b);
+			return context.getReturnBuffer().get0();
+		}
+	}
+
+	/**
+	 * Evaluates the Lua expression {@code values[0] .. values[1] .. ... .. values[n - 1]}
+	 * (where {@code n} is the length of {@code values}), including the handling
+	 * of metamethods, and stores the result to the return buffer associated
+	 * with {@code context}.
+	 * <b>This method throws an {@link UnresolvedControlThrowable}</b>: non-local control
+	 * changes are expected to be resolved by the caller of this method.
+	 *
+	 * <p>Since the concatenation operator is right-associative, the operands are processed
+	 * from the right. Runs of operands that have string values are concatenated at once,
+	 * with the result sized beforehand; the {@code __concat} metamethod is called
+	 * for the rightmost pair of operands in which one of the operands does not have
+	 * a string value. The metamethods are therefore called in the same order and with
+	 * the same arguments as in the evaluation of the expression by means of repeated
+	 * calls to {@link #concat(ExecutionContext, Object, Object)}.</p>
+	 *
+	 * <p>The contents of the array {@code values} may be modified by this method.</p>
+	 *
+	 * @param context  execution context, must not be {@code null}
+	 * @param values  the operands, must not be {@code null} and must not be empty
+	 *
+	 * @throws UnresolvedControlThrowable  if the evaluation called a metamethod and the metamethod
+	 *                           initiates a non-local control change
+	 * @throws NullPointerException  if {@code context} or {@code values} is {@code null}
+	 * @throws IllegalArgumentException  if {@code values} is empty
+	 * @throws IllegalOperationAttemptException  if a pair of operands cannot be concatenated
+	 *                                           because one of them does not have a string value
+	 *                                           and neither of them has the {@code __concat}
+	 *                                           metamethod
+	 */
+	@SuppressWarnings("unused")
+	public static void concat(ExecutionContext context, Object[] values) throws UnresolvedControlThrowable {
+		if (values.length == 0) {
+			throw new IllegalArgumentException("no values to concatenate");
+		}
+		concat(context, values, values.length);
+	}
+
+	// concatenates values[0 .. top - 1]
+	private static void concat(ExecutionContext context, Object[] values, int top) throws UnresolvedControlThrowable {
+		while (top > 1) {
+			Object a = values[top - 2];
+			Object b = values[top - 1];
+
+			String sa = Conversions.stringValueOf(a);
+			String sb = sa != null ? Conversions.stringValueOf(b) : null;
+			if (sa == null || sb == null) {
+				Object handler = Metatables.binaryHandlerFor(context, Metatables.MT_CONCAT, Metatables.MT_CONCAT_FLAG, a, b);
+				if (handler == null) {
+					throw Errors.illegalConcatenationAttempt(a, b);
+				}
+
+				try {
+					call(context, handler, a, b);
+				}
+				catch (UnresolvedControlThrowable ct) {
+					throw ct.resolve(ConcatResumable.INSTANCE, new ConcatState(values, top - 1)).unresolve();
+				}
+
+				values[top - 2] = context.getReturnBuffer().get0();
+				top -= 1;
+			}
+			else {
+				// find the longest run of string values ending at top - 1
+				String[] strings = new String[top];
+				strings[top - 2] = sa;
+				strings[top - 1] = sb;
+				int length = sa.length() + sb.length();
+				int begin = top - 2;
+				String s;
+				while (begin > 0 && (s = Conversions.stringValueOf(values[begin - 1])) != null) {
+					begin -= 1;
+					strings[begin] = s;
+					length += s.length();
+				}
+
+				StringBuilder builder = new StringBuilder(length);
+				for (int i = begin; i < top; i++) {
+					builder.append(strings[i]);
+				}
+
+				values[begin] = builder.toString();
+				top = begin + 1;
+			}
+		}
+
+		context.getReturnBuffer().setTo(values[0]);
+	}
+
+	private static class ConcatState {
 
-		if (sa != null && sb != null) {
-			context.getReturnBuffer().setTo(sa.concat(sb));
+		private final Object[] values;
+		private final int top;  // the value of values[top - 1] is the result of the metamethod call
+
+		ConcatState(Object[] values, int top) {
+			this.values = values;
+			this.top = top;
 		}
-		else {
-			Object handler = Metatables.binaryHandlerFor(context, Metatables.MT_CONCAT, a, b);
-			if (handler != null) {
-				call(context, handler, a, b);
+
+	}
+
+	private static class ConcatResumable implements Resumable {
+
+		static final ConcatResumable INSTANCE = new ConcatResumable();
+
+		@Override
+		public void resume(ExecutionContext context, Object suspendedState) throws ResolvedControlThrowable {
+			ConcatState state = (ConcatState) suspendedState;
+			state.values[state.top - 1] = context.getReturnBuffer().get0();
+
+			try {
+				concat(context, state.values, state.top);
 			}
-			else {
-				throw Errors.illegalConcatenationAttempt(a, b);
+			catch (UnresolvedControlThrowable ct) {
+				throw ct.resolve();
 			}
 		}
+
 	}
 
 	private static final CmpResultResumable CMP_RESULT_RESUMABLE_TRUE = new CmpResultResumable(true);
@@ -1139,7 +1838,7 @@ public final class Dispatch {
 				&& ((a instanceof Table && b instanceof Table)
 				|| (a instanceof Userdata && b instanceof Userdata))) {
 
-			Object handler = Metatables.binaryHandlerFor(context, Metatables.MT_EQ, a, b);
+			Object handler = Metatables.binaryHandlerFor(context, Metatables.MT_EQ, Metatables.MT_EQ_FLAG, a, b);
 
 			if (handler != null) {
 				_call_comparison_mt(context, polarity, handler, a, b);
@@ -1171,6 +1870,36 @@ public final class Dispatch {
 		eq(context, true, a, b);
 	}
 
+	/**
+	 * Evaluates the Lua expression {@code a == b}, including the handling of metamethods,
+	 * and returns the result.
+	 * <b>This method throws an {@link UnresolvedControlThrowable}</b>: non-local control
+	 * changes are expected to be resolved by the caller of this method.
+	 *
+	 * <p>This method differs from {@link #eq(ExecutionContext, Object, Object)} in that
+	 * the return buffer is only used when a metamethod is involved.</p>
+	 *
+	 * @param context  execution context, must not be {@code null}
+	 * @param a  the first operand, may be any value
+	 * @param b  the second operand, may be any value
+	 * @return  the value of the Lua expression {@code a == b}
+	 *
+	 * @throws UnresolvedControlThrowable  if the evaluation called a metamethod and the metamethod
+	 *                           initiates a non-local control change
+	 * @throws NullPointerException  if {@code context} is {@code null}
+	 */
+	@SuppressWarnings("unused")
+	public static Object eqValue(ExecutionContext context, Object a, Object b) throws UnresolvedControlThrowable {
+		if ((a instanceof Table && b instanceof Table)
+				|| (a instanceof Userdata && b instanceof Userdata)) {
+			eq(context, a, b);
+			return context.getReturnBuffer().get0();
+		}
+		else {
+			return Ordering.isRawEqual(a, b);
+		}
+	}
+
 	/**
 	 * Evaluates the Lua expression {@code a != b}, including the handling of metamethods,
 	 * and stores the result to the return buffer associated with {@code context}.
@@ -1190,6 +1919,36 @@ public final class Dispatch {
 		eq(context, false, a, b);
 	}
 
+	/**
+	 * Evaluates the Lua expression {@code a != b}, including the handling of metamethods,
+	 * and returns the result.
+	 * <b>This method throws an {@link UnresolvedControlThrowable}</b>: non-local control
+	 * changes are expected to be resolved by the caller of this method.
+	 *
+	 * <p>This method differs from {@link #neq(ExecutionContext, Object, Object)} in that
+	 * the return buffer is only used when a metamethod is involved.</p>
+	 *
+	 * @param context  execution context, must not be {@code null}
+	 * @param a  the first operand, may be any value
+	 * @param b  the second operand, may be any value
+	 * @return  the value of the Lua expression {@code a != b}
+	 *
+	 * @throws UnresolvedControlThrowable  if the evaluation called a metamethod and the metamethod
+	 *                           initiates a non-local control change
+	 * @throws NullPointerException  if {@code context} is {@code null}
+	 */
+	@SuppressWarnings("unused")
+	public static Object neqValue(ExecutionContext context, Object a, Object b) throws UnresolvedControlThrowable {
+		if ((a instanceof Table && b instanceof Table)
+				|| (a instanceof Userdata && b instanceof Userdata)) {
+			neq(context, a, b);
+			return context.getReturnBuffer().get0();
+		}
+		else {
+			return !Ordering.isRawEqual(a, b);
+		}
+	}
+
 	/**
 	 * Returns the value of the Lua expression {@code a == b}, where {@code a} and {@code b}
 	 * are numbers.
@@ -1233,7 +1992,7 @@ public final class Dispatch {
 			context.getReturnBuffer().setTo(result);
 		}
 		else {
-			Object handler = Metatables.binaryHandlerFor(context, Metatables.MT_LT, a, b);
+			Object handler = Metatables.binaryHandlerFor(context, Metatables.MT_LT, Metatables.MT_LT_FLAG, a, b);
 
 			if (handler != null) {
 				_call_comparison_mt(context, true, handler, a, b);
@@ -1244,6 +2003,40 @@ public final class Dispatch {
 		}
 	}
 
+	/**
+	 * Evaluates the Lua expression {@code a < b}, including the handling of metamethods,
+	 * and returns the result.
+	 * <b>This method throws an {@link UnresolvedControlThrowable}</b>: non-local control
+	 * changes are expected to be resolved by the caller of this method.
+	 *
+	 * <p>This method differs from {@link #lt(ExecutionContext, Object, Object)} in that
+	 * the return buffer is only used when a metamethod is involved.</p>
+	 *
+	 * @param context  execution context, must not be {@code null}
+	 * @param a  the first operand, may be any value
+	 * @param b  the second operand, may be any value
+	 * @return  the value of the Lua expression {@code a < b}
+	 *
+	 * @throws UnresolvedControlThrowable  if the evaluation called a metamethod and the metamethod
+	 *                           initiates a non-local control change
+	 * @throws NullPointerException  if {@code context} is {@code null}
+	 * @throws IllegalOperationAttemptException  if {@code a} and {@code b} are not comparable
+	 *                                           and neither {@code a} nor {@code b} has the
+	 *                                           {@code __lt} metamethod
+	 */
+	@SuppressWarnings("unused")
+	public static Object ltValue(ExecutionContext context, Object a, Object b) throws UnresolvedControlThrowable {
+		Ordering<Object> c = Ordering.of(a, b);
+
+		if (c != null) {
+			return c.lt(a, b);
+		}
+		else {
+			lt(context, a, b);
+			return context.getReturnBuffer().get0();
+		}
+	}
+
 	/**
 	 * Returns the value of the Lua expression {@code a < b}, where {@code a} and {@code b}
 	 * are numbers.
@@ -1306,14 +2099,14 @@ public final class Dispatch {
 			context.getReturnBuffer().setTo(result);
 		}
 		else {
-			Object le_handler = Metatables.binaryHandlerFor(context, Metatables.MT_LE, a, b);
+			Object le_handler = Metatables.binaryHandlerFor(context, Metatables.MT_LE, Metatables.MT_LE_FLAG, a, b);
 
 			if (le_handler != null) {
 				_call_comparison_mt(context, true, le_handler, a, b);
 			}
 			else {
 				// TODO: verify that (a, b) is the order in which the metamethod is looked up
-				Object lt_handler = Metatables.binaryHandlerFor(context, Metatables.MT_LT, a, b);
+				Object lt_handler = Metatables.binaryHandlerFor(context, Metatables.MT_LT, Metatables.MT_LT_FLAG, a, b);
 
 				if (lt_handler != null) {
 					// will be evaluating "not (b < a)"
@@ -1326,6 +2119,41 @@ public final class Dispatch {
 		}
 	}
 
+	/**
+	 * Evaluates the Lua expression {@code a <= b}, including the handling of metamethods,
+	 * and returns the result.
+	 * <b>This method throws an {@link UnresolvedControlThrowable}</b>: non-local control
+	 * changes are expected to be resolved by the caller of this method.
+	 *
+	 * <p>This method differs from {@link #le(ExecutionContext, Object, Object)} in that
+	 * the return buffer is only used when a metamethod is involved.</p>
+	 *
+	 * @param context  execution context, must not be {@code null}
+	 * @param a  the first operand, may be any value
+	 * @param b  the second operand, may be any value
+	 * @return  the value of the Lua expression {@code a <= b}
+	 *
+	 * @throws UnresolvedControlThrowable  if the evaluation called a metamethod and the metamethod
+	 *                           initiates a non-local control change
+	 * @throws NullPointerException  if {@code context} is {@code null}
+	 * @throws IllegalOperationAttemptException  if {@code a} and {@code b} are not comparable
+	 *                                           and neither {@code a} nor {@code b} has the
+	 *                                           {@code __le} metamethod and neither {@code a}
+	 *                                           nor {@code b} has the {@code __lt} metamethod
+	 */
+	@SuppressWarnings("unused")
+	public static Object leValue(ExecutionContext context, Object a, Object b) throws UnresolvedControlThrowable {
+		Ordering<Object> c = Ordering.of(a, b);
+
+		if (c != null) {
+			return c.le(a, b);
+		}
+		else {
+			le(context, a, b);
+			return context.getReturnBuffer().get0();
+		}
+	}
+
 	/**
 	 * Returns the value of the Lua expression {@code a <= b}, where {@code a} and {@code b}
 	 * are numbers.
@@ -1392,7 +2220,7 @@ public final class Dispatch {
 			// else fall through and check the __index a metamethod
 		}
 
-		Object handler = Metatables.getMetamethod(context, Metatables.MT_INDEX, table);
+		Object handler = Metatables.getMetamethod(context, Metatables.MT_INDEX, Metatables.MT_INDEX_FLAG, table);
 
 		if (handler == null && table instanceof Table) {
 			// key not found and no index metamethod, returning nil
@@ -1420,6 +2248,41 @@ public final class Dispatch {
 		}
 	}
 
+	/**
+	 * Evaluates the Lua expression {@code table[key]} (in non-assignment context) including
+	 * the handling of metamethods, and returns the result.
+	 * <b>This method throws an {@link UnresolvedControlThrowable}</b>: non-local control
+	 * changes are expected to be resolved by the caller of this method.
+	 *
+	 * <p>This method differs from {@link #index(ExecutionContext, Object, Object)} in that
+	 * the return buffer is only used when a metamethod is involved.</p>
+	 *
+	 * @param context  execution context, must not be {@code null}
+	 * @param table  the target, may be any value
+	 * @param key  the key, may be any value
+	 * @return  the value of the Lua expression {@code table[key]}
+	 *
+	 * @throws UnresolvedControlThrowable  if the evaluation called a metamethod and the metamethod
+	 *                           initiates a non-local control change
+	 * @throws NullPointerException  if {@code context} is {@code null}
+	 * @throws IllegalOperationAttemptException  if {@code table} is not a table and does
+	 *                                           not have the {@code __index} metamethod
+	 */
+	@SuppressWarnings("unused")
+	public static Object indexValue(ExecutionContext context, Object table, Object key) throws UnresolvedControlThrowable {
+		if (table instanceof Table) {
+			Table t = (Table) table;
+			Object value = t.rawget(key);
+
+			if (value != null || t.getMetatable() == null) {
+				return value;
+			}
+		}
+
+		index(context, table, key);
+		return context.getReturnBuffer().get0();
+	}
+
 	/**
 	 * Evaluates the Lua expression {@code table[key]} (in non-assignment context) including
 	 * the handling of metamethods, and stores the result to the return buffer associated with
@@ -1501,7 +2364,7 @@ public final class Dispatch {
 			}
 		}
 
-		Object handler = Metatables.getMetamethod(context, Metatables.MT_NEWINDEX, table);
+		Object handler = Metatables.getMetamethod(context, Metatables.MT_NEWINDEX, Metatables.MT_NEWINDEX_FLAG, table);
 
 		if (handler == null && table instanceof Table) {
 			Table t = (Table) table;
@@ -1603,4 +2466,148 @@ public final class Dispatch {
 		return !eq(ZERO, sign) && (lt(ZERO, sign) ? le(a, b) : le(b, a));
 	}
 
+	/**
+	 * Returns {@code true} iff {@code a} <i>op</i> {@code b}, where <i>op</i> is
+	 * "{@code <=}" (lesser than or equal to) if {@code sign > 0}, or "{@code >=}" (greater
+	 * than or equal to) if {@code sign < 0}.
+	 *
+	 * <p>This is the variant of {@link #signed_le(Number, Number, Number)} used
+	 * in numeric {@code for} loops whose control variable is known to be an integer.</p>
+	 *
+	 * <p>When {@code sign} is zero, returns {@code false}.</p>
+	 *
+	 * @param a  the first operand
+	 * @param b  the second operand
+	 * @param sign  the sign
+	 *
+	 * @return  {@code true} iff {@code a} is below {@code b} depending on the sign
+	 *          of {@code sign}
+	 */
+	@SuppressWarnings("unused")
+	public static boolean signed_le(long a, long b, long sign) {
+		return sign > 0 ? a <= b : sign < 0 && b <= a;
+	}
+
+	/**
+	 * Returns {@code true} iff {@code a} <i>op</i> {@code b}, where <i>op</i> is
+	 * "{@code <=}" (lesser than or equal to) if {@code sign > 0}, or "{@code >=}" (greater
+	 * than or equal to) if {@code sign < 0}.
+	 *
+	 * <p>This is the variant of {@link #signed_le(Number, Number, Number)} used
+	 * in numeric {@code for} loops whose control variable is known to be an integer
+	 * and whose limit is known to be a float.</p>
+	 *
+	 * <p>When {@code sign} is zero, returns {@code false}.</p>
+	 *
+	 * @param a  the first operand
+	 * @param b  the second operand
+	 * @param sign  the sign
+	 *
+	 * @return  {@code true} iff {@code a} is below {@code b} depending on the sign
+	 *          of {@code sign}
+	 */
+	@SuppressWarnings("unused")
+	public static boolean signed_le(long a, double b, long sign) {
+		return sign > 0 ? LuaMathOperators.le(a, b) : sign < 0 && LuaMathOperators.le(b, a);
+	}
+
+	/**
+	 * Returns {@code true} iff {@code a} <i>op</i> {@code b}, where <i>op</i> is
+	 * "{@code <=}" (lesser than or equal to) if {@code sign > 0}, or "{@code >=}" (greater
+	 * than or equal to) if {@code sign < 0}.
+	 *
+	 * <p>This is the variant of {@link #signed_le(Number, Number, Number)} used
+	 * in numeric {@code for} loops whose control variable is known to be an integer,
+	 * but the type of whose limit is not known statically.</p>
+	 *
+	 * <p>When {@code sign} is zero, returns {@code false}.</p>
+	 *
+	 * @param a  the first operand
+	 * @param b  the second operand, must not be {@code null}
+	 * @param sign  the sign
+	 *
+	 * @return  {@code true} iff {@code a} is below {@code b} depending on the sign
+	 *          of {@code sign}
+	 *
+	 * @throws NullPointerException  if {@code b} is {@code null}
+	 */
+	@SuppressWarnings("unused")
+	public static boolean signed_le(long a, Number b, long sign) {
+		return b instanceof Double || b instanceof Float
+				? signed_le(a, b.doubleValue(), sign)
+				: signed_le(a, b.longValue(), sign);
+	}
+
+	/**
+	 * Returns {@code true} iff {@code a} <i>op</i> {@code b}, where <i>op</i> is
+	 * "{@code <=}" (lesser than or equal to) if {@code sign > 0}, or "{@code >=}" (greater
+	 * than or equal to) if {@code sign < 0}.
+	 *
+	 * <p>This is the variant of {@link #signed_le(Number, Number, Number)} used
+	 * in numeric {@code for} loops whose control variable is known to be a float
+	 * and whose limit is known to be an integer.</p>
+	 *
+	 * <p>When {@code sign} is zero or <i>NaN</i>, returns {@code false}.</p>
+	 *
+	 * @param a  the first operand
+	 * @param b  the second operand
+	 * @param sign  the sign
+	 *
+	 * @return  {@code true} iff {@code a} is below {@code b} depending on the sign
+	 *          of {@code sign}
+	 */
+	@SuppressWarnings("unused")
+	public static boolean signed_le(double a, long b, double sign) {
+		return sign > 0 ? LuaMathOperators.le(a, b) : sign < 0 && LuaMathOperators.le(b, a);
+	}
+
+	/**
+	 * Returns {@code true} iff {@code a} <i>op</i> {@code b}, where <i>op</i> is
+	 * "{@code <=}" (lesser than or equal to) if {@code sign > 0}, or "{@code >=}" (greater
+	 * than or equal to) if {@code sign < 0}.
+	 *
+	 * <p>This is the variant of {@link #signed_le(Number, Number, Number)} used
+	 * in numeric {@code for} loops whose control variable is known to be a float.</p>
+	 *
+	 * <p>When {@code sign} is zero or <i>NaN</i>, returns {@code false}.</p>
+	 *
+	 * @param a  the first operand
+	 * @param b  the second operand
+	 * @param sign  the sign
+	 *
+	 * @return  {@code true} iff {@code a} is below {@code b} depending on the sign
+	 *          of {@code sign}
+	 */
+	@SuppressWarnings("unused")
+	public static boolean signed_le(double a, double b, double sign) {
+		return sign > 0 ? a <= b : sign < 0 && b <= a;
+	}
+
+	/**
+	 * Returns {@code true} iff {@code a} <i>op</i> {@code b}, where <i>op</i> is
+	 * "{@code <=}" (lesser than or equal to) if {@code sign > 0}, or "{@code >=}" (greater
+	 * than or equal to) if {@code sign < 0}.
+	 *
+	 * <p>This is the variant of {@link #signed_le(Number, Number, Number)} used
+	 * in numeric {@code for} loops whose control variable is known to be a float,
+	 * but the type of whose limit is not known statically.</p>
+	 *
+	 * <p>When {@code sign} is zero or <i>NaN</i>, returns {@code false}.</p>
+	 *
+	 * @param a  the first operand
+	 * @param b  the second operand, must not be {@code null}
+	 * @param sign  the sign
+	 *
+	 * @return  {@code true} iff {@code a} is below {@code b} depending on the sign
+	 *          of {@code sign}
+	 *
+	 * @throws NullPointerException  if {@code b} is {@code null}
+	 */
+	@SuppressWarnings("unused")
+	public static boolean signed_le(double a, Number b, double sign) {
+		return b instanceof Double || b instanceof Float
+				? signed_le(a, b.doubleValue(), sign)
+				: signed_le(a, b.longValue(), sign);
+	}
+
 }
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.runtime;
+
+import net.sandius.rembulan.Metatables;
+import net.sandius.rembulan.Table;
+
+import java.util.Objects;
+
+/**
+ * An inline cache for table accesses with a constant key, meant to be used by compiled code
+ * at a single access site ({@code t.field} or {@code t.field = value}).
+ *
+ * <p>The cache remembers the hint for the key (see {@link Table#hintOf(Object)}) in the last
+ * table it has seen the key in. As long as the tables accessed at the site have the same
+ * structure, the raw access is a validation of the hint followed by an array access, bypassing
+ * the normalisation and hashing of the key. In all other cases, the access proceeds
+ * as in {@link Dispatch#index(ExecutionContext, Object, Object)}
+ * and {@link Dispatch#setindex(ExecutionContext, Object, Object, Object)}; the absence
+ * of metamethods is then checked using the metamethod cache of the metatable
+ * (see {@link Metatables#rawgetMetamethod(Table, String, int)}).</p>
+ *
+ * <p>Sites at which the hint keeps changing eventually stop updating it. Instances
+ * of this class may be shared between threads: since hints are always validated, races
+ * on the cached hint are benign.</p>
+ */
+public final class FieldCache {
+
+	// the maximal number of hint updates
+	private static final int MAX_REFRESHES = 64;
+
+	private final Object key;
+
+	private long hint;
+	private int refreshes;
+
+	/**
+	 * Constructs a new field cache for the key {@code key}.
+	 *
+	 * <p>Keys that are strings beginning with {@code "__"} (i.e., potential metamethod keys)
+	 * are accepted, but accesses to them are not cached.</p>
+	 *
+	 * @param key  the key, must not be {@code null}
+	 *
+	 * @throws NullPointerException  if {@code key} is {@code null}
+	 */
+	public FieldCache(Object key) {
+		this.key = Objects.requireNonNull(key);
+		this.hint = -1L;
+		this.refreshes = key instanceof String && ((String) key).startsWith("__") ? MAX_REFRESHES : 0;
+	}
+
+	/**
+	 * Returns the key of this cache.
+	 *
+	 * @return  the key of this cache
+	 */
+	public Object key() {
+		return key;
+	}
+
+	private void refresh(Table t) {
+		if (refreshes < MAX_REFRESHES) {
+			refreshes += 1;
+			hint = t.hintOf(key);
+		}
+	}
+
+	/**
+	 * Evaluates the Lua expression {@code table[key]} (in non-assignment context), where
+	 * {@code key} is the key of this cache, and stores the result to the return buffer
+	 * associated with {@code context}.
+	 * <b>This method throws an {@link UnresolvedControlThrowable}</b>: non-local control
+	 * changes are expected to be resolved by the caller of this method.
+	 *
+	 * @param context  execution context, must not be {@code null}
+	 * @param table  the target, may be any value
+	 *
+	 * @throws UnresolvedControlThrowable  if the evaluation called a metamethod and the metamethod
+	 *                           initiates a non-local control change
+	 * @throws NullPointerException  if {@code context} is {@code null}
+	 * @throws IllegalOperationAttemptException  if {@code table} is not a table and does
+	 *                                           not have the {@code __index} metamethod
+	 *
+	 * @see Dispatch#index(ExecutionContext, Object, Object)
+	 */
+	public void index(ExecutionContext context, Object table) throws UnresolvedControlThrowable {
+		if (table instanceof Table) {
+			Table t = (Table) table;
+			Object value = t.rawgetHinted(hint, key);
+
+			if (value == null) {
+				value = t.rawget(key);
+				if (value != null) {
+					refresh(t);
+				}
+				else if (t.getMetatable() != null) {
+					Object handler = Metatables.getMetamethod(context, Metatables.MT_INDEX, Metatables.MT_INDEX_FLAG, t);
+					if (handler instanceof Table) {
+						Dispatch.index(context, handler, key);
+						return;
+					}
+					else if (handler != null) {
+						Dispatch.index(context, table, key);
+						return;
+					}
+					// else: no __index metamethod, returning nil
+				}
+			}
+
+			context.getReturnBuffer().setTo(value);
+		}
+		else {
+			Dispatch.index(context, table, key);
+		}
+	}
+
+	/**
+	 * Evaluates the Lua expression {@code table[key]} (in non-assignment context), where
+	 * {@code key} is the key of this cache, and returns the result.
+	 * <b>This method throws an {@link UnresolvedControlThrowable}</b>: non-local control
+	 * changes are expected to be resolved by the caller of this method.
+	 *
+	 * <p>This method differs from {@link #index(ExecutionContext, Object)} in that
+	 * the return buffer is only used when a metamethod is involved.</p>
+	 *
+	 * @param context  execution context, must not be {@code null}
+	 * @param table  the target, may be any value
+	 * @return  the value of the Lua expression {@code table[key]}
+	 *
+	 * @throws UnresolvedControlThrowable  if the evaluation called a metamethod and the metamethod
+	 *                           initiates a non-local control change
+	 * @throws NullPointerException  if {@code context} is {@code null}
+	 * @throws IllegalOperationAttemptException  if {@code table} is not a table and does
+	 *                                           not have the {@code __index} metamethod
+	 *
+	 * @see Dispatch#indexValue(ExecutionContext, Object, Object)
+	 */
+	public Object indexValue(ExecutionContext context, Object table) throws UnresolvedControlThrowable {
+		if (table instanceof Table) {
+			Table t = (Table) table;
+			Object value = t.rawgetHinted(hint, key);
+
+			if (value != null) {
+				return value;
+			}
+			else if (t.getMetatable() == null) {
+				value = t.rawget(key);
+				if (value != null) {
+					refresh(t);
+				}
+				return value;
+			}
+		}
+
+		index(context, table);
+		return context.getReturnBuffer().get0();
+	}
+
+	/**
+	 * Executes the Lua statement {@code table[key] = value}, where {@code key} is the key
+	 * of this cache.
+	 * <b>This method throws an {@link UnresolvedControlThrowable}</b>: non-local control
+	 * changes are expected to be resolved by the caller of this method.
+	 *
+	 * @param context  execution context, must not be {@code null}
+	 * @param table  the target, may be any value
+	 * @param value  the value, may be any value
+	 *
+	 * @throws UnresolvedControlThrowable  if the evaluation called a metamethod and the metamethod
+	 *                           initiates a non-local control change
+	 * @throws NullPointerException  if {@code context} is {@code null}
+	 * @throws IllegalOperationAttemptException  if {@code table} is not a table and does
+	 *                                           not have the {@code __newindex} metamethod
+	 *
+	 * @see Dispatch#setindex(ExecutionContext, Object, Object, Object)
+	 */
+	public void setindex(ExecutionContext context, Object table, Object value) throws UnresolvedControlThrowable {
+		if (table instanceof Table) {
+			Table t = (Table) table;
+			if (!t.rawsetHinted(hint, key, value)) {
+				Dispatch.setindex(context, t, key, value);
+				if (value != null) {
+					refresh(t);
+				}
+			}
+		}
+		else {
+			Dispatch.setindex(context, table, key, value);
+		}
+	}
+
+}
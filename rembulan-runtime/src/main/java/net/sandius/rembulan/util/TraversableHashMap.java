@@ -48,8 +48,28 @@ public class TraversableHashMap<K, V> implements Map<K, V> {
 	private final Collection<V> values;
 	private final Set<Map.Entry<K, V>> entrySet;
 
+	/**
+	 * Constructs a new empty map with room for {@code expectedSize} entries.
+	 *
+	 * @param expectedSize  the expected number of entries in the map, must not be negative
+	 *
+	 * @throws IllegalArgumentException  if {@code expectedSize} is negative
+	 */
+	public TraversableHashMap(int expectedSize) {
+		// make sure the backing map will not need to be resized (its load factor is 0.75)
+		this(new HashMap<K, Entry<K, V>>(Check.nonNegative(expectedSize) + expectedSize / 3 + 1));
+	}
+
+	/**
+	 * Constructs a new empty map.
+	 */
 	public TraversableHashMap() {
-		this.entries = new HashMap<>();
+		// no size hint: use the default capacity of the backing map
+		this(new HashMap<K, Entry<K, V>>());
+	}
+
+	private TraversableHashMap(HashMap<K, Entry<K, V>> entries) {
+		this.entries = entries;
 		this.firstKey = null;
 		this.lastKey = null;
 
@@ -265,23 +265,34 @@ public class DefaultBasicLib extends BasicLib {
 			Table table = args.nextTable();
 			Object index = args.optNextAny();
 
-			final Object nxt;
+			long idx;
 
 			if (index != null) {
-				nxt = table.successorKeyOf(index);
+				long current = table.indexOf(index);
+				if (current < 0) {
+					throw new IllegalArgumentException("invalid key to 'next'");
+				}
+				idx = table.successorIndexOf(current);
 			}
 			else {
-				nxt = table.initialKey();
+				idx = table.initialIndex();
 			}
 
-			if (nxt == null) {
-				// we've reached the end
-				context.getReturnBuffer().setTo(null);
-			}
-			else {
-				Object value = table.rawget(nxt);
-				context.getReturnBuffer().setTo(nxt, value);
+			while (idx >= 0) {
+				Object key = table.keyAt(idx);
+				Object value = table.valueAt(idx);
+
+				// the entry may have been removed from a weak table in the meantime
+				if (key != null && value != null) {
+					context.getReturnBuffer().setTo(key, value);
+					return;
+				}
+
+				idx = table.successorIndexOf(idx);
 			}
+
+			// we've reached the end
+			context.getReturnBuffer().setTo(null);
 		}
 
 	}
@@ -304,14 +315,20 @@ public class DefaultBasicLib extends BasicLib {
 
 			index += 1;
 
-			try {
-				Dispatch.index(context, table, index);
-			}
-			catch (UnresolvedControlThrowable ct) {
-				throw ct.resolve(this, index);
+			Object result = table.rawget(index);
+
+			if (result == null && table.getMetatable() != null) {
+				// the __index metamethod may apply
+				try {
+					Dispatch.index(context, table, index);
+				}
+				catch (UnresolvedControlThrowable ct) {
+					throw ct.resolve(this, index);
+				}
+
+				result = context.getReturnBuffer().get0();
 			}
 
-			Object result = context.getReturnBuffer().get0();
 			processResult(context, index, result);
 		}
 
@@ -580,6 +597,24 @@ public class DefaultBasicLib extends BasicLib {
 
 	}
 
+	// prepends true to the values in the return buffer; small results are handled
+	// without allocating intermediate arrays
+	static void prependTrue(ExecutionContext context) {
+		ReturnBuffer rbuf = context.getReturnBuffer();
+		switch (rbuf.size()) {
+			case 0: rbuf.setTo(Boolean.TRUE); break;
+			case 1: rbuf.setTo(Boolean.TRUE, rbuf.get0()); break;
+			case 2: rbuf.setTo(Boolean.TRUE, rbuf.get0(), rbuf.get1()); break;
+			case 3: rbuf.setTo(Boolean.TRUE, rbuf.get0(), rbuf.get1(), rbuf.get2()); break;
+			default: {
+				ArrayList<Object> result = new ArrayList<>();
+				result.add(Boolean.TRUE);
+				result.addAll(Arrays.asList(rbuf.getAsArray()));
+				rbuf.setToContentsOf(result);
+			}
+		}
+	}
+
 	public static class PCall extends AbstractLibFunction implements ProtectedResumable {
 
 		public static final PCall INSTANCE = new PCall();
@@ -611,11 +646,7 @@ public class DefaultBasicLib extends BasicLib {
 		@Override
 		public void resume(ExecutionContext context, Object suspendedState) throws ResolvedControlThrowable {
 			// success: prepend true
-			ReturnBuffer rbuf = context.getReturnBuffer();
-			ArrayList<Object> result = new ArrayList<>();
-			result.add(Boolean.TRUE);
-			result.addAll(Arrays.asList(rbuf.getAsArray()));
-			rbuf.setToContentsOf(result);
+			prependTrue(context);
 		}
 
 		@Override
@@ -646,14 +677,6 @@ public class DefaultBasicLib extends BasicLib {
 			}
 		}
 
-		private static void prependTrue(ExecutionContext context) {
-			ReturnBuffer rbuf = context.getReturnBuffer();
-			ArrayList<Object> result = new ArrayList<>();
-			result.add(Boolean.TRUE);
-			result.addAll(Arrays.asList(rbuf.getAsArray()));
-			rbuf.setToContentsOf(result);
-		}
-
 		private static void prependFalseAndTrim(ExecutionContext context) {
 			ReturnBuffer rbuf = context.getReturnBuffer();
 			Object errorObject = rbuf.get0();
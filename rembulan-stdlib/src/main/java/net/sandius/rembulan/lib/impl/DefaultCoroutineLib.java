@@ -23,13 +23,9 @@ import net.sandius.rembulan.runtime.ExecutionContext;
 import net.sandius.rembulan.runtime.LuaFunction;
 import net.sandius.rembulan.runtime.ProtectedResumable;
 import net.sandius.rembulan.runtime.ResolvedControlThrowable;
-import net.sandius.rembulan.runtime.ReturnBuffer;
 import net.sandius.rembulan.runtime.UnresolvedControlThrowable;
 import net.sandius.rembulan.util.Check;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-
 public class DefaultCoroutineLib extends CoroutineLib {
 
 	@Override
@@ -111,11 +107,7 @@ public class DefaultCoroutineLib extends CoroutineLib {
 
 		@Override
 		public void resume(ExecutionContext context, Object suspendedState) throws ResolvedControlThrowable {
-			ReturnBuffer rbuf = context.getReturnBuffer();
-			ArrayList<Object> result = new ArrayList<>();
-			result.add(Boolean.TRUE);
-			result.addAll(Arrays.asList(rbuf.getAsArray()));
-			rbuf.setToContentsOf(result);
+			DefaultBasicLib.prependTrue(context);
 		}
 
 		@Override
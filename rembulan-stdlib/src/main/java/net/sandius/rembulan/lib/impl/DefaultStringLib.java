@@ -23,6 +23,7 @@ import net.sandius.rembulan.Metatables;
 import net.sandius.rembulan.PlainValueTypeNamer;
 import net.sandius.rembulan.Table;
 import net.sandius.rembulan.impl.NonsuspendableFunctionException;
+import net.sandius.rembulan.impl.StringInterner;
 import net.sandius.rembulan.impl.UnimplementedFunction;
 import net.sandius.rembulan.lib.BadArgumentException;
 import net.sandius.rembulan.lib.BasicLib;
@@ -1226,7 +1227,8 @@ public class DefaultStringLib extends StringLib {
 			i = lowerBound(i, len) - 1;
 			j = upperBound(j, len);
 
-			String result = s.substring(i, j);
+			// short substrings are likely to be used as table keys
+			String result = StringInterner.canonical(s, i, j);
 
 			context.getReturnBuffer().setTo(result);
 		}
@@ -1040,6 +1040,11 @@ public class DefaultTableLib extends TableLib {
 			else {
 				LuaFunction comp = args.hasNext() && args.peek() != null ? args.nextFunction() : null;
 
+				// numeric sequences stored in primitive arrays can be sorted directly
+				if (comp == null && t.rawSortNumbers(len)) {
+					return;
+				}
+
 				// can we sort it using a raw ordering?
 				Ordering<Object> rawOrdering = comp == null
 						&& !TableUtil.hasIndexMetamethod(t)
@@ -27,15 +27,15 @@ final class TableUtil {
 	}
 
 	public static boolean hasLenMetamethod(Table t) {
-		return Metatables.getMetamethod(Metatables.MT_LEN, t) != null;
+		return Metatables.getMetamethod(Metatables.MT_LEN, Metatables.MT_LEN_FLAG, t) != null;
 	}
 
 	public static boolean hasIndexMetamethod(Table t) {
-		return Metatables.getMetamethod(Metatables.MT_INDEX, t) != null;
+		return Metatables.getMetamethod(Metatables.MT_INDEX, Metatables.MT_INDEX_FLAG, t) != null;
 	}
 
 	public static boolean hasNewIndexMetamethod(Table t) {
-		return Metatables.getMetamethod(Metatables.MT_NEWINDEX, t) != null;
+		return Metatables.getMetamethod(Metatables.MT_NEWINDEX, Metatables.MT_NEWINDEX_FLAG, t) != null;
 	}
 
 	public static Ordering<Object> rawSequenceOrderingOf(Table t, long firstIdx, long lastIdx) {
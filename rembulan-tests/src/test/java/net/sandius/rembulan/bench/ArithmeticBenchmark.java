@@ -0,0 +1,118 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.bench;
+
+import net.sandius.rembulan.LongCache;
+import net.sandius.rembulan.LuaMathOperators;
+import net.sandius.rembulan.StateContext;
+import net.sandius.rembulan.Variable;
+import net.sandius.rembulan.compiler.CompilerChunkLoader;
+import net.sandius.rembulan.exec.DirectCallExecutor;
+import net.sandius.rembulan.impl.StateContexts;
+import net.sandius.rembulan.load.ChunkLoader;
+import net.sandius.rembulan.runtime.Dispatch;
+import net.sandius.rembulan.runtime.LuaFunction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Microbenchmarks of integer arithmetic, comparing the generic {@code Number}-based
+ * dispatch with the primitive entry points used by the compiler when operand types
+ * are statically known.
+ *
+ * <p>Run with the GC profiler (e.g. {@code -prof gc}) to see the allocation per operation.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ArithmeticBenchmark {
+
+	private static final String TYPED_LOOP =
+			"local n = ...\n"
+			+ "local s = 0\n"
+			+ "for i = 1, n do s = (s + i) % 1000 end\n"
+			+ "return s\n";
+
+	private static final String DYNAMIC_LOOP =
+			"local n = ...\n"
+			+ "local function add(a, b) return a + b end\n"
+			+ "local function mod(a, b) return a % b end\n"
+			+ "local s = 0\n"
+			+ "for i = 1, n do s = mod(add(s, i), 1000) end\n"
+			+ "return s\n";
+
+	private static final long LOOP_ITERATIONS = 1000L;
+
+	private Number a;
+	private Number b;
+
+	private long x;
+	private long y;
+
+	private StateContext state;
+	private DirectCallExecutor executor;
+	private LuaFunction typedLoop;
+	private LuaFunction dynamicLoop;
+
+	@Setup
+	public void setUp() throws Exception {
+		a = 300L;
+		b = 400L;
+		x = 300L;
+		y = 400L;
+
+		state = StateContexts.newDefaultInstance();
+		executor = DirectCallExecutor.newExecutor();
+
+		ChunkLoader loader = CompilerChunkLoader.of("arithmetic_bench_");
+		typedLoop = loader.loadTextChunk(new Variable(state.newTable()), "typed", TYPED_LOOP);
+		dynamicLoop = loader.loadTextChunk(new Variable(state.newTable()), "dynamic", DYNAMIC_LOOP);
+	}
+
+	@Benchmark
+	public Number dispatchAdd() {
+		return Dispatch.add(a, b);
+	}
+
+	@Benchmark
+	public Long primitiveAdd() {
+		return LongCache.valueOf(LuaMathOperators.add(x, y));
+	}
+
+	@Benchmark
+	public long primitiveAddUnboxed() {
+		return LuaMathOperators.add(x, y);
+	}
+
+	@Benchmark
+	public Object[] typedLoop() throws Exception {
+		return executor.call(state, typedLoop, LOOP_ITERATIONS);
+	}
+
+	@Benchmark
+	public Object[] dynamicLoop() throws Exception {
+		return executor.call(state, dynamicLoop, LOOP_ITERATIONS);
+	}
+
+}
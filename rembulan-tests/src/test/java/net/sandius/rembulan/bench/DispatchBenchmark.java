@@ -0,0 +1,107 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.bench;
+
+import net.sandius.rembulan.StateContext;
+import net.sandius.rembulan.Table;
+import net.sandius.rembulan.exec.DirectCallExecutor;
+import net.sandius.rembulan.impl.StateContexts;
+import net.sandius.rembulan.runtime.AbstractFunction0;
+import net.sandius.rembulan.runtime.Dispatch;
+import net.sandius.rembulan.runtime.ExecutionContext;
+import net.sandius.rembulan.runtime.ResolvedControlThrowable;
+import net.sandius.rembulan.runtime.UnresolvedControlThrowable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Microbenchmarks of single-value dispatch operations, comparing the entry points
+ * that store their result to the return buffer with those returning it directly.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DispatchBenchmark {
+
+	private Object a;
+	private Object b;
+
+	private Table table;
+	private Object key;
+
+	private StateContext state;
+	private DirectCallExecutor executor;
+
+	private ExecutionContext context;
+
+	@Setup
+	public void setUp() throws Exception {
+		a = 300L;
+		b = 0.5;
+
+		state = StateContexts.newDefaultInstance();
+		executor = DirectCallExecutor.newExecutor();
+
+		table = state.newTable();
+		key = "key";
+		table.rawset(key, "value");
+
+		// capture an execution context
+		executor.call(state, new AbstractFunction0() {
+			@Override
+			public void invoke(ExecutionContext context) throws ResolvedControlThrowable {
+				DispatchBenchmark.this.context = context;
+				context.getReturnBuffer().setTo();
+			}
+
+			@Override
+			public void resume(ExecutionContext context, Object suspendedState) throws ResolvedControlThrowable {
+				throw new UnsupportedOperationException();
+			}
+		});
+	}
+
+	@Benchmark
+	public Object addViaReturnBuffer() throws UnresolvedControlThrowable {
+		Dispatch.add(context, a, b);
+		return context.getReturnBuffer().get0();
+	}
+
+	@Benchmark
+	public Object addValue() throws UnresolvedControlThrowable {
+		return Dispatch.addValue(context, a, b);
+	}
+
+	@Benchmark
+	public Object indexViaReturnBuffer() throws UnresolvedControlThrowable {
+		Dispatch.index(context, table, key);
+		return context.getReturnBuffer().get0();
+	}
+
+	@Benchmark
+	public Object indexValue() throws UnresolvedControlThrowable {
+		return Dispatch.indexValue(context, (Object) table, key);
+	}
+
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.compiler
+
+import java.net.URLClassLoader
+import java.nio.charset.StandardCharsets
+import java.nio.file.{Files, Path}
+
+import net.sandius.rembulan.Variable
+import net.sandius.rembulan.exec.DirectCallExecutor
+import net.sandius.rembulan.impl.StateContexts
+import net.sandius.rembulan.load.{ChunkLoader, LoaderException, PrecompiledChunkLoader}
+import net.sandius.rembulan.runtime.LuaFunction
+import net.sandius.rembulan.test.Util
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+import org.scalatest.{BeforeAndAfterEach, FunSpec, MustMatchers}
+
+import scala.collection.JavaConverters._
+
+@RunWith(classOf[JUnitRunner])
+class AheadOfTimeCompilerSpec extends FunSpec with MustMatchers with BeforeAndAfterEach {
+
+  val PackageName = "aot_test"
+
+  val Sources = Map(
+    "main.lua" -> "local x = ...\nreturn 'main', x",
+    "pkg/init.lua" -> "return 'pkg'",
+    "pkg/sub.lua" -> "local t = {}\nfor i = 1, 10 do t[i] = i * i end\nreturn 'pkg.sub', #t, t[10]"
+  )
+
+  var dir: Path = null
+
+  override def beforeEach(): Unit = {
+    dir = Files.createTempDirectory("rembulan-aot")
+    for ((name, text) <- Sources) {
+      val file = dir.resolve("src").resolve(name)
+      Files.createDirectories(file.getParent)
+      Files.write(file, text.getBytes(AheadOfTimeCompiler.SOURCE_CHARSET))
+    }
+  }
+
+  override def afterEach(): Unit = {
+    Util.deleteRecursively(dir)
+  }
+
+  def sourceOf(moduleName: String): String = moduleName match {
+    case "main" => Sources("main.lua")
+    case "pkg" => Sources("pkg/init.lua")
+    case "pkg.sub" => Sources("pkg/sub.lua")
+  }
+
+  def compileTree(): AheadOfTimeCompiler = {
+    val aot = new AheadOfTimeCompiler(new LuaCompiler(), PackageName)
+    aot.addTree(dir.resolve("src")) mustBe Sources.size
+    aot.moduleNames().asScala.toList mustEqual List("main", "pkg", "pkg.sub")
+    aot
+  }
+
+  def classLoaderFor(path: Path): URLClassLoader = {
+    new URLClassLoader(Array(path.toUri.toURL), getClass.getClassLoader)
+  }
+
+  def call(fn: LuaFunction, args: AnyRef*): Seq[AnyRef] = {
+    DirectCallExecutor.newExecutor().call(StateContexts.newDefaultInstance(), fn, args: _*).toSeq
+  }
+
+  def mustRunAllModules(loader: PrecompiledChunkLoader, cl: ClassLoader): Unit = {
+    loader.moduleNames().asScala must contain allOf ("main", "pkg", "pkg.sub")
+
+    val main = loader.loadModule(new Variable(null), "main")
+    main.getClass.getClassLoader mustBe theSameInstanceAs (cl)
+    main.getClass.getName mustEqual AheadOfTimeCompiler.className(PackageName, "main")
+    call(main, "arg") mustEqual Seq("main", "arg")
+
+    call(loader.loadModule(new Variable(null), "pkg")) mustEqual Seq("pkg")
+    call(loader.loadModule(new Variable(null), "pkg.sub")) mustEqual Seq("pkg.sub", 10L, 100L)
+  }
+
+  class CountingLoader(underlying: ChunkLoader) extends ChunkLoader {
+    var count = 0
+    override def loadTextChunk(env: Variable, chunkName: String, sourceText: String) = {
+      count += 1
+      underlying.loadTextChunk(env, chunkName, sourceText)
+    }
+  }
+
+  describe ("an ahead-of-time compiled jar") {
+
+    it ("can be loaded by module name") {
+      val jar = dir.resolve("out").resolve("lua.jar")
+      compileTree().writeToJar(jar)
+      Files.exists(jar) mustBe true
+
+      val cl = classLoaderFor(jar)
+      try {
+        mustRunAllModules(PrecompiledChunkLoader.of(cl), cl)
+      }
+      finally {
+        cl.close()
+      }
+    }
+
+    it ("is used for matching source text only") {
+      val jar = dir.resolve("lua.jar")
+      compileTree().writeToJar(jar)
+
+      val cl = classLoaderFor(jar)
+      try {
+        val fallback = new CountingLoader(CompilerChunkLoader.of("aot_fallback_"))
+        val loader = PrecompiledChunkLoader.of(cl, fallback)
+
+        for (m <- Seq("main", "pkg", "pkg.sub")) {
+          val fn = loader.loadTextChunk(new Variable(null), m, sourceOf(m))
+          fn.getClass.getClassLoader mustBe theSameInstanceAs (cl)
+        }
+        fallback.count mustBe 0
+
+        // modified source text
+        val fn = loader.loadTextChunk(new Variable(null), "pkg", "return 'modified'")
+        fn.getClass.getClassLoader must not be theSameInstanceAs (cl)
+        call(fn) mustEqual Seq("modified")
+        fallback.count mustBe 1
+
+        // unknown module
+        call(loader.loadTextChunk(new Variable(null), "other", "return 1")) mustEqual Seq(1L)
+        fallback.count mustBe 2
+
+        val noFallback = PrecompiledChunkLoader.of(cl)
+        a [LoaderException] must be thrownBy {
+          noFallback.loadTextChunk(new Variable(null), "pkg", "return 'modified'")
+        }
+        a [LoaderException] must be thrownBy {
+          noFallback.loadModule(new Variable(null), "other")
+        }
+      }
+      finally {
+        cl.close()
+      }
+    }
+
+    it ("is reproducible") {
+      val first = dir.resolve("first.jar")
+      val second = dir.resolve("second.jar")
+      compileTree().writeToJar(first)
+      compileTree().writeToJar(second)
+
+      def entries(jar: Path): List[(String, Seq[Byte])] = {
+        val jf = new java.util.jar.JarFile(jar.toFile)
+        try {
+          (for (e <- jf.entries().asScala.toList) yield {
+            val in = jf.getInputStream(e)
+            try {
+              val out = new java.io.ByteArrayOutputStream()
+              val buf = new Array[Byte](4096)
+              var n = in.read(buf)
+              while (n >= 0) {
+                out.write(buf, 0, n)
+                n = in.read(buf)
+              }
+              (e.getName, out.toByteArray.toSeq)
+            }
+            finally {
+              in.close()
+            }
+          }).sortBy(_._1)
+        }
+        finally {
+          jf.close()
+        }
+      }
+
+      val es = entries(first)
+      es mustEqual entries(second)
+
+      val index = es.find(_._1 == PrecompiledChunkLoader.INDEX_RESOURCE_NAME)
+      index must not be None
+      val text = new String(index.get._2.toArray, StandardCharsets.ISO_8859_1)
+      text must include (PrecompiledChunkLoader.sourceDigest(sourceOf("pkg.sub")))
+      text must not include ("#")
+    }
+
+  }
+
+  describe ("an ahead-of-time compiled directory") {
+
+    it ("can be loaded by module name") {
+      val out = dir.resolve("classes")
+      compileTree().writeToDirectory(out)
+
+      val cl = classLoaderFor(out)
+      try {
+        mustRunAllModules(PrecompiledChunkLoader.of(cl), cl)
+      }
+      finally {
+        cl.close()
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.compiler
+
+import java.nio.file.{Files, Path}
+import java.util.concurrent.{Callable, Executors, TimeUnit}
+
+import net.sandius.rembulan.Variable
+import net.sandius.rembulan.exec.DirectCallExecutor
+import net.sandius.rembulan.impl.StateContexts
+import net.sandius.rembulan.load.ChunkClassLoader
+import net.sandius.rembulan.test.Util
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+import org.scalatest.{BeforeAndAfterEach, FunSpec, MustMatchers}
+
+import scala.collection.JavaConverters._
+
+@RunWith(classOf[JUnitRunner])
+class DiskChunkCacheSpec extends FunSpec with MustMatchers with BeforeAndAfterEach {
+
+  val Prefix = "disk_cache_test_"
+  val ChunkName = "test"
+  val Source = "local function f(x) return x * 2 end\nreturn f(21), ..."
+
+  val settings = CompilerSettings.defaultSettings()
+
+  var dir: Path = null
+
+  override def beforeEach(): Unit = {
+    dir = Files.createTempDirectory("rembulan-disk-cache")
+  }
+
+  override def afterEach(): Unit = {
+    Util.deleteRecursively(dir)
+  }
+
+  def keyFor(settings: CompilerSettings, source: String = Source): ChunkKey = {
+    ChunkKey.of(settings, Prefix, ChunkName, source)
+  }
+
+  def compile(key: ChunkKey, source: String = Source): CompiledModule = {
+    new LuaCompiler(settings).compile(source, ChunkName, key.rootClassName())
+  }
+
+  def fileFor(key: ChunkKey): Path = dir.resolve(key.digest() + ".rbc")
+
+  def mustBeSameModule(actual: CompiledModule, expected: CompiledModule): Unit = {
+    actual must not be null
+    actual.mainClassName() mustEqual expected.mainClassName()
+    actual.classMap().asScala.toList mustEqual expected.classMap().asScala.toList
+  }
+
+  class CountingCache(underlying: ChunkCache) extends ChunkCache {
+    var hits = 0
+    var misses = 0
+
+    override def get(key: ChunkKey) = {
+      val result = underlying.get(key)
+      if (result != null) hits += 1 else misses += 1
+      result
+    }
+
+    override def put(key: ChunkKey, chunk: CompiledModule) = underlying.put(key, chunk)
+  }
+
+  def run(cache: ChunkCache): Seq[AnyRef] = {
+    val loader = CompilerChunkLoader.of(new ChunkClassLoader(), new LuaCompiler(settings), Prefix, cache)
+    val fn = loader.loadTextChunk(new Variable(null), ChunkName, Source)
+    DirectCallExecutor.newExecutor().call(StateContexts.newDefaultInstance(), fn, "x").toSeq
+  }
+
+  describe ("a disk chunk cache") {
+
+    it ("misses when the directory does not exist") {
+      val cache = new DiskChunkCache(dir.resolve("nonexistent"))
+      cache.get(keyFor(settings)) mustBe null
+    }
+
+    it ("returns the stored chunk") {
+      val cache = new DiskChunkCache(dir)
+      val key = keyFor(settings)
+      val cm = compile(key)
+
+      cache.get(key) mustBe null
+      cache.put(key, cm)
+      Files.exists(fileFor(key)) mustBe true
+      mustBeSameModule(cache.get(key), cm)
+
+      // another instance sharing the directory
+      mustBeSameModule(new DiskChunkCache(dir).get(key), cm)
+    }
+
+    it ("is used by chunk loaders across class loaders") {
+      val first = new CountingCache(new DiskChunkCache(dir))
+      run(first) mustEqual Seq(42L, "x")
+      first.misses mustBe 1
+      first.hits mustBe 0
+
+      val second = new CountingCache(new DiskChunkCache(dir))
+      run(second) mustEqual Seq(42L, "x")
+      second.misses mustBe 0
+      second.hits mustBe 1
+    }
+
+    it ("treats a corrupt entry as a miss") {
+      val cache = new DiskChunkCache(dir)
+      val key = keyFor(settings)
+      cache.put(key, compile(key))
+
+      val bytes = Files.readAllBytes(fileFor(key))
+      bytes(bytes.length / 2) = (bytes(bytes.length / 2) ^ 0xff).toByte
+      bytes(0) = 0
+      Files.write(fileFor(key), bytes)
+
+      cache.get(key) mustBe null
+    }
+
+    it ("treats a truncated entry as a miss") {
+      val cache = new DiskChunkCache(dir)
+      val key = keyFor(settings)
+      cache.put(key, compile(key))
+
+      val bytes = Files.readAllBytes(fileFor(key))
+      for (len <- Seq(0, 3, bytes.length / 2, bytes.length - 1)) {
+        Files.write(fileFor(key), java.util.Arrays.copyOf(bytes, len))
+        cache.get(key) mustBe null
+      }
+    }
+
+    it ("treats an entry with trailing garbage as a miss") {
+      val cache = new DiskChunkCache(dir)
+      val key = keyFor(settings)
+      cache.put(key, compile(key))
+
+      val bytes = Files.readAllBytes(fileFor(key))
+      Files.write(fileFor(key), bytes ++ Array[Byte](1, 2, 3))
+      cache.get(key) mustBe null
+    }
+
+    it ("replaces a corrupt entry when the chunk is recompiled") {
+      val key = keyFor(settings)
+      Files.write(fileFor(key), Array[Byte](1, 2, 3))
+
+      val first = new CountingCache(new DiskChunkCache(dir))
+      run(first) mustEqual Seq(42L, "x")
+      first.misses mustBe 1
+
+      val second = new CountingCache(new DiskChunkCache(dir))
+      run(second) mustEqual Seq(42L, "x")
+      second.hits mustBe 1
+    }
+
+    it ("does not return an entry stored under a different key") {
+      val cache = new DiskChunkCache(dir)
+      val key = keyFor(settings)
+      cache.put(key, compile(key))
+
+      // an entry moved to the file of another key
+      val otherKey = keyFor(settings, "return 1")
+      Files.copy(fileFor(key), fileFor(otherKey))
+      cache.get(otherKey) mustBe null
+    }
+
+    it ("keys chunks by the settings affecting the generated code") {
+      val key = keyFor(settings)
+
+      val keys = Seq(
+        settings.withCPUAccountingMode(CompilerSettings.CPUAccountingMode.NO_CPU_ACCOUNTING),
+        settings.withConstFolding(!settings.constFolding()),
+        settings.withConstCaching(!settings.constCaching()),
+        settings.withFieldCaching(!settings.fieldCaching()),
+        settings.withInvokeDynamicCalls(!settings.invokeDynamicCalls()),
+        settings.withNodeSizeLimit(settings.nodeSizeLimit() + 1)) map { s => keyFor(s) }
+
+      for (k <- keys) {
+        k must not equal key
+      }
+      keys.distinct.size mustBe keys.size
+
+      // the parallelism does not affect the generated code
+      keyFor(settings.withParallelism(settings.parallelism() + 3)) mustEqual key
+
+      val cache = new DiskChunkCache(dir)
+      cache.put(key, compile(key))
+      for (k <- keys) {
+        cache.get(k) mustBe null
+      }
+      cache.get(key) must not be null
+    }
+
+    it ("keys chunks by the build of the compiler and of the runtime") {
+      for (v <- Seq(ChunkKey.COMPILER_VERSION, ChunkKey.RUNTIME_VERSION)) {
+        v must not startWith ("unknown")
+        v must not include ("${")
+        if (v.contains("-SNAPSHOT")) {
+          // snapshots of the same version may differ in the generated code
+          v must fullyMatch regex ("""[^+]+-SNAPSHOT\+\d+""")
+        }
+      }
+    }
+
+    it ("can be written to concurrently") {
+      val cache = new DiskChunkCache(dir)
+      val sources = for (i <- 0 until 4) yield "return " + i
+      val keys = sources map { s => keyFor(settings, s) }
+      val modules = (keys zip sources) map { case (k, s) => compile(k, s) }
+
+      val executor = Executors.newFixedThreadPool(8)
+      try {
+        val tasks = for (t <- 0 until 8) yield new Callable[Unit] {
+          override def call(): Unit = {
+            for (i <- 0 until 50) {
+              val j = (t + i) % keys.size
+              cache.put(keys(j), modules(j))
+              val cm = cache.get(keys(j))
+              // an entry is either complete or missing, never partial
+              if (cm != null) {
+                mustBeSameModule(cm, modules(j))
+              }
+            }
+          }
+        }
+        for (f <- executor.invokeAll(tasks.asJava).asScala) {
+          f.get()
+        }
+      }
+      finally {
+        executor.shutdown()
+        executor.awaitTermination(10, TimeUnit.SECONDS)
+      }
+
+      for ((k, cm) <- keys zip modules) {
+        mustBeSameModule(cache.get(k), cm)
+      }
+
+      // no temporary files are left behind
+      val files = Files.newDirectoryStream(dir)
+      try {
+        files.iterator().asScala.size mustBe keys.size
+      }
+      finally {
+        files.close()
+      }
+    }
+
+  }
+
+}
@@ -25,6 +25,8 @@ import org.junit.runner.RunWith
 import org.scalatest.junit.JUnitRunner
 import org.scalatest.{FunSpec, MustMatchers}
 
+import scala.collection.JavaConverters._
+
 @RunWith(classOf[JUnitRunner])
 class FragmentCompileAndLoadTest extends FunSpec with MustMatchers {
 
@@ -93,6 +95,17 @@ class FragmentCompileAndLoadTest extends FunSpec with MustMatchers {
           }
         }
 
+        it ("compiles to the same classes in parallel") {
+          val sequential = new LuaCompiler(settings.withParallelism(1)).compile(fragment.code, "stdin", "test")
+          val parallel = new LuaCompiler(settings.withParallelism(4)).compile(fragment.code, "stdin", "test")
+
+          parallel.mainClassName() mustEqual sequential.mainClassName()
+          parallel.classMap().keySet.asScala.toList mustEqual sequential.classMap().keySet.asScala.toList
+          for ((name, bytes) <- sequential.classMap().asScala) {
+            parallel.classMap().get(name) mustEqual bytes
+          }
+        }
+
       }
     }
   }
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.compiler
+
+import net.sandius.rembulan.Variable
+import net.sandius.rembulan.exec.DirectCallExecutor
+import net.sandius.rembulan.impl.StateContexts
+import net.sandius.rembulan.load.ChunkClassLoader
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+import org.scalatest.{FunSpec, MustMatchers}
+
+import scala.collection.JavaConverters._
+
+@RunWith(classOf[JUnitRunner])
+class MemoryChunkCacheSpec extends FunSpec with MustMatchers {
+
+  val Prefix = "memory_cache_test_"
+  val ChunkName = "test"
+
+  val settings = CompilerSettings.defaultSettings()
+
+  def keyFor(source: String, settings: CompilerSettings = settings): ChunkKey = {
+    ChunkKey.of(settings, Prefix, ChunkName, source)
+  }
+
+  def compile(key: ChunkKey, source: String): CompiledModule = {
+    new LuaCompiler(settings).compile(source, ChunkName, key.rootClassName())
+  }
+
+  def sizeOf(cm: CompiledModule): Long = (cm.classMap().values().asScala map { _.size().toLong }).sum
+
+  def run(loader: CompilerChunkLoader, source: String): Seq[AnyRef] = {
+    val fn = loader.loadTextChunk(new Variable(null), ChunkName, source)
+    DirectCallExecutor.newExecutor().call(StateContexts.newDefaultInstance(), fn).toSeq
+  }
+
+  describe ("a memory chunk cache") {
+
+    it ("returns the stored chunk") {
+      val cache = new MemoryChunkCache(1L << 20)
+      val src = "return 1"
+      val key = keyFor(src)
+      val cm = compile(key, src)
+
+      cache.get(key) mustBe null
+      cache.put(key, cm)
+      cache.get(key) mustBe theSameInstanceAs (cm)
+
+      cache.size mustBe 1
+      cache.bytes mustBe sizeOf(cm)
+      cache.hitCount mustBe 1
+      cache.missCount mustBe 1
+    }
+
+    it ("is shared by chunk loaders with separate class loaders") {
+      val cache = new MemoryChunkCache(1L << 20)
+      val compiler = new LuaCompiler(settings)
+      val src = "local a, b = 20, 22\nreturn a + b"
+
+      val first = CompilerChunkLoader.ofSharedClassLoader(new ChunkClassLoader(), compiler, Prefix, cache)
+      val second = CompilerChunkLoader.ofSharedClassLoader(new ChunkClassLoader(), compiler, Prefix, cache)
+
+      run(first, src) mustEqual Seq(42L)
+      cache.missCount mustBe 1
+      cache.hitCount mustBe 0
+      cache.size mustBe 1
+
+      // each state gets its own loader, all of them are served by the cache
+      run(second, src) mustEqual Seq(42L)
+      run(CompilerChunkLoader.of(getClass.getClassLoader, compiler, Prefix, cache), src) mustEqual Seq(42L)
+      cache.missCount mustBe 1
+      cache.hitCount mustBe 2
+      cache.size mustBe 1
+
+      // the classes are defined separately in each class loader
+      val f1 = first.loadTextChunk(new Variable(null), ChunkName, src)
+      val f2 = second.loadTextChunk(new Variable(null), ChunkName, src)
+      f1.getClass.getName mustEqual f2.getClass.getName
+      f1.getClass must not be theSameInstanceAs (f2.getClass)
+    }
+
+    it ("keys chunks by settings") {
+      val cache = new MemoryChunkCache(1L << 20)
+      val src = "return 1 + 2"
+
+      val a = CompilerSettings.defaultSettings().withConstFolding(true)
+      val b = a.withConstFolding(false)
+      val c = a.withParallelism(a.parallelism() + 3)
+
+      def loader(s: CompilerSettings) = CompilerChunkLoader.of(getClass.getClassLoader, new LuaCompiler(s), Prefix, cache)
+
+      run(loader(a), src) mustEqual Seq(3L)
+      run(loader(b), src) mustEqual Seq(3L)
+      cache.missCount mustBe 2
+      cache.size mustBe 2
+
+      // parallelism does not affect the generated code
+      run(loader(c), src) mustEqual Seq(3L)
+      cache.missCount mustBe 2
+      cache.hitCount mustBe 1
+    }
+
+    it ("evicts the least recently used chunks") {
+      val srcs = for (i <- 0 until 4) yield "return " + i
+      val keys = srcs map { s => keyFor(s) }
+      val modules = (keys zip srcs) map { case (k, s) => compile(k, s) }
+      val sizes = modules map sizeOf
+
+      // room for any three chunks other than the second one, but not for all four
+      val cache = new MemoryChunkCache(math.max(sizes(0) + sizes(1) + sizes(2), sizes(0) + sizes(2) + sizes(3)))
+
+      for (i <- 0 until 3) {
+        cache.put(keys(i), modules(i))
+      }
+      cache.size mustBe 3
+      cache.evictionCount mustBe 0
+
+      // touch the first chunk so that the second one is the eldest
+      cache.get(keys(0)) must not be null
+
+      cache.put(keys(3), modules(3))
+      cache.evictionCount mustBe 1
+      cache.size mustBe 3
+      cache.bytes mustBe sizes(0) + sizes(2) + sizes(3)
+
+      cache.get(keys(1)) mustBe null
+      for (i <- Seq(0, 2, 3)) {
+        cache.get(keys(i)) mustBe theSameInstanceAs (modules(i))
+      }
+    }
+
+    it ("does not cache chunks larger than its bound") {
+      val src = "return 1"
+      val key = keyFor(src)
+      val cm = compile(key, src)
+
+      val cache = new MemoryChunkCache(sizeOf(cm) - 1)
+      cache.put(key, cm)
+      cache.size mustBe 0
+      cache.bytes mustBe 0L
+      cache.evictionCount mustBe 0
+      cache.get(key) mustBe null
+    }
+
+    it ("accounts for replaced chunks") {
+      val src = "return 1"
+      val key = keyFor(src)
+      val cm = compile(key, src)
+
+      val cache = new MemoryChunkCache(1L << 20)
+      cache.put(key, cm)
+      cache.put(key, compile(key, src))
+      cache.size mustBe 1
+      cache.bytes mustBe sizeOf(cm)
+
+      cache.clear()
+      cache.size mustBe 0
+      cache.bytes mustBe 0L
+    }
+
+  }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.impl
+
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+import org.scalatest.{FunSpec, MustMatchers}
+
+@RunWith(classOf[JUnitRunner])
+class ShapeSpec extends FunSpec with MustMatchers {
+
+  describe ("a shape") {
+
+    it ("maps keys to slots in the order of their addition") {
+      val s = Shape.empty().withKey("x").withKey("y").withKey("z")
+      s.size() mustBe 3
+      s.slotOf("x") mustBe 0
+      s.slotOf("y") mustBe 1
+      s.slotOf("z") mustBe 2
+      s.slotOf("w") mustBe -1
+      s.keyAt(1) mustBe "y"
+    }
+
+    it ("is shared by tables acquiring the same keys in the same order") {
+      val root = Shape.empty()
+      val a = root.withKey("x").withKey("y")
+      val b = root.withKey("x").withKey("y")
+      val c = root.withKey("y").withKey("x")
+      (a eq b) mustBe true
+      (a eq c) mustBe false
+    }
+
+    it ("has at most " + Shape.MAX_SIZE + " keys") {
+      var s = Shape.empty()
+      for (i <- 0 until Shape.MAX_SIZE) {
+        s = s.withKey("k" + i)
+        s must not be null
+      }
+      s.withKey("k" + Shape.MAX_SIZE) mustBe null
+    }
+
+  }
+
+  describe ("a tree of shapes") {
+
+    it ("has at most " + Shape.MAX_SHAPES + " shapes") {
+      val root = Shape.empty()
+      var created = 0
+      var refused = 0
+      for (i <- 0 until 1024; j <- 0 until 32) {
+        val s = root.withKey("a" + i)
+        if (s != null) {
+          if (j == 0) created += 1
+          if (s.withKey("b" + j) != null) created += 1 else refused += 1
+        }
+      }
+      created mustBe Shape.MAX_SHAPES - 1
+      refused must be > 0
+
+      // existing transitions are still available
+      root.withKey("a0").withKey("b0") must not be null
+    }
+
+  }
+
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.impl
+
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+import org.scalatest.{BeforeAndAfterEach, FunSpec, MustMatchers}
+
+@RunWith(classOf[JUnitRunner])
+class StringInternerSpec extends FunSpec with MustMatchers with BeforeAndAfterEach {
+
+  override def beforeEach(): Unit = {
+    StringInterner.clear()
+  }
+
+  // "Aa" and "BB" have the same hash code, and so do strings differing only in them
+  def fresh(s: String): String = new String(s.toCharArray)
+
+  describe ("a string interner") {
+
+    it ("returns the pooled instance of an equal string") {
+      val s = fresh("interner-spec-pooled")
+      (StringInterner.intern(s) eq s) mustBe true
+      (StringInterner.intern(fresh("interner-spec-pooled")) eq s) mustBe true
+    }
+
+    it ("does not pool long strings") {
+      val s = "interner-spec-" * 4
+      s.length must be > StringInterner.MAX_LENGTH
+      (StringInterner.intern(s) eq s) mustBe true
+      (StringInterner.intern(fresh(s)) eq s) mustBe false
+    }
+
+    it ("does not evict pooled strings") {
+      val a = fresh("interner-spec-AaAa")
+      val b = fresh("interner-spec-BBBB")
+      a.hashCode mustBe b.hashCode
+
+      (StringInterner.intern(a) eq a) mustBe true
+      (StringInterner.intern(b) eq b) mustBe true
+      (StringInterner.intern(fresh("interner-spec-AaAa")) eq a) mustBe true
+      (StringInterner.intern(fresh("interner-spec-BBBB")) eq b) mustBe false
+    }
+
+    it ("looks up substrings without adding them") {
+      val s = "x[interner-spec-sub]y"
+      val p = fresh("interner-spec-sub")
+      StringInterner.canonical(s, 1, 18) mustEqual "[interner-spec-su"
+      (StringInterner.canonical(s, 2, 19) eq p) mustBe false
+
+      StringInterner.intern(p)
+      (StringInterner.canonical(s, 2, 19) eq p) mustBe true
+      (StringInterner.canonical(s, 2, 18) eq p) mustBe false
+      StringInterner.canonical(s, 2, 18) mustEqual "interner-spec-su"
+
+      StringInterner.canonical(s, 0, s.length) mustEqual s
+      StringInterner.canonical(s, 3, 3) mustEqual ""
+      an [IndexOutOfBoundsException] must be thrownBy { StringInterner.canonical(s, 5, 4) }
+      an [IndexOutOfBoundsException] must be thrownBy { StringInterner.canonical(s, 5, s.length + 1) }
+    }
+
+    it ("makes the keys stored in tables identical to the keys computed by string.sub") {
+      for (t <- Seq(new ArrayHashTable(), ShapedTable.factory().newTable())) {
+        val k = fresh("interner-spec-key-" + t.getClass.getSimpleName)
+        t.rawset(k, "v")
+        val sub = StringInterner.canonical("<" + k + ">", 1, k.length + 1)
+        sub mustEqual k
+        t.rawget(sub) mustBe "v"
+
+        var stored = t.initialKey()
+        while (stored != k) {
+          stored = t.successorKeyOf(stored)
+        }
+        (stored eq sub) mustBe true
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.impl
+
+import net.sandius.rembulan.{Table, TableFactory}
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+import org.scalatest.{FunSpec, MustMatchers}
+
+@RunWith(classOf[JUnitRunner])
+class TableSizeHintsSpec extends FunSpec with MustMatchers {
+
+  val factories = Seq(
+    ("ArrayHashTable", ArrayHashTable.factory()),
+    ("DefaultTable", DefaultTable.factory()),
+    ("ShapedTable", ShapedTable.factory()))
+
+  def keys(t: Table): List[Any] = {
+    var result = List.empty[Any]
+    var k = t.initialKey()
+    while (k != null) {
+      result = k :: result
+      k = t.successorKeyOf(k)
+    }
+    result.reverse
+  }
+
+  def fill(t: Table, array: Int, hash: Int): Unit = {
+    for (i <- 1 to array) {
+      t.rawset(i, java.lang.Long.valueOf(i * 10))
+    }
+    for (i <- 1 to hash) {
+      t.rawset("k" + i, java.lang.Long.valueOf(i))
+    }
+  }
+
+  def mustHoldFilled(t: Table, array: Int, hash: Int): Unit = {
+    t.rawlen() mustBe array
+    for (i <- 1 to array) {
+      t.rawget(i) mustBe java.lang.Long.valueOf(i * 10)
+    }
+    for (i <- 1 to hash) {
+      t.rawget("k" + i) mustBe java.lang.Long.valueOf(i)
+    }
+    t.rawget(array + 1) mustBe null
+    keys(t).size mustBe array + hash
+  }
+
+  for ((name, factory) <- factories) {
+
+    describe ("a " + name + " constructed with size hints") {
+
+      it ("is empty") {
+        for ((a, h) <- Seq((0, 0), (1, 0), (0, 1), (16, 16), (-1, -1), (-100, 5), (5, -100))) {
+          val t = factory.newTable(a, h)
+          t.rawlen() mustBe 0
+          t.initialKey() mustBe null
+          t.rawget(1) mustBe null
+        }
+      }
+
+      it ("holds fewer, exactly as many and more entries than hinted") {
+        for ((a, h) <- Seq((0, 0), (4, 4), (100, 10), (10, 100));
+             (fa, fh) <- Seq((0, 0), (a / 2, h / 2), (a, h), (a * 2 + 3, h * 2 + 3))) {
+          val t = factory.newTable(a, h)
+          fill(t, fa, fh)
+          mustHoldFilled(t, fa, fh)
+        }
+      }
+
+      it ("traverses each entry exactly once regardless of the hints") {
+        for ((a, h) <- Seq((0, 0), (20, 20), (1, 1), (100, 0), (0, 100))) {
+          val t = factory.newTable(a, h)
+          fill(t, 20, 20)
+          t.rawset(5L, null)
+          t.rawset("k5", null)
+
+          val ks = keys(t)
+          ks.size mustBe 38
+          ks.toSet mustEqual (((1 to 20) map { _.toLong }) ++ ((1 to 20) map { "k" + _ })).toSet - 5L - "k5"
+        }
+      }
+
+      it ("keeps its contents when asked to ensure array capacity") {
+        for ((fa, fh) <- Seq((0, 0), (3, 0), (0, 3), (10, 10));
+             size <- Seq(-1L, 0L, 1L, fa.toLong, fa + 100L)) {
+          val t = factory.newTable()
+          fill(t, fa, fh)
+          t.ensureArrayCapacity(size)
+          mustHoldFilled(t, fa, fh)
+
+          // continue the sequence
+          for (i <- fa + 1 to fa + 5) {
+            t.rawset(i, java.lang.Long.valueOf(i * 10))
+          }
+          mustHoldFilled(t, fa + 5, fh)
+        }
+      }
+
+      it ("keeps integer keys stored in the hash part when asked to ensure array capacity") {
+        val t = factory.newTable()
+        for (i <- 20 to 1 by -1) {
+          t.rawset(i, java.lang.Long.valueOf(i * 10))
+        }
+        t.ensureArrayCapacity(40)
+        mustHoldFilled(t, 20, 0)
+      }
+
+    }
+
+  }
+
+  describe ("a weak ArrayHashTable") {
+
+    it ("keeps its contents when asked to ensure array capacity") {
+      val t = new ArrayHashTable()
+      val mt = new ArrayHashTable()
+      mt.rawset("__mode", "v")
+      t.setMetatable(mt)
+      fill(t, 10, 10)
+      t.ensureArrayCapacity(100)
+      mustHoldFilled(t, 10, 10)
+    }
+
+  }
+
+  describe ("an ImmutableTable") {
+
+    it ("keeps the order of its entries") {
+      val b = new ImmutableTable.Builder()
+      for (i <- 1 to 20) {
+        b.add("k" + i, java.lang.Long.valueOf(i))
+      }
+      val t = b.build()
+      keys(t) mustEqual ((1 to 20) map { "k" + _ }).toList
+    }
+
+    it ("keeps its entries when copied from a builder") {
+      val b = new ImmutableTable.Builder()
+      for (i <- 1 to 20) {
+        b.add("k" + i, java.lang.Long.valueOf(i))
+      }
+      val c = new ImmutableTable.Builder(b)
+      c.add("k21", java.lang.Long.valueOf(21))
+      keys(b.build()) mustEqual ((1 to 20) map { "k" + _ }).toList
+      keys(c.build()) mustEqual ((1 to 21) map { "k" + _ }).toList
+    }
+
+    it ("holds every entry of the map it is constructed from") {
+      val m = new java.util.HashMap[AnyRef, AnyRef]()
+      for (i <- 1 to 20) {
+        m.put("k" + i, java.lang.Long.valueOf(i))
+      }
+      val t = ImmutableTable.of(m)
+      keys(t).toSet mustEqual ((1 to 20) map { "k" + _ }).toSet
+      for (i <- 1 to 20) {
+        t.rawget("k" + i) mustBe i
+      }
+    }
+
+  }
+
+}
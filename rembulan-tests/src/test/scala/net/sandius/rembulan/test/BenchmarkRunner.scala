@@ -22,11 +22,11 @@ import java.util.Scanner
 import net.sandius.rembulan.compiler.CompilerSettings.CPUAccountingMode
 import net.sandius.rembulan.compiler.{CompilerChunkLoader, CompilerSettings}
 import net.sandius.rembulan.exec.DirectCallExecutor
-import net.sandius.rembulan.impl.StateContexts
+import net.sandius.rembulan.impl.{ArrayHashTable, DefaultTable, ShapedTable, StateContexts}
 import net.sandius.rembulan.lib.impl._
 import net.sandius.rembulan.load.{ChunkClassLoader, ChunkLoader}
 import net.sandius.rembulan.runtime.LuaFunction
-import net.sandius.rembulan.{StateContext, Table, Variable}
+import net.sandius.rembulan.{StateContext, Table, TableFactory, Variable}
 
 import scala.util.Try
 
@@ -35,7 +35,8 @@ object BenchmarkRunner {
   case class RequestedCompilerSettings(
       noCPUAccounting: Boolean,
       constFolding: Option[Boolean],
-      constCaching: Option[Boolean]
+      constCaching: Option[Boolean],
+      fieldCaching: Option[Boolean]
   ) {
 
     def toCompilerSettings: CompilerSettings = {
@@ -53,17 +54,29 @@ object BenchmarkRunner {
         case _ => s2
       }
 
-      s3
+      val s4 = fieldCaching match {
+        case Some(v) => s3.withFieldCaching(v)
+        case _ => s3
+      }
+
+      s4
     }
 
   }
 
   case class Benchmark(fileName: String) {
-    def go(prefix: String, stepSize: Int, settings: CompilerSettings, args: String*): Unit = {
-      doFile(prefix, stepSize, settings, fileName, args:_*)
+    def go(prefix: String, stepSize: Int, settings: CompilerSettings, tableFactory: TableFactory, args: String*): Unit = {
+      doFile(prefix, stepSize, settings, tableFactory, fileName, args:_*)
     }
   }
 
+  def tableFactoryFor(name: String): Option[TableFactory] = name match {
+    case "arrayhash" => Some(ArrayHashTable.factory())
+    case "hashmap" => Some(DefaultTable.factory())
+    case "shaped" => Some(ShapedTable.factory())
+    case _ => None
+  }
+
   protected def stringProperty(key: String, default: String): String = {
     Option(System.getProperty(key)) getOrElse default
   }
@@ -113,7 +126,7 @@ object BenchmarkRunner {
 
   case class EnvWithMainChunk(state: StateContext, fn: LuaFunction)
 
-  def init(settings: CompilerSettings, filename: String, args: String*) = {
+  def init(settings: CompilerSettings, tableFactory: TableFactory, filename: String, args: String*) = {
     val resourceStream = getClass.getResourceAsStream(filename)
     require (resourceStream != null, "resource must exist, is null")
     val sourceContents = new Scanner(resourceStream, "UTF-8").useDelimiter("\\A").next()
@@ -121,7 +134,7 @@ object BenchmarkRunner {
 
     val ldr = CompilerChunkLoader.of(new ChunkClassLoader(), settings, "benchmark_")
 
-    val state = StateContexts.newDefaultInstance()
+    val state = StateContexts.newInstance(tableFactory)
 
     val env = initEnv(state, ldr, args)
 
@@ -140,10 +153,10 @@ object BenchmarkRunner {
     result
   }
 
-  def doFile(prefix: String, stepSize: Int, settings: CompilerSettings, filename: String, args: String*): Unit = {
+  def doFile(prefix: String, stepSize: Int, settings: CompilerSettings, tableFactory: TableFactory, filename: String, args: String*): Unit = {
 
     def initCall() = timed (prefix + "init") {
-      init(settings, filename, args:_*)
+      init(settings, tableFactory, filename, args:_*)
     }
 
     val c = initCall()
@@ -196,8 +209,12 @@ object BenchmarkRunner {
   val NoCPUAccountingPropertyName = "noCPUAccounting"
   val DefaultNoCPUAccounting = false
 
+  val TableFactoryPropertyName = "tableFactory"
+  val DefaultTableFactoryName = "arrayhash"
+
   val ConstFoldingPropertyName = "constFolding"
   val ConstCachingPropertyName = "constCaching"
+  val FieldCachingPropertyName = "fieldCaching"
 
   def main(args: Array[String]): Unit = {
 
@@ -208,8 +225,13 @@ object BenchmarkRunner {
         val noCPUAccounting = booleanProperty(NoCPUAccountingPropertyName, DefaultNoCPUAccounting)
         val constFolding = optBooleanProperty(ConstFoldingPropertyName)
         val constCaching = optBooleanProperty(ConstCachingPropertyName)
+        val fieldCaching = optBooleanProperty(FieldCachingPropertyName)
+        val tableFactoryName = stringProperty(TableFactoryPropertyName, DefaultTableFactoryName)
+        val tableFactory = tableFactoryFor(tableFactoryName) getOrElse {
+          throw new IllegalArgumentException("Unknown table factory: " + tableFactoryName)
+        }
 
-        val requestedSettings = RequestedCompilerSettings(noCPUAccounting, constFolding, constCaching)
+        val requestedSettings = RequestedCompilerSettings(noCPUAccounting, constFolding, constCaching, fieldCaching)
         val actualSettings = requestedSettings.toCompilerSettings
 
         val bm = Benchmark(dirPrefix + setup.benchmarkFile)
@@ -225,6 +247,8 @@ object BenchmarkRunner {
         println(NoCPUAccountingPropertyName + " = " + requestedSettings.noCPUAccounting + " (" + actualSettings.cpuAccountingMode() + ")")
         println(ConstFoldingPropertyName + " = " + requestedSettings.constFolding + " (" + actualSettings.constFolding() + ")")
         println(ConstCachingPropertyName + " = " + requestedSettings.constCaching + " (" + actualSettings.constCaching() + ")")
+        println(FieldCachingPropertyName + " = " + requestedSettings.fieldCaching + " (" + actualSettings.fieldCaching() + ")")
+        println(TableFactoryPropertyName + " = " + tableFactoryName)
 
         if (!noCPUAccounting) {
           println(StepSizePropertyName + " = " + stepSize)
@@ -234,7 +258,7 @@ object BenchmarkRunner {
 
         for (i <- 1 to numRuns) {
           val prefix = s"#$i\t"
-          bm.go(prefix, stepSize, actualSettings, setup.args:_*)
+          bm.go(prefix, stepSize, actualSettings, tableFactory, setup.args:_*)
         }
 
 
@@ -243,6 +267,7 @@ object BenchmarkRunner {
         println("Use the \"" + NumOfRunsPropertyName + "\" VM property to set the number of runs (default is " + DefaultNumOfRuns + ").")
         println("        \"" + StepSizePropertyName + "\" VM property to set the step size (default is " + DefaultStepSize + ").")
         println("        \"" + NoCPUAccountingPropertyName + "\" VM property (true/false) to turn off CPU accounting (default is " + DefaultNoCPUAccounting + ")")
+        println("        \"" + TableFactoryPropertyName + "\" VM property (arrayhash/hashmap/shaped) to set the table implementation (default is " + DefaultTableFactoryName + ")")
         System.exit(1)
     }
 
@@ -22,14 +22,14 @@ import java.nio.file.FileSystems
 import net.sandius.rembulan.compiler.CompilerSettings.CPUAccountingMode
 import net.sandius.rembulan.compiler.{CompilerChunkLoader, CompilerSettings}
 import net.sandius.rembulan.exec._
-import net.sandius.rembulan.impl.StateContexts
+import net.sandius.rembulan.impl.{ArrayHashTable, StateContexts}
 import net.sandius.rembulan.lib.Lib
 import net.sandius.rembulan.lib.impl._
 import net.sandius.rembulan.load.{ChunkClassLoader, ChunkLoader}
 import net.sandius.rembulan.runtime.RuntimeCallInitialiser
 import net.sandius.rembulan.test.FragmentExpectations.Env
 import net.sandius.rembulan.test.Util.{BufferPrinter, Printer}
-import net.sandius.rembulan.{Conversions, StateContext, Table, Variable}
+import net.sandius.rembulan.{Conversions, StateContext, Table, TableFactory, Variable}
 import org.scalatest.{FunSpec, MustMatchers}
 
 import scala.util.{Failure, Success}
@@ -44,6 +44,8 @@ trait FragmentExecTestSuite extends FunSpec with MustMatchers {
 
   def compilerConfigs: CompilerConfigs = CompilerConfigs.DefaultOnly
 
+  def tableFactories: Seq[(String, TableFactory)] = Seq(("arrayhash", ArrayHashTable.factory()))
+
   protected val Empty = FragmentExpectations.Env.Empty
   protected val Basic = FragmentExpectations.Env.Basic
   protected val Coro = FragmentExpectations.Env.Coro
@@ -116,6 +118,7 @@ trait FragmentExecTestSuite extends FunSpec with MustMatchers {
     val cpu = settings.cpuAccountingMode() match {
       case CPUAccountingMode.NO_CPU_ACCOUNTING => "n"
       case CPUAccountingMode.IN_EVERY_BASIC_BLOCK => "a"
+      case CPUAccountingMode.AT_LOOP_BACKEDGES => "b"
     }
     val cfold = settings.constFolding() match {
       case true => "t"
@@ -125,11 +128,19 @@ trait FragmentExecTestSuite extends FunSpec with MustMatchers {
       case true => "t"
       case false => "f"
     }
+    val fcache = settings.fieldCaching() match {
+      case true => "t"
+      case false => "f"
+    }
+    val indy = settings.invokeDynamicCalls() match {
+      case true => "t"
+      case false => "f"
+    }
     val nlimit = settings.nodeSizeLimit() match {
       case 0 => "0"
       case n => n.toString
     }
-    cpu + cfold + ccache + "_" + nlimit
+    cpu + cfold + ccache + fcache + indy + "_" + nlimit
   }
 
   case class RembulanChkLoader(settings: CompilerSettings) extends ChkLoader {
@@ -149,14 +160,21 @@ trait FragmentExecTestSuite extends FunSpec with MustMatchers {
       cpu <- CPUAccountingMode.values();
       cfold <- bools;
       ccache <- bools;
+      fcache <- bools;
+      indy <- bools;
       nlimit <- limits
     ) yield CompilerSettings.defaultSettings()
         .withCPUAccountingMode(cpu)
         .withConstFolding(cfold)
         .withConstCaching(ccache)
+        .withFieldCaching(fcache)
+        .withInvokeDynamicCalls(indy)
         .withNodeSizeLimit(nlimit)
 
     case object DefaultOnly extends CompilerConfigs(Seq(CompilerSettings.defaultSettings()))
+    case object WithInvokeDynamic extends CompilerConfigs(Seq(
+      CompilerSettings.defaultSettings(),
+      CompilerSettings.defaultSettings().withInvokeDynamicCalls(true)))
     case object All extends CompilerConfigs(allConfigs)
   }
 
@@ -170,14 +188,16 @@ trait FragmentExecTestSuite extends FunSpec with MustMatchers {
 
     describe (prefix + fragment.description + " in " + ctx + ":") {
 
-      for (s <- steps; l <- ldrs) {
+      for (s <- steps; l <- ldrs; (tfName, tf) <- tableFactories) {
 
         val stepDesc = s match {
           case Int.MaxValue => "max"
           case i => i.toString
         }
 
-        it (l.name + " / " + stepDesc) {
+        val tfDesc = if (tableFactories.size > 1) " / " + tfName else ""
+
+        it (l.name + " / " + stepDesc + tfDesc) {
 
           val printer = new BufferPrinter()
 
@@ -185,7 +205,7 @@ trait FragmentExecTestSuite extends FunSpec with MustMatchers {
 
             val ldr = l.loader()
 
-            val state = StateContexts.newDefaultInstance()
+            val state = StateContexts.newInstance(tf)
 
             val env = envForContext(state, ctx, ldr, printer)
             val func = ldr.loadTextChunk(new Variable(env), "test", fragment.code)
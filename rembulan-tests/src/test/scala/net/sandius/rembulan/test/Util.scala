@@ -16,7 +16,9 @@
 
 package net.sandius.rembulan.test
 
-import java.io.{ByteArrayOutputStream, OutputStream, PrintStream}
+import java.io.{ByteArrayOutputStream, IOException, OutputStream, PrintStream}
+import java.nio.file.attribute.BasicFileAttributes
+import java.nio.file.{FileVisitResult, Files, Path, SimpleFileVisitor}
 
 import scala.util.control.NonFatal
 
@@ -109,6 +111,22 @@ object Util {
     timed(ConsolePrinter, name)(body)
   }
 
+  def deleteRecursively(root: Path): Unit = {
+    Files.walkFileTree(root, new SimpleFileVisitor[Path] {
+      override def visitFile(file: Path, attrs: BasicFileAttributes): FileVisitResult = {
+        Files.delete(file)
+        FileVisitResult.CONTINUE
+      }
+      override def postVisitDirectory(dir: Path, ex: IOException): FileVisitResult = {
+        if (ex != null) {
+          throw ex
+        }
+        Files.delete(dir)
+        FileVisitResult.CONTINUE
+      }
+    })
+  }
+
   def separator: String = {
     Util.fillStr("- ", 76)
   }
@@ -389,6 +389,23 @@ object BasicFragments extends FragmentBundle with FragmentExpectations with OneL
   }
   DynamicIntegerForLoop in EmptyContext succeedsWith (55)
 
+  val TypedForLoopWithDynamicLimit = fragment ("TypedForLoopWithDynamicLimit") {
+    """local function count(limit)
+      |  local n, m = 0, 0
+      |  for i = 1, limit do n = n + i end
+      |  for x = 0.5, limit, 0.5 do m = m + x end
+      |  for i = 3, limit, -1 do n = n + 100 end
+      |  return n, m
+      |end
+      |
+      |local a, b = count(4)
+      |local c, d = count(2.5)
+      |local e, f = count(0/0)
+      |return a, b, c, d, e, f
+    """
+  }
+  TypedForLoopWithDynamicLimit in EmptyContext succeedsWith (10, 18.0, 103, 7.5, 0, 0)
+
   val ForLoopMtAttempt = fragment ("ForLoopMtAttempt") {
     """local function nt(v)
       |  local t = {}
@@ -770,6 +787,36 @@ object BasicFragments extends FragmentBundle with FragmentExpectations with OneL
   }
   NoTailcall in EmptyContext succeedsWith (1)
 
+  val SelfTailcalls = fragment ("SelfTailcalls") {
+    """local function sum(n, acc)
+      |  if n == 0 then return acc end
+      |  return sum(n - 1, acc + n)
+      |end
+      |
+      |local function swap(n, x, y, z)
+      |  if n == 0 then return x, y, z end
+      |  if n == 1 then return swap(0, y, x) end
+      |  return swap(n - 1, y, x, z, "extra")
+      |end
+      |
+      |return sum(100000, 0), swap(4, "a", "b", "c")
+    """
+  }
+  SelfTailcalls in EmptyContext succeedsWith (5000050000L, "a", "b", null)
+
+  val SelfTailcallsWithCapturedParams = fragment ("SelfTailcallsWithCapturedParams") {
+    """local fs = {}
+      |local function mk(i)
+      |  if i > 3 then return end
+      |  fs[i] = function() return i end
+      |  return mk(i + 1)
+      |end
+      |mk(1)
+      |return fs[1](), fs[2](), fs[3]()
+    """
+  }
+  SelfTailcallsWithCapturedParams in EmptyContext succeedsWith (1, 2, 3)
+
   val FuncWith2Params = fragment ("FuncWith2Params") {
     """local f = function (x, y)
       |    return x + y
@@ -934,6 +981,19 @@ object BasicFragments extends FragmentBundle with FragmentExpectations with OneL
   }
   FunctionCalls3 in EmptyContext succeedsWith (20)
 
+  val CallableTableCalls = fragment ("CallableTableCalls") {
+    """local c = setmetatable({}, { __call = function(self, x) return x * 2 end })
+      |local targets = { function(x) return x + 1 end, c, function(x) return x - 1 end, c }
+      |local acc = 0
+      |for i = 1, 20 do
+      |  local f = targets[(i % #targets) + 1]
+      |  acc = acc + f(i)
+      |end
+      |return acc
+    """
+  }
+  CallableTableCalls in BasicContext succeedsWith (310)
+
   val LocalUpvalue = fragment ("LocalUpvalue") {
     """local function f()
       |  local x = 1
@@ -1469,6 +1529,21 @@ object BasicFragments extends FragmentBundle with FragmentExpectations with OneL
   }
   PairsOnTable in BasicContext succeedsWith (3)
 
+  val PairsAllowsClearingFields = fragment ("PairsAllowsClearingFields") {
+    """local t = {10, 20, 30, x = 1, y = 2, z = 3}
+      |
+      |local count = 0
+      |
+      |for k, v in pairs(t) do
+      |  t[k] = nil
+      |  count = count + 1
+      |end
+      |
+      |return count, next(t)
+    """
+  }
+  PairsAllowsClearingFields in BasicContext succeedsWith (6, null)
+
   val PairsWithMetatable = fragment ("PairsWithMetatable") {
     """local t = {}
       |local mt = { __pairs = function(x) return 1, 2, 3 end }
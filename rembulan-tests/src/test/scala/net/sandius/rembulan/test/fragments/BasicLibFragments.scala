@@ -167,6 +167,15 @@ object BasicLibFragments extends FragmentBundle with FragmentExpectations with O
 
       program ("pcall()") failsWith "bad argument #1 to 'pcall' (value expected)"
 
+      program (
+        """local function f(...) return ... end
+          |local a = select('#', pcall(f))
+          |local b = select('#', pcall(f, nil, nil, nil))
+          |local t = {pcall(f, 1, 2, 3, 4, 5, 6)}
+          |local u, v, w, x, y = pcall(f, 10)
+          |return a, b, #t, t[1], t[7], u, v, w, x, y
+        """) succeedsWith (1, 4, 7, true, 6, true, 10, null, null, null)
+
       val PCallHonoursTheCallMetamethod = fragment ("pcall honours the __call metamethod") {
         """function callable()
           |  local mt = {}
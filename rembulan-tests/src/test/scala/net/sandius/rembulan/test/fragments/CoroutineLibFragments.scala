@@ -157,4 +157,33 @@ object CoroutineLibFragments extends FragmentBundle with FragmentExpectations  {
   }
   WrappedCoroutineRunning in CoroContext succeedsWith (classOf[Coroutine], false)
 
+  val NumericLocalsSurviveYield = fragment ("NumericLocalsSurviveYield") {
+    """local function f(n)
+      |  local s, x = 0, 1.5
+      |  for i = 1, n do
+      |    s = s + i * i
+      |    x = x * 2.0
+      |    coroutine.yield()
+      |  end
+      |  return s, x
+      |end
+      |local c = coroutine.wrap(f)
+      |c(4); c(); c(); c()
+      |return c()
+    """
+  }
+  NumericLocalsSurviveYield in CoroContext succeedsWith (30, 24.0)
+
+  val ChainedConcatWithYieldingMetamethod = fragment ("ChainedConcatWithYieldingMetamethod") {
+    """local mt = {__concat = function(a, b)
+      |  local x = coroutine.yield("y")
+      |  return "[" .. x .. "]"
+      |end}
+      |local t = setmetatable({}, mt)
+      |local co = coroutine.wrap(function() return "a" .. "b" .. t .. "c" .. "d" end)
+      |return co(), co("1")
+    """
+  }
+  ChainedConcatWithYieldingMetamethod in CoroContext succeedsWith ("y", "ab[1]")
+
 }
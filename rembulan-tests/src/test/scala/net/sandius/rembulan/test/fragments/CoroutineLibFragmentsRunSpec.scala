@@ -29,4 +29,6 @@ class CoroutineLibFragmentsRunSpec extends FragmentExecTestSuite {
 
   override def steps = Seq(1, Int.MaxValue)
 
+  override def compilerConfigs = CompilerConfigs.WithInvokeDynamic
+
 }
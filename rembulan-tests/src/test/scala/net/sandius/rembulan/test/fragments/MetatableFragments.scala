@@ -285,6 +285,116 @@ object MetatableFragments extends FragmentBundle with FragmentExpectations with
 
     }
 
+    val WeakTableKeepsNonCollectableEntries = fragment("weak table keeps non-collectable entries") {
+      """local t = setmetatable({}, {__mode = "kv"})
+        |for i = 1, 10 do t[i] = "v" .. i end
+        |t.x = 1
+        |t[2.5] = true
+        |local count = 0
+        |for k, v in pairs(t) do count = count + 1 end
+        |return #t, t[10], t.x, t[2.5], count
+      """
+    }
+    WeakTableKeepsNonCollectableEntries in thisContext succeedsWith (10, "v10", 1, true, 12)
+
+    val WeakModeChangeKeepsEntries = fragment("changing __mode keeps table entries") {
+      """local mt = {}
+        |local k = {}
+        |local t = setmetatable({}, mt)
+        |t[k] = "a"; t[1] = "b"
+        |mt.__mode = "k"
+        |local r1, r2 = t[k], t[1]
+        |mt.__mode = nil
+        |return r1, r2, t[k], t[1]
+      """
+    }
+    WeakModeChangeKeepsEntries in thisContext succeedsWith ("a", "b", "a", "b")
+
+    val MetamethodAddedAfterMiss = fragment("metamethod added after a lookup miss is used") {
+      """local mt = {}
+        |local t = setmetatable({}, mt)
+        |local a = t.x
+        |mt.__index = function(t, k) return k .. "!" end
+        |local b = t.x
+        |rawset(mt, "__index", nil)
+        |local c = t.x
+        |mt.__index = {x = 42}
+        |return a, b, c, t.x
+      """
+    }
+    MetamethodAddedAfterMiss in thisContext succeedsWith (null, "x!", null, 42)
+
+    val ArithmeticMetamethodAddedAfterMiss = fragment("arithmetic metamethod added after a failed lookup is used") {
+      """local mt = {}
+        |local t = setmetatable({}, mt)
+        |local ok = pcall(function() return t + 1 end)
+        |mt.__add = function(a, b) return "sum" end
+        |return ok, t + 1, 1 + t
+      """
+    }
+    ArithmeticMetamethodAddedAfterMiss in thisContext succeedsWith (false, "sum", "sum")
+
+    val FieldAccessSiteWithVaryingTables = fragment("field access site with tables of varying shapes and metatables") {
+      """local log = {}
+        |local mt = {
+        |  __index = function(t, k) return "idx" end,
+        |  __newindex = function(t, k, v) log[#log + 1] = v end
+        |}
+        |local ts = {
+        |  {x = 1},
+        |  {y = 2, x = 3},
+        |  setmetatable({}, mt),
+        |  setmetatable({x = 4}, mt),
+        |  {x = 5},
+        |  setmetatable({}, {__index = {x = 6}})
+        |}
+        |local r = {}
+        |for i = 1, #ts do
+        |  local t = ts[i]
+        |  r[#r + 1] = tostring(t.x)
+        |  t.x = i * 10
+        |  r[#r + 1] = tostring(rawget(t, "x"))
+        |end
+        |ts[1].x = nil
+        |local s = r[1]
+        |for i = 2, #r do s = s .. "," .. r[i] end
+        |return s, tostring(ts[1].x), #log, log[1]
+      """
+    }
+    FieldAccessSiteWithVaryingTables in thisContext succeedsWith ("1,10,3,20,idx,nil,4,40,5,50,6,60", "nil", 1, 30)
+
+    val ChainedConcatMetamethodOrder = fragment("chained concatenation calls __concat from the right") {
+      """local log = {}
+        |local mt = {__concat = function(a, b)
+        |  local sa = type(a) == "table" and "T" or a
+        |  local sb = type(b) == "table" and "T" or b
+        |  log[#log + 1] = sa .. "|" .. sb
+        |  return "(" .. sa .. sb .. ")"
+        |end}
+        |local t = setmetatable({}, mt)
+        |local r1 = "a" .. 1 .. t .. "b" .. 2.5 .. t
+        |local r2 = t .. "x" .. "y"
+        |local s = log[1]
+        |for i = 2, #log do s = s .. "," .. log[i] end
+        |return r1, r2, s
+      """
+    }
+    ChainedConcatMetamethodOrder in thisContext succeedsWith ("a1(Tb(2.5T))", "(Txy)", "2.5|T,T|b(2.5T),T|xy")
+
+    val MetamethodsAfterSetmetatable = fragment("table accesses switch to metamethods once a metatable is set") {
+      """local function access(t, k)
+        |  t[k] = k
+        |  return t[k + 1], #t, t == 1
+        |end
+        |local t = {}
+        |local a, b, c = access(t, 1)
+        |setmetatable(t, {__index = function() return "i" end, __newindex = rawset, __len = function() return "l" end})
+        |local d, e, f = access(t, 2)
+        |return a, b, c, d, e, f
+      """
+    }
+    MetamethodsAfterSetmetatable in thisContext succeedsWith (null, 1, false, "i", "l", false)
+
   }
   
 }
@@ -16,6 +16,7 @@
 
 package net.sandius.rembulan.test.fragments
 
+import net.sandius.rembulan.impl.{ArrayHashTable, ShapedTable}
 import net.sandius.rembulan.test.FragmentExecTestSuite
 import org.junit.runner.RunWith
 import org.scalatest.junit.JUnitRunner
@@ -29,4 +30,8 @@ class MetatableFragmentsRunSpec extends FragmentExecTestSuite {
 
   override def steps = Seq(1, Int.MaxValue)
 
+  override def tableFactories = Seq(
+    ("arrayhash", ArrayHashTable.factory()),
+    ("shaped", ShapedTable.factory()))
+
 }
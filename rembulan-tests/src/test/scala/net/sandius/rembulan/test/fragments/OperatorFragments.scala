@@ -489,6 +489,23 @@ object OperatorFragments extends FragmentBundle with FragmentExpectations with O
 
     }
 
+    about ("statically typed operands") {
+
+      program ("local x = 0; for i = 1, 10 do x = x + i * i end; return x") succeedsWith 385
+      program ("local x = 0; for i = 1, 10 do x = x - i // 3 end; return x") succeedsWith -15
+      program ("local x = 0.5; for i = 1, 4 do x = x * i end; return x") succeedsWith 12.0
+      program ("local x = 1; for i = 1, 4 do x = x / 2 end; return x") succeedsWith 0.0625
+      program ("local x = 0; for i = 1, 10 do x = x + (i % 3) end; return x") succeedsWith 10
+      program ("local x = 0; for i = 1, 10 do x = x ~ i end; return ~x, -x") succeedsWith (-12, -11)
+      program ("local n = 0; for i = 1, 5 do if i < 3 then n = n + 1 end end; return n") succeedsWith 2
+      program ("local n = 0; for i = 1, 5 do if i ~= 3.0 then n = n + 1 end end; return n") succeedsWith 4
+      program ("local s = 'a'; for i = 1, 3 do s = s .. 'b' end; return #s, s <= 'abbb', s < 'abbb'") succeedsWith (4, true, false)
+
+      program ("return (false and 'T') or 'U'") succeedsWith "U"
+      program ("local x = false; return (x and 'T') or 'U'") succeedsWith "U"
+
+    }
+
   }
 
 }
@@ -81,6 +81,23 @@ object StringLibFragments extends FragmentBundle with FragmentExpectations with
       program ("""string.char(256)""") failsWith (classOf[IllegalArgumentException], "bad argument #1 to 'char' (value out of range)")
     }
 
+    about ("sub") {
+      program ("""return ("hello"):sub(2, 3)""") succeedsWith ("el")
+      program ("""return ("hello"):sub(-3)""") succeedsWith ("llo")
+      program ("""return ("hello"):sub(1, -1)""") succeedsWith ("hello")
+      program ("""return ("hello"):sub(0, 100)""") succeedsWith ("hello")
+
+      program (
+        """local s = "ACGTACGTAC"
+          |local t = {}
+          |for i = 1, #s - 1 do
+          |  local k = s:sub(i, i + 1)
+          |  t[k] = (t[k] or 0) + 1
+          |end
+          |return t.AC, t.CG, t.GT, t.TA, t["A" .. "C"]
+        """) succeedsWith (3, 2, 2, 2, 3)
+    }
+
     about ("format") {
       program ("""return ("%s%d"):format("0", 10.0)""") succeedsWith ("010")
 
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.test.fragments
+
+import net.sandius.rembulan.test.{FragmentBundle, FragmentExpectations, OneLiners}
+
+object TableFragments extends FragmentBundle with FragmentExpectations with OneLiners {
+
+  in (BasicContext) {
+
+    val TraversalAfterRemovalsAndInsertions = fragment("traversal after removals and insertions") {
+      """local t = {}
+        |for i = 1, 100 do t["k" .. i] = i end
+        |for i = 1, 100, 2 do t["k" .. i] = nil end
+        |for i = 101, 120 do t["k" .. i] = i end
+        |local n, sum = 0, 0
+        |for k, v in pairs(t) do n = n + 1; sum = sum + v end
+        |return n, sum
+      """
+    }
+    TraversalAfterRemovalsAndInsertions in thisContext succeedsWith (70, 4760)
+
+    val ClearingFieldsDuringTraversal = fragment("clearing fields during traversal") {
+      """local t = {}
+        |for i = 1, 50 do t["k" .. i] = i end
+        |local n, sum = 0, 0
+        |for k, v in pairs(t) do
+        |  t[k] = nil
+        |  n = n + 1
+        |  sum = sum + v
+        |end
+        |return n, sum, next(t)
+      """
+    }
+    ClearingFieldsDuringTraversal in thisContext succeedsWith (50, 1275, null)
+
+    val NestedTraversals = fragment("nested traversals of the same table") {
+      """local t = {}
+        |for i = 1, 20 do t["k" .. i] = i end
+        |local n = 0
+        |for k1 in pairs(t) do
+        |  for k2 in pairs(t) do n = n + 1 end
+        |end
+        |return n
+      """
+    }
+    NestedTraversals in thisContext succeedsWith (400)
+
+    val ReinsertionAfterRemoval = fragment("reinsertion of a removed key") {
+      """local t = {a = 1, b = 2, c = 3}
+        |t.b = nil
+        |t.b = 4
+        |local n, sum = 0, 0
+        |for k, v in pairs(t) do n = n + 1; sum = sum + v end
+        |return n, sum, t.b
+      """
+    }
+    ReinsertionAfterRemoval in thisContext succeedsWith (3, 8, 4)
+
+    val TraversalWithIntegerKeys = fragment("traversal of a table with integer keys and a hole") {
+      """local t = {}
+        |for i = 1, 10 do t[i] = i end
+        |t[5] = nil
+        |t[11] = 11
+        |local n, sum = 0, 0
+        |for k, v in pairs(t) do n = n + 1; sum = sum + v end
+        |return n, sum, t[11], t[5]
+      """
+    }
+    TraversalWithIntegerKeys in thisContext succeedsWith (10, 61, 11, null)
+
+    val ShapeTransitions = fragment("tables acquiring string keys in various orders") {
+      """local function mk(a, b, c)
+        |  local t = {}
+        |  t.x = a; t.y = b; t.z = c
+        |  return t
+        |end
+        |local t1, t2 = mk(1, 2, 3), mk(4, 5, 6)
+        |local u = {}
+        |u.z = 7; u.x = 8; u.y = 9
+        |t2.w = 10
+        |return t1.x + t1.y + t1.z, t2.x, t2.w, t1.w, u.x, u.y, u.z
+      """
+    }
+    ShapeTransitions in thisContext succeedsWith (6, 4, 10, null, 8, 9, 7)
+
+    val StringKeyDeletions = fragment("deleting and re-adding string keys") {
+      """local t = {}
+        |t.a = 1; t.b = 2; t.c = 3
+        |t.b = nil
+        |local n = 0
+        |for k in pairs(t) do n = n + 1 end
+        |t.b = 4
+        |t.d = 5
+        |return n, t.a, t.b, t.c, t.d
+      """
+    }
+    StringKeyDeletions in thisContext succeedsWith (2, 1, 4, 3, 5)
+
+    val ManyStringKeyDeletions = fragment("deleting many string keys") {
+      """local t = {}
+        |for i = 1, 20 do t["f" .. i] = i end
+        |for i = 1, 12 do t["f" .. i] = nil end
+        |t.g = 100
+        |local n, sum = 0, 0
+        |for k, v in pairs(t) do n = n + 1; sum = sum + v end
+        |return n, sum, t.f13, t.f1, t.g
+      """
+    }
+    ManyStringKeyDeletions in thisContext succeedsWith (9, 232, 13, null, 100)
+
+    val ManyStringKeys = fragment("tables with many string keys") {
+      """local t = {}
+        |for i = 1, 40 do t["k" .. i] = i end
+        |local n, sum = 0, 0
+        |for k, v in pairs(t) do n = n + 1; sum = sum + v end
+        |return n, sum, t.k1, t.k40
+      """
+    }
+    ManyStringKeys in thisContext succeedsWith (40, 820, 1, 40)
+
+    val MixedKeys = fragment("tables with string and non-string keys") {
+      """local t = {10, 20, 30}
+        |t.name = "x"
+        |t[true] = "yes"
+        |t[1.5] = "f"
+        |local n = 0
+        |for k, v in pairs(t) do n = n + 1 end
+        |return n, #t, t[2], t.name, t[true], t[1.5]
+      """
+    }
+    MixedKeys in thisContext succeedsWith (6, 3, 20, "x", "yes", "f")
+
+    val ClearingMixedKeysDuringTraversal = fragment("clearing string and integer keys during traversal") {
+      """local t = {a = 1, b = 2, c = 3, [1] = 4, [2] = 5}
+        |local n, sum = 0, 0
+        |for k, v in pairs(t) do
+        |  t[k] = nil
+        |  n = n + 1
+        |  sum = sum + v
+        |end
+        |return n, sum, next(t)
+      """
+    }
+    ClearingMixedKeysDuringTraversal in thisContext succeedsWith (5, 15, null)
+
+    val MetatablesAndModes = fragment("setting metatables with and without weak modes") {
+      """local t = {}
+        |t.a = 1
+        |local mt = {__index = function(t, k) return k .. "!" end}
+        |setmetatable(t, mt)
+        |local r1, r2 = t.a, t.b
+        |mt.__mode = "k"
+        |t.c = 3
+        |setmetatable(t, {__mode = "v"})
+        |return r1, r2, t.a, t.b, t.c
+      """
+    }
+    MetatablesAndModes in thisContext succeedsWith (1, "b!", 1, null, 3)
+
+    val MetamethodAddedLater = fragment("metamethod added to a metatable after a lookup") {
+      """local mt = {}
+        |local t = setmetatable({}, mt)
+        |local r1 = t.x
+        |mt.__index = function() return "late" end
+        |return r1, t.x
+      """
+    }
+    MetamethodAddedLater in thisContext succeedsWith (null, "late")
+
+    val ManyDistinctShapes = fragment("many tables with distinct sets of string keys") {
+      """local sum = 0
+        |for i = 1, 300 do
+        |  for j = 1, 32 do
+        |    local t = {}
+        |    t["a" .. i] = i
+        |    t["b" .. j] = j
+        |    sum = sum + t["a" .. i] + t["b" .. j]
+        |  end
+        |end
+        |return sum
+      """
+    }
+    ManyDistinctShapes in thisContext succeedsWith (1603200)
+
+    val ConstructorWithTrailingCall = fragment("table constructor with a trailing multi-value call") {
+      """local function f(...) return ... end
+        |local a = {f(1, 2, 3)}
+        |local b = {"x", "y", f(3, 4, 5)}
+        |local c = {f()}
+        |local d = {"x", f()}
+        |return #a, a[3], #b, b[2], b[5], #c, #d, d[2]
+      """
+    }
+    ConstructorWithTrailingCall in thisContext succeedsWith (3, 3, 5, "y", 5, 0, 1, null)
+
+    val ConstructorWithTrailingVarargs = fragment("table constructor with trailing varargs") {
+      """local function pack(...) return {...} end
+        |local function packAfter(...) return {0, ...} end
+        |local a, b, c = pack(), pack(1, 2), packAfter(1, 2)
+        |return #a, #b, b[2], #c, c[1], c[3]
+      """
+    }
+    ConstructorWithTrailingVarargs in thisContext succeedsWith (0, 2, 2, 3, 0, 2)
+
+    val ConstructorWithManyTrailingValues = fragment("table constructor with many trailing values") {
+      """local function range(i, n)
+        |  if i <= n then return i, range(i + 1, n) end
+        |end
+        |local t = {x = 1, y = 2, -1, 0, range(1, 150)}
+        |local sum = 0
+        |for i = 1, #t do sum = sum + t[i] end
+        |t[#t + 1] = 151
+        |return #t, sum, t[3], t[152], t[153], t.x, t.y
+      """
+    }
+    ConstructorWithManyTrailingValues in thisContext succeedsWith (153, 11324, 1, 150, 151, 1, 2)
+
+    val ConstructorWithTrailingNils = fragment("table constructor with nils among the trailing values") {
+      """local function f(...) return ... end
+        |local t = {f(1, nil, 3, nil)}
+        |local n = 0
+        |for k, v in pairs(t) do n = n + 1 end
+        |return n, t[1], t[2], t[3], t[4]
+      """
+    }
+    ConstructorWithTrailingNils in thisContext succeedsWith (2, 1, null, 3, null)
+
+  }
+
+}
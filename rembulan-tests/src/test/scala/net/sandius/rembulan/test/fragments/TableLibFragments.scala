@@ -557,6 +557,35 @@ object TableLibFragments extends FragmentBundle with FragmentExpectations with O
 
       doSort(3, 8, 5, 4, 6)
 
+      // sequences built by appending
+      in (FullContext) {
+
+        program (
+          """local t = {}
+            |for i = 1, 100 do t[#t + 1] = (i * 37) % 101 end
+            |table.sort(t)
+            |local ok = true
+            |for i = 2, #t do ok = ok and t[i - 1] <= t[i] end
+            |return #t, t[1], t[100], math.type(t[1]), ok
+          """) succeedsWith (100, 1, 100, "integer", true)
+
+        program (
+          """local t = {}
+            |for i = 1, 100 do t[#t + 1] = ((i * 37) % 101) / 2 end
+            |table.sort(t)
+            |return #t, t[1], t[100], math.type(t[1])
+          """) succeedsWith (100, 0.5, 50.0, "float")
+
+        program (
+          """local t = {}
+            |for i = 1, 10 do t[i] = 11 - i end
+            |t[5] = 5.5
+            |table.sort(t)
+            |return t[1], t[5], t[6], math.type(t[5]), math.type(t[6])
+          """) succeedsWith (1, 5, 5.5, "integer", "float")
+
+      }
+
       program (
         """local t = {"one", "thirteen", "three", "four", "eleven"}
           |table.sort(t, function(a, b) return #a < #b end)
@@ -693,6 +722,83 @@ object TableLibFragments extends FragmentBundle with FragmentExpectations with O
 
     }
 
+    about ("length and borders") {
+
+      program (
+        """local t = {}
+          |for i = 1, 100 do t[#t + 1] = i end
+          |local a = #t
+          |table.insert(t, 101)
+          |local b = #t
+          |table.remove(t)
+          |table.remove(t)
+          |return a, b, #t, t[99], t[100]
+        """) succeedsWith (100, 101, 99, 99, null)
+
+      program (
+        """local t = {x = 1, y = 2}
+          |for i = 1, 100 do t[i] = i * 0.5 end
+          |for i = 100, 51, -1 do t[i] = nil end
+          |return #t
+        """) succeedsWith (50)
+
+      program (
+        """local t = {"a", "b", "c"}
+          |while #t > 0 do table.remove(t) end
+          |return #t, next(t)
+        """) succeedsWith (0, null)
+
+      // filling the only hole leaves a single border
+      program (
+        """local t = {}
+          |t[1] = 1
+          |t[3] = 3
+          |t[4] = 4
+          |t[2] = 2
+          |return #t
+        """) succeedsWith (4)
+
+      program (
+        """local t = {}
+          |t[1.0] = "a"
+          |t[2] = "b"
+          |t[3.0] = "c"
+          |return #t
+        """) succeedsWith (3)
+
+      // removing the last element when there is a hole before it
+      program (
+        """local t = {}
+          |for i = 1, 5 do t[i] = i end
+          |t[3] = nil
+          |t[5] = nil
+          |t[4] = nil
+          |return #t
+        """) succeedsWith (2)
+
+      // in a table with holes, the length may be any border
+      program (
+        """local function isborder(t, n)
+          |  return (n == 0 or t[n] ~= nil) and t[n + 1] == nil
+          |end
+          |
+          |local t = {}
+          |for i = 1, 10 do t[#t + 1] = i end
+          |t[5] = nil
+          |local a = isborder(t, #t)
+          |t[#t + 1] = "x"
+          |local b = isborder(t, #t)
+          |t[1] = nil
+          |local c = isborder(t, #t)
+          |t[#t] = nil
+          |local d = isborder(t, #t)
+          |t[5] = 5
+          |local e = isborder(t, #t)
+          |return a, b, c, d, e
+        """) succeedsWith (true, true, true, true, true)
+
+    }
+
   }
 
 }
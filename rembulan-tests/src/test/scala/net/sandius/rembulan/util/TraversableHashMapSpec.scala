@@ -0,0 +1,65 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.util
+
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+import org.scalatest.{FunSpec, MustMatchers}
+
+@RunWith(classOf[JUnitRunner])
+class TraversableHashMapSpec extends FunSpec with MustMatchers {
+
+  def keys[K](m: TraversableHashMap[K, _]): List[K] = {
+    var result = List.empty[K]
+    var k = m.getFirstKey
+    while (k != null) {
+      result = k :: result
+      k = m.getSuccessorOf(k)
+    }
+    result.reverse
+  }
+
+  describe ("a traversable hash map") {
+
+    it ("rejects a negative expected size") {
+      an [IllegalArgumentException] must be thrownBy {
+        new TraversableHashMap[String, String](-1)
+      }
+    }
+
+    it ("holds any number of entries regardless of the expected size") {
+      for (expected <- Seq(None, Some(0), Some(1), Some(10), Some(1000));
+           n <- Seq(0, 1, 12, 13, 100)) {
+        val m = expected match {
+          case Some(e) => new TraversableHashMap[String, Integer](e)
+          case None => new TraversableHashMap[String, Integer]()
+        }
+        for (i <- 0 until n) {
+          m.put("k" + i, i)
+        }
+        m.size mustBe n
+        for (i <- 0 until n) {
+          m.get("k" + i) mustBe i
+        }
+        keys(m) mustEqual ((0 until n) map { "k" + _ }).toList
+        m.getLastKey mustBe (if (n > 0) "k" + (n - 1) else null)
+      }
+    }
+
+  }
+
+}